@@ -15,33 +15,45 @@
  **/
 package org.venice.piazza.access.controller;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.geotools.data.DataStore;
+import org.geotools.data.DefaultTransaction;
+import org.geotools.data.FeatureReader;
 import org.geotools.data.Query;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
-import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.data.Transaction;
 import org.geotools.geojson.feature.FeatureJSON;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.amazonaws.util.StringUtils;
 
@@ -51,6 +63,10 @@ import org.venice.piazza.access.deploy.GroupDeployer;
 import org.venice.piazza.access.deploy.Leaser;
 import org.venice.piazza.access.messaging.AccessThreadManager;
 import org.venice.piazza.access.util.AccessUtilities;
+import org.venice.piazza.piazza.database.InvalidKeysetQueryException;
+import org.venice.piazza.piazza.database.KeysetPage;
+import org.venice.piazza.piazza.database.KeysetQuery;
+import org.venice.piazza.piazza.web.JsonStreamingBody;
 import exception.GeoServerException;
 import exception.InvalidInputException;
 import model.data.DataResource;
@@ -62,10 +78,13 @@ import model.data.type.PostGISDataType;
 import model.data.type.TextDataType;
 import model.logger.AuditElement;
 import model.logger.Severity;
+import model.response.DataResourceListResponse;
 import model.response.DataResourceResponse;
 import model.response.DeploymentGroupResponse;
+import model.response.DeploymentListResponse;
 import model.response.DeploymentResponse;
 import model.response.ErrorResponse;
+import model.response.Pagination;
 import model.response.PiazzaResponse;
 import model.response.SuccessResponse;
 import util.PiazzaLogger;
@@ -107,9 +126,14 @@ public class AccessController {
 	private static final String DEFAULT_PAGE = "0";
 	private static final String DEFAULT_SORTBY = "dataId";
 	private static final String DEFAULT_ORDER = "asc";
+	private static final String CURSOR_KEYWORD_ERROR = "Keyword searches cannot be paged by cursor. Use page numbers instead.";
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(AccessController.class);
 
+	/**
+	 * GeoJSON downloads are the only responses compressed by server.compression, so they have their own media type.
+	 */
+	private static final MediaType GEOJSON = MediaType.valueOf("application/geo+json");
 	private static final String ACCESS_COMPONENT_NAME = "Access";
 	private static final String ACCESS = "access";
 
@@ -130,10 +154,24 @@ public class AccessController {
 	 * @param dataId
 	 *            The Id of the Data Item to get. Assumes this file is ready to be downloaded.
 	 */
-	@SuppressWarnings("rawtypes")
+	public ResponseEntity<StreamingResponseBody> accessFile(String dataId, String name) {
+		return accessFile(dataId, name, null);
+	}
+
+	/**
+	 * Requests a file download that has been prepared by this Access component. This will stream the raw bytes of the
+	 * resource. For files, a single byte range may be requested, in which case only that range is returned as partial
+	 * content. If pre-signed downloads are enabled, then requests for S3 files are redirected to S3.
+	 * 
+	 * @param dataId
+	 *            The Id of the Data Item to get. Assumes this file is ready to be downloaded.
+	 * @param range
+	 *            The HTTP Range header, if any
+	 */
 	@RequestMapping(value = "/file/{dataId}", method = RequestMethod.GET)
-	public ResponseEntity accessFile(@PathVariable(value = "dataId") String dataId,
-			@RequestParam(value = "fileName", required = false) String name) {
+	public ResponseEntity<StreamingResponseBody> accessFile(@PathVariable(value = "dataId") String dataId,
+			@RequestParam(value = "fileName", required = false) String name,
+			@RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
 
 		final String returnAction = "returningFileBytes";
 
@@ -146,7 +184,7 @@ public class AccessController {
 
 			if (data == null) {
 				pzLogger.log(String.format("Data not found for requested Id %s", dataId), Severity.WARNING);
-				return new ResponseEntity<>(new ErrorResponse(String.format("Data not found: %s", dataId), ACCESS_COMPONENT_NAME),
+				return JsonStreamingBody.response(new ErrorResponse(String.format("Data not found: %s", dataId), ACCESS_COMPONENT_NAME),
 						HttpStatus.NOT_FOUND);
 			}
 
@@ -157,39 +195,32 @@ public class AccessController {
 						new AuditElement(ACCESS, returnAction, dataId));
 				return getResponse(MediaType.TEXT_PLAIN, String.format("%s%s", fileName, ".txt"), textData.getContent().getBytes());
 			} else if (data.getDataType() instanceof PostGISDataType) {
-				// Obtain geoJSON from postGIS
-				StringBuilder geoJSON = getPostGISGeoJSON(data);
+				// Stream the GeoJSON FeatureCollection directly from PostGIS
+				StreamingResponseBody geoJSON = getPostGISGeoJSON(data);
 
 				// Log the Request
-				pzLogger.log(String.format("Returning Bytes for %s of length %s", dataId, geoJSON.length()), Severity.INFORMATIONAL,
+				pzLogger.log(String.format("Streaming GeoJSON Bytes for %s", dataId), Severity.INFORMATIONAL,
 						new AuditElement(ACCESS, returnAction, dataId));
 
-				// Stream the Bytes back
-				return getResponse(MediaType.TEXT_PLAIN, String.format("%s%s", fileName, ".geojson"), geoJSON.toString().getBytes());
+				return getStreamingResponse(GEOJSON, String.format("%s%s", fileName, ".geojson"), geoJSON);
 			} else if (!(data.getDataType() instanceof FileRepresentation)) {
 				String message = String.format("File download not available for Data Id %s; type is %s", dataId,
 						data.getDataType().getClass().getSimpleName());
 				pzLogger.log(message, Severity.WARNING, new AuditElement(ACCESS, "accessBytesError", ""));
 				throw new InvalidInputException(message);
 			} else {
-				byte[] bytes = accessUtilities.getBytesForDataResource(data);
-
-				// Log the Request
-				pzLogger.log(String.format("Returning Bytes for %s of length %s", dataId, bytes.length), Severity.INFORMATIONAL,
-						new AuditElement(ACCESS, returnAction, dataId));
-
 				// Preserve the file extension from the original file.
 				String originalFileName = ((FileRepresentation) data.getDataType()).getLocation().getFileName();
 				String extension = FilenameUtils.getExtension(originalFileName);
 
 				// Stream the Bytes back
-				return getResponse(MediaType.APPLICATION_OCTET_STREAM, String.format("%s.%s", fileName, extension), bytes);
+				return getFileResponse(data, String.format("%s.%s", fileName, extension), range);
 			}
 		} catch (Exception exception) {
 			String error = String.format("Error fetching Data %s: %s", dataId, exception.getMessage());
 			LOGGER.error(error, exception);
 			pzLogger.log(error, Severity.ERROR, new AuditElement(ACCESS, "errorAccessingBytes", dataId));
-			return new ResponseEntity<>(new ErrorResponse("Error fetching File: " + exception.getMessage(), ACCESS_COMPONENT_NAME),
+			return JsonStreamingBody.response(new ErrorResponse("Error fetching File: " + exception.getMessage(), ACCESS_COMPONENT_NAME),
 					HttpStatus.INTERNAL_SERVER_ERROR);
 		}
 	}
@@ -273,6 +304,14 @@ public class AccessController {
 	/**
 	 * Returns all Data held by the Piazza Ingest/Access components.
 	 * 
+	 * Data may be paged by page number, or by cursor. Cursor pages start after the last item of the previous page, so
+	 * their cost does not grow with the page depth, and only count the total if requested. The cursor of the next page
+	 * is returned in the X-Next-Cursor header. Keyword searches can only be paged by page number.
+	 * 
+	 * @param cursor
+	 *            If specified, pages by cursor. Empty for the first page.
+	 * @param count
+	 *            For cursor pages, whether the total count is "exact", "estimate" or "none". Defaults to none.
 	 * @return The list of all data held by the system.
 	 */
 	@RequestMapping(value = "/data", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
@@ -282,7 +321,9 @@ public class AccessController {
 			@RequestParam(value = "sortBy", required = false, defaultValue = DEFAULT_SORTBY) String sortBy,
 			@RequestParam(value = "order", required = false, defaultValue = DEFAULT_ORDER) String order,
 			@RequestParam(value = "keyword", required = false) String keyword,
-			@RequestParam(value = "userName", required = false) String userName) {
+			@RequestParam(value = "userName", required = false) String userName,
+			@RequestParam(value = "cursor", required = false) String cursor,
+			@RequestParam(value = "count", required = false) String count) {
 		try {
 			String orderToUse = order;
 			// Don't allow for invalid orders
@@ -290,8 +331,20 @@ public class AccessController {
 				orderToUse = "asc";
 			}
 			pzLogger.log("Returning Data Query List", Severity.INFORMATIONAL);
-			return new ResponseEntity<>(accessor.getDataList(page, pageSize, sortBy, orderToUse, keyword, userName, createdByJobId),
-					HttpStatus.OK);
+			if (cursor == null) {
+				return new ResponseEntity<>(accessor.getDataList(page, pageSize, sortBy, orderToUse, keyword, userName, createdByJobId),
+						HttpStatus.OK);
+			}
+			if (!StringUtils.isNullOrEmpty(keyword)) {
+				return new ResponseEntity<>(new ErrorResponse(CURSOR_KEYWORD_ERROR, ACCESS_COMPONENT_NAME), HttpStatus.BAD_REQUEST);
+			}
+			KeysetPage<DataResource> data = accessor.getDataList(cursor, pageSize, sortBy, orderToUse, userName, createdByJobId,
+					KeysetQuery.CountMode.fromString(count));
+			return new ResponseEntity<>(
+					new DataResourceListResponse(data.getResults(), new Pagination(data.getCount(), 0, pageSize, sortBy, orderToUse)),
+					data.getHeaders(), HttpStatus.OK);
+		} catch (InvalidKeysetQueryException exception) {
+			return new ResponseEntity<>(new ErrorResponse(exception.getMessage(), ACCESS_COMPONENT_NAME), HttpStatus.BAD_REQUEST);
 		} catch (Exception exception) {
 			String error = String.format("Error Querying Data: %s", exception.getMessage());
 			LOGGER.error(error, exception);
@@ -304,6 +357,12 @@ public class AccessController {
 	/**
 	 * Returns all Deployments held by the Piazza Ingest/Access components.
 	 * 
+	 * Deployments may be paged by page number, or by cursor, as for Data.
+	 * 
+	 * @param cursor
+	 *            If specified, pages by cursor. Empty for the first page.
+	 * @param count
+	 *            For cursor pages, whether the total count is "exact", "estimate" or "none". Defaults to none.
 	 * @return The list of all data held by the system.
 	 */
 	@RequestMapping(value = "/deployment", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
@@ -312,7 +371,9 @@ public class AccessController {
 			@RequestParam(value = "perPage", required = false, defaultValue = DEFAULT_PAGE_SIZE) Integer perPage,
 			@RequestParam(value = "sortBy", required = false, defaultValue = DEFAULT_SORTBY) String sortBy,
 			@RequestParam(value = "order", required = false, defaultValue = DEFAULT_ORDER) String order,
-			@RequestParam(value = "keyword", required = false) String keyword) {
+			@RequestParam(value = "keyword", required = false) String keyword,
+			@RequestParam(value = "cursor", required = false) String cursor,
+			@RequestParam(value = "count", required = false) String count) {
 		try {
 			String orderToUse = order;
 			// Don't allow for invalid orders
@@ -320,7 +381,20 @@ public class AccessController {
 				orderToUse = "asc";
 			}
 			pzLogger.log("Returning Deployment List Query", Severity.INFORMATIONAL);
-			return new ResponseEntity<>(accessor.getDeploymentList(page, perPage, sortBy, orderToUse, keyword), HttpStatus.OK);
+			if (cursor == null) {
+				return new ResponseEntity<>(accessor.getDeploymentList(page, perPage, sortBy, orderToUse, keyword), HttpStatus.OK);
+			}
+			if (!StringUtils.isNullOrEmpty(keyword)) {
+				return new ResponseEntity<>(new ErrorResponse(CURSOR_KEYWORD_ERROR, ACCESS_COMPONENT_NAME), HttpStatus.BAD_REQUEST);
+			}
+			KeysetPage<Deployment> deployments = accessor.getDeploymentList(cursor, perPage, sortBy, orderToUse,
+					KeysetQuery.CountMode.fromString(count));
+			return new ResponseEntity<>(
+					new DeploymentListResponse(deployments.getResults(),
+							new Pagination(deployments.getCount(), 0, perPage, sortBy, orderToUse)),
+					deployments.getHeaders(), HttpStatus.OK);
+		} catch (InvalidKeysetQueryException exception) {
+			return new ResponseEntity<>(new ErrorResponse(exception.getMessage(), ACCESS_COMPONENT_NAME), HttpStatus.BAD_REQUEST);
 		} catch (Exception exception) {
 			String error = String.format("Error Querying Deployment: %s", exception.getMessage());
 			LOGGER.error(error, exception);
@@ -507,45 +581,187 @@ public class AccessController {
 	 *            file bytes
 	 * @return ResponseEntity
 	 */
-	private ResponseEntity<byte[]> getResponse(MediaType type, String fileName, byte[] bytes) {
+	private ResponseEntity<StreamingResponseBody> getResponse(MediaType type, String fileName, final byte[] bytes) {
 		HttpHeaders header = new HttpHeaders();
 		header.setContentType(type);
 		header.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName);
 		header.setContentLength(bytes.length);
-		return new ResponseEntity<>(bytes, header, HttpStatus.OK);
+		StreamingResponseBody body = new StreamingResponseBody() {
+			@Override
+			public void writeTo(OutputStream outputStream) throws IOException {
+				outputStream.write(bytes);
+			}
+		};
+		return new ResponseEntity<>(body, header, HttpStatus.OK);
 	}
 
 	/**
-	 * Gets the GeoJSON representation of a Data Resource currently stored in PostGIS.
+	 * Gets the response for a file download. This is either a redirect to a pre-signed S3 URL, or a body that streams
+	 * the file, or the requested range of the file, to the client.
 	 * 
 	 * @param data
-	 *            DataResource object
-	 * @return stringbuilder of geojson
-	 * @throws Exception
+	 *            The Data Resource with a file representation
+	 * @param fileName
+	 *            file name to set for content disposition
+	 * @param range
+	 *            The HTTP Range header, if any
+	 * @return ResponseEntity
 	 */
-	private StringBuilder getPostGISGeoJSON(DataResource data) throws IOException {
-		// Connect to POSTGIS and gather geoJSON info
-		DataStore postGisStore = accessor.getPostGisDataStore();
-
-		PostGISDataType resource = (PostGISDataType) (data.getDataType());
-		SimpleFeatureSource simpleFeatureSource = postGisStore.getFeatureSource(resource.getTable());
-		SimpleFeatureCollection simpleFeatureCollection = simpleFeatureSource.getFeatures(Query.ALL);
-
-		StringBuilder geoJSON = new StringBuilder();
-		try (SimpleFeatureIterator simpleFeatureIterator = simpleFeatureCollection.features()) {
-			while (simpleFeatureIterator.hasNext()) {
-				SimpleFeature simpleFeature = simpleFeatureIterator.next();
-				FeatureJSON featureJSON = new FeatureJSON();
-				StringWriter writer = new StringWriter();
-
-				featureJSON.writeFeature(simpleFeature, writer);
-				String json = writer.toString();
-
-				// Append each section
-				geoJSON.append(json);
+	private ResponseEntity<StreamingResponseBody> getFileResponse(DataResource data, String fileName, String range) throws IOException, InvalidInputException {
+		final String dataId = data.getDataId();
+
+		// Redirect the client to S3, if enabled
+		URL presignedUrl = accessUtilities.getPresignedUrl(data);
+		if (presignedUrl != null) {
+			pzLogger.log(String.format("Redirecting download for %s to pre-signed S3 URL", dataId), Severity.INFORMATIONAL,
+					new AuditElement(ACCESS, "redirectingFileDownload", dataId));
+			HttpHeaders header = new HttpHeaders();
+			header.set(HttpHeaders.LOCATION, presignedUrl.toString());
+			return new ResponseEntity<StreamingResponseBody>(header, HttpStatus.FOUND);
+		}
+
+		HttpHeaders header = new HttpHeaders();
+		header.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+		header.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName);
+		HttpStatus status = HttpStatus.OK;
+		final InputStream inputStream;
+
+		// Ranges can only be served when the file size is known
+		long fileSize = accessUtilities.getFileSize(data);
+		if (fileSize >= 0) {
+			header.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+		}
+		List<HttpRange> ranges = getRanges(range, fileSize);
+		if ((fileSize >= 0) && (ranges != null) && (ranges.size() == 1)) {
+			long start = ranges.get(0).getRangeStart(fileSize);
+			long end = ranges.get(0).getRangeEnd(fileSize);
+			if ((start >= fileSize) || (start > end)) {
+				pzLogger.log(String.format("Unsatisfiable Range %s requested for %s", range, dataId), Severity.WARNING);
+				HttpHeaders rangeHeader = new HttpHeaders();
+				rangeHeader.set(HttpHeaders.CONTENT_RANGE, String.format("bytes */%s", fileSize));
+				return new ResponseEntity<StreamingResponseBody>(rangeHeader, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+			}
+			inputStream = accessUtilities.getStreamForDataResource(data, start, end);
+			header.set(HttpHeaders.CONTENT_RANGE, String.format("bytes %s-%s/%s", start, end, fileSize));
+			header.setContentLength(end - start + 1);
+			status = HttpStatus.PARTIAL_CONTENT;
+		} else {
+			// Multiple ranges are not supported; the entire file is returned instead, as allowed by RFC 7233
+			inputStream = accessUtilities.getStreamForDataResource(data);
+			if (fileSize >= 0) {
+				header.setContentLength(fileSize);
 			}
 		}
 
-		return geoJSON;
+		pzLogger.log(String.format("Streaming Bytes for %s with status %s", dataId, status.value()), Severity.INFORMATIONAL,
+				new AuditElement(ACCESS, "returningFileBytes", dataId));
+
+		StreamingResponseBody body = new StreamingResponseBody() {
+			@Override
+			public void writeTo(OutputStream outputStream) throws IOException {
+				try (InputStream fileStream = inputStream) {
+					IOUtils.copyLarge(fileStream, outputStream);
+				}
+			}
+		};
+		return new ResponseEntity<>(body, header, status);
+	}
+
+	/**
+	 * Parses the HTTP Range header.
+	 * 
+	 * @return The requested ranges, or null if no valid Range header was specified, or if the file size is unknown
+	 */
+	private List<HttpRange> getRanges(String range, long fileSize) {
+		if (StringUtils.isNullOrEmpty(range) || (fileSize < 0)) {
+			return null;
+		}
+		try {
+			return HttpRange.parseRanges(range);
+		} catch (IllegalArgumentException exception) {
+			// An invalid Range header is ignored, and the entire file is returned
+			LOGGER.info(String.format("Ignoring invalid Range header %s", range), exception);
+			return null;
+		}
+	}
+
+	/**
+	 * @param type
+	 *            MediaType to set http header content type
+	 * @param fileName
+	 *            file name to set for content disposition
+	 * @param body
+	 *            streaming body that writes the file contents. No content length is set, so the response is chunked.
+	 * @return ResponseEntity
+	 */
+	private ResponseEntity<StreamingResponseBody> getStreamingResponse(MediaType type, String fileName, StreamingResponseBody body) {
+		HttpHeaders header = new HttpHeaders();
+		header.setContentType(type);
+		header.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName);
+		return new ResponseEntity<>(body, header, HttpStatus.OK);
+	}
+
+	/**
+	 * Gets the GeoJSON representation of a Data Resource currently stored in PostGIS, as a body that streams the
+	 * FeatureCollection to the response one feature at a time. The table is read through a server-side cursor, so
+	 * memory use does not grow with the size of the layer.
+	 * <p>
+	 * The table is verified to exist before returning, so that a missing table is reported as an error rather than a
+	 * truncated download. Features are read through the shared PostGIS Data Store, whose pooled connection is returned
+	 * once the body has been written.
+	 * </p>
+	 * 
+	 * @param data
+	 *            DataResource object
+	 * @return The streaming body that writes the GeoJSON FeatureCollection
+	 */
+	private StreamingResponseBody getPostGISGeoJSON(final DataResource data) throws IOException {
+		// Verify the table in POSTGIS
+		final DataStore postGisStore = accessor.getPostGisDataStore();
+		final String tableName = ((PostGISDataType) (data.getDataType())).getTable();
+		postGisStore.getSchema(tableName);
+
+		return new StreamingResponseBody() {
+			@Override
+			public void writeTo(OutputStream outputStream) throws IOException {
+				try {
+					long count = writeGeoJSON(postGisStore, tableName, outputStream);
+					pzLogger.log(String.format("Streamed %s Features for %s", count, data.getDataId()), Severity.INFORMATIONAL,
+							new AuditElement(ACCESS, "streamedGeoJson", data.getDataId()));
+				} catch (IOException exception) {
+					String error = String.format("Error streaming GeoJSON for Data %s: %s", data.getDataId(), exception.getMessage());
+					LOGGER.error(error, exception);
+					pzLogger.log(error, Severity.ERROR, new AuditElement(ACCESS, "errorStreamingGeoJson", data.getDataId()));
+					throw exception;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Writes the features of the table as a GeoJSON FeatureCollection. The features are read within a transaction, as
+	 * PostgreSQL only honors the fetch size (and uses a cursor) when auto-commit is disabled.
+	 * 
+	 * @return The number of features written
+	 */
+	private long writeGeoJSON(DataStore postGisStore, String tableName, OutputStream outputStream) throws IOException {
+		FeatureJSON featureJSON = new FeatureJSON();
+		Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		long count = 0;
+		try (Transaction transaction = new DefaultTransaction("exportGeoJson");
+				FeatureReader<SimpleFeatureType, SimpleFeature> reader = postGisStore.getFeatureReader(new Query(tableName),
+						transaction)) {
+			writer.write("{\"type\":\"FeatureCollection\",\"features\":[");
+			while (reader.hasNext()) {
+				if (count > 0) {
+					writer.write(',');
+				}
+				writer.write(featureJSON.toString(reader.next()));
+				count++;
+			}
+			writer.write("]}");
+		}
+		writer.flush();
+		return count;
 	}
 }
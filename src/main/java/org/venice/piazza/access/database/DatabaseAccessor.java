@@ -19,11 +19,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.annotation.PostConstruct;
+
 import org.apache.commons.lang.StringUtils;
 import org.geotools.data.DataStore;
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Component;
 import org.venice.piazza.common.hibernate.dao.DeploymentGroupDao;
@@ -34,6 +35,10 @@ import org.venice.piazza.common.hibernate.entity.DataResourceEntity;
 import org.venice.piazza.common.hibernate.entity.DeploymentEntity;
 import org.venice.piazza.common.hibernate.entity.DeploymentGroupEntity;
 import org.venice.piazza.common.hibernate.entity.LeaseEntity;
+import org.venice.piazza.ingest.persist.PostGisDataStoreManager;
+import org.venice.piazza.piazza.database.KeysetPage;
+import org.venice.piazza.piazza.database.KeysetPaginator;
+import org.venice.piazza.piazza.database.KeysetQuery;
 
 import model.data.DataResource;
 import model.data.deployment.Deployment;
@@ -42,7 +47,6 @@ import model.data.deployment.Lease;
 import model.response.DataResourceListResponse;
 import model.response.DeploymentListResponse;
 import model.response.Pagination;
-import util.GeoToolsUtil;
 
 /**
  * Handles database access for the Deployer and the Leaser, and Resource collections which stores the Ingested Resource metadata.
@@ -53,19 +57,9 @@ import util.GeoToolsUtil;
 @Component
 public class DatabaseAccessor {
 
-	@Value("${vcap.services.pz-postgres.credentials.db_host}")
-	private String postgresHost;
-	@Value("${vcap.services.pz-postgres.credentials.db_port}")
-	private String postgresPort;
-	@Value("${vcap.services.pz-postgres.credentials.db_name}")
-	private String postgresDBName;
-	@Value("${vcap.services.pz-postgres.credentials.username}")
-	private String postgresUser;
-	@Value("${vcap.services.pz-postgres.credentials.password}")
-	private String postgresPassword;
-	@Value("${postgres.schema}")
-	private String postgresSchema;
-	
+	@Autowired
+	private PostGisDataStoreManager postGisDataStoreManager;
+
 	@Autowired
 	private DataResourceDao dataResourceDao;
 
@@ -77,14 +71,34 @@ public class DatabaseAccessor {
 
 	@Autowired
 	private DeploymentGroupDao deploymentGroupDao;
+
+	@Autowired
+	private KeysetPaginator keysetPaginator;
+
+	private static final String DATA_ID = "dataId";
+	private static final String DATA_CREATED_ON = "metadata.createdOn";
+	private static final String DATA_CREATED_BY = "metadata.createdBy";
+	private static final String DATA_CREATED_BY_JOB_ID = "metadata.createdByJobId";
+	private static final String DEPLOYMENT_ID = "deploymentId";
+
+	/**
+	 * Registers the indexes for the keyset pages of Data, by creation date for all Data and by User, and of
+	 * Deployments, by creation date.
+	 */
+	@PostConstruct
+	public void registerIndexes() {
+		keysetPaginator.registerIndex(DataResourceEntity.class, DataResource.class, DATA_ID, null, DATA_CREATED_ON);
+		keysetPaginator.registerIndex(DataResourceEntity.class, DataResource.class, DATA_ID, DATA_CREATED_BY, DATA_CREATED_ON);
+		keysetPaginator.registerIndex(DeploymentEntity.class, Deployment.class, DEPLOYMENT_ID, null, "createdOn");
+	}
 	
 	/**
-	 * Gets the PostGIS data store for GeoTools.
+	 * Gets the shared PostGIS data store for GeoTools. This must not be disposed.
 	 * 
 	 * @return Data Store.
 	 */
 	public DataStore getPostGisDataStore() throws IOException {
-		return GeoToolsUtil.getPostGisDataStore(postgresHost, postgresPort, postgresSchema, postgresDBName, postgresUser, postgresPassword);
+		return postGisDataStoreManager.getDataStore();
 	}
 
 	/**
@@ -434,4 +448,67 @@ public class DatabaseAccessor {
 		// Return the complete List
 		return new DataResourceListResponse(dataResources, pagination);
 	}
+
+	/**
+	 * Gets a page of deployments from the database, starting after the cursor of the previous page
+	 * 
+	 * @param cursor
+	 *            The cursor of the previous page, or empty for the first page
+	 * @param pageSize
+	 *            The number of results per page
+	 * @param sortBy
+	 *            The field to sort by
+	 * @param order
+	 *            The order "asc" or "desc"
+	 * @param countMode
+	 *            Whether the total number of Deployments is counted, estimated, or not reported
+	 * @return The page of deployments, with the cursor of the next page
+	 */
+	public KeysetPage<Deployment> getDeploymentList(String cursor, Integer pageSize, String sortBy, String order,
+			KeysetQuery.CountMode countMode) {
+		KeysetQuery<DeploymentEntity> query = new KeysetQuery<>(DeploymentEntity.class, Deployment.class, DEPLOYMENT_ID)
+				.orderBy(sortBy, order).after(cursor).limit(pageSize).count(countMode);
+		KeysetPage<DeploymentEntity> results = keysetPaginator.getPage(query);
+
+		// Collect the Deployments
+		List<Deployment> deployments = new ArrayList<Deployment>();
+		for (DeploymentEntity entity : results.getResults()) {
+			deployments.add(entity.getDeployment());
+		}
+		return new KeysetPage<>(deployments, results.getNextCursor(), results.getCount());
+	}
+
+	/**
+	 * Gets a page of data from the database, starting after the cursor of the previous page
+	 * 
+	 * @param cursor
+	 *            The cursor of the previous page, or empty for the first page
+	 * @param pageSize
+	 *            The number of results per page
+	 * @param sortBy
+	 *            The field to sort by
+	 * @param order
+	 *            The order "asc" or "desc"
+	 * @param userName
+	 *            Username filtering
+	 * @param createdByJobId
+	 *            Filter by the ID of the Job that created this Data
+	 * @param countMode
+	 *            Whether the total number of matching Data is counted, estimated, or not reported
+	 * @return The page of Data items, with the cursor of the next page
+	 */
+	public KeysetPage<DataResource> getDataList(String cursor, Integer pageSize, String sortBy, String order, String userName,
+			String createdByJobId, KeysetQuery.CountMode countMode) {
+		KeysetQuery<DataResourceEntity> query = new KeysetQuery<>(DataResourceEntity.class, DataResource.class, DATA_ID)
+				.orderBy(sortBy, order).where(DATA_CREATED_BY, userName).where(DATA_CREATED_BY_JOB_ID, createdByJobId)
+				.after(cursor).limit(pageSize).count(countMode);
+		KeysetPage<DataResourceEntity> results = keysetPaginator.getPage(query);
+
+		// Collect the Data
+		List<DataResource> dataResources = new ArrayList<DataResource>();
+		for (DataResourceEntity dataResourceEntity : results.getResults()) {
+			dataResources.add(dataResourceEntity.getDataResource());
+		}
+		return new KeysetPage<>(dataResources, results.getNextCursor(), results.getCount());
+	}
 }
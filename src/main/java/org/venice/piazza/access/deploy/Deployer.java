@@ -19,6 +19,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
+import javax.annotation.PostConstruct;
+
 import org.apache.commons.io.IOUtils;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -31,9 +33,14 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.RestTemplate;
 
 import com.amazonaws.AmazonClientException;
@@ -87,6 +94,32 @@ public class Deployer {
 	private static final Logger LOGGER = LoggerFactory.getLogger(Deployer.class);
 	private static final String ACCESS = "access";
 
+	/**
+	 * Uploads files to GeoServer without buffering the request body, so that large rasters are streamed. The shared
+	 * RestTemplate buffers request bodies, which other requests rely on to be retried or to have their length set.
+	 */
+	private RestTemplate uploadRestTemplate;
+
+	/**
+	 * Creates the upload RestTemplate. It shares the HTTP client, and so the connection pool and TLS configuration, of
+	 * the shared RestTemplate where it has one.
+	 */
+	@PostConstruct
+	public void initialize() {
+		ClientHttpRequestFactory requestFactory = restTemplate.getRequestFactory();
+		if (requestFactory instanceof HttpComponentsClientHttpRequestFactory) {
+			HttpComponentsClientHttpRequestFactory streamingFactory = new HttpComponentsClientHttpRequestFactory(
+					((HttpComponentsClientHttpRequestFactory) requestFactory).getHttpClient());
+			streamingFactory.setBufferRequestBody(false);
+			uploadRestTemplate = new RestTemplate(streamingFactory);
+		} else {
+			SimpleClientHttpRequestFactory streamingFactory = new SimpleClientHttpRequestFactory();
+			streamingFactory.setBufferRequestBody(false);
+			uploadRestTemplate = new RestTemplate(streamingFactory);
+		}
+		uploadRestTemplate.setErrorHandler(restTemplate.getErrorHandler());
+	}
+
 	/**
 	 * Creates a new deployment from the dataResource object.
 	 * 
@@ -227,12 +260,9 @@ public class Deployer {
 	 * @throws AmazonClientException
 	 */
 	private Deployment deployRaster(DataResource dataResource) throws GeoServerException, IOException, InvalidInputException {
-		// Get the File Bytes of the Raster to be uploaded
-		byte[] fileBytes = accessUtilities.getBytesForDataResource(dataResource);
-
-		// Create the Request that will upload the File
+		// Create the Request that will upload the File. The file is streamed to GeoServer, rather than read into memory.
 		authHeaders.add(HttpHeaders.CONTENT_TYPE, "image/tiff");
-		HttpEntity<byte[]> request = new HttpEntity<>(fileBytes, authHeaders.get());
+		RequestCallback request = getFileUploadCallback(dataResource, authHeaders.get());
 
 		// Send the Request
 		String url = String.format("%s/rest/workspaces/%s/coveragestores/%s/file.geotiff", workspaceName, 
@@ -240,7 +270,7 @@ public class Deployer {
 		try {
 			pzLogger.log(String.format("Creating new Raster Deployment to %s", url), Severity.INFORMATIONAL,
 					new AuditElement(ACCESS, "deployGeoServerRasterLayer", dataResource.getDataId()));
-			restTemplate.exchange(url, HttpMethod.PUT, request, String.class);
+			uploadRestTemplate.execute(url, HttpMethod.PUT, request, null);
 		} catch (HttpClientErrorException | HttpServerErrorException exception) {
 			if (exception.getStatusCode() == HttpStatus.METHOD_NOT_ALLOWED) {
 				// If 405 NOT ALLOWED is encountered, then the layer may already exist on the GeoServer. Check if it
@@ -283,6 +313,34 @@ public class Deployer {
 		return new Deployment(deploymentId, dataResource.getDataId(), accessUtilities.getGeoServerBaseUrl(), null, deploymentLayerName, capabilitiesUrl);
 	}
 
+	/**
+	 * Gets a request callback that streams the file of the Data Resource as the request body. The Content-Length is set
+	 * where the file size is known, so the upload is not chunked.
+	 * 
+	 * @param dataResource
+	 *            The DataResource whose file is uploaded
+	 * @param headers
+	 *            The headers of the request
+	 * @return The request callback
+	 */
+	private RequestCallback getFileUploadCallback(final DataResource dataResource, final HttpHeaders headers) {
+		return new RequestCallback() {
+			@Override
+			public void doWithRequest(ClientHttpRequest request) throws IOException {
+				request.getHeaders().putAll(headers);
+				long fileSize = accessUtilities.getFileSize(dataResource);
+				if (fileSize >= 0) {
+					request.getHeaders().setContentLength(fileSize);
+				}
+				try (InputStream inputStream = accessUtilities.getStreamForDataResource(dataResource)) {
+					IOUtils.copyLarge(inputStream, request.getBody());
+				} catch (InvalidInputException exception) {
+					throw new IOException(exception.getMessage(), exception);
+				}
+			}
+		};
+	}
+
 	/**
 	 * Deletes a deployment, as specified by its Id. This will remove the Deployment from GeoServer, delete the lease
 	 * and the deployment from the Database.
@@ -21,8 +21,6 @@ import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
@@ -30,16 +28,15 @@ import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.venice.piazza.access.database.DatabaseAccessor;
 import org.venice.piazza.access.deploy.Deployer;
 import org.venice.piazza.access.deploy.GroupDeployer;
 import org.venice.piazza.access.deploy.Leaser;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
 import exception.DataInspectException;
 import exception.GeoServerException;
 import exception.InvalidInputException;
-import messaging.job.JobMessageFactory;
 import messaging.job.WorkerCallback;
 import model.data.DataResource;
 import model.data.deployment.Deployment;
@@ -74,13 +71,9 @@ public class AccessWorker {
 	@Autowired
 	private Leaser leaser;
 	@Autowired
-	private ObjectMapper mapper;
-	@Autowired
 	private PiazzaLogger pzLogger;
 	@Autowired
-	private Queue updateJobsQueue;
-	@Autowired
-	private RabbitTemplate rabbitTemplate;
+	private OutboundMessagePublisher outboundPublisher;
 
 	@Value("${SPACE}")
 	private String space;
@@ -126,7 +119,7 @@ public class AccessWorker {
 			StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_CANCELLED);
 			statusUpdate.setJobId(job.getJobId());
 			try {
-				rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(), mapper.writeValueAsString(statusUpdate));
+				outboundPublisher.publishStatusUpdate(statusUpdate);
 			} catch (JsonProcessingException jsonException) {
 				error = String.format(
 						"Error sending Cancelled Status from Job %s: %s. The Job was cancelled, but its status will not be updated in the Job Manager.",
@@ -145,7 +138,7 @@ public class AccessWorker {
 				StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_ERROR);
 				statusUpdate.setResult(new ErrorResult("Could not Deploy Data", exception.getMessage()));
 				statusUpdate.setJobId(job.getJobId());
-				rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(), mapper.writeValueAsString(statusUpdate));
+				outboundPublisher.publishStatusUpdate(statusUpdate);
 			} catch (JsonProcessingException jsonException) {
 				// If the Message fails to send, at least log
 				// something in the console.
@@ -169,7 +162,7 @@ public class AccessWorker {
 		// Update Status that this Job is being processed
 		StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_RUNNING);
 		statusUpdate.setJobId(key);
-		rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(), mapper.writeValueAsString(statusUpdate));
+		outboundPublisher.publishStatusUpdate(statusUpdate);
 
 		// Depending on how the user wants to Access the Resource
 		if (accessJob.getDeploymentType().equals(AccessJob.ACCESS_TYPE_GEOSERVER)) {
@@ -213,7 +206,7 @@ public class AccessWorker {
 			statusUpdate = new StatusUpdate(StatusUpdate.STATUS_SUCCESS);
 			statusUpdate.setResult(new DeploymentResult(deployment));
 			statusUpdate.setJobId(key);
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(), mapper.writeValueAsString(statusUpdate));
+			outboundPublisher.publishStatusUpdate(statusUpdate);
 
 			// Console Logging
 			pzLogger.log(
@@ -16,19 +16,30 @@
 package org.venice.piazza.access.util;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.venice.piazza.ingest.utility.S3ClientRegistry;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.HttpMethod;
+import com.amazonaws.services.s3.model.GetObjectRequest;
 
 import exception.InvalidInputException;
 import model.data.DataResource;
 import model.data.FileRepresentation;
 import model.data.location.FileAccessFactory;
 import model.data.location.FileLocation;
+import model.data.location.FolderShare;
 import model.data.location.S3FileStore;
 import model.logger.AuditElement;
 import model.logger.Severity;
@@ -44,18 +55,14 @@ import util.PiazzaLogger;
 public class AccessUtilities {
 	@Value("${vcap.services.pz-geoserver.credentials.boundless_geoserver_url}")
 	private String geoserverUrl;
-	@Value("${vcap.services.pz-blobstore.credentials.access_key_id}")
-	private String amazonS3AccessKey;
-	@Value("${vcap.services.pz-blobstore.credentials.secret_access_key}")
-	private String amazonS3PrivateKey;
-	@Value("${vcap.services.pz-blobstore.credentials.bucket:}")
-	private String PIAZZA_BUCKET;
-	@Value("${vcap.services.pz-blobstore.credentials.encryption_key}")
-	private String S3_KMS_CMK_ID;
-	@Value("${s3.use.kms}")
-	private Boolean USE_KMS;
+	@Value("${access.download.presigned.enabled:false}")
+	private Boolean PRESIGNED_DOWNLOADS;
+	@Value("${access.download.presigned.expiration.seconds:300}")
+	private long PRESIGNED_EXPIRATION_SECONDS;
 	@Autowired
 	private PiazzaLogger logger;
+	@Autowired
+	private S3ClientRegistry s3ClientRegistry;
 
 	/**
 	 * Gets the base GeoServer URL.
@@ -90,11 +97,111 @@ public class AccessUtilities {
 	 * @throws Exception
 	 */
 	public byte[] getBytesForDataResource(DataResource dataResource) throws IOException, InvalidInputException {
-		logger.log("Fetching Bytes for Data Item", Severity.INFORMATIONAL,
-				new AuditElement("access", "getBytesForData", dataResource.getDataId()));
+		try (InputStream inputStream = getStreamForDataResource(dataResource)) {
+			return IOUtils.toByteArray(inputStream);
+		}
+	}
+
+	/**
+	 * Opens a stream over the file contents of a Data Resource. The contents are not buffered in memory; the caller is
+	 * responsible for closing the stream.
+	 * 
+	 * @param dataResource
+	 *            The Data Resource
+	 * @return The stream of the file contents
+	 */
+	public InputStream getStreamForDataResource(DataResource dataResource) throws IOException, InvalidInputException {
+		logger.log("Fetching Stream for Data Item", Severity.INFORMATIONAL,
+				new AuditElement("access", "getStreamForData", dataResource.getDataId()));
 		FileLocation fileLocation = ((FileRepresentation) dataResource.getDataType()).getLocation();
 		FileAccessFactory fileAccessFactory = getFileFactoryForDataResource(dataResource);
-		return IOUtils.toByteArray(fileAccessFactory.getFile(fileLocation));
+		return fileAccessFactory.getFile(fileLocation);
+	}
+
+	/**
+	 * Opens a stream over a range of the file contents of a Data Resource. For unencrypted S3 files, only the requested
+	 * range is fetched from S3. Otherwise, the file is streamed and the bytes before the range are skipped. The caller
+	 * is responsible for closing the stream.
+	 * 
+	 * @param dataResource
+	 *            The Data Resource
+	 * @param start
+	 *            The first byte of the range, inclusive
+	 * @param end
+	 *            The last byte of the range, inclusive
+	 * @return The stream of the file contents within the range
+	 */
+	public InputStream getStreamForDataResource(DataResource dataResource, long start, long end)
+			throws IOException, InvalidInputException {
+		FileLocation fileLocation = ((FileRepresentation) dataResource.getDataType()).getLocation();
+		if ((fileLocation instanceof S3FileStore) && !isClientSideEncrypted((S3FileStore) fileLocation)) {
+			S3FileStore fileStore = (S3FileStore) fileLocation;
+			logger.log(String.format("Fetching Range %s-%s for Data Item", start, end), Severity.INFORMATIONAL,
+					new AuditElement("access", "getRangeForData", dataResource.getDataId()));
+			GetObjectRequest request = new GetObjectRequest(fileStore.getBucketName(), fileStore.getFileName()).withRange(start, end);
+			return s3ClientRegistry.getClient(fileStore.getBucketName(), false).getObject(request).getObjectContent();
+		}
+
+		InputStream inputStream = getStreamForDataResource(dataResource);
+		try {
+			IOUtils.skipFully(inputStream, start);
+		} catch (IOException exception) {
+			inputStream.close();
+			throw exception;
+		}
+		return new BoundedInputStream(inputStream, end - start + 1);
+	}
+
+	/**
+	 * Gets the size, in bytes, of the file for a Data Resource. The size recorded at ingest time is used where present;
+	 * otherwise it is read from the file system or the S3 object metadata.
+	 * 
+	 * @param dataResource
+	 *            The Data Resource
+	 * @return The size of the file, or -1 if the size cannot be determined without reading the file
+	 */
+	public long getFileSize(DataResource dataResource) throws IOException {
+		FileLocation fileLocation = ((FileRepresentation) dataResource.getDataType()).getLocation();
+		if ((fileLocation.getFileSize() != null) && (fileLocation.getFileSize() > 0)) {
+			return fileLocation.getFileSize();
+		}
+		if (fileLocation instanceof FolderShare) {
+			return Files.size(Paths.get(((FolderShare) fileLocation).filePath));
+		}
+		if ((fileLocation instanceof S3FileStore) && !isClientSideEncrypted((S3FileStore) fileLocation)) {
+			S3FileStore fileStore = (S3FileStore) fileLocation;
+			return s3ClientRegistry.getClient(fileStore.getBucketName(), false)
+					.getObjectMetadata(fileStore.getBucketName(), fileStore.getFileName()).getContentLength();
+		}
+		return -1;
+	}
+
+	/**
+	 * Generates a pre-signed S3 URL that the client can use to download the file for a Data Resource directly from S3,
+	 * if pre-signed downloads are enabled. Files that are client-side encrypted cannot be downloaded this way, since S3
+	 * would return the cipher text.
+	 * 
+	 * @param dataResource
+	 *            The Data Resource
+	 * @return The pre-signed URL, or null if the file must be streamed through Piazza
+	 */
+	public URL getPresignedUrl(DataResource dataResource) {
+		FileLocation fileLocation = ((FileRepresentation) dataResource.getDataType()).getLocation();
+		if (!PRESIGNED_DOWNLOADS.booleanValue() || !(fileLocation instanceof S3FileStore)
+				|| isClientSideEncrypted((S3FileStore) fileLocation)) {
+			return null;
+		}
+		S3FileStore fileStore = (S3FileStore) fileLocation;
+		Date expiration = new Date(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(PRESIGNED_EXPIRATION_SECONDS));
+		return s3ClientRegistry.getClient(fileStore.getBucketName(), false).generatePresignedUrl(fileStore.getBucketName(),
+				fileStore.getFileName(), expiration, HttpMethod.GET);
+	}
+
+	/**
+	 * Determines if the S3 file is stored in the Piazza bucket with KMS client-side encryption enabled.
+	 */
+	private boolean isClientSideEncrypted(S3FileStore fileStore) {
+		return s3ClientRegistry.isClientSideEncrypted(fileStore.getBucketName());
 	}
 
 	/**
@@ -107,24 +214,12 @@ public class AccessUtilities {
 	 * @return FileAccessFactory
 	 */
 	public FileAccessFactory getFileFactoryForDataResource(DataResource dataResource) {
-		// If S3 store, determine if this is the Piazza bucket (use encryption) or not (dont use encryption)
-		final FileAccessFactory fileFactory;
+		// If S3 store, use the shared factory for the bucket. This will use encryption for the Piazza bucket, if enabled.
 		FileLocation fileLocation = ((FileRepresentation) dataResource.getDataType()).getLocation();
 		if (fileLocation instanceof S3FileStore) {
-			if (PIAZZA_BUCKET.equals(((S3FileStore) fileLocation).getBucketName())) {
-				// Use encryption if enabled
-				if (USE_KMS.booleanValue()) {
-					fileFactory = new FileAccessFactory(amazonS3AccessKey, amazonS3PrivateKey, S3_KMS_CMK_ID);
-				} else {
-					fileFactory = new FileAccessFactory(amazonS3AccessKey, amazonS3PrivateKey);
-				}
-			} else {
-				fileFactory = new FileAccessFactory(amazonS3AccessKey, amazonS3PrivateKey);
-			}
-		} else {
-			// No AWS Creds needed
-			fileFactory = new FileAccessFactory();
+			return s3ClientRegistry.getFileAccessFactory(((S3FileStore) fileLocation).getBucketName());
 		}
-		return fileFactory;
+		// No AWS Creds needed
+		return new FileAccessFactory();
 	}
 }
@@ -0,0 +1,266 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.gateway.auth;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import model.response.AuthResponse;
+
+/**
+ * Short-lived cache of the Authentication and Authorization decisions made by pz-idam for Gateway requests, so that a
+ * client making many calls with the same API Key does not cost an IDAM request, and its database reads, on every call.
+ * <p>
+ * Decisions are keyed by the API Key, the HTTP method and the class of the request URI: the URI with its resource Ids
+ * replaced by a wildcard. The Authorizers decide on the endpoint, not on the particular resource, so requests for
+ * different resources of the same endpoint share a decision. Denied decisions are cached too, for a shorter time, so
+ * that repeated calls with an invalid key do not reach the database either. Failed checks, such as when IDAM cannot
+ * be reached, are not cached.
+ * </p>
+ * <p>
+ * Allowed decisions for the actions that are throttled, such as submitting a Job, are not cached, so that each of these
+ * requests is checked against the user's current throttle count.
+ * </p>
+ * <p>
+ * Decisions for an API Key are evicted when the key is deleted or replaced on this instance. Other instances keep their
+ * decisions until they expire, so a deleted key may be accepted by them for up to the cache TTL.
+ * </p>
+ * <p>
+ * Cached responses are shared between requests, and must not be modified.
+ * </p>
+ */
+@Component
+public class AuthorizationDecisionCache {
+	@Value("${gateway.authz.cache.enabled:true}")
+	private boolean ENABLED;
+	@Value("${gateway.authz.cache.max.size:10000}")
+	private long MAX_SIZE;
+	@Value("${gateway.authz.cache.ttl.ms:30000}")
+	private long TTL_MS;
+	@Value("${gateway.authz.cache.negative.ttl.ms:5000}")
+	private long NEGATIVE_TTL_MS;
+
+	private static final Pattern ID_SEGMENT = Pattern
+			.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|[0-9]+");
+	private static final String WILDCARD = "*";
+	/**
+	 * The POST endpoints counted by the Throttle Authorizer
+	 */
+	private static final List<String> THROTTLED_POST_ENDPOINTS = Arrays.asList("data", "job", "job/batch", "data/file", "deployment");
+
+	private Cache<DecisionKey, AuthResponse> allowed;
+	private Cache<DecisionKey, AuthResponse> denied;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong negativeHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	@PostConstruct
+	public void initialize() {
+		allowed = Caffeine.newBuilder().maximumSize(MAX_SIZE).expireAfterWrite(TTL_MS, TimeUnit.MILLISECONDS).build();
+		denied = Caffeine.newBuilder().maximumSize(MAX_SIZE).expireAfterWrite(NEGATIVE_TTL_MS, TimeUnit.MILLISECONDS).build();
+	}
+
+	/**
+	 * Gets the cached decision for the request.
+	 *
+	 * @param apiKey
+	 *            The API Key of the request
+	 * @param method
+	 *            The HTTP method of the request
+	 * @param uri
+	 *            The URI of the request
+	 * @return The decision, or null if none is cached. This must not be modified.
+	 */
+	public AuthResponse get(String apiKey, String method, String uri) {
+		if (!ENABLED || (apiKey == null)) {
+			return null;
+		}
+		DecisionKey key = new DecisionKey(apiKey, method, uri);
+		AuthResponse response = allowed.getIfPresent(key);
+		if (response != null) {
+			hits.incrementAndGet();
+			return response;
+		}
+		response = denied.getIfPresent(key);
+		if (response != null) {
+			negativeHits.incrementAndGet();
+			return response;
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Caches the decision for the request.
+	 *
+	 * @param apiKey
+	 *            The API Key of the request
+	 * @param method
+	 *            The HTTP method of the request
+	 * @param uri
+	 *            The URI of the request
+	 * @param response
+	 *            The decision
+	 */
+	public void put(String apiKey, String method, String uri, AuthResponse response) {
+		if (!ENABLED || (apiKey == null)) {
+			return;
+		}
+		DecisionKey key = new DecisionKey(apiKey, method, uri);
+		if (Boolean.TRUE.equals(response.getIsAuthSuccess())) {
+			if (!isThrottled(method, uri)) {
+				allowed.put(key, response);
+			}
+		} else {
+			denied.put(key, response);
+		}
+	}
+
+	/**
+	 * Evicts all decisions for the API Key. Called when the key is deleted or replaced.
+	 *
+	 * @param apiKey
+	 *            The API Key
+	 */
+	public void invalidate(String apiKey) {
+		if (apiKey == null) {
+			return;
+		}
+		invalidate(allowed, apiKey);
+		invalidate(denied, apiKey);
+		invalidations.incrementAndGet();
+	}
+
+	/**
+	 * Gets metrics for the cache: the number of decisions cached, and the hit rate of requests.
+	 *
+	 * @return The cache metrics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<>();
+		long requests = hits.get() + negativeHits.get() + misses.get();
+		stats.put("enabled", ENABLED);
+		stats.put("size", allowed.estimatedSize() + denied.estimatedSize());
+		stats.put("hits", hits.get());
+		stats.put("negativeHits", negativeHits.get());
+		stats.put("misses", misses.get());
+		stats.put("hitRate", (requests > 0) ? (double) (hits.get() + negativeHits.get()) / requests : 0.0);
+		stats.put("invalidations", invalidations.get());
+		return stats;
+	}
+
+	private static void invalidate(Cache<DecisionKey, AuthResponse> cache, String apiKey) {
+		Iterator<DecisionKey> keys = cache.asMap().keySet().iterator();
+		while (keys.hasNext()) {
+			if (keys.next().apiKey.equals(apiKey)) {
+				keys.remove();
+			}
+		}
+	}
+
+	/**
+	 * Determines if the request is for an action subject to throttling.
+	 *
+	 * @param method
+	 *            The HTTP method of the request
+	 * @param uri
+	 *            The URI of the request
+	 * @return True if the action is throttled
+	 */
+	public static boolean isThrottled(String method, String uri) {
+		if (!"POST".equals(method) || (uri == null)) {
+			return false;
+		}
+		int start = 0;
+		int end = uri.length();
+		while ((start < end) && (uri.charAt(start) == '/')) {
+			start++;
+		}
+		while ((end > start) && (uri.charAt(end - 1) == '/')) {
+			end--;
+		}
+		return THROTTLED_POST_ENDPOINTS.contains(uri.substring(start, end));
+	}
+
+	/**
+	 * Gets the class of the URI: the URI with its numeric and UUID segments, such as Job and Data Ids, replaced by a
+	 * wildcard.
+	 *
+	 * @param uri
+	 *            The request URI
+	 * @return The class of the URI
+	 */
+	public static String getUriClass(String uri) {
+		if (uri == null) {
+			return "";
+		}
+		String[] segments = uri.split("/", -1);
+		for (int index = 0; index < segments.length; index++) {
+			if (ID_SEGMENT.matcher(segments[index]).matches()) {
+				segments[index] = WILDCARD;
+			}
+		}
+		return String.join("/", segments);
+	}
+
+	/**
+	 * The API Key, method and URI class a decision applies to.
+	 */
+	private static class DecisionKey {
+		private final String apiKey;
+		private final String method;
+		private final String uriClass;
+
+		private DecisionKey(String apiKey, String method, String uri) {
+			this.apiKey = apiKey;
+			this.method = method;
+			this.uriClass = getUriClass(uri);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(apiKey, method, uriClass);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if ((obj == null) || (getClass() != obj.getClass())) {
+				return false;
+			}
+			DecisionKey other = (DecisionKey) obj;
+			return apiKey.equals(other.apiKey) && Objects.equals(method, other.method) && uriClass.equals(other.uriClass);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.gateway.auth;
+
+import org.springframework.web.client.RestClientException;
+
+import model.response.AuthResponse;
+import model.security.authz.AuthorizationCheck;
+
+/**
+ * Makes the Authentication and Authorization decisions for the Gateway. Decisions are made by pz-idam; either by the
+ * IDAM components running in this process, or by a remote pz-idam instance.
+ * <p>
+ * A declined API Key or action is a decision, and is returned as an unsuccessful response. A check that could not be
+ * decided, such as when pz-idam cannot be reached or fails, throws a RestClientException.
+ * </p>
+ */
+public interface AuthorizationService {
+	/**
+	 * Authenticates the API Key of the check, and authorizes the user for the action of the check.
+	 * 
+	 * @param authorizationCheck
+	 *            The API Key and the action
+	 * @return The decision, with the User Profile if successful
+	 */
+	public AuthResponse authenticateAndAuthorize(AuthorizationCheck authorizationCheck) throws RestClientException;
+
+	/**
+	 * Authenticates the API Key.
+	 * 
+	 * @param apiKey
+	 *            The API Key
+	 * @return The decision, with the User Profile if successful
+	 */
+	public AuthResponse authenticate(String apiKey) throws RestClientException;
+
+	/**
+	 * @return True if the decisions are made by the IDAM components in this process
+	 */
+	public boolean isLocal();
+}
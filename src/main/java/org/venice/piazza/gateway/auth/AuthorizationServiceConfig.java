@@ -0,0 +1,51 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.gateway.auth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+import org.venice.piazza.idam.controller.AuthController;
+
+/**
+ * Chooses how the Gateway makes its Authentication and Authorization decisions. When the IDAM components run in this
+ * process, they are called directly; otherwise, pz-idam is called over HTTP at the security URL. Setting
+ * gateway.authz.local.enabled to false always calls pz-idam over HTTP.
+ */
+@Configuration
+public class AuthorizationServiceConfig {
+	@Value("${gateway.authz.local.enabled:true}")
+	private boolean LOCAL_ENABLED;
+	@Value("${security.url}")
+	private String SECURITY_URL;
+
+	private static final Logger LOG = LoggerFactory.getLogger(AuthorizationServiceConfig.class);
+
+	@Bean
+	public AuthorizationService authorizationService(ObjectProvider<AuthController> authController, RestTemplate restTemplate) {
+		AuthController localController = LOCAL_ENABLED ? authController.getIfAvailable() : null;
+		if (localController != null) {
+			LOG.info("Gateway Authorization decisions are made by the IDAM components in this process.");
+			return new LocalAuthorizationService(localController);
+		}
+		LOG.info("Gateway Authorization decisions are made by pz-idam at {}", SECURITY_URL);
+		return new RemoteAuthorizationService(restTemplate, SECURITY_URL);
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.gateway.auth;
+
+import java.util.Collections;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.venice.piazza.idam.controller.AuthController;
+
+import model.response.AuthResponse;
+import model.security.authz.AuthorizationCheck;
+
+/**
+ * Makes Authentication and Authorization decisions by calling the IDAM controller in this process directly, the same
+ * way that the Gateway hands Jobs to the Job Manager controller. This avoids serializing the check and the response to
+ * JSON, and the loopback HTTP round trip, for every Gateway request.
+ * <p>
+ * The controller responses are interpreted as the remote client would interpret the HTTP responses, so that decisions
+ * are the same either way.
+ * </p>
+ */
+public class LocalAuthorizationService implements AuthorizationService {
+	private final AuthController authController;
+
+	public LocalAuthorizationService(AuthController authController) {
+		this.authController = authController;
+	}
+
+	@Override
+	public AuthResponse authenticateAndAuthorize(AuthorizationCheck authorizationCheck) {
+		return getDecision(authController.authenticateAndAuthorize(authorizationCheck));
+	}
+
+	@Override
+	public AuthResponse authenticate(String apiKey) {
+		return getDecision(authController.authenticateApiKey(Collections.singletonMap("uuid", apiKey)));
+	}
+
+	@Override
+	public boolean isLocal() {
+		return true;
+	}
+
+	/**
+	 * Gets the decision from the IDAM response. Unauthorized responses are declined decisions; any other unsuccessful
+	 * response is a failed check, and is thrown as the HTTP client would throw it.
+	 */
+	private static AuthResponse getDecision(ResponseEntity<AuthResponse> response) {
+		HttpStatus status = response.getStatusCode();
+		if (status.is2xxSuccessful() || (status == HttpStatus.UNAUTHORIZED)) {
+			return response.getBody();
+		}
+		String details = (response.getBody() != null) && (response.getBody().getDetails() != null)
+				? response.getBody().getDetails().toString() : status.getReasonPhrase();
+		if (status.is4xxClientError()) {
+			throw new HttpClientErrorException(status, details);
+		}
+		throw new HttpServerErrorException(status, details);
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.gateway.auth;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import model.response.AuthResponse;
+import model.security.authz.AuthorizationCheck;
+
+/**
+ * Makes Authentication and Authorization decisions by calling a remote pz-idam instance over HTTP. Used when the IDAM
+ * components are not running in this process.
+ */
+public class RemoteAuthorizationService implements AuthorizationService {
+	private final RestTemplate restTemplate;
+	private final String securityUrl;
+
+	public RemoteAuthorizationService(RestTemplate restTemplate, String securityUrl) {
+		this.restTemplate = restTemplate;
+		this.securityUrl = securityUrl;
+	}
+
+	@Override
+	public AuthResponse authenticateAndAuthorize(AuthorizationCheck authorizationCheck) {
+		return post(String.format("%s/%s", securityUrl, "/authz"), authorizationCheck);
+	}
+
+	@Override
+	public AuthResponse authenticate(String apiKey) {
+		return post(String.format("%s/%s", securityUrl, "/authn"), new PiazzaVerificationRequest(apiKey));
+	}
+
+	@Override
+	public boolean isLocal() {
+		return false;
+	}
+
+	private AuthResponse post(String url, Object body) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		HttpEntity<Object> request = new HttpEntity<>(body, headers);
+		try {
+			return restTemplate.postForEntity(url, request, AuthResponse.class).getBody();
+		} catch (HttpClientErrorException exception) {
+			if (exception.getStatusCode() != HttpStatus.UNAUTHORIZED) {
+				throw exception;
+			}
+			// Pz-Idam declines the key or the action as Unauthorized. This is a decision, not a failure.
+			return new AuthResponse(false, exception.getResponseBodyAsString());
+		}
+	}
+
+	/**
+	 * The model that corresponds with an AuthN request to pz-idam.
+	 */
+	static class PiazzaVerificationRequest {
+		private String uuid;
+
+		PiazzaVerificationRequest(String uuid) {
+			this.uuid = uuid;
+		}
+
+		public String getUuid() {
+			return uuid;
+		}
+	}
+}
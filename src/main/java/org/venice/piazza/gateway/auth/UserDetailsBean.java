@@ -15,13 +15,13 @@
  **/
 package org.venice.piazza.gateway.auth;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import model.logger.AuditElement;
 import model.logger.Severity;
@@ -38,16 +38,21 @@ import util.PiazzaLogger;
  */
 @Service
 public class UserDetailsBean {
-	@Value("${security.url}")
-	private String SECURITY_URL;
 	@Autowired
-	private RestTemplate restTemplate;
+	private AuthorizationService authorizationService;
 	@Autowired
 	private PiazzaLogger logger;
+	@Autowired
+	private AuthorizationDecisionCache decisionCache;
+
+	private final AtomicLong checks = new AtomicLong();
+	private final AtomicLong checkNanos = new AtomicLong();
 
 	/**
 	 * Gets a full Authentication/Authorization decision for a user. This checks the validity of the API Key, and, if
 	 * successfully authenticated, will also conduct an Authorization check on the User for the requested action.
+	 * Decisions are cached for a short time, so repeated requests by the same user do not repeat the check. Allowed
+	 * decisions for throttled actions are not cached, so that the throttle is checked on every such request.
 	 * 
 	 * @param apiKey
 	 *            The API Key of the user
@@ -56,17 +61,22 @@ public class UserDetailsBean {
 	 * @return The Auth response, containing details and success/failure information.
 	 */
 	public AuthResponse getFullAuthorizationDecision(String apiKey, ExtendedRequestDetails requestDetails) {
-		String url = String.format("%s/%s", SECURITY_URL, "/authz");
-		HttpHeaders headers = new HttpHeaders();
-		headers.setContentType(MediaType.APPLICATION_JSON);
+		String method = requestDetails.getRequest().getMethod();
+		String uri = requestDetails.getRequest().getRequestURI();
+		AuthResponse cachedResponse = decisionCache.get(apiKey, method, uri);
+		if (cachedResponse != null) {
+			return cachedResponse;
+		}
 		// Create the Authorization Check based on the Request Details
 		AuthorizationCheck authorizationCheck = new AuthorizationCheck();
 		authorizationCheck.setApiKey(apiKey);
-		Permission permission = new Permission(requestDetails.getRequest().getMethod(), requestDetails.getRequest().getRequestURI());
+		Permission permission = new Permission(method, uri);
 		authorizationCheck.setAction(permission);
-		// Send request to Pz-Idam
-		HttpEntity<AuthorizationCheck> request = new HttpEntity<>(authorizationCheck, headers);
-		AuthResponse response = restTemplate.postForEntity(url, request, AuthResponse.class).getBody();
+		// Request the decision from Pz-Idam
+		long start = System.nanoTime();
+		AuthResponse response = authorizationService.authenticateAndAuthorize(authorizationCheck);
+		checkNanos.addAndGet(System.nanoTime() - start);
+		checks.incrementAndGet();
 		// If the UserProfile was returned, log the Username
 		String userName = null;
 		if (response.getIsAuthSuccess()) {
@@ -78,6 +88,7 @@ public class UserDetailsBean {
 				String.format("Checked Full Authentication and Authorization for Username %s performing Action %s with verified = %s",
 						userName, authorizationCheck.toString(), response.getIsAuthSuccess()),
 				Severity.INFORMATIONAL, new AuditElement(userName != null ? userName : "gateway", actionName, ""));
+		decisionCache.put(apiKey, method, uri, response);
 		// Return Response
 		return response;
 	}
@@ -91,11 +102,7 @@ public class UserDetailsBean {
 	 * @return The Auth response, containing details and success/failure information.
 	 */
 	public AuthResponse getAuthenticationDecision(String uuid) {
-		String url = String.format("%s/%s", SECURITY_URL, "/authn");
-		HttpHeaders headers = new HttpHeaders();
-		headers.setContentType(MediaType.APPLICATION_JSON);
-		HttpEntity<PiazzaVerificationRequest> request = new HttpEntity<>(new PiazzaVerificationRequest(uuid), headers);
-		AuthResponse response = restTemplate.postForEntity(url, request, AuthResponse.class).getBody();
+		AuthResponse response = authorizationService.authenticate(uuid);
 		String actionName = response.getIsAuthSuccess() ? "keyVerified" : "keyDeclined";
 		// If the UserProfile was returned, log the Username
 		String userName = null;
@@ -110,17 +117,19 @@ public class UserDetailsBean {
 	}
 
 	/**
-	 * The model that corresponds with an AuthN request to pz-idam.
+	 * Gets metrics for the Authorization checks that were not answered from the cache: whether they are made in
+	 * process or over HTTP, their number, and their mean latency. Comparing the latency with
+	 * gateway.authz.local.enabled set and unset measures the cost of the HTTP round trip.
+	 * 
+	 * @return The Authorization check metrics
 	 */
-	class PiazzaVerificationRequest {
-		private String uuid;
-
-		PiazzaVerificationRequest(String uuid) {
-			this.uuid = uuid;
-		}
-
-		public String getUuid() {
-			return uuid;
-		}
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<>();
+		long checkCount = checks.get();
+		stats.put("mode", authorizationService.isLocal() ? "local" : "remote");
+		stats.put("checks", checkCount);
+		stats.put("meanLatencyMs",
+				(checkCount > 0) ? (double) checkNanos.get() / checkCount / TimeUnit.MILLISECONDS.toNanos(1) : 0.0);
+		return stats;
 	}
-}
\ No newline at end of file
+}
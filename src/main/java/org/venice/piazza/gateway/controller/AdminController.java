@@ -39,6 +39,8 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 
+import org.venice.piazza.gateway.auth.AuthorizationDecisionCache;
+import org.venice.piazza.gateway.auth.UserDetailsBean;
 import org.venice.piazza.gateway.controller.util.GatewayUtil;
 import org.venice.piazza.gateway.controller.util.PiazzaRestController;
 import org.venice.piazza.idam.controller.AuthController;
@@ -72,6 +74,10 @@ public class AdminController extends PiazzaRestController {
 	private HttpServletRequest request;
 	@Autowired
 	private GatewayUtil gatewayUtil;
+	@Autowired
+	private AuthorizationDecisionCache decisionCache;
+	@Autowired
+	private UserDetailsBean userDetails;
 	@Value("${SPACE}")
 	private String SPACE;
 	@Value("${ingest.url}")
@@ -147,6 +153,9 @@ public class AdminController extends PiazzaRestController {
 		stats.put("ServiceController", SERVICECONTROLLER_URL);
 		stats.put("Security", SECURITY_URL);
 		stats.put("Release", RELEASE_URL);
+		// Write the metrics of the cached authorization decisions
+		stats.put("AuthorizationCache", decisionCache.getStats());
+		stats.put("Authorization", userDetails.getStats());
 		// Return
 		return new ResponseEntity<Map<String, Object>>(stats, HttpStatus.OK);
 	}
@@ -23,6 +23,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -30,6 +31,7 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -39,6 +41,7 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.amazonaws.AmazonClientException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -49,6 +52,7 @@ import org.venice.piazza.access.controller.AccessController;
 import org.venice.piazza.gateway.controller.util.GatewayUtil;
 import org.venice.piazza.gateway.controller.util.PiazzaRestController;
 import org.venice.piazza.ingest.controller.IngestController;
+import org.venice.piazza.piazza.web.JsonStreamingBody;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -128,6 +132,8 @@ public class DataController extends PiazzaRestController {
 			@ApiParam(value = "Indicates ascending or descending order.") @RequestParam(value = "order", required = false, defaultValue = DEFAULT_ORDER) String order,
 			@ApiParam(value = "The data field to sort by.") @RequestParam(value = "sortBy", required = false, defaultValue = DEFAULT_SORTBY) String sortBy,
 			@ApiParam(value = "Filter for the username that published the service.") @RequestParam(value = "createdBy", required = false) String createdBy,
+			@ApiParam(value = "Pages by cursor rather than by page number. Empty for the first page, otherwise the value of the X-Next-Cursor header of the previous page. Keyword searches cannot be paged by cursor.") @RequestParam(value = "cursor", required = false) String cursor,
+			@ApiParam(value = "For cursor pages, whether the total count is exact, estimate or none. Defaults to none.") @RequestParam(value = "count", required = false) String count,
 			Principal user) {
 		try {
 			// Log the request
@@ -149,7 +155,8 @@ public class DataController extends PiazzaRestController {
 			// Proxy the request to Pz-Access
 			try {
 				System.out.println(createdByJobId + " " + page + " " + perPage + " " + sortBy + " " + order + " " + keyword + " " + createdBy);
-				ResponseEntity<PiazzaResponse> response =  accessController.getAllData(createdByJobId, page, perPage, sortBy, order, keyword, createdBy);
+				ResponseEntity<PiazzaResponse> response =  accessController.getAllData(createdByJobId, page, perPage, sortBy, order, keyword, createdBy,
+						cursor, count);
 				logger.log(String.format("User %s successfully retrieved Data List.", userName), Severity.INFORMATIONAL,
 						new AuditElement(dn, "successDataList", ""));
 				return response;
@@ -220,7 +227,7 @@ public class DataController extends PiazzaRestController {
 			@ApiParam(value = "Indicates ascending or descending order.") @RequestParam(value = "order", required = false, defaultValue = DEFAULT_ORDER) String order,
 			@ApiParam(value = "The data field to sort by.") @RequestParam(value = "sortBy", required = false) String sortBy,
 			Principal user) {
-		return getData(keyword, createdByJobId, page, perPage, order, sortBy, gatewayUtil.getPrincipalName(user), user);
+		return getData(keyword, createdByJobId, page, perPage, order, sortBy, gatewayUtil.getPrincipalName(user), null, null, user);
 	}
 
 	/**
@@ -514,16 +521,16 @@ public class DataController extends PiazzaRestController {
 	 *            The user submitting the request
 	 * @return The bytes of the file as a download, or an Error if the file cannot be retrieved.
 	 */
-	@SuppressWarnings("rawtypes")
 	@RequestMapping(value = "/file/{dataId}", method = RequestMethod.GET)
 	@ApiOperation(value = "Download Data File", notes = "Gets the Bytes of Data loaded into Piazza. Only works for Data that is stored internally by Piazza.", tags = "Data")
 	@ApiResponses(value = { @ApiResponse(code = 200, message = "The downloaded data file, byte array.", response = Byte[].class),
 			@ApiResponse(code = 401, message = "Unauthorized", response = ErrorResponse.class),
 			@ApiResponse(code = 404, message = "Not Found", response = ErrorResponse.class),
 			@ApiResponse(code = 500, message = "Internal Error", response = ErrorResponse.class) })
-	public ResponseEntity getFile(
+	public ResponseEntity<StreamingResponseBody> getFile(
 			@ApiParam(value = "The Id of the Data to download.", required = true) @PathVariable(value = "dataId") String dataId,
 			@ApiParam(value = "Specify the name of the file that the user wishes to retrieve the data as. This will set the content-disposition header.") @RequestParam(value = "fileName", required = false) String fileName,
+			@ApiParam(value = "Optional byte range of the file to download, for partial or resumed downloads.") @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
 			Principal user) {
 		try {
 			// Log the request
@@ -541,21 +548,20 @@ public class DataController extends PiazzaRestController {
 			// Proxy the request to Ingest
 			try {
 				// Stream the bytes back
-				
-				ResponseEntity<byte[]> response = accessController.accessFile(dataId, fileName);
+				ResponseEntity<StreamingResponseBody> response = accessController.accessFile(dataId, fileName, range);
 				logger.log(String.format("User %s successfully downloaded file download for Data %s", gatewayUtil.getPrincipalName(user),
 						dataId), Severity.INFORMATIONAL, new AuditElement(dn, "successDownloadFile", dataId));
 				return response;
 			} catch (HttpClientErrorException | HttpServerErrorException hee) {
 				LOG.error("Error Downloading File.", hee);
-				return new ResponseEntity<PiazzaResponse>(gatewayUtil.getErrorResponse(hee.getResponseBodyAsString()), hee.getStatusCode());
+				return JsonStreamingBody.response(gatewayUtil.getErrorResponse(hee.getResponseBodyAsString()), hee.getStatusCode());
 			}
 		} catch (Exception exception) {
 			String error = String.format("Error downloading file for Data %s by user %s: %s", dataId, gatewayUtil.getPrincipalName(user),
 					exception.getMessage());
 			LOG.error(error, exception);
 			logger.log(error, Severity.INFORMATIONAL);
-			return new ResponseEntity<PiazzaResponse>(new ErrorResponse(error, GATEWAY), HttpStatus.INTERNAL_SERVER_ERROR);
+			return JsonStreamingBody.response(new ErrorResponse(error, GATEWAY), HttpStatus.INTERNAL_SERVER_ERROR);
 		}
 	}
 }
@@ -158,6 +158,8 @@ public class DeploymentController extends PiazzaRestController {
 			@ApiParam(value = "The number of results to be returned per query.") @RequestParam(value = "perPage", required = false, defaultValue = DEFAULT_PAGE_SIZE) Integer perPage,
 			@ApiParam(value = "Indicates ascending or descending order.") @RequestParam(value = "order", required = false, defaultValue = DEFAULT_ORDER) String order,
 			@ApiParam(value = "The data field to sort by.") @RequestParam(value = "sortBy", required = false, defaultValue = DEFAULT_SORTBY) String sortBy,
+			@ApiParam(value = "Pages by cursor rather than by page number. Empty for the first page, otherwise the value of the X-Next-Cursor header of the previous page. Keyword searches cannot be paged by cursor.") @RequestParam(value = "cursor", required = false) String cursor,
+			@ApiParam(value = "For cursor pages, whether the total count is exact, estimate or none. Defaults to none.") @RequestParam(value = "count", required = false) String count,
 			Principal user) {
 		try {
 			// Log the request
@@ -177,7 +179,8 @@ public class DeploymentController extends PiazzaRestController {
 			}
 			
 			try {
-				ResponseEntity<PiazzaResponse> response = accessController.getAllDeployments(page, perPage, sortBy, order, keyword);
+				ResponseEntity<PiazzaResponse> response = accessController.getAllDeployments(page, perPage, sortBy, order, keyword, cursor,
+						count);
 				return response;
 			} catch (HttpClientErrorException | HttpServerErrorException hee) {
 				LOG.error("Error Listing Deployments.", hee);
@@ -15,7 +15,12 @@
  **/
 package org.venice.piazza.gateway.controller;
 
+import java.io.IOException;
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import javax.validation.Valid;
 
@@ -39,17 +44,24 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.venice.piazza.gateway.controller.util.GatewayUtil;
 import org.venice.piazza.gateway.controller.util.PiazzaRestController;
+import org.venice.piazza.idam.authz.throttle.ThrottleAuthorizer;
+import org.venice.piazza.jobmanager.database.DatabaseAccessor;
+import org.venice.piazza.jobmanager.database.JobArchiver;
+import org.venice.piazza.jobmanager.messaging.JobStatusNotifier;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import messaging.job.JobMessageFactory;
+import model.job.Job;
 import model.job.metadata.ResourceMetadata;
 import model.job.type.AbortJob;
 import model.job.type.ExecuteServiceJob;
@@ -57,8 +69,10 @@ import model.job.type.RepeatJob;
 import model.logger.AuditElement;
 import model.logger.Severity;
 import model.request.PiazzaJobRequest;
+import model.response.AuthResponse;
 import model.response.ErrorResponse;
 import model.response.JobErrorResponse;
+import model.response.JobListResponse;
 import model.response.JobResponse;
 import model.response.JobStatusResponse;
 import model.response.PiazzaResponse;
@@ -92,11 +106,23 @@ public class JobController extends PiazzaRestController {
 	private Queue abortJobsQueue;
 	@Autowired
 	private ObjectMapper mapper;
+	@Autowired
+	private JobStatusNotifier jobStatusNotifier;
+	@Autowired
+	private JobArchiver jobArchiver;
+	@Autowired
+	private ThrottleAuthorizer throttleAuthorizer;
 
 	@Value("${jobmanager.url}")
 	private String JOBMANAGER_URL;
 	@Value("${SPACE}")
 	private String SPACE;
+	@Value("${jobmanager.status.wait.default.timeout.seconds:30}")
+	private int WAIT_DEFAULT_TIMEOUT_SECONDS;
+	@Value("${jobmanager.status.wait.max.timeout.seconds:300}")
+	private int WAIT_MAX_TIMEOUT_SECONDS;
+	@Value("${jobmanager.request.batch.max.size:10000}")
+	private int BATCH_MAX_SIZE;
 
 	private final static Logger LOG = LoggerFactory.getLogger(JobController.class);
 	private static final String GATEWAY = "Gateway";
@@ -145,6 +171,157 @@ public class JobController extends PiazzaRestController {
 		}
 	}
 
+	/**
+	 * Waits for a Job to complete, and returns its Status. The request is held open without holding a thread until the
+	 * Job reaches a final status, or until the timeout, in which case the current Status is returned.
+	 * 
+	 * @param jobId
+	 *            The Id of the Job.
+	 * @param timeout
+	 *            The number of seconds to wait. Optional.
+	 * @param user
+	 *            User information
+	 * @return Contains Job Status, or an appropriate Error.
+	 */
+	@RequestMapping(value = "/job/{jobId}/wait", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+	@ApiOperation(value = "Wait for Job Completion", notes = "Waits for a Piazza Job to complete, and then returns its Status. If the Job has not completed by the timeout, then its current Status is returned.", tags = "Job")
+	@ApiResponses(value = {
+			@ApiResponse(code = 200, message = "The Status of the Job, once it has completed or the timeout is reached.", response = JobStatusResponse.class),
+			@ApiResponse(code = 401, message = "Unauthorized", response = ErrorResponse.class),
+			@ApiResponse(code = 404, message = "Not Found", response = ErrorResponse.class),
+			@ApiResponse(code = 500, message = "Internal Error", response = JobErrorResponse.class) })
+	public DeferredResult<ResponseEntity<PiazzaResponse>> waitForJob(
+			@ApiParam(value = "Id of the Job to wait for", required = true) @PathVariable(value = "jobId") final String jobId,
+			@ApiParam(value = "The number of seconds to wait for the Job to complete.") @RequestParam(value = "timeout", required = false) Integer timeout,
+			Principal user) {
+		final DeferredResult<ResponseEntity<PiazzaResponse>> result = new DeferredResult<>(getWaitTimeoutMillis(timeout));
+		try {
+			// Log the request
+			String userName = gatewayUtil.getPrincipalName(user);
+			String dn = gatewayUtil.getDistinguishedName(SecurityContextHolder.getContext().getAuthentication());
+			logger.log(String.format("User %s is waiting on Job %s.", userName, jobId), Severity.INFORMATIONAL,
+					new AuditElement(dn, "requestWaitJob", jobId));
+			// Respond as soon as the Job completes
+			final JobStatusNotifier.Listener listener = new JobStatusNotifier.Listener() {
+				@Override
+				public void onJobUpdated(Job job) {
+					if ((job == null) || DatabaseAccessor.isFinalStatus(job.getStatus())) {
+						result.setResult(jobManagerController.getJobStatus(jobId));
+					}
+				}
+			};
+			result.onCompletion(new Runnable() {
+				@Override
+				public void run() {
+					jobStatusNotifier.unsubscribe(jobId, listener);
+				}
+			});
+			// Respond with the current Status if the Job does not complete in time
+			result.onTimeout(new Runnable() {
+				@Override
+				public void run() {
+					result.setResult(jobManagerController.getJobStatus(jobId));
+				}
+			});
+			listener.onJobUpdated(jobStatusNotifier.subscribe(jobId, listener));
+		} catch (Exception exception) {
+			String error = String.format("Error waiting on Job %s: %s", jobId, exception.getMessage());
+			LOG.error(error, exception);
+			logger.log(error, Severity.ERROR);
+			result.setResult(new ResponseEntity<PiazzaResponse>(new JobErrorResponse(jobId, error, GATEWAY), HttpStatus.INTERNAL_SERVER_ERROR));
+		}
+		return result;
+	}
+
+	/**
+	 * Streams the Status of a Job as Server-Sent Events. An event is sent with the current Status, and then each time
+	 * the Status or progress changes. The stream is closed once the Job reaches a final status, or at the timeout. An
+	 * archived Job has already completed, so its stream is a single event with its final Status.
+	 * 
+	 * @param jobId
+	 *            The Id of the Job.
+	 * @param timeout
+	 *            The number of seconds to stream for. Optional.
+	 * @param user
+	 *            User information
+	 * @return The stream of Job Status events, or Not Found if the Job does not exist
+	 */
+	@RequestMapping(value = "/job/{jobId}/events", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	@ApiOperation(value = "Stream Job Status", notes = "Streams the Status of a Piazza Job as Server-Sent Events, until the Job completes or the timeout is reached.", tags = "Job")
+	@ApiResponses(value = {
+			@ApiResponse(code = 200, message = "A stream of \"status\" events, each containing the Status of the Job.", response = JobStatusResponse.class),
+			@ApiResponse(code = 401, message = "Unauthorized", response = ErrorResponse.class),
+			@ApiResponse(code = 404, message = "Not Found") })
+	public ResponseEntity<SseEmitter> streamJobStatus(
+			@ApiParam(value = "Id of the Job to stream", required = true) @PathVariable(value = "jobId") final String jobId,
+			@ApiParam(value = "The number of seconds to stream the Status for.") @RequestParam(value = "timeout", required = false) Integer timeout,
+			Principal user) {
+		final SseEmitter emitter = new SseEmitter(getWaitTimeoutMillis(timeout));
+		String userName = gatewayUtil.getPrincipalName(user);
+		String dn = gatewayUtil.getDistinguishedName(SecurityContextHolder.getContext().getAuthentication());
+		logger.log(String.format("User %s is streaming the Status of Job %s.", userName, jobId), Severity.INFORMATIONAL,
+				new AuditElement(dn, "requestStreamJob", jobId));
+		final JobStatusNotifier.Listener listener = new JobStatusNotifier.Listener() {
+			private String lastSent;
+
+			@Override
+			public void onJobUpdated(Job job) {
+				// Listeners may be notified from several threads, so send one event at a time
+				synchronized (this) {
+					try {
+						if (job == null) {
+							emitter.complete();
+							return;
+						}
+						String status = mapper.writeValueAsString(new JobStatusResponse(job));
+						if (!status.equals(lastSent)) {
+							emitter.send(SseEmitter.event().name("status").data(status, MediaType.APPLICATION_JSON));
+							lastSent = status;
+						}
+						if (DatabaseAccessor.isFinalStatus(job.getStatus())) {
+							emitter.complete();
+						}
+					} catch (IOException | IllegalStateException exception) {
+						// The client has disconnected, or the stream has already completed
+						LOG.debug("Could not send Status of Job {}", jobId, exception);
+						emitter.completeWithError(exception);
+					}
+				}
+			}
+		};
+		Runnable unsubscribe = new Runnable() {
+			@Override
+			public void run() {
+				jobStatusNotifier.unsubscribe(jobId, listener);
+			}
+		};
+		// Subscribe before checking that the Job exists, so no update made after the check is missed
+		Job job = jobStatusNotifier.subscribe(jobId, listener);
+		if (job == null) {
+			jobStatusNotifier.unsubscribe(jobId, listener);
+			// Old, finished Jobs are moved to the archive
+			Job archivedJob = jobArchiver.getArchivedJob(jobId);
+			if (archivedJob == null) {
+				return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+			}
+			listener.onJobUpdated(archivedJob);
+			return new ResponseEntity<>(emitter, HttpStatus.OK);
+		}
+		emitter.onCompletion(unsubscribe);
+		emitter.onTimeout(unsubscribe);
+		listener.onJobUpdated(job);
+		return new ResponseEntity<>(emitter, HttpStatus.OK);
+	}
+
+	/**
+	 * Gets the time to wait on a Job, in milliseconds, bounded by the maximum.
+	 */
+	private long getWaitTimeoutMillis(Integer timeoutSeconds) {
+		int seconds = ((timeoutSeconds == null) || (timeoutSeconds <= 0)) ? WAIT_DEFAULT_TIMEOUT_SECONDS
+				: Math.min(timeoutSeconds, WAIT_MAX_TIMEOUT_SECONDS);
+		return seconds * 1000L;
+	}
+
 	/**
 	 * Cancels a running Job, specified by it's Job Id.
 	 * 
@@ -283,20 +460,10 @@ public class JobController extends PiazzaRestController {
 					Severity.INFORMATIONAL, new AuditElement(dn, "requestExecuteService", job.data.getServiceId()));
 
 			// Check that Service is not offline or unavailable
-			try {
-				Service service = ((ServiceResponse) serviceController.getService(job.data.getServiceId(), user).getBody()).data;
-				if ((service != null) && (service.getResourceMetadata() != null)
-						&& ResourceMetadata.STATUS_TYPE.OFFLINE.toString().equals(service.getResourceMetadata().getAvailability())) {
-					return new ResponseEntity<PiazzaResponse>(
-							new ErrorResponse("Cannot Execute Service with Service Availability set as Offline.", GATEWAY),
-							HttpStatus.BAD_REQUEST);
-				}
-			} catch (Exception exception) {
-				String error = String.format(
-						"Attempted to check Service Availability for %s but received an error %s. Continued with Job Request.",
-						job.getData().getServiceId(), exception.getMessage());
-				logger.log(error, Severity.WARNING);
-				LOG.error(error, exception);
+			if (isServiceOffline(job.data.getServiceId(), user)) {
+				return new ResponseEntity<PiazzaResponse>(
+						new ErrorResponse("Cannot Execute Service with Service Availability set as Offline.", GATEWAY),
+						HttpStatus.BAD_REQUEST);
 			}
 
 			// Create the Request to send to the Job Manager.
@@ -318,4 +485,106 @@ public class JobController extends PiazzaRestController {
 			return new ResponseEntity<PiazzaResponse>(new ErrorResponse(error, GATEWAY), HttpStatus.INTERNAL_SERVER_ERROR);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Executes a batch of jobs with the Piazza service controller. All of the Jobs are created together, and their Ids
+	 * are returned in one response, in the order of the submitted jobs. Each Service is checked for availability once,
+	 * however many of its jobs are in the batch. Each job in the batch counts towards the user's Job throttle.
+	 * 
+	 * @param jobs
+	 *            The jobs to execute
+	 * @param user
+	 *            The user executing the Jobs
+	 * @return The created Jobs, including their Ids, or the error if encountered
+	 */
+	@RequestMapping(value = { "/job/batch" }, method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseStatus(HttpStatus.CREATED)
+	@ApiOperation(value = "Executes a batch of registered Services", notes = "Creates a Piazza Job for each execution of a registered service, with the specified parameters.", tags = {
+			"Job", "Service" })
+	@ApiResponses(value = {
+			@ApiResponse(code = 201, message = "The Jobs for the executions of the Services, in the order submitted. Each Job Id can be queried using Job Status to track progress.", response = JobListResponse.class),
+			@ApiResponse(code = 400, message = "Bad Request", response = ErrorResponse.class),
+			@ApiResponse(code = 401, message = "Unauthorized, or the batch would exceed the Job throttle", response = ErrorResponse.class),
+			@ApiResponse(code = 500, message = "Internal Error", response = ErrorResponse.class) })
+	public ResponseEntity<PiazzaResponse> executeServices(
+			@ApiParam(value = "The Payloads that describe the Services to be executed, and the inputs for each.", required = true, name = "body") @RequestBody List<ExecuteServiceJob> jobs,
+			Principal user) {
+		try {
+			// Log the request
+			String userName = gatewayUtil.getPrincipalName(user);
+			String dn = gatewayUtil.getDistinguishedName(SecurityContextHolder.getContext().getAuthentication());
+			logger.log(String.format("User %s requested Execute Job batch of %s Jobs.", userName, jobs.size()), Severity.INFORMATIONAL,
+					new AuditElement(dn, "requestExecuteServiceBatch", ""));
+
+			// Reject batches the Job Manager would not accept before looking up any Service
+			if (jobs.isEmpty() || (jobs.size() > BATCH_MAX_SIZE)) {
+				return new ResponseEntity<PiazzaResponse>(new ErrorResponse(
+						String.format("A batch must contain between 1 and %s Jobs; %s were submitted.", BATCH_MAX_SIZE, jobs.size()),
+						GATEWAY), HttpStatus.BAD_REQUEST);
+			}
+
+			// Charge the throttle for every Job in the batch, not just the request
+			AuthResponse throttleResponse = throttleAuthorizer.canUserSubmitJobs(userName, jobs.size());
+			if (!throttleResponse.getIsAuthSuccess().booleanValue()) {
+				logger.log(String.format("User %s was throttled for Execute Job batch of %s Jobs.", userName, jobs.size()),
+						Severity.INFORMATIONAL, new AuditElement(dn, "throttledExecuteServiceBatch", ""));
+				return new ResponseEntity<PiazzaResponse>(new ErrorResponse(throttleResponse.getDetails().toString(), GATEWAY),
+						HttpStatus.UNAUTHORIZED);
+			}
+
+			// Check that no Service is offline, once per Service
+			Set<String> serviceIds = new HashSet<>();
+			for (ExecuteServiceJob job : jobs) {
+				if ((job.data == null) || (job.data.getServiceId() == null)) {
+					return new ResponseEntity<PiazzaResponse>(new ErrorResponse("Each Job must specify the Service to execute.", GATEWAY),
+							HttpStatus.BAD_REQUEST);
+				}
+				if (serviceIds.add(job.data.getServiceId()) && isServiceOffline(job.data.getServiceId(), user)) {
+					return new ResponseEntity<PiazzaResponse>(new ErrorResponse(
+							String.format("Cannot Execute Service %s with Service Availability set as Offline.", job.data.getServiceId()),
+							GATEWAY), HttpStatus.BAD_REQUEST);
+				}
+			}
+
+			// Create the Requests to send to the Job Manager.
+			List<PiazzaJobRequest> requests = new ArrayList<>(jobs.size());
+			for (ExecuteServiceJob job : jobs) {
+				PiazzaJobRequest request = new PiazzaJobRequest();
+				request.jobType = job;
+				request.createdBy = userName;
+				requests.add(request);
+			}
+
+			JobListResponse response = gatewayUtil.sendJobRequests(requests);
+
+			logger.log(String.format("User %s Sent Execute Job batch of %s Jobs.", userName, jobs.size()), Severity.INFORMATIONAL,
+					new AuditElement(dn, "completeExecuteServiceBatch", ""));
+
+			return new ResponseEntity<PiazzaResponse>(response, HttpStatus.CREATED);
+		} catch (Exception exception) {
+			String error = String.format("Error Executing batch for user %s: %s", gatewayUtil.getPrincipalName(user),
+					exception.getMessage());
+			LOG.error(error, exception);
+			logger.log(error, Severity.ERROR);
+			return new ResponseEntity<PiazzaResponse>(new ErrorResponse(error, GATEWAY), HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * Checks if the Service is marked as Offline. If the Service cannot be checked, the Job Request continues.
+	 */
+	private boolean isServiceOffline(String serviceId, Principal user) {
+		try {
+			Service service = ((ServiceResponse) serviceController.getService(serviceId, user).getBody()).data;
+			return (service != null) && (service.getResourceMetadata() != null)
+					&& ResourceMetadata.STATUS_TYPE.OFFLINE.toString().equals(service.getResourceMetadata().getAvailability());
+		} catch (Exception exception) {
+			String error = String.format(
+					"Attempted to check Service Availability for %s but received an error %s. Continued with Job Request.", serviceId,
+					exception.getMessage());
+			logger.log(error, Severity.WARNING);
+			LOG.error(error, exception);
+			return false;
+		}
+	}
+}
@@ -327,6 +327,8 @@ public class ServiceController extends PiazzaRestController {
 			@ApiParam(value = "Filter for the user name that published the service.") @RequestParam(value = "createdBy", required = false) String createdBy,
 			@ApiParam(value = "Indicates ascending or descending order.") @RequestParam(value = "order", required = false, defaultValue = DEFAULT_ORDER) String order,
 			@ApiParam(value = "The data field to sort by.") @RequestParam(value = "sortBy", required = false, defaultValue = DEFAULT_SORTBY) String sortBy,
+			@ApiParam(value = "Pages by cursor rather than by page number. Empty for the first page, otherwise the value of the X-Next-Cursor header of the previous page. Keyword searches cannot be paged by cursor.") @RequestParam(value = "cursor", required = false) String cursor,
+			@ApiParam(value = "For cursor pages, whether the total count is exact, estimate or none. Defaults to none.") @RequestParam(value = "count", required = false) String count,
 			Principal user) {
 		try {
 			// Log the request
@@ -346,7 +348,8 @@ public class ServiceController extends PiazzaRestController {
 			}
 
 			try {
-				ResponseEntity<PiazzaResponse> response = serviceControllerController.getServices(page, perPage, order, sortBy, keyword, createdBy);
+				ResponseEntity<PiazzaResponse> response = serviceControllerController.getServices(page, perPage, order, sortBy, keyword, createdBy,
+						cursor, count);
 				logger.log(String.format("User %s Retrieved Service List.", userName), Severity.INFORMATIONAL,
 						new AuditElement(dn, "completeServiceList", ""));
 				return response;
@@ -392,7 +395,7 @@ public class ServiceController extends PiazzaRestController {
 			@ApiParam(value = "Indicates ascending or descending order.") @RequestParam(value = "order", required = false, defaultValue = "asc") String order,
 			@ApiParam(value = "The data field to sort by.") @RequestParam(value = "sortBy", required = false) String sortBy,
 			Principal user) {
-		return getServices(keyword, page, perPage, gatewayUtil.getPrincipalName(user), order, sortBy, user);
+		return getServices(keyword, page, perPage, gatewayUtil.getPrincipalName(user), order, sortBy, null, null, user);
 	}
 
 	/**
@@ -15,10 +15,11 @@
  **/
 package org.venice.piazza.gateway.controller.util;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.security.Principal;
-
-import javax.annotation.PostConstruct;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,19 +35,11 @@ import org.springframework.web.multipart.MultipartFile;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
-import com.amazonaws.auth.BasicAWSCredentials;
-import com.amazonaws.regions.Region;
-import com.amazonaws.regions.Regions;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3Client;
-import com.amazonaws.services.s3.AmazonS3EncryptionClient;
-import com.amazonaws.services.s3.model.CryptoConfiguration;
-import com.amazonaws.services.s3.model.KMSEncryptionMaterialsProvider;
-import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import exception.PiazzaJobException;
 import org.venice.piazza.gateway.auth.PiazzaAuthenticationToken;
+import org.venice.piazza.ingest.utility.S3FileTransfer;
 import org.venice.piazza.jobmanager.controller.JobController;
 
 import model.data.FileRepresentation;
@@ -57,6 +50,7 @@ import model.logger.AuditElement;
 import model.logger.Severity;
 import model.request.PiazzaJobRequest;
 import model.response.ErrorResponse;
+import model.response.JobListResponse;
 import model.response.JobResponse;
 import model.response.PiazzaResponse;
 import util.PiazzaLogger;
@@ -79,46 +73,21 @@ public class GatewayUtil {
 	private PiazzaLogger logger;
 	@Autowired
 	private JobController jobController;
+	@Autowired
+	private S3FileTransfer s3FileTransfer;
 
 	@Value("${s3.domain}")
 	private String AMAZONS3_DOMAIN;
 	@Value("${s3.use.kms}")
 	private Boolean USE_KMS;
-	@Value("${vcap.services.pz-blobstore.credentials.access_key_id:}")
-	private String AMAZONS3_ACCESS_KEY;
-	@Value("${vcap.services.pz-blobstore.credentials.secret_access_key:}")
-	private String AMAZONS3_PRIVATE_KEY;
 	@Value("${vcap.services.pz-blobstore.credentials.bucket}")
 	private String AMAZONS3_BUCKET_NAME;
 	@Value("${jobmanager.url}")
 	private String JOBMANAGER_URL;
-	@Value("${vcap.services.pz-blobstore.credentials.encryption_key:}")
-	private String S3_KMS_CMK_ID;
+	@Value("${data.temp.path}")
+	private String DATA_TEMP_PATH;
 
 	private final static Logger LOG = LoggerFactory.getLogger(GatewayUtil.class);
-	private AmazonS3 s3Client;
-
-	/**
-	 * Initializing the components
-	 */
-	@PostConstruct
-	public void init() {
-		// Connect to S3 Bucket. Only apply credentials if they are present.
-		if ((AMAZONS3_ACCESS_KEY.isEmpty()) && (AMAZONS3_PRIVATE_KEY.isEmpty())) {
-			s3Client = new AmazonS3Client();
-		} else {
-			BasicAWSCredentials credentials = new BasicAWSCredentials(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY);
-			if (USE_KMS.booleanValue()) {
-				// Set up encryption using the KMS CMK Key
-				KMSEncryptionMaterialsProvider materialProvider = new KMSEncryptionMaterialsProvider(S3_KMS_CMK_ID);
-				s3Client = new AmazonS3EncryptionClient(credentials, materialProvider,
-						new CryptoConfiguration().withKmsRegion(Regions.US_EAST_1)).withRegion(Region.getRegion(Regions.US_EAST_1));
-			} else {
-				// No KMS.
-				s3Client = new AmazonS3Client(credentials);
-			}
-		}
-	}
 
 	/**
 	 * Sends a Job Request to the Job Manager. This will generate a Job Id and return it once the Job Manager has
@@ -160,6 +129,34 @@ public class GatewayUtil {
 		}
 	}
 
+	/**
+	 * Sends a batch of Job Requests to the Job Manager. The Job Manager assigns the Job Ids, and returns the Jobs once
+	 * all of them have been indexed into its database and relayed to the workers.
+	 * 
+	 * @param requests
+	 *            The Job Requests
+	 * @return The created Jobs, in the order of the requests
+	 */
+	public JobListResponse sendJobRequests(List<PiazzaJobRequest> requests) throws PiazzaJobException {
+		String createdBy = requests.isEmpty() ? null : requests.get(0).createdBy;
+		try {
+			logger.log(String.format("Forwarding batch of %s Jobs for user %s", requests.size(), createdBy), Severity.INFORMATIONAL,
+					new AuditElement(createdBy, "requestJobBatch", ""));
+			ResponseEntity<PiazzaResponse> jobResponse = jobController.requestJobs(requests);
+			// Check if the response was an error.
+			if (jobResponse.getBody() instanceof ErrorResponse) {
+				throw new PiazzaJobException(((ErrorResponse) jobResponse.getBody()).message);
+			}
+			return (JobListResponse) jobResponse.getBody();
+		} catch (Exception exception) {
+			String error = String.format("Error with Job Manager when Requesting Batch of Piazza Jobs: %s", exception.getMessage());
+			LOG.error(error, exception);
+			logger.log(String.format("Batch Job Request at Gateway failed for %s Jobs", requests.size()), Severity.ERROR,
+					new AuditElement(createdBy, "failedRequestJobBatch", ""));
+			throw new PiazzaJobException(error);
+		}
+	}
+
 	/**
 	 * Gets a UUID from the Piazza UUID Factory.
 	 * 
@@ -218,12 +215,17 @@ public class GatewayUtil {
 	 */
 	public IngestJob pushS3File(String jobId, IngestJob job, MultipartFile file)
 			throws AmazonServiceException, AmazonClientException, IOException {
-		// The content length must be specified.
-		ObjectMetadata metadata = new ObjectMetadata();
-		metadata.setContentLength(file.getSize());
-		// Send the file to S3. The key corresponds with the S3 file name.
+		// Send the file to S3. The key corresponds with the S3 file name. The upload is moved to a local file first (this
+		// is normally a rename of the multipart temp file) so that its parts can be uploaded in parallel. It is created in
+		// the data temp path, with the other local copies of Data, rather than the system temp directory.
 		String fileKey = String.format("%s-%s", jobId, file.getOriginalFilename());
-		s3Client.putObject(AMAZONS3_BUCKET_NAME, fileKey, file.getInputStream(), metadata);
+		File uploadFile = File.createTempFile(String.format("%s-", jobId), ".upload", new File(DATA_TEMP_PATH));
+		try {
+			file.transferTo(uploadFile);
+			s3FileTransfer.upload(uploadFile, AMAZONS3_BUCKET_NAME, fileKey, USE_KMS.booleanValue());
+		} finally {
+			Files.deleteIfExists(uploadFile.toPath());
+		}
 		// Note the S3 file path in the Ingest Job.
 		// Attach the file to the FileLocation object
 		FileLocation fileLocation = new S3FileStore(AMAZONS3_BUCKET_NAME, fileKey, file.getSize(), AMAZONS3_DOMAIN);
@@ -16,14 +16,28 @@
 package org.venice.piazza.idam.authz;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import model.security.authz.ProfileTemplate;
@@ -31,18 +45,54 @@ import model.security.authz.ProfileTemplate;
 /**
  * Factory class which is capable of creating ProfileTemplate Models for various default groups. Used for initial
  * population of users within Piazza.
+ * <p>
+ * Templates are read once, and then cached. Templates read from files, such as from the profiles directory, are
+ * periodically checked by {@link #reloadChangedTemplates()}, and read again when the file changes. Components that
+ * derive state from the templates register a {@link Listener} to be told of the changes.
+ * </p>
  * 
  * @author Patrick.Doody
  *
  */
 @Component
 public class ProfileTemplateFactory {
+	@Value("${authz.profiles.directory:}")
+	private String PROFILES_DIRECTORY;
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(ProfileTemplateFactory.class);
-	private ObjectMapper mapper = new ObjectMapper();
+	private static final String ENDPOINTS_FIELD = "endpoints";
+	private static final String THROTTLES_FIELD = "throttles";
+	private ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+	private final ConcurrentMap<String, LoadedTemplate> templates = new ConcurrentHashMap<>();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Receives the roles whose templates have changed, after each check for changed templates.
+	 */
+	public interface Listener {
+		/**
+		 * Called after each check for changed templates, whether or not any have changed.
+		 *
+		 * @param changedRoles
+		 *            The roles whose templates have changed, or were removed. Their templates are read again when next
+		 *            requested.
+		 */
+		void onTemplatesReloaded(List<String> changedRoles);
+	}
+
+	/**
+	 * Registers the listener for changes to the templates.
+	 *
+	 * @param listener
+	 *            The listener
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
 
 	/**
 	 * Gets the ProfileTemplate for the specified role. This role must have an accompanying .json file in the
-	 * resources/profiles folder.
+	 * profiles directory, if one is configured, or in the resources/profiles folder.
 	 * <p>
 	 * The ID is not set.
 	 * </p>
@@ -52,24 +102,55 @@ public class ProfileTemplateFactory {
 	 * @return ProfileTemplate for the specified role.
 	 */
 	public ProfileTemplate getDefaultTemplate(String role) throws IOException {
-		// Load the .json resource
-		ClassLoader classLoader = getClass().getClassLoader();
-		InputStream templateStream = null;
-		String templateString = null;
-		try {
-			templateStream = classLoader.getResourceAsStream(String.format("%s%s%s.json", "profiles", File.separator, role));
-			templateString = IOUtils.toString(templateStream);
-		} finally {
-			try {
-				if( templateStream != null ) {
-					templateStream.close();
+		// Each caller gets its own copy of the cached Template
+		return mapper.treeToValue(getTemplate(role).template, ProfileTemplate.class);
+	}
+
+	/**
+	 * Gets the endpoint rules of the ProfileTemplate for the specified role. The rules are the "endpoints" object of the
+	 * template, which maps "METHOD /path" to whether the role may make that request.
+	 * 
+	 * @param role
+	 *            The role
+	 * @return The endpoint rules, in the order of the template. Empty if the template has no rules.
+	 */
+	public Map<String, Boolean> getEndpointRules(String role) throws IOException {
+		Map<String, Boolean> rules = new LinkedHashMap<>();
+		JsonNode endpoints = getTemplate(role).template.get(ENDPOINTS_FIELD);
+		if (endpoints != null) {
+			Iterator<Map.Entry<String, JsonNode>> fields = endpoints.fields();
+			while (fields.hasNext()) {
+				Map.Entry<String, JsonNode> field = fields.next();
+				rules.put(field.getKey(), field.getValue().asBoolean());
+			}
+		}
+		return rules;
+	}
+
+	/**
+	 * Gets the throttle limits of the ProfileTemplate for the specified role. The limits are the "throttles" object of
+	 * the template, which maps a throttled Component, such as "job", to the number of invocations the role may make in
+	 * a throttle window.
+	 * 
+	 * @param role
+	 *            The role
+	 * @return The throttle limits. Empty if the template sets no limits.
+	 */
+	public Map<String, Long> getThrottleLimits(String role) throws IOException {
+		Map<String, Long> limits = new LinkedHashMap<>();
+		JsonNode throttles = getTemplate(role).template.get(THROTTLES_FIELD);
+		if (throttles != null) {
+			Iterator<Map.Entry<String, JsonNode>> fields = throttles.fields();
+			while (fields.hasNext()) {
+				Map.Entry<String, JsonNode> field = fields.next();
+				if (!field.getValue().isIntegralNumber() || !field.getValue().canConvertToLong()) {
+					throw new IOException(String.format("Throttle limit %s of the Profile Template for role %s is not a number: %s",
+							field.getKey(), role, field.getValue()));
 				}
-			} catch (Exception exception) {
-				LOGGER.error("Error closing Template Stream.", exception);
+				limits.put(field.getKey(), field.getValue().asLong());
 			}
 		}
-		// Read the String into the Template object
-		return mapper.readValue(templateString, ProfileTemplate.class);
+		return limits;
 	}
 
 	/**
@@ -83,4 +164,109 @@ public class ProfileTemplateFactory {
 		// TODO: Connect to GeoAxis
 		return getDefaultTemplate("admin");
 	}
+
+	/**
+	 * Evicts the cached templates whose files have changed, or were removed, since they were read, and notifies the
+	 * listeners. The templates are read again when next requested.
+	 * 
+	 * @return The roles whose templates were evicted
+	 */
+	@Scheduled(fixedDelayString = "${authz.profiles.reload.interval.ms:30000}")
+	public List<String> reloadChangedTemplates() {
+		List<String> changedRoles = new ArrayList<>();
+		for (Map.Entry<String, LoadedTemplate> entry : templates.entrySet()) {
+			File file = getTemplateFile(entry.getKey());
+			long lastModified = file != null ? file.lastModified() : 0;
+			if ((lastModified != entry.getValue().lastModified) && templates.remove(entry.getKey(), entry.getValue())) {
+				LOGGER.info("Profile Template for role {} has changed, and will be reloaded.", entry.getKey());
+				changedRoles.add(entry.getKey());
+			}
+		}
+		for (Listener listener : listeners) {
+			try {
+				listener.onTemplatesReloaded(changedRoles);
+			} catch (Exception exception) {
+				LOGGER.error("Error notifying a listener of changed Profile Templates.", exception);
+			}
+		}
+		return changedRoles;
+	}
+
+	private LoadedTemplate getTemplate(String role) throws IOException {
+		LoadedTemplate template = templates.get(role);
+		if (template == null) {
+			template = loadTemplate(role);
+			LoadedTemplate existing = templates.putIfAbsent(role, template);
+			if (existing != null) {
+				template = existing;
+			}
+		}
+		return template;
+	}
+
+	private LoadedTemplate loadTemplate(String role) throws IOException {
+		File file = getTemplateFile(role);
+		if (file != null) {
+			// Read the modification time first, so that a change made while reading is reloaded
+			long lastModified = file.lastModified();
+			try (InputStream templateStream = new FileInputStream(file)) {
+				return new LoadedTemplate(mapper.readTree(templateStream), lastModified);
+			}
+		}
+		// Load the .json resource, which may be packaged in the application archive
+		InputStream templateStream = getClass().getClassLoader().getResourceAsStream(getResourceName(role));
+		if (templateStream == null) {
+			throw new IOException(String.format("No Profile Template exists for role %s", role));
+		}
+		try {
+			return new LoadedTemplate(mapper.readTree(templateStream), 0);
+		} finally {
+			try {
+				templateStream.close();
+			} catch (Exception exception) {
+				LOGGER.error("Error closing Template Stream.", exception);
+			}
+		}
+	}
+
+	/**
+	 * Gets the file of the template for the role: in the profiles directory, if one is configured, or the resource, if
+	 * it is not packaged in an archive.
+	 * 
+	 * @return The file, or null if the template is not a file
+	 */
+	private File getTemplateFile(String role) {
+		if ((PROFILES_DIRECTORY != null) && !PROFILES_DIRECTORY.isEmpty()) {
+			File file = new File(PROFILES_DIRECTORY, String.format("%s.json", role));
+			if (file.isFile()) {
+				return file;
+			}
+		}
+		URL resource = getClass().getClassLoader().getResource(getResourceName(role));
+		if ((resource != null) && "file".equals(resource.getProtocol())) {
+			try {
+				return new File(resource.toURI());
+			} catch (URISyntaxException exception) {
+				LOGGER.warn(String.format("Could not locate the Profile Template file for role %s", role), exception);
+			}
+		}
+		return null;
+	}
+
+	private static String getResourceName(String role) {
+		return String.format("profiles/%s.json", role);
+	}
+
+	/**
+	 * A template as read, and the modification time of its file.
+	 */
+	private static class LoadedTemplate {
+		private final JsonNode template;
+		private final long lastModified;
+
+		private LoadedTemplate(JsonNode template, long lastModified) {
+			this.template = template;
+			this.lastModified = lastModified;
+		}
+	}
 }
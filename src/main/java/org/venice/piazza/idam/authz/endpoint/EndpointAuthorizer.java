@@ -15,18 +15,39 @@
  **/
 package org.venice.piazza.idam.authz.endpoint;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.venice.piazza.idam.authz.Authorizer;
 import org.venice.piazza.idam.authz.ProfileTemplateFactory;
 
+import model.logger.Severity;
 import model.response.AuthResponse;
 import model.security.authz.AuthorizationCheck;
+import model.security.authz.Permission;
 import util.PiazzaLogger;
 
 /**
  * Authorizer that determines if a specified user action will be prevented due to restricted access to a particular
  * endpoint in the Piazza API.
+ * <p>
+ * The endpoint rules of the Profile Template for the user's role are compiled once into {@link EndpointPermissions},
+ * and recompiled when the template changes, so that a check does not read or parse the template. If the template
+ * cannot be read, or its rules are not valid, the role is denied every endpoint until the template is fixed.
+ * </p>
+ * <p>
+ * Endpoint authorization is off, and every action is permitted, unless authz.endpoint.enabled is set. Users are
+ * authorized with the template of the role set by authz.endpoint.default.role.
+ * </p>
  * 
  * @author Patrick.Doody
  *
@@ -37,13 +58,89 @@ public class EndpointAuthorizer implements Authorizer {
 	private PiazzaLogger pzLogger;
 	@Autowired
 	private ProfileTemplateFactory profileTemplateFactory;
+	@Value("${authz.endpoint.enabled:false}")
+	private boolean ENABLED;
+	@Value("${authz.endpoint.default.role:admin}")
+	private String DEFAULT_ROLE;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EndpointAuthorizer.class);
+	private static final EndpointPermissions DENY_ALL = EndpointPermissions.compile(Collections.<String, Boolean> emptyMap());
+	private final ConcurrentMap<String, EndpointPermissions> permissionsByRole = new ConcurrentHashMap<>();
 
 	/**
-	 * TODO: This is a placeholder. We will eventually delegate this call to GeoAxis. No need to use Piazza code for
-	 * this, for now.
+	 * Compiles the permissions of the default role, so that the first request does not wait for them, and listens for
+	 * changes to the Profile Templates.
 	 */
+	@PostConstruct
+	public void initialize() {
+		if (ENABLED) {
+			getPermissions(DEFAULT_ROLE);
+		}
+		profileTemplateFactory.addListener(new ProfileTemplateFactory.Listener() {
+			@Override
+			public void onTemplatesReloaded(List<String> changedRoles) {
+				discardPermissions(changedRoles);
+			}
+		});
+	}
+
 	@Override
 	public AuthResponse canUserPerformAction(AuthorizationCheck authorizationCheck) {
-		return new AuthResponse(true);
+		if (!ENABLED) {
+			return new AuthResponse(true);
+		}
+		String role = DEFAULT_ROLE;
+		Permission action = authorizationCheck.getAction();
+		if (action == null) {
+			return new AuthResponse(false, "No action was specified to authorize.");
+		}
+		if (getPermissions(role).isPermitted(action.getRequestMethod(), action.getUri())) {
+			return new AuthResponse(true);
+		}
+		return new AuthResponse(false, String.format("User %s with role %s is not permitted to %s %s", authorizationCheck.getUsername(),
+				role, action.getRequestMethod(), action.getUri()));
+	}
+
+	/**
+	 * Discards the permissions of roles whose Profile Templates have changed, or could not be read, so that they are
+	 * compiled again on their next check. Called by the Profile Template Factory after each check for changed
+	 * templates.
+	 * 
+	 * @param changedRoles
+	 *            The roles whose templates have changed
+	 */
+	public void discardPermissions(List<String> changedRoles) {
+		for (String role : changedRoles) {
+			permissionsByRole.remove(role);
+		}
+		for (String role : permissionsByRole.keySet()) {
+			permissionsByRole.remove(role, DENY_ALL);
+		}
+	}
+
+	private EndpointPermissions getPermissions(String role) {
+		EndpointPermissions permissions = permissionsByRole.get(role);
+		if (permissions == null) {
+			permissions = compilePermissions(role);
+			EndpointPermissions existing = permissionsByRole.putIfAbsent(role, permissions);
+			if (existing != null) {
+				permissions = existing;
+			}
+		}
+		return permissions;
+	}
+
+	private EndpointPermissions compilePermissions(String role) {
+		try {
+			EndpointPermissions permissions = EndpointPermissions.compile(profileTemplateFactory.getEndpointRules(role));
+			LOGGER.info("Compiled {} endpoint rules for role {}", permissions.getRuleCount(), role);
+			return permissions;
+		} catch (Exception exception) {
+			String error = String.format("Error compiling the endpoint rules of the Profile Template for role %s: %s. "
+					+ "All endpoints will be denied for this role.", role, exception.getMessage());
+			LOGGER.error(error, exception);
+			pzLogger.log(error, Severity.ERROR);
+			return DENY_ALL;
+		}
 	}
 }
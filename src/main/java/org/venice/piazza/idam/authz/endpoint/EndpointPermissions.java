@@ -0,0 +1,230 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.idam.authz.endpoint;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The endpoint permissions of a Profile Template, compiled into a trie of URI path segments so that a check walks the
+ * request URI once, without allocating.
+ * <p>
+ * Rules are written as "METHOD /path": allowed. The method may be "*" for any method. A path segment of "*" matches
+ * any single segment, such as a resource Id, and a final segment of "**" matches any remaining segments, including
+ * none. The most specific rule wins: a literal segment over "*", and "*" over "**"; a named method over "*". Requests
+ * that match no rule are denied.
+ * </p>
+ * <p>
+ * Instances are immutable, and may be shared between threads.
+ * </p>
+ */
+public final class EndpointPermissions {
+	private static final String[] METHODS = { "GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS" };
+	private static final int ANY_METHOD = METHODS.length;
+	private static final int UNKNOWN_METHOD = -1;
+	private static final String WILDCARD = "*";
+	private static final String GLOB = "**";
+	private static final byte NO_RULE = 0;
+	private static final byte ALLOW = 1;
+	private static final byte DENY = 2;
+
+	private final Node root;
+	private final int ruleCount;
+
+	private EndpointPermissions(Node root, int ruleCount) {
+		this.root = root;
+		this.ruleCount = ruleCount;
+	}
+
+	/**
+	 * Compiles the endpoint rules of a Profile Template.
+	 *
+	 * @param rules
+	 *            The rules, as "METHOD /path" to allowed
+	 * @return The compiled permissions
+	 * @throws IllegalArgumentException
+	 *             If a rule is not valid
+	 */
+	public static EndpointPermissions compile(Map<String, Boolean> rules) {
+		Node root = new Node();
+		for (Map.Entry<String, Boolean> rule : rules.entrySet()) {
+			addRule(root, rule.getKey(), Boolean.TRUE.equals(rule.getValue()));
+		}
+		return new EndpointPermissions(root, rules.size());
+	}
+
+	/**
+	 * Determines if the request is permitted.
+	 *
+	 * @param method
+	 *            The HTTP method of the request
+	 * @param uri
+	 *            The URI of the request
+	 * @return True if a rule allows the request, false if a rule denies it or no rule matches
+	 */
+	public boolean isPermitted(String method, String uri) {
+		int methodIndex = getMethodIndex(method);
+		if ((methodIndex == UNKNOWN_METHOD) || (uri == null)) {
+			return false;
+		}
+		return match(root, uri, 0, methodIndex) == ALLOW;
+	}
+
+	/**
+	 * @return The number of rules compiled
+	 */
+	public int getRuleCount() {
+		return ruleCount;
+	}
+
+	private static byte match(Node node, String uri, int position, int methodIndex) {
+		int start = position;
+		while ((start < uri.length()) && (uri.charAt(start) == '/')) {
+			start++;
+		}
+		if (start >= uri.length()) {
+			byte decision = Node.getDecision(node.decisions, methodIndex);
+			return decision != NO_RULE ? decision : Node.getDecision(node.globDecisions, methodIndex);
+		}
+		int end = uri.indexOf('/', start);
+		if (end < 0) {
+			end = uri.length();
+		}
+		Node child = node.getChild(uri, start, end);
+		if (child != null) {
+			byte decision = match(child, uri, end, methodIndex);
+			if (decision != NO_RULE) {
+				return decision;
+			}
+		}
+		if (node.wildcard != null) {
+			byte decision = match(node.wildcard, uri, end, methodIndex);
+			if (decision != NO_RULE) {
+				return decision;
+			}
+		}
+		return Node.getDecision(node.globDecisions, methodIndex);
+	}
+
+	private static void addRule(Node root, String rule, boolean allowed) {
+		String trimmedRule = rule.trim();
+		int separator = trimmedRule.indexOf(' ');
+		if (separator < 0) {
+			throw new IllegalArgumentException(String.format("Endpoint rule %s must be of the form \"METHOD /path\".", rule));
+		}
+		String method = trimmedRule.substring(0, separator).toUpperCase(Locale.ROOT);
+		int methodIndex = WILDCARD.equals(method) ? ANY_METHOD : getMethodIndex(method);
+		if (methodIndex == UNKNOWN_METHOD) {
+			throw new IllegalArgumentException(String.format("Endpoint rule %s has an unknown method %s.", rule, method));
+		}
+		Node node = root;
+		String[] segments = trimmedRule.substring(separator + 1).trim().split("/");
+		for (int index = 0; index < segments.length; index++) {
+			String segment = segments[index];
+			if (segment.isEmpty()) {
+				continue;
+			}
+			if (GLOB.equals(segment)) {
+				if (index != segments.length - 1) {
+					throw new IllegalArgumentException(String.format("Endpoint rule %s may only use ** as the last segment.", rule));
+				}
+				node.globDecisions = setDecision(node.globDecisions, methodIndex, allowed);
+				return;
+			}
+			node = WILDCARD.equals(segment) ? node.getOrAddWildcard() : node.getOrAddChild(segment);
+		}
+		node.decisions = setDecision(node.decisions, methodIndex, allowed);
+	}
+
+	private static byte[] setDecision(byte[] decisions, int methodIndex, boolean allowed) {
+		byte[] updated = decisions != null ? decisions : new byte[ANY_METHOD + 1];
+		updated[methodIndex] = allowed ? ALLOW : DENY;
+		return updated;
+	}
+
+	private static int getMethodIndex(String method) {
+		if (method == null) {
+			return UNKNOWN_METHOD;
+		}
+		switch (method) {
+		case "GET":
+			return 0;
+		case "POST":
+			return 1;
+		case "PUT":
+			return 2;
+		case "DELETE":
+			return 3;
+		case "PATCH":
+			return 4;
+		case "HEAD":
+			return 5;
+		case "OPTIONS":
+			return 6;
+		default:
+			return UNKNOWN_METHOD;
+		}
+	}
+
+	/**
+	 * A path segment of the trie. Children are few per segment, so they are kept in arrays and scanned, which avoids
+	 * creating a String for each segment of the request URI.
+	 */
+	private static final class Node {
+		private String[] names = new String[0];
+		private Node[] children = new Node[0];
+		private Node wildcard;
+		private byte[] decisions;
+		private byte[] globDecisions;
+
+		private Node getChild(String uri, int start, int end) {
+			int length = end - start;
+			for (int index = 0; index < names.length; index++) {
+				if ((names[index].length() == length) && uri.regionMatches(start, names[index], 0, length)) {
+					return children[index];
+				}
+			}
+			return null;
+		}
+
+		private Node getOrAddChild(String name) {
+			Node child = getChild(name, 0, name.length());
+			if (child == null) {
+				child = new Node();
+				names = Arrays.copyOf(names, names.length + 1);
+				children = Arrays.copyOf(children, children.length + 1);
+				names[names.length - 1] = name;
+				children[children.length - 1] = child;
+			}
+			return child;
+		}
+
+		private Node getOrAddWildcard() {
+			if (wildcard == null) {
+				wildcard = new Node();
+			}
+			return wildcard;
+		}
+
+		private static byte getDecision(byte[] methodDecisions, int methodIndex) {
+			if (methodDecisions == null) {
+				return NO_RULE;
+			}
+			return methodDecisions[methodIndex] != NO_RULE ? methodDecisions[methodIndex] : methodDecisions[ANY_METHOD];
+		}
+	}
+}
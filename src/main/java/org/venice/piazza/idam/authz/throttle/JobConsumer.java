@@ -26,7 +26,6 @@ import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.venice.piazza.idam.data.DatabaseAccessor;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -48,7 +47,7 @@ public class JobConsumer {
 	@Autowired
 	private PiazzaLogger pzLogger;
 	@Autowired
-	private DatabaseAccessor accessor;
+	private ThrottleCounter throttleCounter;
 	@Value("${SPACE}")
 	private String space;
 
@@ -87,9 +86,9 @@ public class JobConsumer {
 	private void processThrottle(Job job) {
 		String username = job.getCreatedBy();
 		model.security.authz.Throttle.Component component = model.security.authz.Throttle.Component.JOB;
-		// Update persistence
+		// Count the invocation. The counts are persisted by the counter.
 		try {
-			accessor.incrementUserThrottles(username, component);
+			throttleCounter.increment(username, component);
 		} catch (Exception exception) {
 			String error = String.format(
 					"Error updating Throttle for Component %s for User %s : %s. The users Throttles could not be updated.", component,
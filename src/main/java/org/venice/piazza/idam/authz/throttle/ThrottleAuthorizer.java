@@ -16,17 +16,22 @@
 package org.venice.piazza.idam.authz.throttle;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpMethod;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.venice.piazza.idam.authz.Authorizer;
-import org.venice.piazza.idam.data.DatabaseAccessor;
+import org.venice.piazza.idam.authz.ProfileTemplateFactory;
 
 import model.logger.Severity;
 import model.response.AuthResponse;
@@ -36,8 +41,14 @@ import util.PiazzaLogger;
 
 /**
  * Authorizer that determines if a specified user action will be prevented due to excessive use of that action
- * (throttling). This will use Throttle information in the DB instance to determine if a user should be throttled or
- * not.
+ * (throttling). This will use the invocations counted by the ThrottleCounter to determine if a user should be throttled
+ * or not.
+ * <p>
+ * The Job limit of a user is, in order: their own limit, set by throttle.limit.job.users, such as for service accounts;
+ * the "job" limit in the "throttles" of the Profile Template for their profile; or throttle.limit.job. Users are
+ * throttled with the template of the profile set by throttle.profile, which defaults to the role used for endpoint
+ * authorization.
+ * </p>
  * 
  * @author Patrick.Doody
  *
@@ -45,48 +56,93 @@ import util.PiazzaLogger;
 @Component
 public class ThrottleAuthorizer implements Authorizer {
 	@Autowired
-	private DatabaseAccessor accessor;
+	private ThrottleCounter throttleCounter;
 	@Autowired
 	private PiazzaLogger pzLogger;
+	@Autowired
+	private ProfileTemplateFactory profileTemplateFactory;
 	@Value("${throttle.frequency.interval}")
 	private Integer THROTTLE_FREQUENCY_INTERVAL;
+	@Value("${throttle.limit.job:10000}")
+	private long JOB_LIMIT;
+	@Value("#{${throttle.limit.job.users:{:}}}")
+	private Map<String, Long> USER_JOB_LIMITS;
+	@Value("${throttle.profile:${authz.endpoint.default.role:admin}}")
+	private String PROFILE;
 
-	private static final List<String> THROTTLED_POST_ENDPOINTS = Arrays.asList("data", "job", "data/file", "deployment");
+	private static final List<String> THROTTLED_POST_ENDPOINTS = Arrays.asList("data", "job", "job/batch", "data/file", "deployment");
+	private static final String JOB_THROTTLE = "job";
 	private static final Logger LOGGER = LoggerFactory.getLogger(ThrottleAuthorizer.class);
+	private static final Map<String, Long> NO_LIMITS = Collections.emptyMap();
+	private final ConcurrentMap<String, Map<String, Long>> limitsByProfile = new ConcurrentHashMap<>();
+
+	/**
+	 * Listens for changes to the Profile Templates, so that changed limits, and limits that could not be read, are read
+	 * again.
+	 */
+	@PostConstruct
+	public void initialize() {
+		profileTemplateFactory.addListener(new ProfileTemplateFactory.Listener() {
+			@Override
+			public void onTemplatesReloaded(List<String> changedRoles) {
+				for (String role : changedRoles) {
+					limitsByProfile.remove(role);
+				}
+				for (String role : limitsByProfile.keySet()) {
+					limitsByProfile.remove(role, NO_LIMITS);
+				}
+			}
+		});
+	}
 
 	@Override
 	public AuthResponse canUserPerformAction(AuthorizationCheck authorizationCheck) {
 		// Check if the user is trying to perform a Piazza Job, which is subject to throttling
 		Permission action = authorizationCheck.getAction();
 		if (isJobThrottlable(action)) {
-			// Subject to throttling. Perform a lookup in the Jobs table.
-			Integer invocations = null;
-			try {
-				// Get the number of invocations for this user
-				invocations = accessor.getInvocationsForUserThrottle(authorizationCheck.getUsername(),
-						model.security.authz.Throttle.Component.JOB);
-				// Determine if the number of invocations exceeds the limit
-				if (isThrottleInvocationsExceeded(invocations, authorizationCheck.getUsername())) {
-					String message = String.format("Number of Jobs for user %s has been exceeded (%s). Please try again tomorrow.",
-							authorizationCheck.getUsername(), invocations);
-					return new AuthResponse(false, message);
-				} else {
-					return new AuthResponse(true);
-				}
-			} catch (Exception exception) {
-				String error = String.format(
-						"Error getting number of invocations for Auth Check %s. %s. Throttle authorization checks may not be functioning correctly.",
-						authorizationCheck.toString(), exception.getMessage());
-				LOGGER.error(error, exception);
-				pzLogger.log(error, Severity.ERROR);
-				// Currently, do not deny this request. The database is not properly working and we don't want to
-				// blacklist everything if the database can't be reached.
-			}
+			// Subject to throttling. A batch is checked for its first Job here; the Gateway checks the whole batch
+			// once its size is known.
+			return canUserSubmitJobs(authorizationCheck.getUsername(), 1);
 		}
 
 		return new AuthResponse(true);
 	}
 
+	/**
+	 * Determines if the user may submit a number of Jobs at once, such as a batch. The Jobs are charged as though
+	 * they were submitted one at a time, so a batch is denied if the limit would be exceeded before its last Job.
+	 * 
+	 * @param username
+	 *            The username
+	 * @param jobCount
+	 *            The number of Jobs to submit
+	 * @return The decision
+	 */
+	public AuthResponse canUserSubmitJobs(String username, int jobCount) {
+		try {
+			// Get the number of invocations for this user
+			long invocations = throttleCounter.getInvocations(username, model.security.authz.Throttle.Component.JOB);
+			// Determine if the number of invocations, with all but the last of the Jobs, exceeds the limit
+			if (isThrottleInvocationsExceeded(invocations + Math.max(jobCount - 1, 0), username)) {
+				String message = jobCount > 1
+						? String.format("Batch of %s Jobs would exceed the number of Jobs for user %s (%s). Please try again tomorrow.",
+								jobCount, username, invocations)
+						: String.format("Number of Jobs for user %s has been exceeded (%s). Please try again tomorrow.", username,
+								invocations);
+				return new AuthResponse(false, message);
+			}
+		} catch (Exception exception) {
+			String error = String.format(
+					"Error getting number of invocations for user %s. %s. Throttle authorization checks may not be functioning correctly.",
+					username, exception.getMessage());
+			LOGGER.error(error, exception);
+			pzLogger.log(error, Severity.ERROR);
+			// Currently, do not deny this request. The database is not properly working and we don't want to
+			// blacklist everything if the database can't be reached.
+		}
+		return new AuthResponse(true);
+	}
+
 	/**
 	 * Determines if the number of invocations for a Job Component throttle exceeds the throttle limit.
 	 * 
@@ -96,10 +152,35 @@ public class ThrottleAuthorizer implements Authorizer {
 	 *            The username
 	 * @return True if the throttle has been exceeded (denied!), false if not
 	 */
-	private boolean isThrottleInvocationsExceeded(Integer invocations, String username) {
-		// TODO: Tie in some group management, roles, access, rules. Lots of stuff.
-		// This will be handled by GeoAxis.
-		return (invocations > 10000);
+	private boolean isThrottleInvocationsExceeded(long invocations, String username) {
+		// Users may be given their own limit, such as for service accounts
+		Long limit = (USER_JOB_LIMITS != null) ? USER_JOB_LIMITS.get(username) : null;
+		if ((limit == null) && (PROFILE != null) && !PROFILE.isEmpty()) {
+			limit = getProfileLimits(PROFILE).get(JOB_THROTTLE);
+		}
+		return (invocations > (limit != null ? limit : JOB_LIMIT));
+	}
+
+	/**
+	 * Gets the throttle limits of the profile. The limits are read once, and again when the Profile Template changes.
+	 * If the template cannot be read, the profile has no limits of its own until the template is fixed.
+	 */
+	private Map<String, Long> getProfileLimits(String profile) {
+		Map<String, Long> limits = limitsByProfile.get(profile);
+		if (limits == null) {
+			try {
+				limits = profileTemplateFactory.getThrottleLimits(profile);
+			} catch (Exception exception) {
+				String error = String.format(
+						"Error reading the throttle limits of the Profile Template for %s: %s. The default limits will be used.", profile,
+						exception.getMessage());
+				LOGGER.error(error, exception);
+				pzLogger.log(error, Severity.ERROR);
+				limits = NO_LIMITS;
+			}
+			limitsByProfile.putIfAbsent(profile, limits);
+		}
+		return limits;
 	}
 
 	/**
@@ -113,12 +194,4 @@ public class ThrottleAuthorizer implements Authorizer {
 	private boolean isJobThrottlable(Permission action) {
 		return ((THROTTLED_POST_ENDPOINTS.contains(action.getUri())) && (action.getRequestMethod().equals(HttpMethod.POST.toString())));
 	}
-
-	/**
-	 * Every interval, clear the existing throttles from the system. Currently will run every day at 3am.
-	 */
-	@Scheduled(cron = "0 0 3 * * ?")
-	private void clearThrottles() {
-		accessor.clearThrottles();
-	}
 }
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.idam.authz.throttle;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.venice.piazza.idam.data.DatabaseAccessor;
+
+import model.logger.Severity;
+import model.security.authz.Throttle;
+import model.security.authz.UserThrottles;
+import util.PiazzaLogger;
+
+/**
+ * Counts the invocations of each user for each throttled Component, in memory, so that recording a Job and checking a
+ * throttle do not read or write the database.
+ * <p>
+ * Invocations are added to striped counters, which concurrent Job consumers update without contention. The counts are
+ * periodically added to the User Throttles in the database in a single batch, and the counts of all users, including
+ * the invocations recorded by other instances, are read back at the same time.
+ * </p>
+ * <p>
+ * Throttles are cleared daily. So that a user cannot use a full day's allowance just before the reset and again just
+ * after it, the count of the previous window is carried into the current one, weighted by the part of the previous
+ * window that overlaps the last window length: a sliding window approximation.
+ * </p>
+ */
+@Component
+public class ThrottleCounter {
+	@Autowired
+	private DatabaseAccessor accessor;
+	@Autowired
+	private PiazzaLogger pzLogger;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ThrottleCounter.class);
+
+	/**
+	 * Invocations not yet added to the database, keyed by username and then by Component.
+	 */
+	private final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> pendingInvocations = new ConcurrentHashMap<>();
+	/**
+	 * The invocations stored in the database for the current window, as of the last flush. Keyed by username.
+	 */
+	private volatile Map<String, Map<String, Integer>> storedInvocations = Collections.emptyMap();
+	/**
+	 * The invocations of the previous window, and the length of that window. The length is zero until a full window
+	 * has been observed.
+	 */
+	private volatile Map<String, Map<String, Integer>> previousInvocations = Collections.emptyMap();
+	private volatile long previousWindowLength = 0;
+	private volatile long windowStart = System.currentTimeMillis();
+	private volatile boolean windowStartObserved = false;
+
+	/**
+	 * Records an invocation of the Component by the user.
+	 *
+	 * @param username
+	 *            The username
+	 * @param component
+	 *            The Component
+	 */
+	public void increment(String username, Throttle.Component component) {
+		ConcurrentMap<String, LongAdder> userInvocations = pendingInvocations.get(username);
+		if (userInvocations == null) {
+			ConcurrentMap<String, LongAdder> created = new ConcurrentHashMap<>();
+			userInvocations = pendingInvocations.putIfAbsent(username, created);
+			if (userInvocations == null) {
+				userInvocations = created;
+			}
+		}
+		LongAdder counter = userInvocations.get(component.toString());
+		if (counter == null) {
+			LongAdder created = new LongAdder();
+			counter = userInvocations.putIfAbsent(component.toString(), created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		counter.increment();
+	}
+
+	/**
+	 * Gets the number of invocations of the Component by the user, over the sliding window.
+	 *
+	 * @param username
+	 *            The username
+	 * @param component
+	 *            The Component
+	 * @return The number of invocations
+	 */
+	public long getInvocations(String username, Throttle.Component component) {
+		long invocations = getCount(storedInvocations, username, component) + getPendingCount(username, component);
+		long previousLength = previousWindowLength;
+		if (previousLength > 0) {
+			double overlap = 1.0 - ((double) (System.currentTimeMillis() - windowStart) / previousLength);
+			if (overlap > 0) {
+				invocations += Math.round(getCount(previousInvocations, username, component) * overlap);
+			}
+		}
+		return invocations;
+	}
+
+	/**
+	 * Adds the pending invocations to the User Throttles in the database, and reads back the stored invocations of all
+	 * users.
+	 * <p>
+	 * The invocations are counted as stored before they are taken from the pending counts, and are returned to the
+	 * pending counts before they are removed from the stored counts if the write fails, so that
+	 * {@link #getInvocations(String, Throttle.Component)} never misses them while the flush is in progress.
+	 * </p>
+	 */
+	@Scheduled(fixedDelayString = "${throttle.flush.interval.ms:5000}")
+	@PreDestroy
+	public synchronized void flush() {
+		Map<String, Map<String, Long>> invocations = readPendingInvocations();
+		if (!invocations.isEmpty()) {
+			storedInvocations = addCounts(storedInvocations, invocations, 1);
+			addPendingInvocations(invocations, -1);
+			try {
+				accessor.addUserThrottles(invocations);
+			} catch (Exception exception) {
+				String error = String.format("Error adding invocations to the Throttles of %s users: %s. Retrying on the next flush.",
+						invocations.size(), exception.getMessage());
+				LOGGER.error(error, exception);
+				pzLogger.log(error, Severity.ERROR);
+				addPendingInvocations(invocations, 1);
+				storedInvocations = addCounts(storedInvocations, invocations, -1);
+			}
+		}
+		try {
+			storedInvocations = getStoredInvocations(accessor.getAllUserThrottles());
+		} catch (Exception exception) {
+			String error = String.format("Error reading User Throttles: %s. Throttles of other instances may be out of date.",
+					exception.getMessage());
+			LOGGER.error(error, exception);
+			pzLogger.log(error, Severity.ERROR);
+		}
+	}
+
+	/**
+	 * Clears the Throttles, and starts a new window. Currently will run every day at 3am.
+	 */
+	@Scheduled(cron = "${throttle.reset.cron:0 0 3 * * ?}")
+	public synchronized void reset() {
+		flush();
+		long now = System.currentTimeMillis();
+		previousInvocations = storedInvocations;
+		// The window in progress at startup was not observed from its start, so its length is not known
+		previousWindowLength = windowStartObserved ? now - windowStart : 0;
+		windowStart = now;
+		windowStartObserved = true;
+		storedInvocations = Collections.emptyMap();
+		accessor.clearThrottles();
+	}
+
+	/**
+	 * Reads the pending invocations. They are taken from the pending counts by subtracting the invocations read, so
+	 * invocations recorded concurrently are kept for the next flush.
+	 */
+	private Map<String, Map<String, Long>> readPendingInvocations() {
+		Map<String, Map<String, Long>> invocations = new HashMap<>();
+		for (Map.Entry<String, ConcurrentMap<String, LongAdder>> user : pendingInvocations.entrySet()) {
+			for (Map.Entry<String, LongAdder> component : user.getValue().entrySet()) {
+				long count = component.getValue().sum();
+				if (count != 0) {
+					Map<String, Long> userInvocations = invocations.get(user.getKey());
+					if (userInvocations == null) {
+						userInvocations = new HashMap<>();
+						invocations.put(user.getKey(), userInvocations);
+					}
+					userInvocations.put(component.getKey(), count);
+				}
+			}
+		}
+		return invocations;
+	}
+
+	private void addPendingInvocations(Map<String, Map<String, Long>> invocations, int sign) {
+		for (Map.Entry<String, Map<String, Long>> user : invocations.entrySet()) {
+			for (Map.Entry<String, Long> component : user.getValue().entrySet()) {
+				pendingInvocations.get(user.getKey()).get(component.getKey()).add(sign * component.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Creates a copy of the stored counts, with the invocations added or subtracted.
+	 */
+	private static Map<String, Map<String, Integer>> addCounts(Map<String, Map<String, Integer>> counts,
+			Map<String, Map<String, Long>> invocations, int sign) {
+		Map<String, Map<String, Integer>> updated = new HashMap<>(counts);
+		for (Map.Entry<String, Map<String, Long>> user : invocations.entrySet()) {
+			Map<String, Integer> userCounts = updated.containsKey(user.getKey()) ? new HashMap<>(updated.get(user.getKey()))
+					: new HashMap<String, Integer>();
+			for (Map.Entry<String, Long> component : user.getValue().entrySet()) {
+				Integer current = userCounts.get(component.getKey());
+				long total = (current != null ? current : 0) + (sign * component.getValue());
+				userCounts.put(component.getKey(), (int) Math.max(0, Math.min(total, Integer.MAX_VALUE)));
+			}
+			updated.put(user.getKey(), userCounts);
+		}
+		return updated;
+	}
+
+	private long getPendingCount(String username, Throttle.Component component) {
+		Map<String, LongAdder> userInvocations = pendingInvocations.get(username);
+		if (userInvocations == null) {
+			return 0;
+		}
+		LongAdder counter = userInvocations.get(component.toString());
+		return counter != null ? counter.sum() : 0;
+	}
+
+	private static long getCount(Map<String, Map<String, Integer>> invocations, String username, Throttle.Component component) {
+		Map<String, Integer> userInvocations = invocations.get(username);
+		if (userInvocations == null) {
+			return 0;
+		}
+		Integer count = userInvocations.get(component.toString());
+		return count != null ? count : 0;
+	}
+
+	private static Map<String, Map<String, Integer>> getStoredInvocations(List<UserThrottles> userThrottles) {
+		Map<String, Map<String, Integer>> invocations = new HashMap<>();
+		for (UserThrottles throttles : userThrottles) {
+			if ((throttles.getUsername() != null) && (throttles.getThrottles() != null)) {
+				invocations.put(throttles.getUsername(), new HashMap<>(throttles.getThrottles()));
+			}
+		}
+		return invocations;
+	}
+}
@@ -42,6 +42,7 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.servlet.view.RedirectView;
+import org.venice.piazza.gateway.auth.AuthorizationDecisionCache;
 import org.venice.piazza.idam.authn.PiazzaAuthenticator;
 import org.venice.piazza.idam.authz.Authorizer;
 import org.venice.piazza.idam.authz.endpoint.EndpointAuthorizer;
@@ -84,6 +85,8 @@ public class AuthController {
 	private ThrottleAuthorizer throttleAuthorizer;
 	@Autowired
 	private EndpointAuthorizer endpointAuthorizer;
+	@Autowired
+	private AuthorizationDecisionCache decisionCache;
 	@Autowired(required = false)
 	private GxOAuthClient oAuthClient;
 
@@ -255,8 +258,11 @@ public class AuthController {
 
 	private void updateAPIKey(final String username, final String uuid) {
 		// Update the API Key in the UUID Collection
-		if (accessor.getApiKey(username) != null) {
+		String existingKey = accessor.getApiKey(username);
+		if (existingKey != null) {
 			accessor.updateApiKey(username, uuid);
+			// The replaced key is no longer valid
+			decisionCache.invalidate(existingKey);
 		} else {
 			accessor.createApiKey(username, uuid);
 		}
@@ -274,6 +280,7 @@ public class AuthController {
 			//Delete API Key
 			String username = accessor.getUsername(uuid);
 			accessor.deleteApiKey(uuid);
+			decisionCache.invalidate(uuid);
 			
 			//Log the action
 			String response = String.format("User: %s API Key was deleted", username);
@@ -441,6 +448,7 @@ public class AuthController {
 				// If key is invalid, delete and reissue
 				if (!accessor.isApiKeyValid(apiKey)) {
 					accessor.deleteApiKey(apiKey);
+					decisionCache.invalidate(apiKey);
 					apiKey = uuidFactory.getUUID();
 					accessor.createApiKey(username, apiKey);
 				}
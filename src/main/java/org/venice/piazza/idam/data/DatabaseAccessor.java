@@ -15,14 +15,35 @@
  **/
 package org.venice.piazza.idam.data;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.persister.entity.AbstractEntityPersister;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.venice.piazza.common.hibernate.dao.ApiKeyDao;
 import org.venice.piazza.common.hibernate.dao.UserProfileDao;
 import org.venice.piazza.common.hibernate.dao.UserThrottlesDao;
@@ -43,9 +64,22 @@ public class DatabaseAccessor {
 	private long KEY_EXPIRATION_DURATION_MS;
 	@Value("${key.inactivity.threshold.ms}")
 	private long KEY_INACTIVITY_THESHOLD_MS;
+	@Value("${key.lastused.flush.interval.ms:60000}")
+	private long KEY_LAST_USED_FLUSH_INTERVAL_MS;
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseAccessor.class);
-
+	private static final String UNDEFINED_FUNCTION_STATE = "42883";
+	private static final String THROTTLES_PROPERTY = "userThrottles";
+	private static final String LOCK_THROTTLES_SQL = "SELECT pg_advisory_xact_lock(hashtext(?))";
+	private static final String ADD_THROTTLE_SQL = "UPDATE %1$s SET %2$s = jsonb_set(%2$s, '{throttles}', "
+			+ "COALESCE(%2$s -> 'throttles', CAST('{}' AS jsonb)) || jsonb_build_object(CAST(? AS text), "
+			+ "LEAST(COALESCE(CAST(%2$s -> 'throttles' ->> CAST(? AS text) AS bigint), 0) + ?, 2147483647))) "
+			+ "WHERE %2$s ->> 'username' = ?";
+
+	@PersistenceContext
+	private EntityManager entityManager;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
 	@Autowired
 	private UserProfileDao userProfileDao;
 	@Autowired
@@ -56,6 +90,12 @@ public class DatabaseAccessor {
 	@Autowired
 	private PiazzaLogger pzLogger;
 
+	/**
+	 * The time each API Key was last used, that has not yet been written to the database. Keyed by API Key.
+	 */
+	private final Map<String, Long> pendingLastUsedOn = new ConcurrentHashMap<>();
+	private final AtomicBoolean throttlePatchSupported = new AtomicBoolean(true);
+
 	/**
 	 * Updates the API Key for the specified user in DB
 	 * 
@@ -90,6 +130,12 @@ public class DatabaseAccessor {
 
 	/**
 	 * Determines if an API Key is valid in the API Key Collection
+	 * <p>
+	 * The time the key was last used is updated in memory, and written to the database by
+	 * {@link #flushApiKeyUsage()}, so that validating a key does not write to the database on every request. If the
+	 * stored time would pass the inactivity threshold before the next flush, it is written immediately, so that other
+	 * instances do not consider the key inactive.
+	 * </p>
 	 * 
 	 * @param uuid
 	 *            The API Key
@@ -116,22 +162,29 @@ public class DatabaseAccessor {
 		}
 
 		// Key exists. Check expiration date to ensure it's valid
-		if (apiKey.getExpiresOn() < System.currentTimeMillis()) {
+		if (apiKey.getExpiresOn() < currentTime) {
 			// Key has expired and is not valid any longer
 			return false;
 		}
 
-		// Key has not expired. Check Inactivity date.
-		if ((System.currentTimeMillis() - apiKey.getLastUsedOn()) < KEY_INACTIVITY_THESHOLD_MS) {
-			// Key is not inactive.
-			// First, update the last time this key was used.
-			try {
-				apiKey.setLastUsedOn(System.currentTimeMillis());
-				apiKeyDao.save(apiKeyEntity);
-			} catch (Exception exception) {
-				String error = "Could not update time of last usage for API Key.";
-				LOGGER.error(error, exception);
-				pzLogger.log(error, Severity.WARNING);
+		// Key has not expired. Check Inactivity date, including uses not yet written to the database.
+		Long pendingLastUsed = pendingLastUsedOn.get(uuid);
+		long lastUsedOn = pendingLastUsed != null ? Math.max(pendingLastUsed, apiKey.getLastUsedOn()) : apiKey.getLastUsedOn();
+		if ((currentTime - lastUsedOn) < KEY_INACTIVITY_THESHOLD_MS) {
+			// Key is not inactive. Update the last time this key was used.
+			if ((currentTime - apiKey.getLastUsedOn()) + KEY_LAST_USED_FLUSH_INTERVAL_MS < KEY_INACTIVITY_THESHOLD_MS) {
+				pendingLastUsedOn.put(uuid, currentTime);
+			} else {
+				// The stored time is close to the inactivity threshold; write it now
+				try {
+					apiKey.setLastUsedOn(currentTime);
+					apiKeyDao.save(apiKeyEntity);
+					pendingLastUsedOn.remove(uuid);
+				} catch (Exception exception) {
+					String error = "Could not update time of last usage for API Key.";
+					LOGGER.error(error, exception);
+					pzLogger.log(error, Severity.WARNING);
+				}
 			}
 
 			// Key is Valid
@@ -141,6 +194,50 @@ public class DatabaseAccessor {
 		}
 	}
 
+	/**
+	 * Writes the times that API Keys were last used to the database, in a single batch. Uses that happen during the
+	 * flush are kept for the next flush.
+	 */
+	@Scheduled(fixedDelayString = "${key.lastused.flush.interval.ms:60000}")
+	@PreDestroy
+	public void flushApiKeyUsage() {
+		if (pendingLastUsedOn.isEmpty()) {
+			return;
+		}
+		List<ApiKeyEntity> updatedEntities = new ArrayList<>();
+		Map<String, Long> flushed = new HashMap<>();
+		Iterator<String> uuids = pendingLastUsedOn.keySet().iterator();
+		while (uuids.hasNext()) {
+			String uuid = uuids.next();
+			Long lastUsedOn = pendingLastUsedOn.remove(uuid);
+			if (lastUsedOn == null) {
+				continue;
+			}
+			// Keys deleted or replaced since they were used no longer exist
+			ApiKeyEntity apiKeyEntity = apiKeyDao.getApiKeyByUuid(uuid);
+			if ((apiKeyEntity != null) && (apiKeyEntity.getApiKey().getLastUsedOn() < lastUsedOn)) {
+				apiKeyEntity.getApiKey().setLastUsedOn(lastUsedOn);
+				updatedEntities.add(apiKeyEntity);
+				flushed.put(uuid, lastUsedOn);
+			}
+		}
+		if (updatedEntities.isEmpty()) {
+			return;
+		}
+		try {
+			apiKeyDao.save(updatedEntities);
+		} catch (Exception exception) {
+			String error = String.format("Could not update time of last usage for %s API Keys. Retrying on the next flush.",
+					updatedEntities.size());
+			LOGGER.error(error, exception);
+			pzLogger.log(error, Severity.WARNING);
+			// Keep the uses for the next flush, unless the key has been used again since
+			for (Map.Entry<String, Long> entry : flushed.entrySet()) {
+				pendingLastUsedOn.putIfAbsent(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
 	/**
 	 * Gets the current username for the API Key from the API Key Table
 	 * 
@@ -184,6 +281,7 @@ public class DatabaseAccessor {
 		if (uuid == null) {
 			throw new InvalidInputException("Unable to delete null api key");
 		}
+		pendingLastUsedOn.remove(uuid);
 		ApiKeyEntity entity = apiKeyDao.getApiKeyByUuid(uuid);
 		if (entity != null) {
 			apiKeyDao.delete(entity);
@@ -389,6 +487,121 @@ public class DatabaseAccessor {
 		}
 	}
 
+	/**
+	 * Adds invocations to the throttles of several users, in a single transaction. Throttles are created for users that
+	 * do not have them.
+	 * <p>
+	 * Several instances add their invocations concurrently, so the counts are added in place, with an UPDATE of the
+	 * stored JSON, rather than by reading the throttles and saving them back. Each user is locked for the transaction
+	 * with an advisory lock, so that two instances cannot both create the throttles of a new user. The in-place update
+	 * requires PostgreSQL 9.5; on earlier versions the throttles are read and saved while the user is locked.
+	 * </p>
+	 * 
+	 * @param invocations
+	 *            The number of invocations to add, keyed by username and then by component
+	 */
+	public void addUserThrottles(final Map<String, Map<String, Long>> invocations) {
+		if (throttlePatchSupported.get()) {
+			try {
+				addUserThrottles(invocations, true);
+				return;
+			} catch (RuntimeException exception) {
+				if (!UNDEFINED_FUNCTION_STATE.equals(getSqlState(exception))) {
+					throw exception;
+				}
+				throttlePatchSupported.set(false);
+				LOGGER.warn("The database does not support in-place JSON updates. Throttles will be read and saved under a lock.");
+			}
+		}
+		addUserThrottles(invocations, false);
+	}
+
+	private void addUserThrottles(final Map<String, Map<String, Long>> invocations, final boolean inPlace) {
+		new TransactionTemplate(transactionManager).execute(new TransactionCallback<Void>() {
+			@Override
+			public Void doInTransaction(TransactionStatus status) {
+				final Session session = entityManager.unwrap(Session.class);
+				List<String> remainingUsers = session.doReturningWork(new ReturningWork<List<String>>() {
+					@Override
+					public List<String> execute(Connection connection) throws SQLException {
+						return lockAndAddUserThrottles(session, connection, invocations, inPlace);
+					}
+				});
+				// The users not updated in place are locked, so no other instance writes their throttles concurrently
+				List<UserThrottlesEntity> updatedEntities = new ArrayList<>();
+				for (String username : remainingUsers) {
+					UserThrottlesEntity userThrottlesEntity = userThrottlesDao.getUserThrottlesByUserName(username);
+					if (userThrottlesEntity == null) {
+						userThrottlesEntity = new UserThrottlesEntity(new UserThrottles(username));
+					}
+					Map<String, Integer> throttles = userThrottlesEntity.getUserThrottles().getThrottles();
+					for (Map.Entry<String, Long> component : invocations.get(username).entrySet()) {
+						Integer currentInvocations = throttles.get(component.getKey());
+						long total = (currentInvocations != null ? currentInvocations : 0) + component.getValue();
+						throttles.put(component.getKey(), (int) Math.min(total, Integer.MAX_VALUE));
+					}
+					updatedEntities.add(userThrottlesEntity);
+				}
+				if (!updatedEntities.isEmpty()) {
+					userThrottlesDao.save(updatedEntities);
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Locks each user, and adds the invocations in place if requested.
+	 * 
+	 * @return The users whose invocations remain to be added: those without throttles, or all users if not in place
+	 */
+	private static List<String> lockAndAddUserThrottles(Session session, Connection connection,
+			Map<String, Map<String, Long>> invocations, boolean inPlace) throws SQLException {
+		// Lock users in the same order on every instance, so that concurrent flushes cannot deadlock
+		List<String> usernames = new ArrayList<>(invocations.keySet());
+		Collections.sort(usernames);
+		List<String> remainingUsers = new ArrayList<>();
+		AbstractEntityPersister persister = (AbstractEntityPersister) session.getSessionFactory()
+				.getClassMetadata(UserThrottlesEntity.class);
+		String addSql = String.format(ADD_THROTTLE_SQL, persister.getTableName(),
+				persister.getPropertyColumnNames(THROTTLES_PROPERTY)[0]);
+		try (PreparedStatement lock = connection.prepareStatement(LOCK_THROTTLES_SQL);
+				PreparedStatement add = connection.prepareStatement(addSql)) {
+			for (String username : usernames) {
+				lock.setString(1, String.format("UserThrottles:%s", username));
+				lock.execute();
+				if (!inPlace) {
+					remainingUsers.add(username);
+					continue;
+				}
+				int updated = 0;
+				for (Map.Entry<String, Long> component : invocations.get(username).entrySet()) {
+					add.setString(1, component.getKey());
+					add.setString(2, component.getKey());
+					add.setLong(3, component.getValue());
+					add.setString(4, username);
+					updated += add.executeUpdate();
+				}
+				if (updated == 0) {
+					remainingUsers.add(username);
+				}
+			}
+		}
+		return remainingUsers;
+	}
+
+	/**
+	 * Finds the SQL State of the first SQL Exception in the cause chain, if any.
+	 */
+	private static String getSqlState(Throwable exception) {
+		for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLException) {
+				return ((SQLException) cause).getSQLState();
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Clears all throttle invocations in the Throttle table.
 	 */
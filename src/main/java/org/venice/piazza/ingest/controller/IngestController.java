@@ -38,7 +38,9 @@ import exception.InvalidInputException;
 import org.venice.piazza.access.controller.AccessController;
 import org.venice.piazza.ingest.messaging.IngestThreadManager;
 import org.venice.piazza.ingest.persist.DatabaseAccessor;
+import org.venice.piazza.ingest.persist.PostGisDataStoreManager;
 import org.venice.piazza.ingest.utility.IngestUtilities;
+import org.venice.piazza.ingest.utility.S3ClientRegistry;
 import model.data.DataResource;
 import model.job.metadata.ResourceMetadata;
 import model.logger.AuditElement;
@@ -70,6 +72,10 @@ public class IngestController {
 
 	@Autowired
 	private AccessController accessController;
+	@Autowired
+	private S3ClientRegistry s3ClientRegistry;
+	@Autowired
+	private PostGisDataStoreManager postGisDataStoreManager;
 
 	private static final Logger LOG = LoggerFactory.getLogger(IngestController.class);
 	private static final String LOADER = "Loader";
@@ -182,6 +188,14 @@ public class IngestController {
 		if (threadPoolTaskExecutor.getThreadPoolExecutor() != null) {
 			stats.put("threadQueue", threadPoolTaskExecutor.getThreadPoolExecutor().getQueue().size());
 		}
+		// Reuse of the shared S3 clients
+		stats.put("s3Clients", s3ClientRegistry.getStats());
+		// Usage of the shared PostGIS connection pool, and whether it can reach the database once it is in use
+		Map<String, Object> poolStats = postGisDataStoreManager.getPoolStats();
+		if (!poolStats.isEmpty()) {
+			poolStats.put("healthy", postGisDataStoreManager.isHealthy());
+		}
+		stats.put("postGisPool", poolStats);
 		return new ResponseEntity<Map<String, Object>>(stats, HttpStatus.OK);
 	}
 
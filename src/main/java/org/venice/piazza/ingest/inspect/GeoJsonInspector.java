@@ -15,16 +15,13 @@
  **/
 package org.venice.piazza.ingest.inspect;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 
 import org.apache.commons.io.IOUtils;
-import org.geotools.data.FeatureSource;
-import org.geotools.data.collection.CollectionFeatureSource;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.geojson.feature.FeatureJSON;
-import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.FactoryException;
 import org.slf4j.Logger;
@@ -35,12 +32,13 @@ import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.AmazonClientException;
+import com.vividsolutions.jts.geom.Envelope;
 
 import exception.DataInspectException;
 import exception.InvalidInputException;
+import org.venice.piazza.ingest.utility.GeoJsonFeatureReader;
 import org.venice.piazza.ingest.utility.IngestUtilities;
 import model.data.DataResource;
-import model.data.location.FileAccessFactory;
 import model.data.type.GeoJsonDataType;
 import model.job.metadata.SpatialMetadata;
 import model.logger.AuditElement;
@@ -49,7 +47,7 @@ import util.PiazzaLogger;
 
 /**
  * Inspects GeoJSON. Will parse the GeoJSON input to ensure validity, and parse information such as spatial bounding
- * box.
+ * box. The features are streamed in a single pass, so the collection is never held in memory.
  * 
  * Vectors for GeoJSON will be stored in Piazza PostGIS table.
  * 
@@ -58,6 +56,10 @@ import util.PiazzaLogger;
  */
 @Component
 public class GeoJsonInspector implements InspectorType {
+	@Value("${data.temp.path}")
+	private String DATA_TEMP_PATH;
+	@Value("${geojson.schema.sample.size:1000}")
+	private int SCHEMA_SAMPLE_SIZE;
 	@Value("${vcap.services.pz-blobstore.credentials.access_key_id:}")
 	private String AMAZONS3_ACCESS_KEY;
 	@Value("${vcap.services.pz-blobstore.credentials.secret_access_key:}")
@@ -81,30 +83,44 @@ public class GeoJsonInspector implements InspectorType {
 		if (host && dataResource.getDataType() instanceof GeoJsonDataType) {
 			logger.log(String.format("Extracting Feature Data from GeoJSON File for Data %s", dataResource.getDataId()),
 					Severity.INFORMATIONAL, new AuditElement("ingest", "beginParsingGeoJSON", dataResource.getDataId()));
-			FeatureJSON featureJSON = new FeatureJSON();
-			InputStream geoJsonInputStream1 = null;
-			InputStream geoJsonInputStream2 = null;
+			File geoJsonFile = null;
 			try {
-				geoJsonInputStream1 = getGeoJsonInputStream(dataResource);
-				geoJsonInputStream2 = getGeoJsonInputStream(dataResource);
+				// Download the file once. The schema sample and the features are then each streamed from the local copy.
+				if (((GeoJsonDataType) dataResource.getDataType()).getLocation() != null) {
+					geoJsonFile = new File(String.format("%s%s%s.%s", DATA_TEMP_PATH, File.separator, dataResource.getDataId(), "json"));
+					ingestUtilities.copyToLocalFile(dataResource, geoJsonFile);
+				}
 
-				SimpleFeatureType featureSchema = featureJSON.readFeatureCollectionSchema(geoJsonInputStream1, false);
-				SimpleFeatureCollection featureCollection = (SimpleFeatureCollection) featureJSON
-						.readFeatureCollection(geoJsonInputStream2);
-				FeatureSource<SimpleFeatureType, SimpleFeature> geojsonFeatureSource = new CollectionFeatureSource(featureCollection);
+				// Infer the schema from a bounded sample of the features, plus any properties that first appear after it
+				SimpleFeatureType featureSchema = GeoJsonFeatureReader
+						.inferFeatureType(getGeoJsonInputStream(dataResource, geoJsonFile), SCHEMA_SAMPLE_SIZE);
 
-				// Ensure we have features. If not, do not commit anything to PostGIS.
-				if (geojsonFeatureSource.getFeatures().size() != 0) {
-					ingestUtilities.persistFeatures(geojsonFeatureSource, dataResource, featureSchema);
-				}
+				// Stream the features into PostGIS. The bounding box and count are accumulated as the features are read.
+				try (GeoJsonFeatureReader featureReader = new GeoJsonFeatureReader(getGeoJsonInputStream(dataResource, geoJsonFile),
+						featureSchema)) {
+					// Ensure we have features. If not, do not commit anything to PostGIS.
+					if (featureSchema != null) {
+						ingestUtilities.persistFeatures(featureReader, -1, dataResource, featureSchema);
+					}
 
-				// Get the Bounding Box, set the Spatial Metadata
-				ReferencedEnvelope envelope = geojsonFeatureSource.getBounds();
-				spatialMetadata.setMinX(envelope.getMinX());
-				spatialMetadata.setMinY(envelope.getMinY());
-				spatialMetadata.setMaxX(envelope.getMaxX());
-				spatialMetadata.setMaxY(envelope.getMaxY());
-				spatialMetadata.setNumFeatures(geojsonFeatureSource.getFeatures().size());
+					// Read any features not consumed by the load, so the bounds and count cover the entire collection
+					while (featureReader.hasNext()) {
+						featureReader.next();
+					}
+
+					// Get the Bounding Box, set the Spatial Metadata
+					Envelope envelope = featureReader.getBounds();
+					spatialMetadata.setMinX(envelope.getMinX());
+					spatialMetadata.setMinY(envelope.getMinY());
+					spatialMetadata.setMaxX(envelope.getMaxX());
+					spatialMetadata.setMaxY(envelope.getMaxY());
+					spatialMetadata.setNumFeatures((int) featureReader.getCount());
+					if (!featureReader.getDroppedValues().isEmpty()) {
+						logger.log(String.format(
+								"Values of Data %s could not be converted to the types sampled from its first %s features, and were not stored: %s",
+								dataResource.getDataId(), SCHEMA_SAMPLE_SIZE, featureReader.getDroppedValues()), Severity.WARNING);
+					}
+				}
 
 				// Defaulting to 4326 since GeoTools has no FeatureSource available for GeoJSON files.
 				spatialMetadata.setEpsgCode(DEFAULT_GEOJSON_EPSG_CODE);
@@ -124,25 +140,13 @@ public class GeoJsonInspector implements InspectorType {
 				((GeoJsonDataType) dataResource.getDataType()).setMimeType(MediaType.APPLICATION_JSON_VALUE);
 
 				dataResource.spatialMetadata = spatialMetadata;
-
-				// Clean up resources
-				featureJSON = null;
-				geojsonFeatureSource = null;
-				featureCollection = null;
 			} finally {
 				try {
-					if (geoJsonInputStream1 != null) {
-						geoJsonInputStream1.close();
-					}
-				} catch (Exception exception) {
-					LOG.warn("Error closing File Stream", exception);
-				}
-				try {
-					if (geoJsonInputStream2 != null) {
-						geoJsonInputStream2.close();
+					if (geoJsonFile != null) {
+						Files.deleteIfExists(geoJsonFile.toPath());
 					}
 				} catch (Exception exception) {
-					LOG.warn("Error closing File Stream", exception);
+					LOG.warn("Error deleting temporary GeoJSON File", exception);
 				}
 			}
 		}
@@ -159,14 +163,15 @@ public class GeoJsonInspector implements InspectorType {
 	 * 
 	 * @param dataResource
 	 *            data resource to pull input stream from
+	 * @param geoJsonFile
+	 *            local copy of the GeoJSON file, or null if the GeoJSON content is inline
 	 * @return File object
 	 */
-	private InputStream getGeoJsonInputStream(DataResource dataResource) throws IOException, AmazonClientException, InvalidInputException {
-		FileAccessFactory fileFactory = ingestUtilities.getFileFactoryForDataResource(dataResource);
+	private InputStream getGeoJsonInputStream(DataResource dataResource, File geoJsonFile) throws IOException {
 		InputStream inputStream;
 
-		if (((GeoJsonDataType) dataResource.getDataType()).getLocation() != null) {
-			inputStream = fileFactory.getFile(((GeoJsonDataType) dataResource.getDataType()).getLocation());
+		if (geoJsonFile != null) {
+			inputStream = new FileInputStream(geoJsonFile);
 		} else {
 			String geoJsonContent = ((GeoJsonDataType) dataResource.getDataType()).getGeoJsonContent();
 			inputStream = IOUtils.toInputStream(geoJsonContent, "UTF-8");
@@ -174,4 +179,4 @@ public class GeoJsonInspector implements InspectorType {
 
 		return inputStream;
 	}
-}
\ No newline at end of file
+}
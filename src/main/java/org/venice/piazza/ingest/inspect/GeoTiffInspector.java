@@ -17,18 +17,18 @@ package org.venice.piazza.ingest.inspect;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 
-import javax.media.jai.PlanarImage;
+import javax.media.jai.ImageLayout;
 
-import org.apache.commons.io.FileUtils;
-import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.io.AbstractGridFormat;
 import org.geotools.coverage.grid.io.GridCoverage2DReader;
 import org.geotools.coverage.grid.io.GridFormatFinder;
+import org.geotools.coverage.grid.io.imageio.DatasetLayout;
+import org.geotools.gce.geotiff.GeoTiffReader;
+import org.geotools.geometry.GeneralEnvelope;
 import org.geotools.referencing.CRS;
-import org.geotools.resources.image.ImageUtilities;
+import org.opengis.coverage.grid.GridEnvelope;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.slf4j.Logger;
@@ -42,16 +42,17 @@ import com.amazonaws.AmazonClientException;
 import exception.DataInspectException;
 import exception.InvalidInputException;
 import org.venice.piazza.ingest.utility.IngestUtilities;
+import org.venice.piazza.ingest.utility.S3RangeImageInputStream;
 import model.data.DataResource;
-import model.data.location.FileAccessFactory;
-import model.data.type.RasterDataType;
+import model.data.location.S3FileStore;
 import model.job.metadata.SpatialMetadata;
 import model.logger.AuditElement;
 import model.logger.Severity;
 import util.PiazzaLogger;
 
 /**
- * Inspects GeoTIFF file, parsing essential metadata from it.
+ * Inspects GeoTIFF file, parsing essential metadata from its header. The raster data itself is not decoded. Where
+ * possible, the header is read directly from S3 with ranged requests so that no local copy of the file is needed.
  * 
  * @author Sonny.Saniev
  * 
@@ -81,74 +82,114 @@ public class GeoTiffInspector implements InspectorType {
 		logger.log(String.format("Begin GeoTools Parsing for %s at temporary file %s", dataResource.getDataId(), fileName),
 				Severity.INFORMATIONAL, new AuditElement(INGEST, "beginParsingGeoTiff", fileName));
 
+		// Only the GeoTIFF header is read. The raster tiles are never decoded.
 		File geoTiffFile = new File(fileName);
-		GridCoverage2DReader reader = getGridCoverage(dataResource, geoTiffFile);
-		GridCoverage2D coverage = (GridCoverage2D) reader.read(null);
-		CoordinateReferenceSystem coordinateReferenceSystem = coverage.getCoordinateReferenceSystem();
-		double[] upperRightCorner = coverage.getEnvelope().getUpperCorner().getDirectPosition().getCoordinate();
-		double[] lowerLeftCorner = coverage.getEnvelope().getLowerCorner().getDirectPosition().getCoordinate();
-
-		// Set the Metadata
-		SpatialMetadata spatialMetadata = new SpatialMetadata();
-		spatialMetadata.setMinX(lowerLeftCorner[0]);
-		spatialMetadata.setMinY(lowerLeftCorner[1]);
-		spatialMetadata.setMaxX(upperRightCorner[0]);
-		spatialMetadata.setMaxY(upperRightCorner[1]);
-
-		// Get the SRS and EPSG codes
-		spatialMetadata.setCoordinateReferenceSystem(coordinateReferenceSystem.toWKT());
-		spatialMetadata.setEpsgCode(CRS.lookupEpsgCode(coordinateReferenceSystem, true));
-
-		// Set the Spatial Metadata
-		dataResource.spatialMetadata = spatialMetadata;
-
-		// Populate the projected EPSG:4326 spatial metadata
+		S3RangeImageInputStream rangeStream = null;
+		GridCoverage2DReader reader = null;
 		try {
-			dataResource.spatialMetadata.setProjectedSpatialMetadata(ingestUtilities.getProjectedSpatialMetadata(spatialMetadata));
-		} catch (Exception exception) {
-			String error = String.format("Could not project the spatial metadata for Data %s because of exception: %s",
-					dataResource.getDataId(), exception.getMessage());
-			LOG.error(error, exception);
-			logger.log(error, Severity.WARNING);
+			S3FileStore s3Location = ingestUtilities.getRangeReadableLocation(dataResource);
+			if (s3Location != null) {
+				// Read the header straight from S3 with ranged requests, rather than copying the whole file locally
+				rangeStream = new S3RangeImageInputStream(ingestUtilities.getAwsClient(false), s3Location.getBucketName(),
+						s3Location.getFileName());
+				reader = new GeoTiffReader(rangeStream);
+			} else {
+				reader = getGridCoverageReader(dataResource, geoTiffFile);
+			}
+
+			CoordinateReferenceSystem coordinateReferenceSystem = reader.getCoordinateReferenceSystem();
+			GeneralEnvelope envelope = reader.getOriginalEnvelope();
+			double[] upperRightCorner = envelope.getUpperCorner().getCoordinate();
+			double[] lowerLeftCorner = envelope.getLowerCorner().getCoordinate();
+
+			// Set the Metadata
+			SpatialMetadata spatialMetadata = new SpatialMetadata();
+			spatialMetadata.setMinX(lowerLeftCorner[0]);
+			spatialMetadata.setMinY(lowerLeftCorner[1]);
+			spatialMetadata.setMaxX(upperRightCorner[0]);
+			spatialMetadata.setMaxY(upperRightCorner[1]);
+
+			// Get the SRS and EPSG codes
+			spatialMetadata.setCoordinateReferenceSystem(coordinateReferenceSystem.toWKT());
+			spatialMetadata.setEpsgCode(CRS.lookupEpsgCode(coordinateReferenceSystem, true));
+
+			// Set the Spatial Metadata
+			dataResource.spatialMetadata = spatialMetadata;
+
+			// Populate the projected EPSG:4326 spatial metadata
+			try {
+				dataResource.spatialMetadata.setProjectedSpatialMetadata(ingestUtilities.getProjectedSpatialMetadata(spatialMetadata));
+			} catch (Exception exception) {
+				String error = String.format("Could not project the spatial metadata for Data %s because of exception: %s",
+						dataResource.getDataId(), exception.getMessage());
+				LOG.error(error, exception);
+				logger.log(error, Severity.WARNING);
+			}
+
+			logRasterLayout(dataResource, reader, rangeStream);
+		} finally {
+			// Delete the file; cleanup.
+			cleanup(dataResource, reader, rangeStream, geoTiffFile);
 		}
 
-		// Delete the file; cleanup.
+		logger.log(String.format("Completed GeoTools Parsing for %s at temporary file %s", dataResource.getDataId(), fileName),
+				Severity.INFORMATIONAL, new AuditElement(INGEST, "completeParsingGeoTiff", fileName));
+
+		// Return the metadata
+		return dataResource;
+	}
+
+	/**
+	 * Logs the raster dimensions, band count and overviews, as read from the GeoTIFF header.
+	 */
+	private void logRasterLayout(DataResource dataResource, GridCoverage2DReader reader, S3RangeImageInputStream rangeStream)
+			throws IOException {
+		GridEnvelope gridRange = reader.getOriginalGridRange();
+		ImageLayout imageLayout = reader.getImageLayout();
+		int numBands = (imageLayout != null) && (imageLayout.getSampleModel(null) != null)
+				? imageLayout.getSampleModel(null).getNumBands() : -1;
+		DatasetLayout datasetLayout = reader.getDatasetLayout();
+		int numOverviews = datasetLayout != null ? datasetLayout.getNumInternalOverviews() : 0;
+		String source = rangeStream != null ? String.format("%s S3 range requests", rangeStream.getRangeRequestCount()) : "local file";
+		logger.log(
+				String.format("GeoTIFF %s is %sx%s pixels with %s bands and %s internal overviews. Header read from %s.",
+						dataResource.getDataId(), gridRange.getSpan(0), gridRange.getSpan(1), numBands, numOverviews, source),
+				Severity.INFORMATIONAL, new AuditElement(INGEST, "readGeoTiffHeader", dataResource.getDataId()));
+	}
+
+	/**
+	 * Releases the GeoTIFF reader and deletes any local copy of the file.
+	 */
+	private void cleanup(DataResource dataResource, GridCoverage2DReader reader, S3RangeImageInputStream rangeStream, File geoTiffFile) {
 		try {
-			// Required to release the lock on the File for deletion
-			PlanarImage planarImage = (PlanarImage) coverage.getRenderedImage();
-			ImageUtilities.disposePlanarImageChain(planarImage);
-			// Dispose reader and coverage
-			reader.dispose();
-			coverage.dispose(true);
+			// Dispose reader, which is required to release the lock on the File for deletion
+			if (reader != null) {
+				reader.dispose();
+			}
+			if (rangeStream != null) {
+				rangeStream.close();
+			}
 			// Finally, delete the file.
 			Files.deleteIfExists(geoTiffFile.toPath());
 		} catch (Exception exception) {
 			String error = String.format("Error cleaning up GeoTiff file for %s Load: %s", dataResource.getDataId(),
 					exception.getMessage());
-			LOG.error(error, exception, new AuditElement(INGEST, "failedToDeleteTemporaryGeoTiff", fileName));
+			LOG.error(error, exception, new AuditElement(INGEST, "failedToDeleteTemporaryGeoTiff", geoTiffFile.getPath()));
 			logger.log(error, Severity.WARNING);
 		}
-
-		logger.log(String.format("Completed GeoTools Parsing for %s at temporary file %s", dataResource.getDataId(), fileName),
-				Severity.INFORMATIONAL, new AuditElement(INGEST, "completeParsingGeoTiff", fileName));
-
-		// Return the metadata
-		return dataResource;
 	}
 
 	/**
-	 * Gets the GridCoverage2D for the GeoTIFF file.
+	 * Gets the GridCoverage2D reader for a local copy of the GeoTIFF file.
 	 * 
 	 * @param dataResource
 	 *            The DataResource to gather GeoTIFF source info
-	 * @return GridCoverage2D grid coverage
+	 * @return GridCoverage2D grid coverage reader
 	 */
-	private GridCoverage2DReader getGridCoverage(DataResource dataResource, File file)
+	private GridCoverage2DReader getGridCoverageReader(DataResource dataResource, File file)
 			throws AmazonClientException, InvalidInputException, IOException {
-		// Get the file from S3
-		FileAccessFactory fileFactory = ingestUtilities.getFileFactoryForDataResource(dataResource);
-		InputStream tiffFileStream = fileFactory.getFile(((RasterDataType) dataResource.getDataType()).getLocation());
-		FileUtils.copyInputStreamToFile(tiffFileStream, file);
+		// Get the file from S3, or from the local spool if it was already downloaded during this Load
+		ingestUtilities.copyToLocalFile(dataResource, file);
 
 		// Read the coverage file
 		AbstractGridFormat format = GridFormatFinder.findFormat(file);
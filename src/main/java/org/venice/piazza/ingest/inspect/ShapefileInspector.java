@@ -17,9 +17,7 @@ package org.venice.piazza.ingest.inspect;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 
-import org.apache.commons.io.FileUtils;
 import org.geotools.data.FeatureSource;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
@@ -38,7 +36,6 @@ import exception.DataInspectException;
 import exception.InvalidInputException;
 import org.venice.piazza.ingest.utility.IngestUtilities;
 import model.data.DataResource;
-import model.data.location.FileAccessFactory;
 import model.data.type.ShapefileDataType;
 import model.job.metadata.SpatialMetadata;
 import model.logger.AuditElement;
@@ -71,10 +68,8 @@ public class ShapefileInspector implements InspectorType {
 	@Override
 	public DataResource inspect(DataResource dataResource, boolean host) throws DataInspectException, AmazonClientException, InvalidInputException, IOException, FactoryException {
 		// Get the Shapefile and write it to disk for temporary use.
-		FileAccessFactory fileFactory = ingestUtilities.getFileFactoryForDataResource(dataResource);
-		InputStream shapefileStream = fileFactory.getFile(((ShapefileDataType) dataResource.getDataType()).getLocation());
 		File shapefileZip = new File(String.format("%s%s%s.%s", DATA_TEMP_PATH, File.separator, dataResource.getDataId(), "zip"));
-		FileUtils.copyInputStreamToFile(shapefileStream, shapefileZip);
+		ingestUtilities.copyToLocalFile(dataResource, shapefileZip);
 
 		// Unzip the Shapefile into a temporary directory, which will allow us
 		// to parse the Shapefile's sidecar files.
@@ -21,16 +21,14 @@ import java.util.Map;
 
 import org.geotools.data.DataStore;
 import org.geotools.data.DataStoreFinder;
-import org.geotools.data.DefaultTransaction;
 import org.geotools.data.FeatureSource;
-import org.geotools.data.Transaction;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.feature.FeatureIterator;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -38,9 +36,12 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.AmazonClientException;
+import com.vividsolutions.jts.geom.Geometry;
 
 import exception.DataInspectException;
 import exception.InvalidInputException;
+import org.venice.piazza.ingest.persist.PostGisDataStoreManager;
+import org.venice.piazza.ingest.persist.PostGisFeatureLoader;
 import org.venice.piazza.ingest.utility.IngestUtilities;
 import model.data.DataResource;
 import model.data.type.PostGISDataType;
@@ -63,19 +64,13 @@ public class WfsInspector implements InspectorType {
 	private IngestUtilities ingestUtilities;
 	@Autowired
 	private PiazzaLogger logger;
+	@Autowired
+	private PostGisFeatureLoader featureLoader;
 	private static final String CAPABILITIES_TEMPLATE = "%s?SERVICE=wfs&REQUEST=GetCapabilities&VERSION=%s";
-	@Value("${vcap.services.pz-postgres.credentials.db_host}")
-	private String POSTGRES_HOST;
-	@Value("${vcap.services.pz-postgres.credentials.db_port}")
-	private String POSTGRES_PORT;
+	@Autowired
+	private PostGisDataStoreManager postGisDataStoreManager;
 	@Value("${vcap.services.pz-postgres.credentials.db_name}")
 	private String POSTGRES_DB_NAME;
-	@Value("${vcap.services.pz-postgres.credentials.username}")
-	private String POSTGRES_USER;
-	@Value("${vcap.services.pz-postgres.credentials.password}")
-	private String POSTGRES_PASSWORD;
-	@Value("${postgres.schema}")
-	private String POSTGRES_SCHEMA;
 
 	private static final Logger LOG = LoggerFactory.getLogger(WfsInspector.class);
 
@@ -87,94 +82,96 @@ public class WfsInspector implements InspectorType {
 		// specified Feature Type
 		FeatureSource<SimpleFeatureType, SimpleFeature> wfsFeatureSource = getWfsFeatureSource(dataResource);
 
-		// Get the Bounding Box, populate the Spatial Metadata
-		SpatialMetadata spatialMetadata = new SpatialMetadata();
-		ReferencedEnvelope envelope = wfsFeatureSource.getBounds();
-		spatialMetadata.setMinX(envelope.getMinX());
-		spatialMetadata.setMinY(envelope.getMinY());
-		spatialMetadata.setMaxX(envelope.getMaxX());
-		spatialMetadata.setMaxY(envelope.getMaxY());
-		spatialMetadata.setNumFeatures(wfsFeatureSource.getFeatures().size());
-
-		// Get the SRS and EPSG codes
-		spatialMetadata.setCoordinateReferenceSystem(wfsFeatureSource.getInfo().getCRS().toString());
-		spatialMetadata.setEpsgCode(CRS.lookupEpsgCode(wfsFeatureSource.getInfo().getCRS(), true));
-
-		// Set the Spatial Metadata
-		dataResource.spatialMetadata = spatialMetadata;
-
-		// Populate the projected EPSG:4326 spatial metadata
 		try {
-			dataResource.spatialMetadata.setProjectedSpatialMetadata(ingestUtilities.getProjectedSpatialMetadata(spatialMetadata));
-		} catch (Exception exception) {
-			String error = String.format("Could not project the spatial metadata for Data %s because of exception: %s",
-					dataResource.getDataId(), exception.getMessage());
-			LOG.error(error, exception);
-			if (logger != null) {
-				logger.log(error, Severity.WARNING);
+			// Read the features from the WFS once. The bounding box and count are accumulated as they are read, and, if
+			// the Data is to be hosted, the same features are loaded into PostGIS.
+			CoordinateReferenceSystem crs = wfsFeatureSource.getInfo().getCRS();
+			ReferencedEnvelope envelope = new ReferencedEnvelope(crs);
+			long numFeatures;
+			try (FeatureIterator<SimpleFeature> features = wfsFeatureSource.getFeatures().features()) {
+				BoundsIterator boundsIterator = new BoundsIterator(features, envelope);
+				if (host) {
+					copyWfsToPostGis(dataResource, wfsFeatureSource.getSchema(), boundsIterator);
+				} else {
+					while (boundsIterator.hasNext()) {
+						boundsIterator.next();
+					}
+				}
+				numFeatures = boundsIterator.getCount();
 			}
-		}
 
-		// If this Data Source is to be hosted within the Piazza PostGIS, then
-		// copy that data as a new table in the database.
-		if (host) {
-			copyWfsToPostGis(dataResource, wfsFeatureSource);
+			// Populate the Spatial Metadata
+			SpatialMetadata spatialMetadata = new SpatialMetadata();
+			spatialMetadata.setMinX(envelope.getMinX());
+			spatialMetadata.setMinY(envelope.getMinY());
+			spatialMetadata.setMaxX(envelope.getMaxX());
+			spatialMetadata.setMaxY(envelope.getMaxY());
+			spatialMetadata.setNumFeatures((int) numFeatures);
+
+			// Get the SRS and EPSG codes
+			spatialMetadata.setCoordinateReferenceSystem(crs.toString());
+			spatialMetadata.setEpsgCode(CRS.lookupEpsgCode(crs, true));
+
+			// Set the Spatial Metadata
+			dataResource.spatialMetadata = spatialMetadata;
+
+			// Populate the projected EPSG:4326 spatial metadata
+			try {
+				dataResource.spatialMetadata.setProjectedSpatialMetadata(ingestUtilities.getProjectedSpatialMetadata(spatialMetadata));
+			} catch (Exception exception) {
+				String error = String.format("Could not project the spatial metadata for Data %s because of exception: %s",
+						dataResource.getDataId(), exception.getMessage());
+				LOG.error(error, exception);
+				if (logger != null) {
+					logger.log(error, Severity.WARNING);
+				}
+			}
+		} finally {
+			// Clean up Resources
+			wfsFeatureSource.getDataStore().dispose();
 		}
 
-		// Clean up Resources
-		wfsFeatureSource.getDataStore().dispose();
-
 		// Return the Populated Metadata
 		return dataResource;
 	}
 
 	/**
-	 * Copies the WFS Resource into a new Piazza PostGIS table.
+	 * Copies the WFS features into a new Piazza PostGIS table.
 	 * 
 	 * @param dataResource
 	 *            The WFS Data Resource to copy.
-	 * @param featureSource
-	 *            GeoTools Feature source for WFS.
+	 * @param wfsSchema
+	 *            The schema of the WFS Feature Type
+	 * @param features
+	 *            The features read from the WFS. Consumed, but not closed.
 	 * @throws IOException
 	 */
-	private void copyWfsToPostGis(DataResource dataResource, FeatureSource<SimpleFeatureType, SimpleFeature> wfsFeatureSource)
+	private void copyWfsToPostGis(DataResource dataResource, SimpleFeatureType wfsSchema, BoundsIterator features)
 			throws IOException {
-		// Create a Connection to the Piazza PostGIS Database for writing.
-		DataStore postGisStore = GeoToolsUtil.getPostGisDataStore(POSTGRES_HOST, POSTGRES_PORT, POSTGRES_SCHEMA, POSTGRES_DB_NAME,
-				POSTGRES_USER, POSTGRES_PASSWORD);
+		// Get the shared Piazza PostGIS Data Store for writing.
+		DataStore postGisStore = postGisDataStoreManager.getDataStore();
 
 		// Create the Schema in the Data Store
 		String tableName = dataResource.getDataId();
-		SimpleFeatureType wfsSchema = wfsFeatureSource.getSchema();
 		SimpleFeatureType postGisSchema = GeoToolsUtil.cloneFeatureType(wfsSchema, tableName);
 		postGisStore.createSchema(postGisSchema);
-		SimpleFeatureStore postGisFeatureStore = (SimpleFeatureStore) postGisStore.getFeatureSource(tableName);
 
 		logger.log(String.format("Copying Data %s to PostGIS Table %s", dataResource.getDataId(), tableName), Severity.INFORMATIONAL,
 				new AuditElement("ingest", "copyWfsToPostGisTable", tableName));
 
-		
-		try (Transaction transaction = new DefaultTransaction()) {
-					
-			// Get the Features from the WFS and add them to the PostGIS store
-			SimpleFeatureCollection wfsFeatures = (SimpleFeatureCollection) wfsFeatureSource.getFeatures();
-			if (wfsFeatures.size() == 0) {
-				transaction.close();
+		try {
+			// Bulk load the Features from the WFS into the PostGIS store. The number of features is not known until they
+			// have all been read, so none is given for progress updates.
+			String jobId = dataResource.getMetadata() != null ? dataResource.getMetadata().createdByJobId : null;
+			featureLoader.loadFeatures(postGisStore, tableName, features, -1, jobId);
+			if (features.getCount() == 0) {
 				throw new IOException("No features could be collected from the WFS. Nothing to store.");
 			}
-			postGisFeatureStore.addFeatures(wfsFeatures);
-			
-			// Commit the changes
-			transaction.commit();
 		} catch (Exception exception) {
 			LOG.error("Error during WFS to PostGIS transaction, had to roll back changes.", exception);
 			
 			// Rethrow
 			throw new IOException(exception.getMessage());
-		} finally {
-			
-			// Clean up the PostGIS Store
-			postGisStore.dispose();
 		}
 
 		// Update the Metadata of the DataResource to the new PostGIS table, and
@@ -202,4 +199,43 @@ public class WfsInspector implements InspectorType {
 		FeatureSource<SimpleFeatureType, SimpleFeature> featureSource = dataStore.getFeatureSource(wfsResource.getFeatureType());
 		return featureSource;
 	}
+
+	/**
+	 * Passes through the features of an iterator, counting them and expanding an envelope to include their bounds.
+	 */
+	private static class BoundsIterator implements FeatureIterator<SimpleFeature> {
+		private final FeatureIterator<SimpleFeature> features;
+		private final ReferencedEnvelope envelope;
+		private long count = 0;
+
+		BoundsIterator(FeatureIterator<SimpleFeature> features, ReferencedEnvelope envelope) {
+			this.features = features;
+			this.envelope = envelope;
+		}
+
+		long getCount() {
+			return count;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return features.hasNext();
+		}
+
+		@Override
+		public SimpleFeature next() {
+			SimpleFeature feature = features.next();
+			Object geometry = feature.getDefaultGeometry();
+			if (geometry instanceof Geometry) {
+				envelope.expandToInclude(((Geometry) geometry).getEnvelopeInternal());
+			}
+			count++;
+			return feature;
+		}
+
+		@Override
+		public void close() {
+			features.close();
+		}
+	}
 }
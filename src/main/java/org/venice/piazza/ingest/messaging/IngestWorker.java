@@ -15,13 +15,12 @@
  **/
 package org.venice.piazza.ingest.messaging;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
@@ -30,13 +29,12 @@ import org.springframework.stereotype.Component;
 
 import com.amazonaws.AmazonClientException;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import exception.DataInspectException;
 import exception.InvalidInputException;
 import org.venice.piazza.ingest.inspect.Inspector;
 import org.venice.piazza.ingest.utility.IngestUtilities;
-import messaging.job.JobMessageFactory;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
 import messaging.job.WorkerCallback;
 import model.data.DataResource;
 import model.data.FileRepresentation;
@@ -78,11 +76,7 @@ public class IngestWorker {
 	private UUIDFactory uuidFactory;
 
 	@Autowired
-	private Queue updateJobsQueue;
-	@Autowired
-	private RabbitTemplate rabbitTemplate;
-	@Autowired
-	private ObjectMapper mapper;
+	private OutboundMessagePublisher outboundPublisher;
 
 	private static final Logger LOG = LoggerFactory.getLogger(IngestWorker.class);
 	private static final String INGEST_EVENT_TYPE_NAME = "piazza:ingest";
@@ -134,13 +128,9 @@ public class IngestWorker {
 			JobProgress jobProgress = new JobProgress(0);
 			StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_RUNNING, jobProgress);
 			statusUpdate.setJobId(job.getJobId());
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					mapper.writeValueAsString(statusUpdate));
-			// Hack hack hack
-			Thread.sleep(100);
-			// This sleep gets around a RabbitMQ/SpringAMQP race condition where the two messages being sent are
-			// received at the same time, which causes a DB race condition where a Successful Job message gets handled
-			// first and THEN gets its status sent to running.
+			// Updates are published in the order they are sent, and the Job Manager applies the updates for a Job in
+			// that order, so the Success status below cannot be overwritten by this Running status.
+			outboundPublisher.publishStatusUpdate(statusUpdate);
 
 			if (ingestJob.getData().getDataType() instanceof FileRepresentation) {
 				processFileRepresentation(ingestJob, dataResource);
@@ -170,8 +160,7 @@ public class IngestWorker {
 			// The result of this Job was creating a resource at the specified
 			// Id.
 			statusUpdate.setResult(new DataResult(dataResource.getDataId()));
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					mapper.writeValueAsString(statusUpdate));
+			outboundPublisher.publishStatusUpdate(statusUpdate);
 
 			// Console Logging
 			logger.log(String.format("Successful Load of Data %s for Job %s", dataResource.getDataId(), job.getJobId()),
@@ -197,6 +186,10 @@ public class IngestWorker {
 			handleException(job.getJobId(), exception);
 			LOG.error("An unexpected error occurred while processing the Job Message: " + exception.getMessage(), exception);
 		} finally {
+			// Remove any spooled source file that was not consumed by the Inspector
+			if ((dataResource != null) && (dataResource.getDataId() != null)) {
+				ingestUtilities.deleteSpoolFile(dataResource);
+			}
 			if (callback != null) {
 				callback.onComplete(job.getJobId());
 			}
@@ -209,24 +202,32 @@ public class IngestWorker {
 			throws InvalidInputException, IOException {
 		FileRepresentation fileRep = (FileRepresentation) ingestJob.getData().getDataType();
 		FileLocation fileLoc = fileRep.getLocation();
-		if (fileLoc != null) {
+		if (fileLoc == null) {
+			return;
+		}
+
+		// Copy to Piazza S3 bucket if hosted is true. If already in S3, make sure it's different than the Piazza S3
+		boolean copyToPiazza = ingestJob.getHost().booleanValue() && ((fileLoc instanceof FolderShare)
+				|| ((fileLoc instanceof S3FileStore) && !((S3FileStore) fileLoc).getBucketName().equals(AMAZONS3_BUCKET_NAME)));
+		if (!copyToPiazza) {
 			fileLoc.setFileSize(ingestUtilities.getFileSize(dataResource));
+			return;
 		}
 
-		if (ingestJob.getHost().booleanValue() && (fileLoc != null)) {
-			// Copy to Piazza S3 bucket if hosted is true. If already in
-			// S3, make sure it's different than the Piazza S3
-			// Depending on the Type of file
-			if (fileLoc instanceof S3FileStore) {
-				S3FileStore s3FS = (S3FileStore) fileLoc;
-				if (!s3FS.getBucketName().equals(AMAZONS3_BUCKET_NAME)) {
-					ingestUtilities.copyS3Source(dataResource);
-					fileRep.setLocation(new S3FileStore(AMAZONS3_BUCKET_NAME, dataResource.getDataId() + "-" + s3FS.getFileName(),
-							s3FS.getFileSize(), s3FS.getDomainName()));
-				}
-			} else if (fileLoc instanceof FolderShare) {
-				ingestUtilities.copyS3Source(dataResource);
-			}
+		if (ingestUtilities.canCopyS3SourceServerSide(dataResource)) {
+			// Copy within S3, so the file is never downloaded. The Inspector will read it from the new location.
+			fileLoc.setFileSize(ingestUtilities.getFileSize(dataResource));
+			ingestUtilities.copyS3Source(dataResource);
+		} else {
+			// Download the source once into the local spool. This measures the file, and the same spooled copy is
+			// uploaded to the Piazza bucket and then read by the Inspector.
+			File spoolFile = ingestUtilities.spoolDataResource(dataResource);
+			ingestUtilities.copyS3Source(dataResource, spoolFile);
+		}
+		if (fileLoc instanceof S3FileStore) {
+			S3FileStore s3FS = (S3FileStore) fileLoc;
+			fileRep.setLocation(new S3FileStore(AMAZONS3_BUCKET_NAME, dataResource.getDataId() + "-" + s3FS.getFileName(),
+					s3FS.getFileSize(), s3FS.getDomainName()));
 		}
 	}
 
@@ -245,8 +246,7 @@ public class IngestWorker {
 			StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_ERROR);
 			statusUpdate.setResult(new ErrorResult("Error while Loading the Data.", exception.getMessage()));
 			statusUpdate.setJobId(jobId);
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					mapper.writeValueAsString(statusUpdate));
+			outboundPublisher.publishStatusUpdate(statusUpdate);
 		} catch (JsonProcessingException jsonException) {
 			LOG.info("Could update Job Manager with failure event in Loader Worker. Error creating message: " + jsonException.getMessage(),
 					jsonException);
@@ -257,8 +257,7 @@ public class IngestWorker {
 		StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_CANCELLED);
 		statusUpdate.setJobId(jobId);
 		try {
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					mapper.writeValueAsString(statusUpdate));
+			outboundPublisher.publishStatusUpdate(statusUpdate);
 		} catch (JsonProcessingException jsonException) {
 			String error = String.format(
 					"Error sending Cancelled Status from Job %s: %s. The Job was cancelled, but its status will not be updated in the Job Manager.",
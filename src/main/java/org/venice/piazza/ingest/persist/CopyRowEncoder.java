@@ -0,0 +1,129 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.ingest.persist;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.referencing.CRS;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.referencing.FactoryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Encodes features as the CSV rows of a PostgreSQL COPY, with geometries written as hex EWKB in the SRID of their
+ * column.
+ * <p>
+ * Instances hold a WKB Writer, and are not thread-safe; create one per load.
+ * </p>
+ */
+public class CopyRowEncoder {
+	private static final Logger LOG = LoggerFactory.getLogger(CopyRowEncoder.class);
+
+	private final List<AttributeDescriptor> columns;
+	private final int[] srids;
+	private final WKBWriter wkbWriter = new WKBWriter(2, true);
+
+	/**
+	 * @param columns
+	 *            The columns of the target table, in the order they are listed in the COPY statement
+	 */
+	public CopyRowEncoder(List<AttributeDescriptor> columns) {
+		this.columns = columns;
+		this.srids = getColumnSrids(columns);
+	}
+
+	/**
+	 * Appends a single feature as a CSV row. Null values are written as unquoted empty fields, which COPY reads as
+	 * NULL; all other values are quoted.
+	 *
+	 * @param batch
+	 *            The rows to append to
+	 * @param feature
+	 *            The feature to encode
+	 */
+	public void appendRow(StringBuilder batch, SimpleFeature feature) {
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				batch.append(',');
+			}
+			Object value = feature.getAttribute(columns.get(i).getLocalName());
+			if (value != null) {
+				batch.append('"').append(formatValue(value, srids[i]).replace("\"", "\"\"")).append('"');
+			}
+		}
+		batch.append('\n');
+	}
+
+	/**
+	 * @return The SRID written with the geometries of each column; zero for non-geometry columns, and for geometry
+	 *         columns whose SRID could not be determined
+	 */
+	public int[] getSrids() {
+		return srids.clone();
+	}
+
+	private String formatValue(Object value, int srid) {
+		if (value instanceof Geometry) {
+			// Set the SRID on a copy, so that the feature being loaded is not modified
+			Geometry geometry = (Geometry) ((Geometry) value).clone();
+			geometry.setSRID(srid);
+			return WKBWriter.toHex(wkbWriter.write(geometry));
+		}
+		if ((value instanceof Date) && !(value instanceof java.sql.Date) && !(value instanceof java.sql.Time)) {
+			return new Timestamp(((Date) value).getTime()).toString();
+		}
+		return value.toString();
+	}
+
+	/**
+	 * Gets the SRID of each geometry column, as reported by PostGIS, so that the EWKB matches the column constraint.
+	 * Falls back to the EPSG code of the column's Coordinate Reference System.
+	 */
+	private static int[] getColumnSrids(List<AttributeDescriptor> columns) {
+		int[] srids = new int[columns.size()];
+		for (int i = 0; i < columns.size(); i++) {
+			if (columns.get(i) instanceof GeometryDescriptor) {
+				GeometryDescriptor descriptor = (GeometryDescriptor) columns.get(i);
+				Object nativeSrid = descriptor.getUserData().get(JDBCDataStore.JDBC_NATIVE_SRID);
+				if (nativeSrid instanceof Integer) {
+					srids[i] = (Integer) nativeSrid;
+				} else if (descriptor.getCoordinateReferenceSystem() != null) {
+					srids[i] = lookupEpsgCode(descriptor);
+				}
+			}
+		}
+		return srids;
+	}
+
+	private static int lookupEpsgCode(GeometryDescriptor descriptor) {
+		try {
+			Integer code = CRS.lookupEpsgCode(descriptor.getCoordinateReferenceSystem(), false);
+			return code != null ? code : 0;
+		} catch (FactoryException exception) {
+			LOG.warn("Could not determine EPSG code for geometry column " + descriptor.getLocalName(), exception);
+			return 0;
+		}
+	}
+}
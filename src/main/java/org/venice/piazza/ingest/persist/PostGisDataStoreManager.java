@@ -0,0 +1,203 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.ingest.persist;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.geotools.data.DataStore;
+import org.geotools.data.postgis.PostgisNGDataStoreFactory;
+import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.jdbc.JDBCDataStoreFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Owns the single GeoTools PostGIS Data Store used for all feature reads and writes against the Piazza database, by
+ * both Ingest and Access. The Data Store is backed by a bounded, validated connection pool that is created on first use
+ * and kept for the life of the application.
+ * <p>
+ * The Data Store is shared. Callers must not dispose of it.
+ * </p>
+ */
+@Component
+public class PostGisDataStoreManager {
+	@Value("${vcap.services.pz-postgres.credentials.db_host}")
+	private String POSTGRES_HOST;
+	@Value("${vcap.services.pz-postgres.credentials.db_port}")
+	private String POSTGRES_PORT;
+	@Value("${vcap.services.pz-postgres.credentials.db_name}")
+	private String POSTGRES_DB_NAME;
+	@Value("${vcap.services.pz-postgres.credentials.username}")
+	private String POSTGRES_USER;
+	@Value("${vcap.services.pz-postgres.credentials.password}")
+	private String POSTGRES_PASSWORD;
+	@Value("${postgres.schema}")
+	private String POSTGRES_SCHEMA;
+	@Value("${postgis.pool.max.size:20}")
+	private int POOL_MAX_SIZE;
+	@Value("${postgis.pool.min.idle:2}")
+	private int POOL_MIN_IDLE;
+	@Value("${postgis.pool.max.wait.ms:30000}")
+	private int POOL_MAX_WAIT_MS;
+	@Value("${postgis.pool.validation.interval.ms:30000}")
+	private long POOL_VALIDATION_INTERVAL_MS;
+	@Value("${postgis.fetch.size:1000}")
+	private int FETCH_SIZE;
+
+	private static final Logger LOG = LoggerFactory.getLogger(PostGisDataStoreManager.class);
+	private static final String VALIDATION_QUERY = "SELECT 1";
+	private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+	private DataSource dataSource;
+	private JDBCDataStore dataStore;
+
+	/**
+	 * Gets the shared PostGIS Data Store, creating it and its connection pool on first use.
+	 *
+	 * @return The Data Store for the Piazza PostGIS database. This must not be disposed.
+	 */
+	public synchronized DataStore getDataStore() throws IOException {
+		if (dataStore == null) {
+			DataSource pool = createDataSource();
+			try {
+				dataStore = createDataStore(pool);
+			} catch (IOException | RuntimeException exception) {
+				pool.close(true);
+				throw exception;
+			}
+			dataSource = pool;
+			LOG.info("Created shared PostGIS Data Store for {}:{}/{} with a pool of up to {} connections", POSTGRES_HOST, POSTGRES_PORT,
+					POSTGRES_DB_NAME, POOL_MAX_SIZE);
+		}
+		return dataStore;
+	}
+
+	/**
+	 * Checks that a connection can be borrowed from the pool and is valid. Does not create the pool if it has not yet
+	 * been used.
+	 *
+	 * @return True if the pool has a valid connection to the database, false if the database is unreachable or the pool
+	 *         has not yet been created.
+	 */
+	public boolean isHealthy() {
+		DataSource pool = getDataSource();
+		if (pool == null) {
+			return false;
+		}
+		try (Connection connection = pool.getConnection()) {
+			return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+		} catch (SQLException exception) {
+			LOG.error("PostGIS connection pool health check failed.", exception);
+			return false;
+		}
+	}
+
+	/**
+	 * Gets the metrics of the connection pool: the number of active, idle and waiting connections, as well as the
+	 * configured bounds.
+	 *
+	 * @return The pool metrics. Empty if the pool has not yet been created.
+	 */
+	public Map<String, Object> getPoolStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		DataSource pool = getDataSource();
+		if (pool != null) {
+			stats.put("active", pool.getActive());
+			stats.put("idle", pool.getIdle());
+			stats.put("waiting", pool.getWaitCount());
+			stats.put("size", pool.getSize());
+			stats.put("maxSize", pool.getMaxActive());
+		}
+		return stats;
+	}
+
+	/**
+	 * Disposes of the Data Store and closes all pooled connections.
+	 */
+	@PreDestroy
+	public synchronized void shutdown() {
+		if (dataStore != null) {
+			dataStore.dispose();
+			dataStore = null;
+		}
+		if (dataSource != null) {
+			dataSource.close(true);
+			dataSource = null;
+		}
+	}
+
+	private synchronized DataSource getDataSource() {
+		return dataSource;
+	}
+
+	/**
+	 * Creates the connection pool. Connections are validated when borrowed (at most once per validation interval) and
+	 * while idle, so that connections dropped by the database are replaced rather than handed out.
+	 */
+	private DataSource createDataSource() {
+		PoolProperties properties = new PoolProperties();
+		properties.setDriverClassName("org.postgresql.Driver");
+		properties.setUrl(String.format("jdbc:postgresql://%s:%s/%s", POSTGRES_HOST, POSTGRES_PORT, POSTGRES_DB_NAME));
+		properties.setUsername(POSTGRES_USER);
+		properties.setPassword(POSTGRES_PASSWORD);
+		properties.setMaxActive(POOL_MAX_SIZE);
+		properties.setMaxIdle(POOL_MAX_SIZE);
+		properties.setMinIdle(POOL_MIN_IDLE);
+		properties.setInitialSize(POOL_MIN_IDLE);
+		properties.setMaxWait(POOL_MAX_WAIT_MS);
+		properties.setValidationQuery(VALIDATION_QUERY);
+		properties.setValidationQueryTimeout(VALIDATION_TIMEOUT_SECONDS);
+		properties.setValidationInterval(POOL_VALIDATION_INTERVAL_MS);
+		properties.setTestOnBorrow(true);
+		properties.setTestWhileIdle(true);
+		properties.setTimeBetweenEvictionRunsMillis((int) POOL_VALIDATION_INTERVAL_MS);
+		// Reset connections returned with a transaction left open, such as by the bulk COPY loader
+		properties.setDefaultAutoCommit(true);
+		properties.setRollbackOnReturn(true);
+		properties.setJmxEnabled(false);
+		return new DataSource(properties);
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private JDBCDataStore createDataStore(DataSource pool) throws IOException {
+		// The Data Source is passed through the parameters, so GeoTools uses this pool rather than creating its own
+		Map params = new HashMap();
+		params.put(PostgisNGDataStoreFactory.DBTYPE.key, "postgis");
+		params.put(PostgisNGDataStoreFactory.HOST.key, POSTGRES_HOST);
+		params.put(PostgisNGDataStoreFactory.PORT.key, POSTGRES_PORT);
+		params.put(PostgisNGDataStoreFactory.SCHEMA.key, POSTGRES_SCHEMA);
+		params.put(PostgisNGDataStoreFactory.DATABASE.key, POSTGRES_DB_NAME);
+		params.put(PostgisNGDataStoreFactory.USER.key, POSTGRES_USER);
+		params.put(PostgisNGDataStoreFactory.PASSWD.key, POSTGRES_PASSWORD);
+		params.put(PostgisNGDataStoreFactory.PREPARED_STATEMENTS.key, Boolean.TRUE);
+		params.put(PostgisNGDataStoreFactory.LOOSEBBOX.key, Boolean.TRUE);
+		params.put(JDBCDataStoreFactory.DATASOURCE.key, pool);
+		JDBCDataStore store = new PostgisNGDataStoreFactory().createDataStore(params);
+		// Read features through server-side cursors, so large tables are not loaded into memory
+		store.setFetchSize(FETCH_SIZE);
+		return store;
+	}
+}
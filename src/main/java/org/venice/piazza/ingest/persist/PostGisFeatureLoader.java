@@ -0,0 +1,256 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.ingest.persist;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.DefaultTransaction;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.jdbc.JDBCDataStore;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import model.job.JobProgress;
+import model.logger.AuditElement;
+import model.logger.Severity;
+import model.status.StatusUpdate;
+import util.PiazzaLogger;
+
+/**
+ * Bulk loads features into a PostGIS table using the PostgreSQL COPY protocol. Features are streamed from the source
+ * and written to the database in batches, with geometries encoded as EWKB, rather than being inserted one row at a time.
+ * Progress of the load is reported to the Job Manager as the batches are written.
+ *
+ * <p>
+ * If the target Data Store is not a JDBC Data Store, then the features are appended through a GeoTools Feature Writer.
+ * </p>
+ */
+@Component
+public class PostGisFeatureLoader {
+	@Autowired
+	private PiazzaLogger logger;
+	@Autowired
+	private OutboundMessagePublisher outboundPublisher;
+
+	@Value("${postgis.copy.batch.size:5000}")
+	private int COPY_BATCH_SIZE;
+
+	private static final Logger LOG = LoggerFactory.getLogger(PostGisFeatureLoader.class);
+	private static final String INGEST = "ingest";
+	private static final String COPY_TEMPLATE = "COPY %s (%s) FROM STDIN WITH (FORMAT csv)";
+
+	/**
+	 * Loads all features from the source into the existing PostGIS table.
+	 *
+	 * @param postGisStore
+	 *            The Data Store for the Piazza PostGIS database. The table must already exist in this store.
+	 * @param tableName
+	 *            The name of the table to load the features into
+	 * @param featureSource
+	 *            The source of the features to load
+	 * @param jobId
+	 *            The Id of the Job performing the load, used for progress updates. May be null.
+	 * @return The number of features loaded
+	 */
+	public long loadFeatures(DataStore postGisStore, String tableName, FeatureSource<SimpleFeatureType, SimpleFeature> featureSource,
+			String jobId) throws IOException {
+		long totalFeatures = featureSource.getCount(Query.ALL);
+		try (SimpleFeatureIterator iterator = ((SimpleFeatureCollection) featureSource.getFeatures()).features()) {
+			return loadFeatures(postGisStore, tableName, iterator, totalFeatures, jobId);
+		}
+	}
+
+	/**
+	 * Loads all remaining features from the iterator into the existing PostGIS table. The iterator is consumed, but
+	 * not closed.
+	 *
+	 * @param postGisStore
+	 *            The Data Store for the Piazza PostGIS database. The table must already exist in this store.
+	 * @param tableName
+	 *            The name of the table to load the features into
+	 * @param features
+	 *            The features to load
+	 * @param totalFeatures
+	 *            The expected number of features, used for progress updates. Negative if not known.
+	 * @param jobId
+	 *            The Id of the Job performing the load, used for progress updates. May be null.
+	 * @return The number of features loaded
+	 */
+	public long loadFeatures(DataStore postGisStore, String tableName, FeatureIterator<SimpleFeature> features, long totalFeatures,
+			String jobId) throws IOException {
+		long startTime = System.currentTimeMillis();
+		long numFeatures;
+		if (postGisStore instanceof JDBCDataStore) {
+			numFeatures = copyFeatures((JDBCDataStore) postGisStore, tableName, features, totalFeatures, jobId);
+		} else {
+			numFeatures = writeFeatures(postGisStore, tableName, features);
+		}
+
+		long elapsed = Math.max(System.currentTimeMillis() - startTime, 1);
+		logger.log(
+				String.format("Loaded %s features into PostGIS table %s in %s ms (%s features/second).", numFeatures, tableName, elapsed,
+						numFeatures * 1000 / elapsed),
+				Severity.INFORMATIONAL, new AuditElement(INGEST, "bulkLoadPostGisFeatures", tableName));
+		return numFeatures;
+	}
+
+	/**
+	 * Streams the features into the table through a single COPY statement, flushing the encoded rows in batches.
+	 */
+	private long copyFeatures(JDBCDataStore postGisStore, String tableName, FeatureIterator<SimpleFeature> features, long totalFeatures,
+			String jobId) throws IOException {
+		List<AttributeDescriptor> columns = postGisStore.getSchema(tableName).getAttributeDescriptors();
+		CopyRowEncoder encoder = new CopyRowEncoder(columns);
+		String copySql = String.format(COPY_TEMPLATE, getQualifiedTableName(postGisStore, tableName), getColumnList(columns));
+
+		long numFeatures = 0;
+		int lastPercent = 0;
+		try (Connection connection = postGisStore.getDataSource().getConnection()) {
+			connection.setAutoCommit(false);
+			CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql);
+			try {
+				StringBuilder batch = new StringBuilder();
+				int batchCount = 0;
+				while (features.hasNext()) {
+					encoder.appendRow(batch, features.next());
+					batchCount++;
+					if (batchCount >= COPY_BATCH_SIZE) {
+						writeBatch(copyIn, batch);
+						numFeatures += batchCount;
+						batchCount = 0;
+						lastPercent = reportProgress(jobId, numFeatures, totalFeatures, lastPercent);
+					}
+				}
+				writeBatch(copyIn, batch);
+				numFeatures += batchCount;
+				copyIn.endCopy();
+				connection.commit();
+			} catch (SQLException | RuntimeException exception) {
+				if (copyIn.isActive()) {
+					copyIn.cancelCopy();
+				}
+				connection.rollback();
+				throw exception;
+			}
+		} catch (SQLException exception) {
+			String error = String.format("Error copying features into PostGIS table %s: %s", tableName, exception.getMessage());
+			LOG.error(error, exception);
+			logger.log(error, Severity.ERROR, new AuditElement(INGEST, "failedToBulkLoadPostGisFeatures", tableName));
+			throw new IOException(error, exception);
+		}
+
+		return numFeatures;
+	}
+
+	/**
+	 * Appends the features through a GeoTools Feature Writer, for Data Stores that do not support COPY.
+	 */
+	private long writeFeatures(DataStore dataStore, String tableName, FeatureIterator<SimpleFeature> features) throws IOException {
+		long numFeatures = 0;
+		try (Transaction transaction = new DefaultTransaction();
+				FeatureWriter<SimpleFeatureType, SimpleFeature> writer = dataStore.getFeatureWriterAppend(tableName, transaction)) {
+			while (features.hasNext()) {
+				SimpleFeature feature = features.next();
+				SimpleFeature newFeature = writer.next();
+				for (AttributeDescriptor descriptor : newFeature.getFeatureType().getAttributeDescriptors()) {
+					newFeature.setAttribute(descriptor.getLocalName(), feature.getAttribute(descriptor.getLocalName()));
+				}
+				writer.write();
+				numFeatures++;
+			}
+			transaction.commit();
+		}
+		return numFeatures;
+	}
+
+	/**
+	 * Sends a Running status update with the percentage of features loaded. Updates are only sent when the whole
+	 * percentage has increased, and never report completion; the Worker reports that once the Load is finished.
+	 *
+	 * @return The percentage most recently reported
+	 */
+	private int reportProgress(String jobId, long numFeatures, long totalFeatures, int lastPercent) {
+		if ((jobId == null) || (totalFeatures <= 0)) {
+			return lastPercent;
+		}
+		int percent = (int) Math.min(numFeatures * 100 / totalFeatures, 99);
+		if (percent <= lastPercent) {
+			return lastPercent;
+		}
+		try {
+			StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_RUNNING, new JobProgress(percent));
+			statusUpdate.setJobId(jobId);
+			outboundPublisher.publishStatusUpdate(statusUpdate);
+		} catch (JsonProcessingException | AmqpException exception) {
+			LOG.warn(String.format("Could not send load progress for Job %s: %s", jobId, exception.getMessage()), exception);
+		}
+		return percent;
+	}
+
+	private void writeBatch(CopyIn copyIn, StringBuilder batch) throws SQLException {
+		if (batch.length() > 0) {
+			byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+			copyIn.writeToCopy(bytes, 0, bytes.length);
+			batch.setLength(0);
+		}
+	}
+
+	private String getColumnList(List<AttributeDescriptor> columns) {
+		StringBuilder columnList = new StringBuilder();
+		for (AttributeDescriptor column : columns) {
+			if (columnList.length() > 0) {
+				columnList.append(',');
+			}
+			columnList.append(quoteIdentifier(column.getLocalName()));
+		}
+		return columnList.toString();
+	}
+
+	private String getQualifiedTableName(JDBCDataStore postGisStore, String tableName) {
+		String schema = postGisStore.getDatabaseSchema();
+		if ((schema == null) || schema.isEmpty()) {
+			return quoteIdentifier(tableName);
+		}
+		return String.format("%s.%s", quoteIdentifier(schema), quoteIdentifier(tableName));
+	}
+
+	private String quoteIdentifier(String identifier) {
+		return String.format("\"%s\"", identifier.replace("\"", "\"\""));
+	}
+}
@@ -0,0 +1,537 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.ingest.utility;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Streams the features of a GeoJSON FeatureCollection one at a time, using a Jackson token stream to walk the
+ * "features" array, so that the full collection is never held in memory. Each feature is read into a JSON tree and
+ * built directly from it. The bounding box and number of features are accumulated as the features are read.
+ *
+ * <p>
+ * If a feature type is specified, each feature is converted to that type. The feature type is typically inferred by
+ * {@link #inferFeatureType(InputStream, int)}, which takes the types of properties from a bounded sample of the
+ * collection, so features after the sample may hold values that cannot be converted to it. Those values are left null,
+ * and are logged and counted by attribute, as are any properties the type does not contain; see
+ * {@link #getDroppedValues()}.
+ * </p>
+ */
+public class GeoJsonFeatureReader implements FeatureIterator<SimpleFeature> {
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+	private static final String FEATURES = "features";
+	private static final String GEOMETRY = "geometry";
+	private static final String PROPERTIES = "properties";
+	private static final Logger LOG = LoggerFactory.getLogger(GeoJsonFeatureReader.class);
+
+	private final JsonParser parser;
+	private final SimpleFeatureType featureType;
+	private final Envelope bounds = new Envelope();
+	private SimpleFeature nextFeature;
+	private boolean finished = false;
+	private long count = 0;
+	private final Map<String, Long> droppedValues = new LinkedHashMap<String, Long>();
+
+	/**
+	 * Creates a reader over the GeoJSON FeatureCollection.
+	 *
+	 * @param inputStream
+	 *            The GeoJSON FeatureCollection stream. This is closed when the reader is closed.
+	 * @param featureType
+	 *            The type to convert each feature to, or null to type each feature by its own properties
+	 */
+	public GeoJsonFeatureReader(InputStream inputStream, SimpleFeatureType featureType) throws IOException {
+		this.parser = MAPPER.getFactory().createParser(inputStream);
+		this.featureType = featureType;
+		try {
+			seekFeatures();
+		} catch (IOException exception) {
+			parser.close();
+			throw exception;
+		}
+	}
+
+	/**
+	 * Infers the feature type of a GeoJSON FeatureCollection. Property types are taken from the first non-null value
+	 * seen in, at most, the specified number of features from the start of the collection; properties with conflicting
+	 * types are stored as Strings. Integer properties are stored as Longs, so that larger values after the sample still
+	 * fit. The geometry is typed to the common geometry class of the sample, and is always in WGS84.
+	 * <p>
+	 * The properties of the features after the sample are scanned, without building the features, so that properties
+	 * that first appear after the sample are also part of the type.
+	 * </p>
+	 *
+	 * @param inputStream
+	 *            The GeoJSON FeatureCollection stream. This is closed once it has been read.
+	 * @param sampleSize
+	 *            The maximum number of features to sample
+	 * @return The inferred feature type, or null if the collection contains no features
+	 */
+	public static SimpleFeatureType inferFeatureType(InputStream inputStream, int sampleSize) throws IOException {
+		Class<?> geometryBinding = null;
+		Map<String, Class<?>> bindings = new LinkedHashMap<String, Class<?>>();
+		try (GeoJsonFeatureReader reader = new GeoJsonFeatureReader(inputStream, null)) {
+			JsonNode node;
+			while ((reader.count < sampleSize) && ((node = reader.readNode()) != null)) {
+				Class<?> binding = getGeometryBinding(node.get(GEOMETRY));
+				if (binding != null) {
+					geometryBinding = mergeBinding(geometryBinding, binding, Geometry.class);
+				}
+				addBindings(node.get(PROPERTIES), bindings);
+				reader.count++;
+			}
+			if (reader.count == 0) {
+				return null;
+			}
+			reader.scanProperties(bindings);
+		}
+		return buildFeatureType(geometryBinding, bindings);
+	}
+
+	private static SimpleFeatureType buildFeatureType(Class<?> geometryBinding, Map<String, Class<?>> bindings) {
+		SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+		builder.setName("GeoJSON");
+		builder.setCRS(DefaultGeographicCRS.WGS84);
+		builder.add(GEOMETRY, geometryBinding != null ? geometryBinding : Geometry.class);
+		for (Map.Entry<String, Class<?>> binding : bindings.entrySet()) {
+			if (!GEOMETRY.equals(binding.getKey())) {
+				builder.add(binding.getKey(), widenBinding(binding.getValue()));
+			}
+		}
+		return builder.buildFeatureType();
+	}
+
+	private static void addBindings(JsonNode properties, Map<String, Class<?>> bindings) {
+		if ((properties == null) || !properties.isObject()) {
+			return;
+		}
+		Iterator<Map.Entry<String, JsonNode>> fields = properties.fields();
+		while (fields.hasNext()) {
+			Map.Entry<String, JsonNode> field = fields.next();
+			Object value = readValue(field.getValue());
+			if (value != null) {
+				bindings.put(field.getKey(), mergeBinding(bindings.get(field.getKey()), value.getClass(), String.class));
+			}
+		}
+	}
+
+	private static Class<?> mergeBinding(Class<?> current, Class<?> binding, Class<?> conflict) {
+		if ((current == null) || current.equals(binding)) {
+			return binding;
+		}
+		if (Number.class.isAssignableFrom(current) && Number.class.isAssignableFrom(binding)) {
+			return Double.class;
+		}
+		return conflict;
+	}
+
+	/**
+	 * Integer types are widened to Long, as the sample may not include the largest values of the collection.
+	 */
+	private static Class<?> widenBinding(Class<?> binding) {
+		if (Integer.class.equals(binding) || Short.class.equals(binding) || Byte.class.equals(binding)) {
+			return Long.class;
+		}
+		return binding;
+	}
+
+	/**
+	 * @return The number of features read so far
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return The bounding box of the features read so far
+	 */
+	public Envelope getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * @return The number of values that could not be stored in the feature type, and were left null or dropped, by
+	 *         attribute name. Empty if no values were dropped.
+	 */
+	public Map<String, Long> getDroppedValues() {
+		return Collections.unmodifiableMap(droppedValues);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if ((nextFeature == null) && !finished) {
+			try {
+				nextFeature = readFeature();
+			} catch (IOException exception) {
+				throw new UncheckedIOException(exception);
+			}
+		}
+		return nextFeature != null;
+	}
+
+	@Override
+	public SimpleFeature next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException("No more features in the GeoJSON FeatureCollection.");
+		}
+		SimpleFeature feature = nextFeature;
+		nextFeature = null;
+		return feature;
+	}
+
+	@Override
+	public void close() {
+		try {
+			parser.close();
+		} catch (IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+	/**
+	 * Advances the parser to the start of the "features" array of the top level FeatureCollection object.
+	 */
+	private void seekFeatures() throws IOException {
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw new IOException("GeoJSON content is not a FeatureCollection object.");
+		}
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if (FEATURES.equals(fieldName) && (token == JsonToken.START_ARRAY)) {
+				return;
+			}
+			parser.skipChildren();
+		}
+		throw new IOException("GeoJSON FeatureCollection does not contain a features array.");
+	}
+
+	/**
+	 * Reads the next feature object from the array as a JSON tree, or returns null at the end of the array.
+	 */
+	private JsonNode readNode() throws IOException {
+		if (finished || (parser.nextToken() != JsonToken.START_OBJECT)) {
+			finished = true;
+			return null;
+		}
+		return parser.readValueAsTree();
+	}
+
+	/**
+	 * Reads the next feature, or returns null at the end of the array.
+	 */
+	private SimpleFeature readFeature() throws IOException {
+		JsonNode node = readNode();
+		if (node == null) {
+			return null;
+		}
+		SimpleFeature feature = buildFeature(node);
+		Object geometry = feature.getDefaultGeometry();
+		if (geometry != null) {
+			bounds.expandToInclude(((Geometry) geometry).getEnvelopeInternal());
+		}
+		count++;
+		return feature;
+	}
+
+	/**
+	 * Scans the properties of the remaining features, without building them, and adds the properties that are not yet
+	 * typed. Types of properties that are already typed are not changed.
+	 */
+	private void scanProperties(Map<String, Class<?>> bindings) throws IOException {
+		Set<String> scannedProperties = new HashSet<String>();
+		while (!finished && (parser.nextToken() == JsonToken.START_OBJECT)) {
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.getCurrentName();
+				if ((parser.nextToken() == JsonToken.START_OBJECT) && PROPERTIES.equals(fieldName)) {
+					while (parser.nextToken() == JsonToken.FIELD_NAME) {
+						String name = parser.getCurrentName();
+						Class<?> binding = getBinding(parser.nextToken());
+						parser.skipChildren();
+						if ((binding != null) && (!bindings.containsKey(name) || scannedProperties.contains(name))) {
+							scannedProperties.add(name);
+							bindings.put(name, mergeBinding(bindings.get(name), binding, String.class));
+						}
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+		}
+		finished = true;
+		if (!scannedProperties.isEmpty()) {
+			LOG.info("Properties {} first appear after the sampled features, and were typed from a scan of the remaining features.",
+					scannedProperties);
+		}
+	}
+
+	/**
+	 * Gets the binding of a property value from its token, as {@link #readValue(JsonNode)} would read it. Null
+	 * values have no binding.
+	 */
+	private Class<?> getBinding(JsonToken token) throws IOException {
+		switch (token) {
+		case VALUE_NUMBER_INT:
+			return parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER ? Double.class : Long.class;
+		case VALUE_NUMBER_FLOAT:
+			return Double.class;
+		case VALUE_TRUE:
+		case VALUE_FALSE:
+			return Boolean.class;
+		case VALUE_NULL:
+			return null;
+		default:
+			return String.class;
+		}
+	}
+
+	/**
+	 * Builds the feature from its JSON tree, in the reader's feature type. Values that cannot be converted are left
+	 * null, and counted.
+	 */
+	private SimpleFeature buildFeature(JsonNode node) throws IOException {
+		SimpleFeatureType type = featureType;
+		if (type == null) {
+			Map<String, Class<?>> bindings = new LinkedHashMap<String, Class<?>>();
+			addBindings(node.get(PROPERTIES), bindings);
+			type = buildFeatureType(getGeometryBinding(node.get(GEOMETRY)), bindings);
+		}
+		JsonNode idNode = node.get("id");
+		String featureId = ((idNode != null) && idNode.isValueNode() && !idNode.isNull()) ? idNode.asText() : null;
+
+		Map<String, Object> values = new LinkedHashMap<String, Object>();
+		Geometry geometry = readGeometry(node.get(GEOMETRY));
+		if (geometry != null) {
+			values.put(type.getGeometryDescriptor().getLocalName(), geometry);
+		}
+		JsonNode properties = node.get(PROPERTIES);
+		if ((properties != null) && properties.isObject()) {
+			Iterator<Map.Entry<String, JsonNode>> fields = properties.fields();
+			while (fields.hasNext()) {
+				Map.Entry<String, JsonNode> field = fields.next();
+				Object value = readValue(field.getValue());
+				if (value == null) {
+					continue;
+				}
+				AttributeDescriptor descriptor = type.getDescriptor(field.getKey());
+				if ((descriptor == null) || (descriptor instanceof GeometryDescriptor)) {
+					dropValue(featureId, field.getKey(), value, null);
+				} else {
+					values.put(field.getKey(), value);
+				}
+			}
+		}
+
+		SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+		for (Map.Entry<String, Object> value : values.entrySet()) {
+			try {
+				builder.set(value.getKey(), value.getValue());
+			} catch (IllegalArgumentException exception) {
+				LOG.debug("Could not convert attribute {} of feature {}", value.getKey(), featureId, exception);
+			}
+		}
+		SimpleFeature feature = builder.buildFeature(featureId);
+		// Depending on the type, a value that cannot be converted is either rejected or converted to null
+		for (Map.Entry<String, Object> value : values.entrySet()) {
+			if (feature.getAttribute(value.getKey()) == null) {
+				dropValue(feature.getID(), value.getKey(), value.getValue(), type.getDescriptor(value.getKey()));
+			}
+		}
+		return feature;
+	}
+
+	/**
+	 * Reads a property value. Integers are read as Longs, or as Doubles if they are too large; objects and arrays are
+	 * read as their JSON text.
+	 */
+	private static Object readValue(JsonNode value) {
+		if ((value == null) || value.isNull()) {
+			return null;
+		}
+		if (value.isBoolean()) {
+			return value.booleanValue();
+		}
+		if (value.isIntegralNumber()) {
+			return value.canConvertToLong() ? (Object) value.longValue() : (Object) value.doubleValue();
+		}
+		if (value.isNumber()) {
+			return value.doubleValue();
+		}
+		if (value.isTextual()) {
+			return value.textValue();
+		}
+		return value.toString();
+	}
+
+	private static Class<?> getGeometryBinding(JsonNode geometry) {
+		if ((geometry == null) || !geometry.isObject()) {
+			return null;
+		}
+		switch (geometry.path("type").asText()) {
+		case "Point":
+			return Point.class;
+		case "LineString":
+			return LineString.class;
+		case "Polygon":
+			return Polygon.class;
+		case "MultiPoint":
+			return MultiPoint.class;
+		case "MultiLineString":
+			return MultiLineString.class;
+		case "MultiPolygon":
+			return MultiPolygon.class;
+		case "GeometryCollection":
+			return GeometryCollection.class;
+		default:
+			return null;
+		}
+	}
+
+	private static Geometry readGeometry(JsonNode geometry) throws IOException {
+		if ((geometry == null) || geometry.isNull()) {
+			return null;
+		}
+		String type = geometry.path("type").asText();
+		JsonNode coordinates = geometry.get("coordinates");
+		switch (type) {
+		case "Point":
+			return GEOMETRY_FACTORY.createPoint(readCoordinate(coordinates));
+		case "LineString":
+			return GEOMETRY_FACTORY.createLineString(readCoordinates(coordinates));
+		case "Polygon":
+			return readPolygon(coordinates);
+		case "MultiPoint":
+			return GEOMETRY_FACTORY.createMultiPoint(readCoordinates(coordinates));
+		case "MultiLineString":
+			LineString[] lineStrings = new LineString[getArray(coordinates).size()];
+			for (int i = 0; i < lineStrings.length; i++) {
+				lineStrings[i] = GEOMETRY_FACTORY.createLineString(readCoordinates(coordinates.get(i)));
+			}
+			return GEOMETRY_FACTORY.createMultiLineString(lineStrings);
+		case "MultiPolygon":
+			Polygon[] polygons = new Polygon[getArray(coordinates).size()];
+			for (int i = 0; i < polygons.length; i++) {
+				polygons[i] = readPolygon(coordinates.get(i));
+			}
+			return GEOMETRY_FACTORY.createMultiPolygon(polygons);
+		case "GeometryCollection":
+			JsonNode members = getArray(geometry.get("geometries"));
+			Geometry[] geometries = new Geometry[members.size()];
+			for (int i = 0; i < geometries.length; i++) {
+				geometries[i] = readGeometry(members.get(i));
+			}
+			return GEOMETRY_FACTORY.createGeometryCollection(geometries);
+		default:
+			throw new IOException(String.format("Unsupported GeoJSON geometry type %s.", type));
+		}
+	}
+
+	private static Polygon readPolygon(JsonNode rings) throws IOException {
+		if (getArray(rings).size() == 0) {
+			return GEOMETRY_FACTORY.createPolygon((LinearRing) null, null);
+		}
+		LinearRing shell = GEOMETRY_FACTORY.createLinearRing(readCoordinates(rings.get(0)));
+		LinearRing[] holes = new LinearRing[rings.size() - 1];
+		for (int i = 0; i < holes.length; i++) {
+			holes[i] = GEOMETRY_FACTORY.createLinearRing(readCoordinates(rings.get(i + 1)));
+		}
+		return GEOMETRY_FACTORY.createPolygon(shell, holes);
+	}
+
+	private static Coordinate[] readCoordinates(JsonNode positions) throws IOException {
+		Coordinate[] coordinates = new Coordinate[getArray(positions).size()];
+		for (int i = 0; i < coordinates.length; i++) {
+			coordinates[i] = readCoordinate(positions.get(i));
+		}
+		return coordinates;
+	}
+
+	private static Coordinate readCoordinate(JsonNode position) throws IOException {
+		if (getArray(position).size() == 0) {
+			return null;
+		}
+		if ((position.size() < 2) || !position.get(0).isNumber() || !position.get(1).isNumber()) {
+			throw new IOException(String.format("GeoJSON position %s is not valid.", position));
+		}
+		if ((position.size() > 2) && position.get(2).isNumber()) {
+			return new Coordinate(position.get(0).doubleValue(), position.get(1).doubleValue(), position.get(2).doubleValue());
+		}
+		return new Coordinate(position.get(0).doubleValue(), position.get(1).doubleValue());
+	}
+
+	private static JsonNode getArray(JsonNode node) throws IOException {
+		if ((node == null) || !node.isArray()) {
+			throw new IOException(String.format("GeoJSON coordinates %s are not an array.", node));
+		}
+		return node;
+	}
+
+	/**
+	 * Counts a value that could not be stored in the feature type: either it could not be converted to the sampled type
+	 * of its attribute, or the type has no such attribute. The first dropped value of each attribute is logged as a
+	 * warning, and the rest at debug level, so that a large collection does not flood the log.
+	 */
+	private void dropValue(String featureId, String name, Object value, AttributeDescriptor descriptor) {
+		Long dropped = droppedValues.get(name);
+		droppedValues.put(name, dropped != null ? dropped + 1 : 1L);
+		String reason = descriptor != null ? String.format("cannot be stored as %s", descriptor.getType().getBinding().getSimpleName())
+				: "is not an attribute of the feature type";
+		if (dropped == null) {
+			LOG.warn("Value {} of attribute {} of feature {} {}. It is not stored, nor are any further values of {} that cannot be stored.",
+					value, name, featureId, reason, name);
+		} else {
+			LOG.debug("Value {} of attribute {} of feature {} {}.", value, name, featureId, reason);
+		}
+	}
+}
@@ -20,6 +20,11 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Locale;
@@ -27,14 +32,17 @@ import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.geotools.data.DataStore;
 import org.geotools.data.DataStoreFinder;
-import org.geotools.data.DefaultTransaction;
 import org.geotools.data.FeatureSource;
-import org.geotools.data.Transaction;
+import org.geotools.data.Query;
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.FeatureIterator;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
@@ -50,17 +58,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.venice.piazza.ingest.persist.PostGisDataStoreManager;
+import org.venice.piazza.ingest.persist.PostGisFeatureLoader;
 
 import com.amazonaws.AmazonClientException;
-import com.amazonaws.auth.BasicAWSCredentials;
-import com.amazonaws.regions.Region;
-import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3Client;
-import com.amazonaws.services.s3.AmazonS3EncryptionClient;
-import com.amazonaws.services.s3.model.CryptoConfiguration;
-import com.amazonaws.services.s3.model.KMSEncryptionMaterialsProvider;
-import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.vividsolutions.jts.geom.Envelope;
 
 import exception.InvalidInputException;
@@ -69,6 +71,7 @@ import model.data.DataType;
 import model.data.FileRepresentation;
 import model.data.location.FileAccessFactory;
 import model.data.location.FileLocation;
+import model.data.location.FolderShare;
 import model.data.location.S3FileStore;
 import model.data.type.GeoJsonDataType;
 import model.data.type.ShapefileDataType;
@@ -88,33 +91,25 @@ import util.PiazzaLogger;
 public class IngestUtilities {
 	@Autowired
 	private PiazzaLogger logger;
+	@Autowired
+	private PostGisFeatureLoader featureLoader;
+	@Autowired
+	private S3FileTransfer s3FileTransfer;
+	@Autowired
+	private S3ClientRegistry s3ClientRegistry;
+	@Autowired
+	private PostGisDataStoreManager postGisDataStoreManager;
 
-	@Value("${vcap.services.pz-postgres.credentials.db_host}")
-	private String POSTGRES_HOST;
-	@Value("${vcap.services.pz-postgres.credentials.db_port}")
-	private String POSTGRES_PORT;
-	@Value("${vcap.services.pz-postgres.credentials.db_name}")
-	private String POSTGRES_DB_NAME;
-	@Value("${vcap.services.pz-postgres.credentials.username}")
-	private String POSTGRES_USER;
-	@Value("${vcap.services.pz-postgres.credentials.password}")
-	private String POSTGRES_PASSWORD;
-	@Value("${postgres.schema}")
-	private String POSTGRES_SCHEMA;
-
-	@Value("${vcap.services.pz-blobstore.credentials.access_key_id}")
-	private String AMAZONS3_ACCESS_KEY;
-	@Value("${vcap.services.pz-blobstore.credentials.secret_access_key}")
-	private String AMAZONS3_PRIVATE_KEY;
 	@Value("${vcap.services.pz-blobstore.credentials.bucket}")
 	private String AMAZONS3_BUCKET_NAME;
-	@Value("${vcap.services.pz-blobstore.credentials.encryption_key}")
-	private String S3_KMS_CMK_ID;
 	@Value("${s3.use.kms}")
 	private Boolean USE_KMS;
+	@Value("${data.temp.path}")
+	private String DATA_TEMP_PATH;
 
 	private static final Logger LOG = LoggerFactory.getLogger(IngestUtilities.class);
 	private static final String INGEST = "ingest";
+	private static final int STREAM_BUFFER_SIZE = 64 * 1024;
 
 	/**
 	 * Recursive deletion of directory
@@ -253,9 +248,29 @@ public class IngestUtilities {
 	 */
 	public void persistFeatures(FeatureSource<SimpleFeatureType, SimpleFeature> featureSource, DataResource dataResource,
 			SimpleFeatureType featureSchema) throws IOException {
-		// Get the dataStore to the postGIS database.
-		DataStore postGisStore = GeoToolsUtil.getPostGisDataStore(POSTGRES_HOST, POSTGRES_PORT, POSTGRES_SCHEMA, POSTGRES_DB_NAME,
-				POSTGRES_USER, POSTGRES_PASSWORD);
+		long totalFeatures = featureSource.getCount(Query.ALL);
+		try (SimpleFeatureIterator iterator = ((SimpleFeatureCollection) featureSource.getFeatures()).features()) {
+			persistFeatures(iterator, totalFeatures, dataResource, featureSchema);
+		}
+	}
+
+	/**
+	 * Loads a stream of features for a DataResource into the PostGIS Database. The features are consumed from the
+	 * iterator as they are loaded, so they need not all be held in memory.
+	 * 
+	 * @param features
+	 *            The features to load. The iterator is not closed.
+	 * @param totalFeatures
+	 *            The expected number of features, used for progress reporting. Negative if not known.
+	 * @param dataResource
+	 *            The DataResource object with FeatureSource metadata
+	 * @param featureSchema
+	 *            The schema of the features
+	 */
+	public void persistFeatures(FeatureIterator<SimpleFeature> features, long totalFeatures, DataResource dataResource,
+			SimpleFeatureType featureSchema) throws IOException {
+		// Get the shared dataStore to the postGIS database.
+		DataStore postGisStore = postGisDataStoreManager.getDataStore();
 
 		// Create the schema in the data store
 		String tableName = dataResource.getDataId();
@@ -263,58 +278,171 @@ public class IngestUtilities {
 		// Associate the table name with the DataResource
 		SimpleFeatureType postGisSchema = GeoToolsUtil.cloneFeatureType(featureSchema, tableName);
 		postGisStore.createSchema(postGisSchema);
-		SimpleFeatureStore postGisFeatureStore = (SimpleFeatureStore) postGisStore.getFeatureSource(tableName);
-
-		// Commit the features to the data store
-		try (Transaction transaction = new DefaultTransaction()) {
-
-			// Get the features from the FeatureCollection and add to the PostGIS store
-			SimpleFeatureCollection features = (SimpleFeatureCollection) featureSource.getFeatures();
-			postGisFeatureStore.addFeatures(features);
-
-			transaction.commit();
 
+		// Bulk load the features into the new table
+		try {
+			String jobId = dataResource.getMetadata() != null ? dataResource.getMetadata().createdByJobId : null;
+			featureLoader.loadFeatures(postGisStore, tableName, features, totalFeatures, jobId);
 		} catch (IOException exception) {
-			// Clean up resources
-
 			String error = "Error copying DataResource to PostGIS: " + exception.getMessage();
 			LOG.error(error, exception);
 			logger.log(error, Severity.ERROR, new AuditElement(INGEST, "failedToCopyPostGisData", dataResource.getDataId()));
 
 			// Rethrow
 			throw exception;
-		} finally {
-
-			// Cleanup Data Store
-			postGisStore.dispose();
 		}
 
 		logger.log("Committed Data to PostGIS.", Severity.INFORMATIONAL, new AuditElement(INGEST, "loadDataToPostGis", tableName));
 	}
 
 	/**
-	 * Will copy external AWS S3 file to piazza S3 Bucket
+	 * Will copy the file for the Data Resource to the Piazza S3 Bucket. The file contents are uploaded from a local
+	 * copy, such as the spool file created by {@link #spoolDataResource(DataResource)}, so the source location does not
+	 * need to be read again.
 	 * 
 	 * @param dataResource
-	 * @param host
-	 *            if piazza should host the data
+	 *            The Data Resource being copied
+	 * @param sourceFile
+	 *            The local copy of the Data Resource file contents
 	 */
-	public void copyS3Source(DataResource dataResource) throws InvalidInputException, IOException {
+	public void copyS3Source(DataResource dataResource, File sourceFile) throws IOException {
 		logger.log(String.format("Copying Data %s to Piazza S3 Location.", dataResource.getDataId()), Severity.INFORMATIONAL,
 				new AuditElement(INGEST, "copyS3DataToPiazza", dataResource.getDataId()));
-		// Obtain file input stream
 		FileLocation fileLocation = ((FileRepresentation) dataResource.getDataType()).getLocation();
-		FileAccessFactory fileFactory = getFileFactoryForDataResource(dataResource);
-		InputStream inputStream = fileFactory.getFile(fileLocation);
 
-		// Write stream directly into the Piazza S3 bucket
-		AmazonS3 s3Client = getAwsClient(USE_KMS.booleanValue());
-		ObjectMetadata metadata = new ObjectMetadata();
+		// Write the local file into the Piazza S3 bucket
 		String fileKey = String.format("%s-%s", dataResource.getDataId(), fileLocation.getFileName());
-		s3Client.putObject(AMAZONS3_BUCKET_NAME, fileKey, inputStream, metadata);
+		s3FileTransfer.upload(sourceFile, AMAZONS3_BUCKET_NAME, fileKey, USE_KMS.booleanValue());
+	}
+
+	/**
+	 * Determines if the file for the Data Resource can be copied to the Piazza S3 Bucket server-side, without
+	 * downloading it. This requires that the file is already in S3, and that the Piazza bucket does not use KMS
+	 * client-side encryption, since S3 cannot encrypt the copy.
+	 * 
+	 * @param dataResource
+	 *            The Data Resource being copied
+	 * @return True if the file can be copied within S3
+	 */
+	public boolean canCopyS3SourceServerSide(DataResource dataResource) {
+		FileLocation fileLocation = ((FileRepresentation) dataResource.getDataType()).getLocation();
+		return (fileLocation instanceof S3FileStore) && !USE_KMS.booleanValue();
+	}
+
+	/**
+	 * Will copy the file for the Data Resource to the Piazza S3 Bucket with a server-side S3 copy, so the file contents
+	 * are not downloaded. Only valid if {@link #canCopyS3SourceServerSide(DataResource)} is true.
+	 * 
+	 * @param dataResource
+	 *            The Data Resource being copied
+	 */
+	public void copyS3Source(DataResource dataResource) throws IOException {
+		logger.log(String.format("Copying Data %s to Piazza S3 Location within S3.", dataResource.getDataId()), Severity.INFORMATIONAL,
+				new AuditElement(INGEST, "copyS3DataToPiazza", dataResource.getDataId()));
+		S3FileStore fileStore = (S3FileStore) ((FileRepresentation) dataResource.getDataType()).getLocation();
+		String fileKey = String.format("%s-%s", dataResource.getDataId(), fileStore.getFileName());
+		s3FileTransfer.copy(fileStore.getBucketName(), fileStore.getFileName(), AMAZONS3_BUCKET_NAME, fileKey);
+	}
+
+	/**
+	 * Downloads the file for the Data Resource into the local ingest spool. The file size and MD5 checksum are
+	 * computed while the contents are streamed, and the size is set on the Data Resource file location. The spooled
+	 * copy can then be uploaded to the Piazza bucket and handed to the Inspector, so that the source is downloaded only
+	 * once for the entire Load.
+	 * 
+	 * @param dataResource
+	 *            The Data Resource with a FileRepresentation data type
+	 * @return The local spool file
+	 */
+	public File spoolDataResource(DataResource dataResource) throws InvalidInputException, IOException {
+		FileLocation fileLocation = ((FileRepresentation) dataResource.getDataType()).getLocation();
+		FileAccessFactory fileFactory = getFileFactoryForDataResource(dataResource);
+		File spoolFile = getSpoolFile(dataResource);
+		MessageDigest digest = DigestUtils.getMd5Digest();
+		long numBytes;
+		boolean spooled = false;
+		try (InputStream inputStream = fileFactory.getFile(fileLocation);
+				OutputStream outputStream = FileUtils.openOutputStream(spoolFile)) {
+			numBytes = transferStream(inputStream, outputStream, digest);
+			spooled = true;
+		} finally {
+			if (!spooled) {
+				Files.deleteIfExists(spoolFile.toPath());
+			}
+		}
+		fileLocation.setFileSize(numBytes);
+
+		logger.log(
+				String.format("Spooled %s bytes of Data %s to %s with MD5 checksum %s", numBytes, dataResource.getDataId(),
+						spoolFile.getAbsolutePath(), Hex.encodeHexString(digest.digest())),
+				Severity.INFORMATIONAL, new AuditElement(INGEST, "spoolSourceData", dataResource.getDataId()));
+		return spoolFile;
+	}
+
+	/**
+	 * Places the file contents of the Data Resource at the specified local path. If the Data Resource was spooled
+	 * during this Load, then the spool file is moved into place. Otherwise, the file is downloaded from its location.
+	 * 
+	 * @param dataResource
+	 *            The Data Resource with a FileRepresentation data type
+	 * @param file
+	 *            The local file to write
+	 */
+	public void copyToLocalFile(DataResource dataResource, File file) throws InvalidInputException, IOException {
+		File spoolFile = getSpoolFile(dataResource);
+		if (spoolFile.exists()) {
+			Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+			Files.move(spoolFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} else {
+			FileLocation fileLocation = ((FileRepresentation) dataResource.getDataType()).getLocation();
+			FileAccessFactory fileFactory = getFileFactoryForDataResource(dataResource);
+			try (InputStream inputStream = fileFactory.getFile(fileLocation)) {
+				FileUtils.copyInputStreamToFile(inputStream, file);
+			}
+		}
+	}
+
+	/**
+	 * Gets the S3 location of the Data Resource file, if its contents can be read directly from S3 with ranged
+	 * requests. This is not possible if the file is not in S3, or is encrypted with the Piazza KMS key. If the file was
+	 * already spooled to local disk during this Load, then the local copy is preferred.
+	 * 
+	 * @param dataResource
+	 *            The Data Resource with a FileRepresentation data type
+	 * @return The S3 location to read from, or null if the file should be read from a local copy
+	 */
+	public S3FileStore getRangeReadableLocation(DataResource dataResource) {
+		FileLocation fileLocation = ((FileRepresentation) dataResource.getDataType()).getLocation();
+		if ((fileLocation instanceof S3FileStore) && !isClientSideEncrypted((S3FileStore) fileLocation)
+				&& !getSpoolFile(dataResource).exists()) {
+			return (S3FileStore) fileLocation;
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the spool file for the Data Resource, if one still exists, once the Load has completed.
+	 * 
+	 * @param dataResource
+	 *            The Data Resource
+	 */
+	public void deleteSpoolFile(DataResource dataResource) {
+		File spoolFile = getSpoolFile(dataResource);
+		try {
+			Files.deleteIfExists(spoolFile.toPath());
+		} catch (IOException exception) {
+			String error = String.format("Could not delete spool file %s for Data %s: %s", spoolFile.getAbsolutePath(),
+					dataResource.getDataId(), exception.getMessage());
+			LOG.error(error, exception);
+			logger.log(error, Severity.WARNING, new AuditElement(INGEST, "failedToDeleteSpoolFile", dataResource.getDataId()));
+		}
+	}
 
-		// Clean up
-		inputStream.close();
+	/**
+	 * Gets the local spool file path used for the Data Resource during a Load.
+	 */
+	private File getSpoolFile(DataResource dataResource) {
+		return new File(DATA_TEMP_PATH, String.format("%s.spool", dataResource.getDataId()));
 	}
 
 	/**
@@ -327,45 +455,91 @@ public class IngestUtilities {
 	 * @return FileAccessFactory
 	 */
 	public FileAccessFactory getFileFactoryForDataResource(DataResource dataResource) {
-		// If S3 store, determine if this is the Piazza bucket (use encryption) or not (dont use encryption)
-		final FileAccessFactory fileFactory;
+		// If S3 store, use the shared factory for the bucket. This will use encryption for the Piazza bucket, if enabled.
 		FileLocation fileLocation = ((FileRepresentation) dataResource.getDataType()).getLocation();
 		if (fileLocation instanceof S3FileStore) {
-			if (AMAZONS3_BUCKET_NAME.equals(((S3FileStore) fileLocation).getBucketName())) {
-				// Piazza bucket. If KMS Encryption is enabled, then use it.
-				if (USE_KMS.booleanValue()) {
-					fileFactory = new FileAccessFactory(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY, S3_KMS_CMK_ID);
-				} else {
-					fileFactory = new FileAccessFactory(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY);
-				}
-			} else {
-				fileFactory = new FileAccessFactory(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY);
-			}
-		} else {
-			// No AWS Creds needed
-			fileFactory = new FileAccessFactory();
+			return s3ClientRegistry.getFileAccessFactory(((S3FileStore) fileLocation).getBucketName());
 		}
-		return fileFactory;
+		// No AWS Creds needed
+		return new FileAccessFactory();
 	}
 
+	/**
+	 * Determines the size, in bytes, of the file referenced by the Data Resource. Where the underlying store can report
+	 * the size directly - such as S3 object metadata or the local file system - that is used, so the file contents are
+	 * never downloaded. Otherwise, the file is streamed and its bytes are counted.
+	 * 
+	 * @param dataResource
+	 *            The Data Resource with a FileRepresentation data type
+	 * @return The size of the file, in bytes
+	 */
 	public long getFileSize(DataResource dataResource) throws AmazonClientException, InvalidInputException, IOException {
-		// Obtain file input stream
 		FileLocation fileLocation = ((FileRepresentation) dataResource.getDataType()).getLocation();
+		if (fileLocation instanceof FolderShare) {
+			return Files.size(Paths.get(((FolderShare) fileLocation).filePath));
+		}
+		if ((fileLocation instanceof S3FileStore) && !isClientSideEncrypted((S3FileStore) fileLocation)) {
+			S3FileStore fileStore = (S3FileStore) fileLocation;
+			return getAwsClient(false).getObjectMetadata(fileStore.getBucketName(), fileStore.getFileName()).getContentLength();
+		}
+
+		// Encrypted objects report their cipher text length in S3, so count the decrypted stream instead.
 		FileAccessFactory fileFactory = getFileFactoryForDataResource(dataResource);
-		InputStream inputStream = fileFactory.getFile(fileLocation);
+		try (InputStream inputStream = fileFactory.getFile(fileLocation)) {
+			return countStreamBytes(inputStream, null);
+		}
+	}
 
-		long counter = inputStream.read();
+	/**
+	 * Reads the input stream to its end in bulk buffers, counting the bytes read. If a message digest is specified,
+	 * then it will be updated with the stream contents in the same pass, so that a checksum can be computed without
+	 * reading the stream a second time. The stream is not closed.
+	 * 
+	 * @param inputStream
+	 *            The stream to count
+	 * @param digest
+	 *            The digest to update with the stream contents. May be null, if no checksum is required.
+	 * @return The number of bytes read from the stream
+	 */
+	public long countStreamBytes(InputStream inputStream, MessageDigest digest) throws IOException {
+		return transferStream(inputStream, null, digest);
+	}
+
+	/**
+	 * Reads the input stream to its end in bulk buffers, optionally writing the contents to an output stream and
+	 * updating a message digest in the same pass.
+	 * 
+	 * @return The number of bytes read from the stream
+	 */
+	private long transferStream(InputStream inputStream, OutputStream outputStream, MessageDigest digest) throws IOException {
+		byte[] buffer = new byte[STREAM_BUFFER_SIZE];
 		long numBytes = 0;
-		while (counter >= 0) {
-			counter = inputStream.read();
-			numBytes++;
+		int length;
+		while ((length = inputStream.read(buffer)) != -1) {
+			if (outputStream != null) {
+				outputStream.write(buffer, 0, length);
+			}
+			if (digest != null) {
+				digest.update(buffer, 0, length);
+			}
+			numBytes += length;
 		}
-
 		return numBytes;
 	}
 
 	/**
-	 * Gets an instance of an S3 client to use.
+	 * Determines if the S3 file is stored in the Piazza bucket with KMS client-side encryption enabled.
+	 * 
+	 * @param fileStore
+	 *            The S3 file location
+	 * @return True if the object contents are encrypted with the Piazza KMS key, false if not
+	 */
+	private boolean isClientSideEncrypted(S3FileStore fileStore) {
+		return AMAZONS3_BUCKET_NAME.equals(fileStore.getBucketName()) && USE_KMS.booleanValue();
+	}
+
+	/**
+	 * Gets the shared instance of an S3 client to use.
 	 * 
 	 * @param useEncryption
 	 *            True if encryption should be used (only for Piazza Bucket). For all external Buckets, encryption is
@@ -374,21 +548,7 @@ public class IngestUtilities {
 	 * @return The S3 client
 	 */
 	public AmazonS3 getAwsClient(boolean useEncryption) {
-		AmazonS3 s3Client;
-		if ((AMAZONS3_ACCESS_KEY.isEmpty()) && (AMAZONS3_PRIVATE_KEY.isEmpty())) {
-			s3Client = new AmazonS3Client();
-		} else {
-			BasicAWSCredentials credentials = new BasicAWSCredentials(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY);
-			// Set up encryption using the KMS CMK Key
-			if (useEncryption) {
-				KMSEncryptionMaterialsProvider materialProvider = new KMSEncryptionMaterialsProvider(S3_KMS_CMK_ID);
-				s3Client = new AmazonS3EncryptionClient(credentials, materialProvider,
-						new CryptoConfiguration().withKmsRegion(Regions.US_EAST_1)).withRegion(Region.getRegion(Regions.US_EAST_1));
-			} else {
-				s3Client = new AmazonS3Client(credentials);
-			}
-		}
-		return s3Client;
+		return s3ClientRegistry.getClient(null, useEncryption);
 	}
 
 	/**
@@ -433,7 +593,7 @@ public class IngestUtilities {
 			S3FileStore fileStore = (S3FileStore) dataType;
 			if (fileStore.getBucketName().equals(AMAZONS3_BUCKET_NAME)) {
 				// Held by Piazza S3. Delete the data.
-				AmazonS3 client = getAwsClient(USE_KMS.booleanValue());
+				AmazonS3 client = s3ClientRegistry.getClient(fileStore.getBucketName());
 				client.deleteObject(fileStore.getBucketName(), fileStore.getFileName());
 			}
 		}
@@ -482,8 +642,7 @@ public class IngestUtilities {
 		logger.log("Dropping Table from PostGIS", Severity.INFORMATIONAL, new AuditElement(INGEST, "deletePostGisTable", tableName));
 
 		// Delete the table
-		DataStore postGisStore = GeoToolsUtil.getPostGisDataStore(POSTGRES_HOST, POSTGRES_PORT, POSTGRES_SCHEMA, POSTGRES_DB_NAME,
-				POSTGRES_USER, POSTGRES_PASSWORD);
+		DataStore postGisStore = postGisDataStoreManager.getDataStore();
 		try {
 			postGisStore.removeSchema(tableName);
 		} catch (IllegalArgumentException exception) {
@@ -493,8 +652,6 @@ public class IngestUtilities {
 					"Attempted to delete Table %s from Database for deleting a Data Resource, but the table was not found.", tableName);
 			LOG.error(error, exception);
 			logger.log(error, Severity.WARNING);
-		} finally {
-			postGisStore.dispose();
 		}
 	}
 }
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.ingest.utility;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.Request;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.AmazonS3EncryptionClient;
+import com.amazonaws.services.s3.model.CryptoConfiguration;
+import com.amazonaws.services.s3.model.KMSEncryptionMaterialsProvider;
+
+import model.data.location.FileAccessFactory;
+
+/**
+ * Single registry of the S3 clients, and S3 File Access Factories, used by the Ingest, Access and Gateway components.
+ * Clients are created on first use for each encryption mode, and are then shared by all buckets, so that the TLS
+ * connection pool, credentials and KMS materials provider are set up once rather than on every request. A client does
+ * not depend on the bucket it is used for, and the credentials and regions are fixed by configuration, so there are at
+ * most two clients however many buckets are read.
+ * <p>
+ * The Piazza bucket uses the KMS encryption client when KMS is enabled. All other buckets use a plain client.
+ * </p>
+ */
+@Component
+public class S3ClientRegistry {
+	@Value("${vcap.services.pz-blobstore.credentials.access_key_id:}")
+	private String AMAZONS3_ACCESS_KEY;
+	@Value("${vcap.services.pz-blobstore.credentials.secret_access_key:}")
+	private String AMAZONS3_PRIVATE_KEY;
+	@Value("${vcap.services.pz-blobstore.credentials.bucket:}")
+	private String AMAZONS3_BUCKET_NAME;
+	@Value("${vcap.services.pz-blobstore.credentials.encryption_key:}")
+	private String S3_KMS_CMK_ID;
+	@Value("${s3.use.kms:false}")
+	private Boolean USE_KMS;
+	@Value("${s3.client.max.connections:100}")
+	private int MAX_CONNECTIONS;
+	@Value("${s3.client.connection.max.idle.ms:60000}")
+	private long CONNECTION_MAX_IDLE_MS;
+
+	private static final Logger LOG = LoggerFactory.getLogger(S3ClientRegistry.class);
+
+	private final ConcurrentMap<Boolean, AmazonS3> clients = new ConcurrentHashMap<Boolean, AmazonS3>();
+	private final ConcurrentMap<Boolean, FileAccessFactory> fileFactories = new ConcurrentHashMap<Boolean, FileAccessFactory>();
+	private final AtomicLong clientLookups = new AtomicLong();
+	private final AtomicLong clientsCreated = new AtomicLong();
+	private final AtomicLong requests = new AtomicLong();
+
+	/**
+	 * Determines if objects in the bucket are encrypted client-side with the Piazza KMS key.
+	 *
+	 * @param bucketName
+	 *            The S3 bucket
+	 * @return True if the bucket is the Piazza bucket, and KMS is enabled
+	 */
+	public boolean isClientSideEncrypted(String bucketName) {
+		return AMAZONS3_BUCKET_NAME.equals(bucketName) && USE_KMS.booleanValue();
+	}
+
+	/**
+	 * Gets the shared S3 client for the bucket. The KMS encryption client is returned for the Piazza bucket, if KMS is
+	 * enabled.
+	 *
+	 * @param bucketName
+	 *            The S3 bucket
+	 * @return The S3 client
+	 */
+	public AmazonS3 getClient(String bucketName) {
+		return getClient(bucketName, isClientSideEncrypted(bucketName));
+	}
+
+	/**
+	 * Gets the shared S3 client for the encryption mode.
+	 *
+	 * @param bucketName
+	 *            The S3 bucket. May be null, for a client that is not specific to any bucket. Clients are shared by all
+	 *            buckets.
+	 * @param useEncryption
+	 *            True if the KMS encryption client should be used (only for Piazza Bucket). Encryption is not possible
+	 *            if no credentials are configured.
+	 * @return The S3 client
+	 */
+	public AmazonS3 getClient(String bucketName, boolean useEncryption) {
+		clientLookups.incrementAndGet();
+		final boolean encrypted = useEncryption && hasCredentials();
+		AmazonS3 client = clients.get(encrypted);
+		if (client == null) {
+			synchronized (clients) {
+				client = clients.get(encrypted);
+				if (client == null) {
+					client = createClient(encrypted);
+					clients.put(encrypted, client);
+					clientsCreated.incrementAndGet();
+					LOG.info("Created shared {} S3 client", encrypted ? "KMS encryption" : "plain");
+				}
+			}
+		}
+		return client;
+	}
+
+	/**
+	 * Gets the shared File Access Factory for reading objects from the bucket.
+	 *
+	 * @param bucketName
+	 *            The S3 bucket
+	 * @return The File Access Factory, with KMS decryption if the bucket is client-side encrypted
+	 */
+	public FileAccessFactory getFileAccessFactory(String bucketName) {
+		final boolean encrypted = isClientSideEncrypted(bucketName);
+		FileAccessFactory fileFactory = fileFactories.get(encrypted);
+		if (fileFactory == null) {
+			if (encrypted) {
+				fileFactory = new FileAccessFactory(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY, S3_KMS_CMK_ID);
+			} else {
+				fileFactory = new FileAccessFactory(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY);
+			}
+			FileAccessFactory existing = fileFactories.putIfAbsent(encrypted, fileFactory);
+			if (existing != null) {
+				fileFactory = existing;
+			}
+		}
+		return fileFactory;
+	}
+
+	/**
+	 * Gets statistics on client reuse: the number of shared clients, how many times clients were requested and
+	 * created, and the number of S3 requests sent through the shared clients.
+	 *
+	 * @return The client statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("clients", clients.size());
+		stats.put("clientLookups", clientLookups.get());
+		stats.put("clientsCreated", clientsCreated.get());
+		stats.put("requests", requests.get());
+		return stats;
+	}
+
+	/**
+	 * Shuts down all shared clients, releasing their connection pools.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		synchronized (clients) {
+			for (AmazonS3 client : clients.values()) {
+				client.shutdown();
+			}
+			clients.clear();
+			fileFactories.clear();
+		}
+	}
+
+	private boolean hasCredentials() {
+		return !((AMAZONS3_ACCESS_KEY.isEmpty()) && (AMAZONS3_PRIVATE_KEY.isEmpty()));
+	}
+
+	@SuppressWarnings("deprecation")
+	private AmazonS3 createClient(boolean useEncryption) {
+		ClientConfiguration configuration = new ClientConfiguration().withMaxConnections(MAX_CONNECTIONS)
+				.withConnectionMaxIdleMillis(CONNECTION_MAX_IDLE_MS).withTcpKeepAlive(true);
+		AmazonS3Client client;
+		if (!hasCredentials()) {
+			client = new AmazonS3Client(configuration);
+		} else {
+			BasicAWSCredentials credentials = new BasicAWSCredentials(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY);
+			if (useEncryption) {
+				// Set up encryption using the KMS CMK Key
+				KMSEncryptionMaterialsProvider materialProvider = new KMSEncryptionMaterialsProvider(S3_KMS_CMK_ID);
+				client = new AmazonS3EncryptionClient(credentials, materialProvider, configuration,
+						new CryptoConfiguration().withKmsRegion(Regions.US_EAST_1));
+				client.setRegion(Region.getRegion(Regions.US_EAST_1));
+			} else {
+				client = new AmazonS3Client(credentials, configuration);
+			}
+		}
+		// Count the requests sent through the shared client
+		client.addRequestHandler(new RequestHandler2() {
+			@Override
+			public void beforeRequest(Request<?> request) {
+				requests.incrementAndGet();
+			}
+		});
+		return client;
+	}
+}
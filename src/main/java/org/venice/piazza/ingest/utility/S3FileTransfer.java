@@ -0,0 +1,202 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.ingest.utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.client.builder.ExecutorFactory;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.transfer.Transfer;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+
+/**
+ * Moves files into S3 using multipart uploads, with the parts of a file uploaded in parallel by a bounded pool of
+ * workers. Files that are already in S3 are copied server-side, so their contents never pass through Piazza. Transfers
+ * use the shared clients of the {@link S3ClientRegistry}.
+ * <p>
+ * Parts of local files are read from disk as they are uploaded, so memory use does not grow with the file size.
+ * Uploads through the KMS encryption client, and uploads from streams, are multipart but sent one part at a time, as
+ * the parts must be encrypted or read in order.
+ * </p>
+ */
+@Component
+public class S3FileTransfer {
+	@Autowired
+	private S3ClientRegistry s3ClientRegistry;
+	@Value("${s3.transfer.threads:8}")
+	private int TRANSFER_THREADS;
+	@Value("${s3.transfer.part.size.mb:16}")
+	private long PART_SIZE_MB;
+
+	private static final Logger LOG = LoggerFactory.getLogger(S3FileTransfer.class);
+	private static final long MEGABYTE = 1024L * 1024L;
+
+	private final Map<AmazonS3, TransferManager> transferManagers = new HashMap<AmazonS3, TransferManager>();
+	private ExecutorService transferExecutor;
+
+	/**
+	 * Uploads a local file to S3, in parallel parts if the file is large enough to be sent as a multipart upload.
+	 *
+	 * @param file
+	 *            The local file to upload
+	 * @param bucketName
+	 *            The destination bucket
+	 * @param key
+	 *            The destination key
+	 * @param useEncryption
+	 *            True if the file should be encrypted with the Piazza KMS key
+	 */
+	public void upload(File file, String bucketName, String key, boolean useEncryption) throws IOException {
+		long start = System.currentTimeMillis();
+		waitForTransfer(getTransferManager(bucketName, useEncryption).upload(new PutObjectRequest(bucketName, key, file)));
+		logThroughput("Uploaded", file.length(), bucketName, key, start);
+	}
+
+	/**
+	 * Uploads the contents of a stream to S3. As the stream can only be read in order, large streams are sent as a
+	 * multipart upload one part at a time. The stream is not closed.
+	 *
+	 * @param inputStream
+	 *            The stream to upload
+	 * @param contentLength
+	 *            The number of bytes in the stream
+	 * @param bucketName
+	 *            The destination bucket
+	 * @param key
+	 *            The destination key
+	 * @param useEncryption
+	 *            True if the file should be encrypted with the Piazza KMS key
+	 */
+	public void upload(InputStream inputStream, long contentLength, String bucketName, String key, boolean useEncryption)
+			throws IOException {
+		long start = System.currentTimeMillis();
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(contentLength);
+		waitForTransfer(getTransferManager(bucketName, useEncryption).upload(bucketName, key, inputStream, metadata));
+		logThroughput("Uploaded", contentLength, bucketName, key, start);
+	}
+
+	/**
+	 * Copies an object between S3 locations server-side. Large objects are copied in parallel parts. This cannot be
+	 * used if the destination should be encrypted with the Piazza KMS key, as S3 cannot perform client-side encryption.
+	 *
+	 * @param sourceBucketName
+	 *            The source bucket
+	 * @param sourceKey
+	 *            The source key
+	 * @param bucketName
+	 *            The destination bucket
+	 * @param key
+	 *            The destination key
+	 */
+	public void copy(String sourceBucketName, String sourceKey, String bucketName, String key) throws IOException {
+		long start = System.currentTimeMillis();
+		waitForTransfer(getTransferManager(bucketName, false).copy(new CopyObjectRequest(sourceBucketName, sourceKey, bucketName, key)));
+		LOG.info("Copied S3 object {}/{} to {}/{} in {} ms", sourceBucketName, sourceKey, bucketName, key,
+				System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Releases the transfer threads. The S3 clients are owned by the {@link S3ClientRegistry}, and are not shut down.
+	 */
+	@PreDestroy
+	public synchronized void shutdown() {
+		for (TransferManager manager : transferManagers.values()) {
+			manager.shutdownNow(false);
+		}
+		transferManagers.clear();
+		if (transferExecutor != null) {
+			transferExecutor.shutdownNow();
+			transferExecutor = null;
+		}
+	}
+
+	/**
+	 * Gets the transfer manager for the shared client of the destination bucket. All transfer managers share one
+	 * bounded pool of part workers.
+	 */
+	private synchronized TransferManager getTransferManager(String bucketName, boolean useEncryption) {
+		if (transferExecutor == null) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(TRANSFER_THREADS, TRANSFER_THREADS, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new CustomizableThreadFactory("s3-transfer-"));
+			executor.allowCoreThreadTimeOut(true);
+			transferExecutor = executor;
+		}
+		AmazonS3 client = s3ClientRegistry.getClient(bucketName, useEncryption);
+		TransferManager manager = transferManagers.get(client);
+		if (manager == null) {
+			manager = buildTransferManager(client);
+			transferManagers.put(client, manager);
+		}
+		return manager;
+	}
+
+	private TransferManager buildTransferManager(AmazonS3 client) {
+		final ExecutorService executor = transferExecutor;
+		long partSize = PART_SIZE_MB * MEGABYTE;
+		return TransferManagerBuilder.standard().withS3Client(client).withExecutorFactory(new ExecutorFactory() {
+			@Override
+			public ExecutorService newExecutor() {
+				return executor;
+			}
+		}).withShutDownThreadPools(false).withMinimumUploadPartSize(partSize).withMultipartUploadThreshold(partSize)
+				.withMultipartCopyPartSize(partSize).withMultipartCopyThreshold(partSize).build();
+	}
+
+	/**
+	 * Blocks until the transfer completes. Interruption aborts the transfer.
+	 */
+	private void waitForTransfer(Transfer transfer) throws IOException {
+		try {
+			transfer.waitForCompletion();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(String.format("S3 transfer interrupted: %s", transfer.getDescription()));
+		} catch (AmazonClientException exception) {
+			throw new IOException(String.format("S3 transfer failed: %s: %s", transfer.getDescription(), exception.getMessage()),
+					exception);
+		}
+	}
+
+	private void logThroughput(String action, long numBytes, String bucketName, String key, long start) {
+		long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+		LOG.info("{} {} bytes to S3 {}/{} in {} ms ({} MB/s)", action, numBytes, bucketName, key, elapsed,
+				String.format("%.2f", (numBytes / (double) MEGABYTE) / (elapsed / 1000.0)));
+	}
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.ingest.utility;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+import org.apache.commons.io.IOUtils;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+
+/**
+ * Image Input Stream over an S3 object that reads the object contents with ranged GET requests, on demand, in fixed
+ * size blocks. This allows readers that only need part of a file, such as the header of a GeoTIFF, to read it without
+ * downloading the entire object. A small number of recently used blocks are cached, since image readers commonly seek
+ * back and forth within the header.
+ *
+ * <p>
+ * This must not be used for objects that are client-side encrypted, as the cipher text cannot be decrypted in ranges.
+ * </p>
+ */
+public class S3RangeImageInputStream extends ImageInputStreamImpl {
+	private static final int BLOCK_SIZE = 256 * 1024;
+	private static final int MAX_CACHED_BLOCKS = 16;
+
+	private final AmazonS3 s3Client;
+	private final String bucketName;
+	private final String key;
+	private final long length;
+	private long rangeRequestCount = 0;
+	private final Map<Long, byte[]> blocks = new LinkedHashMap<Long, byte[]>(MAX_CACHED_BLOCKS, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+			return size() > MAX_CACHED_BLOCKS;
+		}
+	};
+
+	/**
+	 * Creates a stream over the S3 object. The object length is read from the object metadata.
+	 *
+	 * @param s3Client
+	 *            The client used to read the object
+	 * @param bucketName
+	 *            The bucket containing the object
+	 * @param key
+	 *            The object key
+	 */
+	public S3RangeImageInputStream(AmazonS3 s3Client, String bucketName, String key) {
+		this.s3Client = s3Client;
+		this.bucketName = bucketName;
+		this.key = key;
+		this.length = s3Client.getObjectMetadata(bucketName, key).getContentLength();
+	}
+
+	@Override
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * @return The number of ranged GET requests made against S3 by this stream
+	 */
+	public long getRangeRequestCount() {
+		return rangeRequestCount;
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkClosed();
+		if (streamPos >= length) {
+			return -1;
+		}
+		bitOffset = 0;
+		byte[] block = getBlock(streamPos / BLOCK_SIZE);
+		int value = block[(int) (streamPos % BLOCK_SIZE)] & 0xff;
+		streamPos++;
+		return value;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int len) throws IOException {
+		checkClosed();
+		if ((offset < 0) || (len < 0) || (offset + len > buffer.length)) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (streamPos >= length) {
+			return -1;
+		}
+		bitOffset = 0;
+		int total = 0;
+		while ((total < len) && (streamPos < length)) {
+			byte[] block = getBlock(streamPos / BLOCK_SIZE);
+			int blockOffset = (int) (streamPos % BLOCK_SIZE);
+			int count = Math.min(len - total, block.length - blockOffset);
+			System.arraycopy(block, blockOffset, buffer, offset + total, count);
+			total += count;
+			streamPos += count;
+		}
+		return total;
+	}
+
+	@Override
+	public void close() throws IOException {
+		super.close();
+		blocks.clear();
+	}
+
+	/**
+	 * Gets the block of the object at the specified index, from the cache or from S3.
+	 */
+	private byte[] getBlock(long blockIndex) throws IOException {
+		byte[] block = blocks.get(blockIndex);
+		if (block == null) {
+			long start = blockIndex * BLOCK_SIZE;
+			long end = Math.min(start + BLOCK_SIZE, length) - 1;
+			GetObjectRequest request = new GetObjectRequest(bucketName, key).withRange(start, end);
+			try (S3Object object = s3Client.getObject(request); InputStream inputStream = object.getObjectContent()) {
+				block = IOUtils.toByteArray(inputStream);
+			} catch (AmazonClientException exception) {
+				throw new IOException(String.format("Error reading bytes %s-%s of %s/%s from S3: %s", start, end, bucketName, key,
+						exception.getMessage()), exception);
+			}
+			if (block.length != end - start + 1) {
+				throw new IOException(String.format("Expected %s bytes from S3 for %s/%s, but received %s.", end - start + 1, bucketName,
+						key, block.length));
+			}
+			rangeRequestCount++;
+			blocks.put(blockIndex, block);
+		}
+		return block;
+	}
+}
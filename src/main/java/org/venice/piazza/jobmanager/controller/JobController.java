@@ -15,11 +15,15 @@
  **/
 package org.venice.piazza.jobmanager.controller;
 
+import java.security.Principal;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.servlet.http.HttpServletResponse;
+
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,6 +32,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -37,9 +42,19 @@ import org.springframework.web.bind.annotation.RestController;
 
 import exception.InvalidInputException;
 import org.venice.piazza.jobmanager.database.DatabaseAccessor;
+import org.venice.piazza.jobmanager.database.JobArchiver;
+import org.venice.piazza.jobmanager.database.JobStatusCache;
+import org.venice.piazza.jobmanager.database.JobStatusUpdateBuffer;
+import org.venice.piazza.jobmanager.messaging.JobStatusNotifier;
+import org.venice.piazza.jobmanager.messaging.JobUpdateDispatcher;
 import org.venice.piazza.jobmanager.messaging.handler.AbortJobHandler;
 import org.venice.piazza.jobmanager.messaging.handler.RepeatJobHandler;
 import org.venice.piazza.jobmanager.messaging.handler.RequestJobHandler;
+import org.venice.piazza.piazza.database.InvalidKeysetQueryException;
+import org.venice.piazza.piazza.database.KeysetPage;
+import org.venice.piazza.piazza.database.KeysetQuery;
+import org.venice.piazza.piazza.messaging.MessageOutbox;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
 import model.job.Job;
 import model.job.type.AbortJob;
 import model.job.type.RepeatJob;
@@ -50,6 +65,7 @@ import model.response.ErrorResponse;
 import model.response.JobListResponse;
 import model.response.JobResponse;
 import model.response.JobStatusResponse;
+import model.response.Pagination;
 import model.response.PiazzaResponse;
 import model.response.SuccessResponse;
 import model.status.StatusUpdate;
@@ -72,8 +88,26 @@ public class JobController {
 	private RequestJobHandler requestJobHandler;
 	@Autowired
 	private ThreadPoolTaskExecutor threadPoolTaskExecutor;
+	@Autowired
+	private JobStatusUpdateBuffer statusUpdateBuffer;
+	@Autowired
+	private JobStatusCache jobStatusCache;
+	@Autowired
+	private JobStatusNotifier jobStatusNotifier;
+	@Autowired
+	private JobUpdateDispatcher updateDispatcher;
+	@Autowired
+	private OutboundMessagePublisher outboundPublisher;
+	@Autowired
+	private MessageOutbox messageOutbox;
+	@Autowired
+	private JobArchiver jobArchiver;
 	@Value("${SPACE}")
 	private String space;
+	@Value("${jobmanager.request.batch.max.size:10000}")
+	private int BATCH_MAX_SIZE;
+	@Value("${messaging.outbox.replay.users:}")
+	private String REPLAY_USERS;
 
 	private static final String DEFAULT_PAGE_SIZE = "10";
 	private static final String DEFAULT_PAGE = "0";
@@ -109,8 +143,12 @@ public class JobController {
 			if (jobId.isEmpty()) {
 				throw new InvalidInputException("No Job Id specified.");
 			}
-			// Query for the Job Id
-			Job job = accessor.getJobById(jobId);
+			// Query for the Job Id. Repeated polls for the same Job are served from the cache.
+			Job job = jobStatusCache.getJob(jobId);
+			if (job == null) {
+				// Old, finished Jobs are moved to the archive
+				job = jobArchiver.getArchivedJob(jobId);
+			}
 			// If no Job was found.
 			if (job == null) {
 				logger.log(String.format("Job not found for requested Id %s", jobId), Severity.WARNING);
@@ -162,6 +200,39 @@ public class JobController {
 		}
 	}
 
+	/**
+	 * Sends a batch of new Piazza Job Requests to the Job Manager. All of the Jobs are added to the Jobs table in one
+	 * transaction, and their messages are published to the worker components together.
+	 * 
+	 * @param requests
+	 *            The job requests
+	 * @return The Response, containing the created Jobs (including their Ids) in the order of the requests, or an
+	 *         Error
+	 */
+	@RequestMapping(value = "/requestJobs", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<PiazzaResponse> requestJobs(@RequestBody List<PiazzaJobRequest> requests) {
+		if ((requests == null) || requests.isEmpty()) {
+			return new ResponseEntity<>(new ErrorResponse("No Job Requests specified.", JOB_MGR_UPPER), HttpStatus.BAD_REQUEST);
+		}
+		if (requests.size() > BATCH_MAX_SIZE) {
+			return new ResponseEntity<>(new ErrorResponse(
+					String.format("Batch of %s Job Requests exceeds the maximum of %s.", requests.size(), BATCH_MAX_SIZE),
+					JOB_MGR_UPPER), HttpStatus.BAD_REQUEST);
+		}
+		try {
+			// Create the Jobs and send off the Job messages
+			List<Job> jobs = requestJobHandler.processBatch(requests);
+			// Return to the user the Jobs, with their Ids.
+			return new ResponseEntity<>(new JobListResponse(jobs, new Pagination((long) jobs.size(), 0, jobs.size(), null, null)),
+					HttpStatus.OK);
+		} catch (Exception exception) {
+			String error = String.format("Error Requesting Batch of Jobs: %s", exception.getMessage());
+			LOG.error(error, exception);
+			logger.log(error, Severity.ERROR, new AuditElement(requests.get(0).createdBy, "errorRequestingJobBatch", ""));
+			return new ResponseEntity<>(new ErrorResponse(error, JOB_MGR_UPPER), HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
 	/**
 	 * Aborts a currently running Piazza Job.
 	 * 
@@ -174,7 +245,7 @@ public class JobController {
 		try {
 			// Verify the Job exists
 			String jobId = ((AbortJob) request.jobType).getJobId();
-			Job jobToCancel = accessor.getJobById(jobId);
+			Job jobToCancel = getJobOrArchivedJob(jobId);
 			if (jobToCancel == null) {
 				return new ResponseEntity<>(new ErrorResponse(String.format(ERROR_MSG, jobId), JOB_MGR_UPPER),
 						HttpStatus.NOT_FOUND);
@@ -217,7 +288,7 @@ public class JobController {
 		try {
 			// Verify the Job exists
 			String jobId = ((RepeatJob) request.jobType).jobId;
-			Job jobToRepeat = accessor.getJobById(jobId);
+			Job jobToRepeat = getJobOrArchivedJob(jobId);
 
 			if (jobToRepeat == null) {
 				return new ResponseEntity<>(new ErrorResponse(String.format(ERROR_MSG, jobId), JOB_MGR_UPPER),
@@ -255,7 +326,12 @@ public class JobController {
 	 *            The start page
 	 * @param pageSize
 	 *            The number of results per page
-	 * @return The List of all Jobs in the system.
+	 * @param cursor
+	 *            If specified, pages by cursor rather than by page number. Empty for the first page, otherwise the
+	 *            cursor returned in the X-Next-Cursor header of the previous page.
+	 * @param count
+	 *            For cursor pages, whether the total count is "exact", "estimate" or "none". Defaults to none.
+	 * @return The List of all Jobs in the system. Jobs moved to the archive are not listed.
 	 */
 	@RequestMapping(value = "/job", method = RequestMethod.GET)
 	public JobListResponse getJobs(@RequestParam(value = "page", required = false, defaultValue = DEFAULT_PAGE) String page,
@@ -263,7 +339,9 @@ public class JobController {
 			@RequestParam(value = "order", required = false, defaultValue = "asc") String order,
 			@RequestParam(value = "sortBy", required = false, defaultValue = "createdOn") String sortBy,
 			@RequestParam(value = "status", required = false) String status,
-			@RequestParam(value = "userName", required = false) String userName) {
+			@RequestParam(value = "userName", required = false) String userName,
+			@RequestParam(value = "cursor", required = false) String cursor,
+			@RequestParam(value = "count", required = false) String count, HttpServletResponse response) {
 
 		final String finalOrder;
 
@@ -276,7 +354,28 @@ public class JobController {
 
 		// Get and return
 		logger.log("Looking up Job Query", Severity.INFORMATIONAL, new AuditElement(JOB_MGR_LOWER, "queryingJobs", ""));
-		return accessor.getJobs(Integer.parseInt(page), Integer.parseInt(pageSize), finalOrder, sortBy, status, userName);
+		if (cursor == null) {
+			return accessor.getJobs(Integer.parseInt(page), Integer.parseInt(pageSize), finalOrder, sortBy, status, userName);
+		}
+		KeysetPage<Job> jobs = accessor.getJobs(cursor, Integer.parseInt(pageSize), finalOrder, sortBy, status, userName,
+				KeysetQuery.CountMode.fromString(count));
+		if (jobs.getNextCursor() != null) {
+			response.setHeader(KeysetPage.NEXT_CURSOR_HEADER, jobs.getNextCursor());
+		}
+		return new JobListResponse(jobs.getResults(),
+				new Pagination(jobs.getCount(), 0, Integer.parseInt(pageSize), sortBy, finalOrder));
+	}
+
+	/**
+	 * Reports an invalid cursor or count of a Job listing as a bad request.
+	 * 
+	 * @param exception
+	 *            The error in the query
+	 * @return The error response
+	 */
+	@ExceptionHandler(InvalidKeysetQueryException.class)
+	public ResponseEntity<PiazzaResponse> handleInvalidQuery(InvalidKeysetQueryException exception) {
+		return new ResponseEntity<>(new ErrorResponse(exception.getMessage(), JOB_MGR_UPPER), HttpStatus.BAD_REQUEST);
 	}
 
 	/**
@@ -285,7 +384,7 @@ public class JobController {
 	 * This is intended to be used by the Swiss-Army-Knife (SAK) administration application for reporting the status of
 	 * this Job Manager component. It is not used in normal function of the Job Manager.
 	 * 
-	 * @return Number of Jobs in the system.
+	 * @return Number of Jobs in the system. Jobs moved to the archive are not counted.
 	 */
 	@RequestMapping(value = "/job/count", method = RequestMethod.GET)
 	public long getJobCount() {
@@ -320,7 +419,7 @@ public class JobController {
 	 * This is intended to be used by the Swiss-Army-Knife (SAK) administration application for reporting the status of
 	 * this Job Manager component. It is not used in normal function of the Job Manager.
 	 * 
-	 * @return List of Jobs that match the specified status.
+	 * @return List of Jobs that match the specified status. Jobs moved to the archive are not counted.
 	 */
 	@RequestMapping(value = "/job/status/{status}/count", method = RequestMethod.GET)
 	public Long getStatusCount(@PathVariable(value = "status") String status) {
@@ -349,6 +448,81 @@ public class JobController {
 		if (threadPoolTaskExecutor.getThreadPoolExecutor() != null) {
 			stats.put("threadQueue", threadPoolTaskExecutor.getThreadPoolExecutor().getQueue().size());
 		}
+		// Add information on the buffered Job Status Updates
+		stats.put("statusUpdates", statusUpdateBuffer.getStats());
+		stats.put("updateShards", updateDispatcher.getStats());
+		stats.put("statusCache", jobStatusCache.getStats());
+		stats.put("statusWaiters", jobStatusNotifier.getStats());
+		stats.put("outboundMessages", outboundPublisher.getStats());
+		stats.put("outbox", messageOutbox.getStats());
+		stats.put("archive", jobArchiver.getStats());
 		return new ResponseEntity<>(stats, HttpStatus.OK);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Replays the Job messages that were sent since the specified time, such as after the message broker has lost
+	 * messages. Replayed Jobs may be processed more than once by the workers, so only the users listed in
+	 * messaging.outbox.replay.users may replay messages. No user may by default.
+	 * 
+	 * @param since
+	 *            The ISO-8601 time from which to replay messages
+	 * @param user
+	 *            The user requesting the replay
+	 * @return A message with the number of messages replayed
+	 */
+	@RequestMapping(value = "/admin/outbox/replay", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<PiazzaResponse> replayOutbox(@RequestParam(value = "since") String since, Principal user) {
+		String userName = user != null ? user.getName() : null;
+		if (!isReplayUser(userName)) {
+			String error = String.format("User %s is not permitted to replay messages.", userName);
+			logger.log(error, Severity.WARNING, new AuditElement(userName, "replayOutboxDenied", since));
+			return new ResponseEntity<>(new ErrorResponse(error, JOB_MGR_UPPER), HttpStatus.FORBIDDEN);
+		}
+		DateTime sinceTime;
+		try {
+			sinceTime = new DateTime(since);
+		} catch (IllegalArgumentException exception) {
+			String error = String.format("Invalid time %s: %s", since, exception.getMessage());
+			return new ResponseEntity<>(new ErrorResponse(error, JOB_MGR_UPPER), HttpStatus.BAD_REQUEST);
+		}
+		try {
+			int replayed = messageOutbox.replay(sinceTime.toDate());
+			logger.log(String.format("User %s is replaying %s messages sent since %s", userName, replayed, since),
+					Severity.INFORMATIONAL, new AuditElement(userName, "replayOutbox", since));
+			return new ResponseEntity<>(new SuccessResponse(String.format("Replaying %s messages.", replayed), JOB_MGR_UPPER),
+					HttpStatus.OK);
+		} catch (Exception exception) {
+			String error = String.format("Error replaying messages: %s", exception.getMessage());
+			LOG.error(error, exception);
+			logger.log(error, Severity.ERROR);
+			return new ResponseEntity<>(new ErrorResponse(error, JOB_MGR_UPPER), HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	private boolean isReplayUser(String userName) {
+		if (userName == null) {
+			return false;
+		}
+		for (String replayUser : REPLAY_USERS.split(",")) {
+			if (userName.equals(replayUser.trim())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets a Job from the Jobs table, or from the archive if it has been archived.
+	 * 
+	 * @param jobId
+	 *            The Id of the Job
+	 * @return The Job, or null if it does not exist
+	 */
+	private Job getJobOrArchivedJob(String jobId) {
+		Job job = accessor.getJobById(jobId);
+		if (job == null) {
+			job = jobArchiver.getArchivedJob(jobId);
+		}
+		return job;
+	}
+}
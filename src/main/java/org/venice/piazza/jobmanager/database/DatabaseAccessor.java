@@ -16,14 +16,27 @@
 package org.venice.piazza.jobmanager.database;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.venice.piazza.common.hibernate.dao.job.JobDao;
 import org.venice.piazza.common.hibernate.entity.JobEntity;
+import org.venice.piazza.piazza.database.KeysetPage;
+import org.venice.piazza.piazza.database.KeysetPaginator;
+import org.venice.piazza.piazza.database.KeysetQuery;
+import org.venice.piazza.piazza.messaging.MessageOutbox;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher.OutboundMessage;
 
 import model.job.Job;
 import model.job.JobProgress;
@@ -41,18 +54,44 @@ import model.status.StatusUpdate;
 public class DatabaseAccessor {
 	@Autowired
 	private JobDao jobDao;
+	@Autowired
+	private JobStatusUpdater jobStatusUpdater;
+	@Autowired
+	private JobStatusCache jobStatusCache;
+	@Autowired
+	private JobStatusCounter jobStatusCounter;
+	@Autowired
+	private KeysetPaginator keysetPaginator;
+	@Autowired
+	private MessageOutbox messageOutbox;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private static final String JOB_ID = "jobId";
+	private static final String CREATED_ON = "createdOn";
 
 	public DatabaseAccessor() {
 		// Expected for Component instantiation
 	}
 
 	/**
-	 * Gets the total number of Jobs in the database
+	 * Registers the indexes for the keyset pages of Jobs: by creation date, for all Jobs, by Status and by User.
+	 */
+	@PostConstruct
+	public void registerIndexes() {
+		keysetPaginator.registerIndex(JobEntity.class, Job.class, JOB_ID, null, CREATED_ON);
+		keysetPaginator.registerIndex(JobEntity.class, Job.class, JOB_ID, "status", CREATED_ON);
+		keysetPaginator.registerIndex(JobEntity.class, Job.class, JOB_ID, "createdBy", CREATED_ON);
+	}
+
+	/**
+	 * Gets the total number of Jobs in the database, from the incremental counts if they are maintained. Archived Jobs
+	 * are not counted.
 	 * 
 	 * @return Number of jobs in the DB
 	 */
 	public long getJobsCount() {
-		return jobDao.count();
+		return jobStatusCounter.isAvailable() ? jobStatusCounter.getCount() : jobDao.count();
 	}
 
 	/**
@@ -63,7 +102,7 @@ public class DatabaseAccessor {
 	 * @return The number of Jobs for that status
 	 */
 	public Long getJobStatusCount(String status) {
-		return jobDao.countJobByStatus(status);
+		return jobStatusCounter.isAvailable() ? jobStatusCounter.getCount(status) : jobDao.countJobByStatus(status);
 	}
 
 	/**
@@ -126,7 +165,42 @@ public class DatabaseAccessor {
 	}
 
 	/**
-	 * Updates the status of a Job.
+	 * Gets a page of Jobs from the database, starting after the cursor of the previous page. Unlike page numbers, the
+	 * cost of a page does not grow with its depth.
+	 * 
+	 * @param cursor
+	 *            The cursor of the previous page, or empty for the first page
+	 * @param perPage
+	 *            the number of results per page
+	 * @param order
+	 *            "asc" or "desc"
+	 * @param sortBy
+	 *            The field to sort by
+	 * @param status
+	 *            The status of the Job
+	 * @param userName
+	 *            The username who submitted the Job
+	 * @param countMode
+	 *            Whether the total number of matching Jobs is counted, estimated, or not reported
+	 * @return The page of Jobs, with the cursor of the next page
+	 */
+	public KeysetPage<Job> getJobs(String cursor, int perPage, String order, String sortBy, String status, String userName,
+			KeysetQuery.CountMode countMode) {
+		KeysetQuery<JobEntity> query = new KeysetQuery<>(JobEntity.class, Job.class, JOB_ID).orderBy(sortBy, order)
+				.where("status", status).where("createdBy", userName).after(cursor).limit(perPage).count(countMode);
+		KeysetPage<JobEntity> results = keysetPaginator.getPage(query);
+
+		// Collect the Jobs
+		List<Job> jobs = new ArrayList<>();
+		for (JobEntity jobEntity : results.getResults()) {
+			jobs.add(jobEntity.getJob());
+		}
+		return new KeysetPage<>(jobs, results.getNextCursor(), results.getCount());
+	}
+
+	/**
+	 * Updates the status of a Job. The status is written as in {@link #updateJobStatus(String, StatusUpdate)}, so it is
+	 * not changed if the Job is already in a finalized state.
 	 * 
 	 * @param jobId
 	 *            The Job Id
@@ -134,16 +208,12 @@ public class DatabaseAccessor {
 	 *            The Status String of the Job
 	 */
 	public void updateJobStatus(String jobId, String status) {
-		JobEntity jobEntity = jobDao.getJobByJobId(jobId);
-		if (jobEntity != null) {
-			Job job = jobEntity.getJob();
-			job.setStatus(status);
-			jobDao.save(jobEntity);
-		}
+		updateJobStatus(jobId, new StatusUpdate(status));
 	}
 
 	/**
-	 * Updates the Progress of a Job
+	 * Updates the Progress of a Job. The progress is written as in {@link #updateJobStatus(String, StatusUpdate)},
+	 * without changing the status of the Job.
 	 * 
 	 * @param jobId
 	 *            The Job Id to update
@@ -151,17 +221,15 @@ public class DatabaseAccessor {
 	 *            The progres to set
 	 */
 	public void updateJobProgress(String jobId, JobProgress progress) {
-		JobEntity jobEntity = jobDao.getJobByJobId(jobId);
-		if (jobEntity != null) {
-			Job job = jobEntity.getJob();
-			job.setProgress(progress);
-			jobDao.save(jobEntity);
-		}
+		StatusUpdate statusUpdate = new StatusUpdate();
+		statusUpdate.setProgress(progress);
+		updateJobStatus(jobId, statusUpdate);
 	}
 
 	/**
 	 * Updates the Status of a Job. This will update the result, progress, and status of the Job. This method will
-	 * update in a single write to the database.
+	 * update in a single, conditional write to the database, without first reading the Job. The status is not changed
+	 * if the Job is already in a finalized state.
 	 * 
 	 * @param jobId
 	 *            The Id of the Job whose status to update
@@ -169,39 +237,43 @@ public class DatabaseAccessor {
 	 *            The Status Update information
 	 */
 	public void updateJobStatus(String jobId, StatusUpdate statusUpdate) {
-		JobEntity jobEntity = jobDao.getJobByJobId(jobId);
-		if (jobEntity != null) {
-			Job job = jobEntity.getJob();
-
-			// Only update the information that is not null
-			if (!statusUpdate.getStatus().isEmpty()) {
-				// Only update the status if the status of that job is in a non-finished state. If it is in a finished
-				// state, then this is potentially an out-of-order message and should be disregarded.
-				if (job.getStatus() == null) {
-					job.setStatus(statusUpdate.getStatus());
-				} else {
-					switch (job.getStatus()) {
-					case StatusUpdate.STATUS_CANCELLED:
-					case StatusUpdate.STATUS_ERROR:
-					case StatusUpdate.STATUS_FAIL:
-					case StatusUpdate.STATUS_SUCCESS:
-						// Do not update the status if it is in a finalized state.
-						break;
-					default:
-						job.setStatus(statusUpdate.getStatus());
-						break;
-					}
-				}
-			}
-			if (statusUpdate.getProgress() != null) {
-				job.setProgress(statusUpdate.getProgress());
-			}
-			if (statusUpdate.getResult() != null) {
-				job.setResult(statusUpdate.getResult());
-			}
+		jobStatusUpdater.updateJobStatuses(Collections.singletonMap(jobId, statusUpdate));
+		jobStatusCache.invalidate(jobId);
+	}
+
+	/**
+	 * Updates the Status of a number of Jobs. Each Job is updated as in {@link #updateJobStatus(String, StatusUpdate)},
+	 * but all of the updates are sent to the database together in a single batch.
+	 * 
+	 * @param statusUpdates
+	 *            The Status Update information, keyed by the Id of the Job to update
+	 * @return The number of Jobs updated. Jobs that do not exist are skipped.
+	 */
+	public int updateJobStatuses(Map<String, StatusUpdate> statusUpdates) {
+		int updated = jobStatusUpdater.updateJobStatuses(statusUpdates);
+		jobStatusCache.invalidateAll(statusUpdates.keySet());
+		return updated;
+	}
 
-			// Commit
-			jobDao.save(jobEntity);
+	/**
+	 * Determines if the status is a finalized state, after which the status of a Job no longer changes.
+	 * 
+	 * @param status
+	 *            The Status String of the Job
+	 * @return True if the status is final
+	 */
+	public static boolean isFinalStatus(String status) {
+		if (status == null) {
+			return false;
+		}
+		switch (status) {
+		case StatusUpdate.STATUS_CANCELLED:
+		case StatusUpdate.STATUS_ERROR:
+		case StatusUpdate.STATUS_FAIL:
+		case StatusUpdate.STATUS_SUCCESS:
+			return true;
+		default:
+			return false;
 		}
 	}
 
@@ -215,6 +287,7 @@ public class DatabaseAccessor {
 		JobEntity entity = jobDao.getJobByJobId(jobId);
 		if (entity != null) {
 			jobDao.delete(entity);
+			jobStatusCache.invalidate(jobId);
 		}
 	}
 
@@ -229,4 +302,40 @@ public class DatabaseAccessor {
 		jobDao.save(jobEntity);
 	}
 
+	/**
+	 * Adds a Job, together with the message that relays it to the workers, in a single transaction. The message is
+	 * published by the outbox once the Job is committed.
+	 * 
+	 * @param job
+	 *            The Job
+	 * @param message
+	 *            The Job message
+	 */
+	public void addJob(Job job, OutboundMessage message) {
+		addJobs(Collections.singletonList(job), Collections.singletonList(message));
+	}
+
+	/**
+	 * Adds Jobs, together with the messages that relay them to the workers, in a single transaction. The inserts are
+	 * sent to the database in JDBC batches, and the messages are published by the outbox once the Jobs are committed.
+	 * 
+	 * @param jobs
+	 *            The Jobs
+	 * @param messages
+	 *            The Job messages
+	 */
+	public void addJobs(final List<Job> jobs, final List<OutboundMessage> messages) {
+		final List<JobEntity> jobEntities = new ArrayList<>(jobs.size());
+		for (Job job : jobs) {
+			jobEntities.add(new JobEntity(job));
+		}
+		new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				jobDao.save(jobEntities);
+				messageOutbox.add(messages);
+			}
+		});
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,416 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.jobmanager.database;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import model.job.Job;
+
+/**
+ * Moves finished Jobs out of the Jobs table once they are older than the archive age, so that the Jobs table, and the
+ * queries and counts on it, only grow with recent Jobs.
+ * <p>
+ * Archived Jobs are stored gzip compressed in the job_archive table, keyed by Job Id. Each batch is deleted from the
+ * Jobs table and written to the archive in one transaction, so a Job is never lost or in both tables. Jobs that have not
+ * reached a final status are never archived.
+ * </p>
+ * <p>
+ * On PostgreSQL 10 and later, the archive is partitioned by month of creation, and months older than the retention
+ * period are dropped as whole partitions rather than deleted row by row. On earlier versions the archive is a single
+ * table. The Jobs table itself is not partitioned: its schema is owned by the shared Job entity.
+ * </p>
+ * <p>
+ * Archived Jobs are no longer in the Jobs table, so they are not listed or counted by the Job list, Job count and
+ * status count endpoints. Fetching, repeating and aborting a Job by its Id fall back to the archive.
+ * </p>
+ * <p>
+ * The age of a Job is compared on its creation time as stored, which is recorded in UTC. Each run archives at most the
+ * configured number of batches, so that a large backlog is archived over several runs rather than holding a scheduler
+ * thread for hours. Archived Jobs are kept indefinitely unless a retention period is configured.
+ * </p>
+ * <p>
+ * Archiving changes which Jobs the list and count endpoints return, so it is off unless jobmanager.archive.enabled is
+ * set. Jobs archived while it was on can still be fetched by their Id after it is turned off.
+ * </p>
+ */
+@Component
+public class JobArchiver {
+	@PersistenceContext
+	private EntityManager entityManager;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private ObjectMapper mapper;
+	@Autowired
+	private JobStatusCache jobStatusCache;
+	@Value("${jobmanager.archive.enabled:false}")
+	private boolean ENABLED;
+	@Value("${jobmanager.archive.age.days:30}")
+	private int ARCHIVE_AGE_DAYS;
+	@Value("${jobmanager.archive.batch.size:1000}")
+	private int BATCH_SIZE;
+	@Value("${jobmanager.archive.max.batches:100}")
+	private int MAX_BATCHES;
+	@Value("${jobmanager.archive.retention.months:0}")
+	private int RETENTION_MONTHS;
+
+	private static final Logger LOG = LoggerFactory.getLogger(JobArchiver.class);
+	private static final int PARTITIONING_VERSION = 100000;
+	private static final String ARCHIVE_COLUMNS = "(job_id text NOT NULL, status text, created_by text, "
+			+ "created_on timestamptz NOT NULL, archived_on timestamptz NOT NULL DEFAULT now(), data bytea NOT NULL)";
+	private static final String CREATE_PARTITIONED_SQL = "CREATE TABLE IF NOT EXISTS job_archive " + ARCHIVE_COLUMNS
+			+ " PARTITION BY RANGE (created_on)";
+	private static final String CREATE_TABLE_SQL = "CREATE TABLE IF NOT EXISTS job_archive " + ARCHIVE_COLUMNS;
+	private static final String CREATE_PARTITION_SQL = "CREATE TABLE IF NOT EXISTS %s PARTITION OF job_archive "
+			+ "FOR VALUES FROM ('%s') TO ('%s')";
+	private static final String CREATE_INDEX_SQL = "CREATE INDEX IF NOT EXISTS %s_job_id ON %s (job_id)";
+	private static final String VERSION_SQL = "SELECT CAST(current_setting('server_version_num') AS integer)";
+	private static final String PARTITIONED_SQL = "SELECT count(*) FROM pg_class WHERE relname = 'job_archive' AND relkind = 'p'";
+	private static final String PARTITION_PREFIX = "job_archive_y";
+	private static final String CREATED_ON = "COALESCE(data #>> '{createdOn}', '')";
+	private static final String ARCHIVE_SQL = "DELETE FROM job WHERE ctid = ANY(ARRAY(SELECT ctid FROM job WHERE " + CREATED_ON
+			+ " > '' AND " + CREATED_ON + " < ? AND data ->> 'status' IN (" + JobStatusUpdater.FINAL_STATUSES
+			+ ") LIMIT ?)) RETURNING CAST(data AS text)";
+	private static final String INSERT_SQL = "INSERT INTO job_archive (job_id, status, created_by, created_on, data) "
+			+ "VALUES (?, ?, ?, ?, ?)";
+	private static final String SELECT_SQL = "SELECT data FROM job_archive WHERE job_id = ?";
+	private static final String PARTITIONS_SQL = "SELECT child.relname FROM pg_inherits JOIN pg_class child ON child.oid = "
+			+ "pg_inherits.inhrelid JOIN pg_class parent ON parent.oid = pg_inherits.inhparent WHERE parent.relname = 'job_archive'";
+	private static final String DELETE_EXPIRED_SQL = "DELETE FROM job_archive WHERE created_on < ?";
+
+	private final AtomicLong archived = new AtomicLong();
+	private final AtomicLong partitionsDropped = new AtomicLong();
+	private volatile boolean partitioned;
+	private volatile boolean available = false;
+	private volatile String lastRun;
+
+	/**
+	 * Creates the archive table if it does not exist; partitioned if the database supports it.
+	 */
+	@PostConstruct
+	public void initialize() {
+		try {
+			partitioned = execute(new ReturningWork<Boolean>() {
+				@Override
+				public Boolean execute(Connection connection) throws SQLException {
+					try (Statement statement = connection.createStatement()) {
+						boolean supported = queryInt(statement, VERSION_SQL) >= PARTITIONING_VERSION;
+						statement.execute(supported ? CREATE_PARTITIONED_SQL : CREATE_TABLE_SQL);
+						// The table may have been created unpartitioned, on an earlier database version
+						boolean isPartitioned = supported && (queryInt(statement, PARTITIONED_SQL) > 0);
+						if (!isPartitioned) {
+							createIndex(statement, "job_archive_job_id", "job_id");
+							createIndex(statement, "job_archive_created_on", "created_on");
+						}
+						return isPartitioned;
+					}
+				}
+			});
+			available = true;
+		} catch (RuntimeException exception) {
+			LOG.error("Could not create the Job archive table. Jobs will not be archived.", exception);
+		}
+	}
+
+	/**
+	 * Archives the finished Jobs older than the archive age, in batches up to the per-run limit, and then drops archived
+	 * Jobs older than the retention period, if one is configured.
+	 */
+	@Scheduled(cron = "${jobmanager.archive.cron:0 30 2 * * ?}")
+	public void archiveJobs() {
+		if (!ENABLED || !available) {
+			return;
+		}
+		String cutoff = new DateTime(DateTimeZone.UTC).minusDays(ARCHIVE_AGE_DAYS).toString();
+		long total = 0;
+		try {
+			int count;
+			int batches = 0;
+			do {
+				count = archiveBatch(cutoff);
+				total += count;
+				batches++;
+			} while ((count == BATCH_SIZE) && (batches < MAX_BATCHES));
+			if (count == BATCH_SIZE) {
+				LOG.info("Archived {} Jobs created before {}. More remain, and will be archived on the next run.", total, cutoff);
+			} else {
+				LOG.info("Archived {} Jobs created before {}.", total, cutoff);
+			}
+		} catch (RuntimeException exception) {
+			LOG.error("Error archiving Jobs created before {}, after archiving {} Jobs.", cutoff, total, exception);
+		}
+		try {
+			deleteExpired();
+		} catch (RuntimeException exception) {
+			LOG.error("Error deleting expired archived Jobs.", exception);
+		}
+		lastRun = new DateTime(DateTimeZone.UTC).toString();
+	}
+
+	/**
+	 * Gets an archived Job.
+	 *
+	 * @param jobId
+	 *            The Id of the Job
+	 * @return The Job, or null if it is not archived
+	 */
+	public Job getArchivedJob(final String jobId) {
+		if (!available) {
+			return null;
+		}
+		byte[] data = execute(new ReturningWork<byte[]>() {
+			@Override
+			public byte[] execute(Connection connection) throws SQLException {
+				try (PreparedStatement statement = connection.prepareStatement(SELECT_SQL)) {
+					statement.setString(1, jobId);
+					try (ResultSet results = statement.executeQuery()) {
+						return results.next() ? results.getBytes(1) : null;
+					}
+				}
+			}
+		});
+		if (data == null) {
+			return null;
+		}
+		try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(data))) {
+			return mapper.readValue(input, Job.class);
+		} catch (IOException exception) {
+			throw new IllegalStateException(String.format("Could not read archived Job %s: %s", jobId, exception.getMessage()),
+					exception);
+		}
+	}
+
+	/**
+	 * Gets metrics for the archive: the number of Jobs archived and partitions dropped by this instance, and when the
+	 * archive last ran.
+	 *
+	 * @return The archive metrics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<>();
+		stats.put("enabled", ENABLED && available);
+		stats.put("partitioned", partitioned);
+		stats.put("archived", archived.get());
+		stats.put("partitionsDropped", partitionsDropped.get());
+		stats.put("lastRun", lastRun);
+		return stats;
+	}
+
+	/**
+	 * Moves one batch of finished Jobs created before the cutoff to the archive.
+	 *
+	 * @return The number of Jobs archived
+	 */
+	private int archiveBatch(final String cutoff) {
+		final List<String> jobIds = new ArrayList<>();
+		int count = execute(new ReturningWork<Integer>() {
+			@Override
+			public Integer execute(Connection connection) throws SQLException {
+				List<String> jobs = new ArrayList<>();
+				try (PreparedStatement statement = connection.prepareStatement(ARCHIVE_SQL)) {
+					statement.setString(1, cutoff);
+					statement.setInt(2, BATCH_SIZE);
+					try (ResultSet results = statement.executeQuery()) {
+						while (results.next()) {
+							jobs.add(results.getString(1));
+						}
+					}
+				}
+				if (jobs.isEmpty()) {
+					return 0;
+				}
+				Set<DateTime> months = new LinkedHashSet<>();
+				try (PreparedStatement insert = connection.prepareStatement(INSERT_SQL)) {
+					for (String job : jobs) {
+						JsonNode node = readTree(job);
+						DateTime createdOn = getCreatedOn(node);
+						months.add(createdOn.withDayOfMonth(1).withTimeAtStartOfDay());
+						jobIds.add(node.path("jobId").asText());
+						insert.setString(1, node.path("jobId").asText());
+						insert.setString(2, node.path("status").asText(null));
+						insert.setString(3, node.path("createdBy").asText(null));
+						insert.setTimestamp(4, new Timestamp(createdOn.getMillis()));
+						insert.setBytes(5, compress(job));
+						insert.addBatch();
+					}
+					if (partitioned) {
+						createPartitions(connection, months);
+					}
+					insert.executeBatch();
+				}
+				return jobs.size();
+			}
+		});
+		archived.addAndGet(count);
+		jobStatusCache.invalidateAll(jobIds);
+		return count;
+	}
+
+	/**
+	 * Creates the monthly partitions for the months, if they do not exist.
+	 */
+	private static void createPartitions(Connection connection, Set<DateTime> months) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			for (DateTime month : months) {
+				String name = getPartitionName(month);
+				statement.execute(String.format(CREATE_PARTITION_SQL, name, month, month.plusMonths(1)));
+				statement.execute(String.format(CREATE_INDEX_SQL, name, name));
+			}
+		}
+	}
+
+	/**
+	 * Drops the archived Jobs created before the retention period; as whole partitions, if the archive is partitioned.
+	 * Does nothing unless a retention period is configured.
+	 */
+	private void deleteExpired() {
+		if (RETENTION_MONTHS <= 0) {
+			return;
+		}
+		final DateTime cutoff = new DateTime(DateTimeZone.UTC).withDayOfMonth(1).withTimeAtStartOfDay().minusMonths(RETENTION_MONTHS);
+		execute(new ReturningWork<Void>() {
+			@Override
+			public Void execute(Connection connection) throws SQLException {
+				if (!partitioned) {
+					try (PreparedStatement statement = connection.prepareStatement(DELETE_EXPIRED_SQL)) {
+						statement.setTimestamp(1, new Timestamp(cutoff.getMillis()));
+						LOG.info("Deleted {} archived Jobs created before {}.", statement.executeUpdate(), cutoff);
+					}
+					return null;
+				}
+				List<String> expired = new ArrayList<>();
+				try (Statement statement = connection.createStatement(); ResultSet results = statement.executeQuery(PARTITIONS_SQL)) {
+					while (results.next()) {
+						String name = results.getString(1);
+						// Partition names sort by month, so compare them as names
+						if (name.startsWith(PARTITION_PREFIX) && (name.compareTo(getPartitionName(cutoff)) < 0)) {
+							expired.add(name);
+						}
+					}
+				}
+				try (Statement statement = connection.createStatement()) {
+					for (String name : expired) {
+						statement.execute(String.format("DROP TABLE %s", name));
+						LOG.info("Dropped archive partition {}.", name);
+					}
+				}
+				partitionsDropped.addAndGet(expired.size());
+				return null;
+			}
+		});
+	}
+
+	private JsonNode readTree(String job) throws SQLException {
+		try {
+			return mapper.readTree(job);
+		} catch (IOException exception) {
+			throw new SQLException(String.format("Could not read the stored JSON of a Job: %s", exception.getMessage()), exception);
+		}
+	}
+
+	/**
+	 * Gets the creation time of the Job. Jobs with an unreadable time are archived under the current time.
+	 */
+	private static DateTime getCreatedOn(JsonNode job) {
+		try {
+			return new DateTime(job.path("createdOn").asText(), DateTimeZone.UTC);
+		} catch (IllegalArgumentException exception) {
+			LOG.warn("Job {} has an invalid creation time. Archiving it as created now.", job.path("jobId").asText(), exception);
+			return new DateTime(DateTimeZone.UTC);
+		}
+	}
+
+	private static byte[] compress(String job) throws SQLException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream output = new GZIPOutputStream(bytes)) {
+			output.write(job.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException exception) {
+			throw new SQLException(String.format("Could not compress a Job: %s", exception.getMessage()), exception);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static String getPartitionName(DateTime month) {
+		return String.format("%s%04dm%02d", PARTITION_PREFIX, month.getYear(), month.getMonthOfYear());
+	}
+
+	/**
+	 * Creates an index on the unpartitioned archive, if it does not exist.
+	 */
+	private static void createIndex(Statement statement, String name, String column) throws SQLException {
+		if (queryInt(statement, String.format("SELECT count(*) FROM pg_class WHERE relname = '%s'", name)) == 0) {
+			statement.execute(String.format("CREATE INDEX %s ON job_archive (%s)", name, column));
+		}
+	}
+
+	private static int queryInt(Statement statement, String sql) throws SQLException {
+		try (ResultSet results = statement.executeQuery(sql)) {
+			results.next();
+			return results.getInt(1);
+		}
+	}
+
+	private <T> T execute(final ReturningWork<T> work) {
+		return new TransactionTemplate(transactionManager).execute(new TransactionCallback<T>() {
+			@Override
+			public T doInTransaction(TransactionStatus status) {
+				return entityManager.unwrap(Session.class).doReturningWork(work);
+			}
+		});
+	}
+}
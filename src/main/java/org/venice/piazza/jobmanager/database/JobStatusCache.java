@@ -0,0 +1,149 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.jobmanager.database;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.venice.piazza.common.hibernate.dao.job.JobDao;
+import org.venice.piazza.common.hibernate.entity.JobEntity;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import model.job.Job;
+
+/**
+ * Read-through cache of Jobs for Job Status requests, so that clients polling the status of a Job do not query the
+ * database on every poll. The cache is bounded in size, and entries are evicted when the Job is written through the
+ * Database Accessor.
+ * <p>
+ * Other instances of the Job Manager write to the same database without evicting entries here. Jobs that have not
+ * reached a final status are therefore only served from the cache for a short time. Jobs in a final status no longer
+ * change, and are kept for longer.
+ * </p>
+ * <p>
+ * Cached Jobs are shared between requests, and must not be modified.
+ * </p>
+ */
+@Component
+public class JobStatusCache {
+	@Autowired
+	private JobDao jobDao;
+	@Value("${jobmanager.status.cache.max.size:10000}")
+	private long MAX_SIZE;
+	@Value("${jobmanager.status.cache.active.ttl.ms:2000}")
+	private long ACTIVE_TTL_MS;
+	@Value("${jobmanager.status.cache.final.ttl.ms:600000}")
+	private long FINAL_TTL_MS;
+
+	private Cache<String, CachedJob> cache;
+
+	@PostConstruct
+	public void initialize() {
+		cache = Caffeine.newBuilder().maximumSize(MAX_SIZE).expireAfterWrite(FINAL_TTL_MS, TimeUnit.MILLISECONDS).recordStats().build();
+	}
+
+	/**
+	 * Gets the Job, from the cache if it is present and fresh, or else from the database.
+	 *
+	 * @param jobId
+	 *            The Id of the Job
+	 * @return The Job, or null if it does not exist. This must not be modified.
+	 */
+	public Job getJob(String jobId) {
+		CachedJob cached = cache.get(jobId, loader);
+		if ((cached != null) && !cached.isFresh(ACTIVE_TTL_MS)) {
+			// Only evict the stale entry. Another thread may already have replaced it.
+			cache.asMap().remove(jobId, cached);
+			cached = cache.get(jobId, loader);
+		}
+		return cached != null ? cached.job : null;
+	}
+
+	/**
+	 * Evicts the Job from the cache. Called after the Job is written, so that the next read sees the change.
+	 *
+	 * @param jobId
+	 *            The Id of the Job
+	 */
+	public void invalidate(String jobId) {
+		cache.invalidate(jobId);
+	}
+
+	/**
+	 * Evicts the Jobs from the cache.
+	 *
+	 * @param jobIds
+	 *            The Ids of the Jobs
+	 */
+	public void invalidateAll(Iterable<String> jobIds) {
+		cache.invalidateAll(jobIds);
+	}
+
+	/**
+	 * Gets metrics for the cache: the number of Jobs cached, and the hit rate of requests.
+	 *
+	 * @return The cache metrics
+	 */
+	public Map<String, Object> getStats() {
+		CacheStats cacheStats = cache.stats();
+		Map<String, Object> stats = new HashMap<>();
+		stats.put("size", cache.estimatedSize());
+		stats.put("hits", cacheStats.hitCount());
+		stats.put("misses", cacheStats.missCount());
+		stats.put("hitRate", cacheStats.hitRate());
+		stats.put("evictions", cacheStats.evictionCount());
+		stats.put("averageLoadMillis", cacheStats.averageLoadPenalty() / 1000000.0);
+		return stats;
+	}
+
+	private final Function<String, CachedJob> loader = new Function<String, CachedJob>() {
+		@Override
+		public CachedJob apply(String jobId) {
+			JobEntity jobEntity = jobDao.getJobByJobId(jobId);
+			// Jobs that do not exist are not cached, so they are found as soon as they are created
+			return jobEntity != null ? new CachedJob(jobEntity.getJob()) : null;
+		}
+	};
+
+	/**
+	 * A Job, and the time it was read from the database.
+	 */
+	private static class CachedJob {
+		private final Job job;
+		private final long loadedMillis = System.currentTimeMillis();
+
+		private CachedJob(Job job) {
+			this.job = job;
+		}
+
+		/**
+		 * Jobs in a final status are fresh until they expire from the cache. Other Jobs are fresh for the active TTL.
+		 */
+		private boolean isFresh(long activeTtlMillis) {
+			return DatabaseAccessor.isFinalStatus(job.getStatus()) || (System.currentTimeMillis() - loadedMillis) < activeTtlMillis;
+		}
+	}
+}
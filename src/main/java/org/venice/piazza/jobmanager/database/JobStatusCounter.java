@@ -0,0 +1,211 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.jobmanager.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Counts the Jobs in each status incrementally, so that the Job counts do not scan the Jobs table.
+ * <p>
+ * A trigger on the Jobs table appends a +1 or -1 row to the job_status_count table whenever a Job is inserted, deleted
+ * or changes status. Every writer of the table is counted, including other components and other instances. Appending
+ * rows, rather than updating one row per status, means that concurrent Job writes never wait on each other for the
+ * counter. The rows are periodically compacted into a single row per status, so that a count only sums a few rows.
+ * </p>
+ * <p>
+ * The counts are seeded from the Jobs table when the trigger is first created. If the trigger cannot be created, such
+ * as when the database user may not create functions, counts fall back to counting the Jobs table.
+ * </p>
+ */
+@Component
+public class JobStatusCounter {
+	@PersistenceContext
+	private EntityManager entityManager;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Value("${jobmanager.status.count.enabled:true}")
+	private boolean ENABLED;
+
+	private static final Logger LOG = LoggerFactory.getLogger(JobStatusCounter.class);
+	private static final String TRIGGER_NAME = "job_status_count";
+	private static final String CREATE_TABLE_SQL = "CREATE TABLE IF NOT EXISTS job_status_count (status text NOT NULL, "
+			+ "delta bigint NOT NULL)";
+	private static final String CREATE_FUNCTION_SQL = "CREATE OR REPLACE FUNCTION job_status_count() RETURNS trigger AS $$ "
+			+ "BEGIN "
+			+ "IF TG_OP = 'UPDATE' AND (OLD.data ->> 'status') IS NOT DISTINCT FROM (NEW.data ->> 'status') THEN RETURN NULL; END IF; "
+			+ "IF TG_OP IN ('UPDATE', 'DELETE') THEN "
+			+ "INSERT INTO job_status_count (status, delta) VALUES (COALESCE(OLD.data ->> 'status', ''), -1); END IF; "
+			+ "IF TG_OP IN ('UPDATE', 'INSERT') THEN "
+			+ "INSERT INTO job_status_count (status, delta) VALUES (COALESCE(NEW.data ->> 'status', ''), 1); END IF; "
+			+ "RETURN NULL; "
+			+ "END $$ LANGUAGE plpgsql";
+	private static final String LOCK_SQL = "LOCK TABLE job IN SHARE ROW EXCLUSIVE MODE";
+	private static final String SEED_SQL = "INSERT INTO job_status_count (status, delta) "
+			+ "SELECT COALESCE(data ->> 'status', ''), count(*) FROM job GROUP BY 1";
+	private static final String CREATE_TRIGGER_SQL = "CREATE TRIGGER " + TRIGGER_NAME
+			+ " AFTER INSERT OR UPDATE OR DELETE ON job FOR EACH ROW EXECUTE PROCEDURE job_status_count()";
+	private static final String COMPACT_SQL = "WITH compacted AS (DELETE FROM job_status_count RETURNING status, delta) "
+			+ "INSERT INTO job_status_count (status, delta) SELECT status, sum(delta) FROM compacted GROUP BY status";
+	private static final String COUNT_ALL_SQL = "SELECT COALESCE(sum(delta), 0) FROM job_status_count";
+	private static final String COUNT_STATUS_SQL = "SELECT COALESCE(sum(delta), 0) FROM job_status_count WHERE status = ?";
+
+	private volatile boolean available = false;
+
+	/**
+	 * Creates the counter table and the trigger that maintains it, if they do not exist. The Jobs table is locked
+	 * against writes while the counts are seeded, so that no Job is counted twice or missed.
+	 */
+	@PostConstruct
+	public void initialize() {
+		if (!ENABLED) {
+			return;
+		}
+		try {
+			execute(new ReturningWork<Void>() {
+				@Override
+				public Void execute(Connection connection) throws SQLException {
+					if (triggerExists(connection)) {
+						return null;
+					}
+					try (Statement statement = connection.createStatement()) {
+						statement.execute(CREATE_TABLE_SQL);
+						statement.execute(LOCK_SQL);
+						// Checked again under the lock, so that only one instance seeds the counts
+						if (!triggerExists(connection)) {
+							LOG.info("Creating the Job status count trigger, and seeding the counts from the Jobs table.");
+							statement.execute(CREATE_FUNCTION_SQL);
+							statement.execute("DELETE FROM job_status_count");
+							statement.execute(SEED_SQL);
+							statement.execute(CREATE_TRIGGER_SQL);
+						}
+					}
+					return null;
+				}
+			});
+			available = true;
+		} catch (RuntimeException exception) {
+			LOG.error("Could not create the Job status count trigger. Job counts will count the Jobs table.", exception);
+		}
+	}
+
+	/**
+	 * Determines if the counts are maintained. If not, the caller should count the Jobs table instead.
+	 *
+	 * @return True if the counts are available
+	 */
+	public boolean isAvailable() {
+		return available;
+	}
+
+	/**
+	 * Gets the total number of Jobs.
+	 *
+	 * @return The number of Jobs
+	 */
+	public long getCount() {
+		return count(COUNT_ALL_SQL, null);
+	}
+
+	/**
+	 * Gets the number of Jobs in the status.
+	 *
+	 * @param status
+	 *            The status
+	 * @return The number of Jobs in the status
+	 */
+	public long getCount(String status) {
+		return count(COUNT_STATUS_SQL, status);
+	}
+
+	/**
+	 * Compacts the counts into a single row per status.
+	 */
+	@Scheduled(fixedDelayString = "${jobmanager.status.count.compact.interval.ms:60000}")
+	public void compact() {
+		if (!available) {
+			return;
+		}
+		try {
+			execute(new ReturningWork<Void>() {
+				@Override
+				public Void execute(Connection connection) throws SQLException {
+					try (Statement statement = connection.createStatement()) {
+						statement.execute(COMPACT_SQL);
+					}
+					return null;
+				}
+			});
+		} catch (RuntimeException exception) {
+			LOG.warn("Could not compact the Job status counts.", exception);
+		}
+	}
+
+	private long count(final String sql, final String status) {
+		return execute(new ReturningWork<Long>() {
+			@Override
+			public Long execute(Connection connection) throws SQLException {
+				try (PreparedStatement statement = connection.prepareStatement(sql)) {
+					if (status != null) {
+						statement.setString(1, status);
+					}
+					try (ResultSet results = statement.executeQuery()) {
+						results.next();
+						return results.getLong(1);
+					}
+				}
+			}
+		});
+	}
+
+	private static boolean triggerExists(Connection connection) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM pg_trigger WHERE tgname = ?")) {
+			statement.setString(1, TRIGGER_NAME);
+			try (ResultSet results = statement.executeQuery()) {
+				return results.next();
+			}
+		}
+	}
+
+	private <T> T execute(final ReturningWork<T> work) {
+		return new TransactionTemplate(transactionManager).execute(new TransactionCallback<T>() {
+			@Override
+			public T doInTransaction(TransactionStatus status) {
+				return entityManager.unwrap(Session.class).doReturningWork(work);
+			}
+		});
+	}
+}
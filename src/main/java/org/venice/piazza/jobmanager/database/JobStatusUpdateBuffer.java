@@ -0,0 +1,288 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.jobmanager.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.venice.piazza.jobmanager.messaging.JobStatusNotifier;
+
+import model.logger.AuditElement;
+import model.logger.Severity;
+import model.status.StatusUpdate;
+import util.PiazzaLogger;
+
+/**
+ * Write-behind buffer for Job Status Updates. Updates received for the same Job within the flush interval are
+ * coalesced into a single update, and all pending updates are then written to the database in one batch. Services that
+ * report progress frequently therefore cost one write per Job per interval, rather than one write per message.
+ * <p>
+ * Coalescing follows the same rules as the database: once a finalized status (such as Success) is buffered for a Job,
+ * later statuses for that Job are disregarded, while the latest progress and result are always kept.
+ * </p>
+ * <p>
+ * Each update may carry a callback, which is completed once the update has been written, or once writing it has
+ * failed. Callers that acknowledge the source of an update, such as a queue message, do so from the callback, so that
+ * an update is never acknowledged before it is in the database. The buffer is flushed on its own thread, so that a slow
+ * database write does not delay other scheduled tasks, and is not delayed by them.
+ * </p>
+ */
+@Component
+public class JobStatusUpdateBuffer {
+	@Autowired
+	private DatabaseAccessor accessor;
+	@Autowired
+	private JobStatusNotifier statusNotifier;
+	@Autowired
+	private PiazzaLogger logger;
+
+	@Value("${jobmanager.status.flush.interval.ms:250}")
+	private long FLUSH_INTERVAL_MS;
+
+	private static final Logger LOG = LoggerFactory.getLogger(JobStatusUpdateBuffer.class);
+
+	private final Object lock = new Object();
+	private Map<String, StatusUpdate> pending = new LinkedHashMap<>();
+	private Map<String, List<Callback>> pendingCallbacks = new HashMap<>();
+	private ScheduledExecutorService flusher;
+	private final AtomicLong updatesReceived = new AtomicLong();
+	private final AtomicLong updatesCoalesced = new AtomicLong();
+	private final AtomicLong jobsWritten = new AtomicLong();
+	private final AtomicLong flushes = new AtomicLong();
+	private final AtomicLong flushFailures = new AtomicLong();
+	private volatile long lastFlushMillis = 0;
+	private volatile long maxFlushMillis = 0;
+
+	/**
+	 * Starts flushing the buffer on its own thread.
+	 */
+	@PostConstruct
+	public void initialize() {
+		flusher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("JobStatusFlush-"));
+		flusher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch (Exception exception) {
+					// An exception would cancel the schedule, so the next flush retries instead
+					LOG.error("Error flushing Job Status Updates.", exception);
+				}
+			}
+		}, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Buffers the Status Update, merging it with any update already pending for the same Job.
+	 *
+	 * @param statusUpdate
+	 *            The Status Update. This object is not modified.
+	 * @param callback
+	 *            Completed once the update has been written, or has failed to be written. May be null.
+	 */
+	public void submit(StatusUpdate statusUpdate, Callback callback) {
+		String jobId = statusUpdate.getJobId();
+		updatesReceived.incrementAndGet();
+		synchronized (lock) {
+			StatusUpdate existing = pending.get(jobId);
+			if (existing == null) {
+				pending.put(jobId, copy(statusUpdate));
+			} else {
+				merge(existing, statusUpdate);
+				updatesCoalesced.incrementAndGet();
+			}
+			if (callback != null) {
+				List<Callback> callbacks = pendingCallbacks.get(jobId);
+				if (callbacks == null) {
+					callbacks = new ArrayList<>();
+					pendingCallbacks.put(jobId, callbacks);
+				}
+				callbacks.add(callback);
+			}
+		}
+	}
+
+	/**
+	 * Writes all pending updates to the database, and then completes their callbacks. Runs on a fixed delay, and may
+	 * also be called directly.
+	 */
+	public void flush() {
+		Map<String, StatusUpdate> batch;
+		Map<String, List<Callback>> batchCallbacks;
+		synchronized (lock) {
+			if (pending.isEmpty()) {
+				return;
+			}
+			batch = pending;
+			batchCallbacks = pendingCallbacks;
+			pending = new LinkedHashMap<>();
+			pendingCallbacks = new HashMap<>();
+		}
+
+		long start = System.currentTimeMillis();
+		try {
+			jobsWritten.addAndGet(accessor.updateJobStatuses(batch));
+			for (List<Callback> callbacks : batchCallbacks.values()) {
+				completePersisted(callbacks);
+			}
+		} catch (Exception exception) {
+			// Fall back to writing each Job on its own, so that one bad update does not lose the others
+			flushFailures.incrementAndGet();
+			LOG.error("Error writing batch of {} Job Status Updates. Writing individually.", batch.size(), exception);
+			writeIndividually(batch, batchCallbacks);
+		}
+		// Wake any clients waiting on these Jobs, now that the updates are visible
+		statusNotifier.publish(batch.keySet());
+		long elapsed = System.currentTimeMillis() - start;
+		lastFlushMillis = elapsed;
+		maxFlushMillis = Math.max(maxFlushMillis, elapsed);
+		flushes.incrementAndGet();
+	}
+
+	/**
+	 * Gets metrics for the buffer: the number of Jobs with pending updates, the number of updates received and
+	 * coalesced, and the latency of the flushes.
+	 *
+	 * @return The buffer metrics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<>();
+		synchronized (lock) {
+			stats.put("queueDepth", pending.size());
+		}
+		stats.put("updatesReceived", updatesReceived.get());
+		stats.put("updatesCoalesced", updatesCoalesced.get());
+		stats.put("jobsWritten", jobsWritten.get());
+		stats.put("flushes", flushes.get());
+		stats.put("flushFailures", flushFailures.get());
+		stats.put("lastFlushMillis", lastFlushMillis);
+		stats.put("maxFlushMillis", maxFlushMillis);
+		return stats;
+	}
+
+	/**
+	 * Stops the scheduled flushes, and writes any pending updates before shutdown.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		if (flusher != null) {
+			flusher.shutdown();
+			try {
+				flusher.awaitTermination(FLUSH_INTERVAL_MS * 4, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException exception) {
+				LOG.warn("Interrupted while waiting for the Job Status flush to finish.", exception);
+				Thread.currentThread().interrupt();
+			}
+		}
+		flush();
+	}
+
+	private void writeIndividually(Map<String, StatusUpdate> batch, Map<String, List<Callback>> batchCallbacks) {
+		for (Map.Entry<String, StatusUpdate> entry : batch.entrySet()) {
+			List<Callback> callbacks = batchCallbacks.containsKey(entry.getKey()) ? batchCallbacks.get(entry.getKey())
+					: Collections.<Callback> emptyList();
+			try {
+				accessor.updateJobStatus(entry.getKey(), entry.getValue());
+				jobsWritten.incrementAndGet();
+				completePersisted(callbacks);
+			} catch (Exception exception) {
+				String error = String.format("Error Updating Status for Job %s with error %s", entry.getKey(), exception.getMessage());
+				LOG.error(error, exception);
+				logger.log(error, Severity.ERROR, new AuditElement("jobmanager", "failedToUpdateJobStatus", entry.getKey()));
+				completeFailed(callbacks, exception);
+			}
+		}
+	}
+
+	private static void completePersisted(List<Callback> callbacks) {
+		for (Callback callback : callbacks) {
+			try {
+				callback.onPersisted();
+			} catch (Exception exception) {
+				LOG.error("Error completing Job Status Update callback.", exception);
+			}
+		}
+	}
+
+	private static void completeFailed(List<Callback> callbacks, Exception cause) {
+		for (Callback callback : callbacks) {
+			try {
+				callback.onFailure(cause);
+			} catch (Exception exception) {
+				LOG.error("Error completing Job Status Update callback.", exception);
+			}
+		}
+	}
+
+	private static StatusUpdate copy(StatusUpdate statusUpdate) {
+		StatusUpdate copy = new StatusUpdate(statusUpdate.getStatus(), statusUpdate.getProgress());
+		copy.setResult(statusUpdate.getResult());
+		copy.setJobId(statusUpdate.getJobId());
+		return copy;
+	}
+
+	/**
+	 * Merges the newer update into the pending one, as if both had been applied to the Job in order.
+	 */
+	private static void merge(StatusUpdate pendingUpdate, StatusUpdate newer) {
+		if (StringUtils.isNotEmpty(newer.getStatus()) && !DatabaseAccessor.isFinalStatus(pendingUpdate.getStatus())) {
+			pendingUpdate.setStatus(newer.getStatus());
+		}
+		if (newer.getProgress() != null) {
+			pendingUpdate.setProgress(newer.getProgress());
+		}
+		if (newer.getResult() != null) {
+			pendingUpdate.setResult(newer.getResult());
+		}
+	}
+
+	/**
+	 * Completed once a buffered Status Update has been written to the database, or has failed to be written.
+	 * Callbacks are completed on the flushing thread, and should return quickly.
+	 */
+	public interface Callback {
+		/**
+		 * The update, merged with any other updates for the Job, has been committed to the database.
+		 */
+		void onPersisted();
+
+		/**
+		 * The update could not be written to the database.
+		 *
+		 * @param exception
+		 *            The cause of the failure
+		 */
+		void onFailure(Exception exception);
+	}
+}
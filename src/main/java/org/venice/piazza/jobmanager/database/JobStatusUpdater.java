@@ -0,0 +1,256 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.jobmanager.database;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import model.job.result.ResultType;
+import model.status.StatusUpdate;
+
+/**
+ * Applies Job Status Updates to the Jobs table as conditional, in-place updates of the Job JSON, rather than loading
+ * the Job entity, modifying it and saving it back. Concurrent updates to the same Job therefore cannot overwrite each
+ * other, and a finalized status (such as Success) can never be replaced by a late Running update.
+ * <p>
+ * Each update is a single UPDATE statement that merges the progress and result into the Job, and only merges the
+ * status if the stored status is not final. Updates for many Jobs are sent as one JDBC batch.
+ * </p>
+ * <p>
+ * The JSON merge operator requires PostgreSQL 9.5. If the database does not support it, updates fall back to an
+ * optimistic compare-and-set: the Job JSON is read, updated in memory, and written back only if it has not changed in
+ * the meantime, retrying if it has.
+ * </p>
+ */
+@Component
+public class JobStatusUpdater {
+	@PersistenceContext
+	private EntityManager entityManager;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private ObjectMapper mapper;
+	@Value("${jobmanager.status.update.max.attempts:5}")
+	private int MAX_ATTEMPTS;
+
+	private static final Logger LOG = LoggerFactory.getLogger(JobStatusUpdater.class);
+	private static final String UNDEFINED_FUNCTION_STATE = "42883";
+	static final String FINAL_STATUSES = String.format("'%s','%s','%s','%s'", StatusUpdate.STATUS_CANCELLED,
+			StatusUpdate.STATUS_ERROR, StatusUpdate.STATUS_FAIL, StatusUpdate.STATUS_SUCCESS);
+	private static final String PATCH_SQL = "UPDATE job SET data = data || CAST(? AS jsonb) || (CASE WHEN data ->> 'status' IN ("
+			+ FINAL_STATUSES + ") THEN CAST('{}' AS jsonb) ELSE CAST(? AS jsonb) END) WHERE data ->> 'jobId' = ?";
+	private static final String SELECT_SQL = "SELECT CAST(data AS text) FROM job WHERE data ->> 'jobId' = ?";
+	private static final String COMPARE_AND_SET_SQL = "UPDATE job SET data = CAST(? AS jsonb) WHERE data ->> 'jobId' = ? "
+			+ "AND CAST(data AS jsonb) = CAST(? AS jsonb)";
+
+	private final AtomicBoolean patchSupported = new AtomicBoolean(true);
+
+	/**
+	 * Applies the Status Updates to their Jobs in a single transaction.
+	 *
+	 * @param statusUpdates
+	 *            The Status Update information, keyed by the Id of the Job to update
+	 * @return The number of Jobs updated. Jobs that do not exist are skipped.
+	 */
+	public int updateJobStatuses(final Map<String, StatusUpdate> statusUpdates) {
+		if (statusUpdates.isEmpty()) {
+			return 0;
+		}
+		if (patchSupported.get()) {
+			try {
+				return execute(new ReturningWork<Integer>() {
+					@Override
+					public Integer execute(Connection connection) throws SQLException {
+						return patch(connection, statusUpdates);
+					}
+				});
+			} catch (RuntimeException exception) {
+				if (!UNDEFINED_FUNCTION_STATE.equals(getSqlState(exception))) {
+					throw exception;
+				}
+				patchSupported.set(false);
+				LOG.warn("The database does not support in-place JSON updates. Using compare-and-set for Job Status Updates.");
+			}
+		}
+		return execute(new ReturningWork<Integer>() {
+			@Override
+			public Integer execute(Connection connection) throws SQLException {
+				return compareAndSet(connection, statusUpdates);
+			}
+		});
+	}
+
+	/**
+	 * Applies the Status Update to the JSON of a Job, following the same rules as the in-place update: the status is
+	 * only changed if the current status is not final, and the progress and result are replaced if they are set.
+	 *
+	 * @param jobJson
+	 *            The JSON of the Job
+	 * @param statusUpdate
+	 *            The Status Update
+	 * @return The updated JSON of the Job
+	 */
+	public String applyStatusUpdate(String jobJson, StatusUpdate statusUpdate) throws IOException {
+		ObjectNode job = (ObjectNode) mapper.readTree(jobJson);
+		if (StringUtils.isNotEmpty(statusUpdate.getStatus()) && !DatabaseAccessor.isFinalStatus(job.path("status").asText(null))) {
+			job.put("status", statusUpdate.getStatus());
+		}
+		job.setAll(getPatch(statusUpdate));
+		return mapper.writeValueAsString(job);
+	}
+
+	private int patch(Connection connection, Map<String, StatusUpdate> statusUpdates) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(PATCH_SQL)) {
+			for (Map.Entry<String, StatusUpdate> entry : statusUpdates.entrySet()) {
+				StatusUpdate statusUpdate = entry.getValue();
+				ObjectNode statusPatch = mapper.createObjectNode();
+				if (StringUtils.isNotEmpty(statusUpdate.getStatus())) {
+					statusPatch.put("status", statusUpdate.getStatus());
+				}
+				statement.setString(1, getPatch(statusUpdate).toString());
+				statement.setString(2, statusPatch.toString());
+				statement.setString(3, entry.getKey());
+				statement.addBatch();
+			}
+			int updated = 0;
+			for (int count : statement.executeBatch()) {
+				// Drivers may report success without a row count
+				updated += (count == PreparedStatement.SUCCESS_NO_INFO) ? 1 : count;
+			}
+			return updated;
+		}
+	}
+
+	private int compareAndSet(Connection connection, Map<String, StatusUpdate> statusUpdates) throws SQLException {
+		int updated = 0;
+		try (PreparedStatement select = connection.prepareStatement(SELECT_SQL);
+				PreparedStatement update = connection.prepareStatement(COMPARE_AND_SET_SQL)) {
+			for (Map.Entry<String, StatusUpdate> entry : statusUpdates.entrySet()) {
+				if (compareAndSet(select, update, entry.getKey(), entry.getValue())) {
+					updated++;
+				}
+			}
+		}
+		return updated;
+	}
+
+	/**
+	 * Reads the Job, and writes the updated Job if it is unchanged since the read. Retries if another update was
+	 * written first.
+	 *
+	 * @return True if the Job was updated, false if it does not exist
+	 */
+	private boolean compareAndSet(PreparedStatement select, PreparedStatement update, String jobId, StatusUpdate statusUpdate)
+			throws SQLException {
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			String current;
+			select.setString(1, jobId);
+			try (ResultSet results = select.executeQuery()) {
+				if (!results.next()) {
+					return false;
+				}
+				current = results.getString(1);
+			}
+			String updated;
+			try {
+				updated = applyStatusUpdate(current, statusUpdate);
+			} catch (IOException exception) {
+				throw new SQLException(String.format("Could not read the stored JSON of Job %s: %s", jobId, exception.getMessage()),
+						exception);
+			}
+			update.setString(1, updated);
+			update.setString(2, jobId);
+			update.setString(3, current);
+			if (update.executeUpdate() > 0) {
+				return true;
+			}
+		}
+		throw new OptimisticLockingFailureException(
+				String.format("Job %s was modified concurrently %s times while updating its status.", jobId, MAX_ATTEMPTS));
+	}
+
+	/**
+	 * Gets the parts of the update that always apply: the progress and the result, if set.
+	 */
+	private ObjectNode getPatch(StatusUpdate statusUpdate) {
+		ObjectNode patch = mapper.createObjectNode();
+		try {
+			if (statusUpdate.getProgress() != null) {
+				patch.set("progress", mapper.valueToTree(statusUpdate.getProgress()));
+			}
+			if (statusUpdate.getResult() != null) {
+				// Serialize as the base type, so the result carries its type information
+				patch.set("result", mapper.readTree(mapper.writerFor(ResultType.class).writeValueAsString(statusUpdate.getResult())));
+			}
+		} catch (IOException exception) {
+			throw new IllegalArgumentException(
+					String.format("Could not serialize the Status Update for Job %s: %s", statusUpdate.getJobId(), exception.getMessage()),
+					exception);
+		}
+		return patch;
+	}
+
+	private int execute(final ReturningWork<Integer> work) {
+		return new TransactionTemplate(transactionManager).execute(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus status) {
+				return entityManager.unwrap(Session.class).doReturningWork(work);
+			}
+		});
+	}
+
+	/**
+	 * Finds the SQL State of the first SQL Exception in the cause chain, if any.
+	 */
+	private static String getSqlState(Throwable exception) {
+		for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLException) {
+				SQLException sqlException = (SQLException) cause;
+				// Batch failures carry the cause of the failed statement as the next exception
+				if ((sqlException.getSQLState() == null) && (sqlException.getNextException() != null)) {
+					return sqlException.getNextException().getSQLState();
+				}
+				return sqlException.getSQLState();
+			}
+		}
+		return null;
+	}
+}
@@ -19,16 +19,21 @@ import java.io.IOException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.Argument;
 import org.springframework.amqp.rabbit.annotation.Exchange;
 import org.springframework.amqp.rabbit.annotation.Queue;
 import org.springframework.amqp.rabbit.annotation.QueueBinding;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
 
+import org.venice.piazza.jobmanager.database.JobStatusUpdateBuffer;
 import org.venice.piazza.jobmanager.messaging.handler.RequestJobHandler;
 import org.venice.piazza.jobmanager.messaging.handler.UpdateStatusHandler;
 import messaging.job.JobMessageFactory;
@@ -52,11 +57,19 @@ public class JobMessager {
 	@Autowired
 	private RequestJobHandler requestJobHandler;
 	@Autowired
+	private JobUpdateDispatcher updateDispatcher;
+	@Autowired
 	private ObjectMapper mapper;
 
 	@Value("${SPACE}")
 	private String space;
 
+	/**
+	 * Job Updates that cannot be written after being redelivered are dead-lettered to this exchange, with their original
+	 * routing key, rather than being redelivered indefinitely.
+	 */
+	public static final String DEAD_LETTER_EXCHANGE_NAME = "PiazzaDeadLetter";
+
 	private static final Logger LOG = LoggerFactory.getLogger(JobMessager.class);
 
 	public JobMessager() {
@@ -64,23 +77,54 @@ public class JobMessager {
 	}
 
 	/**
-	 * Processes a message coming in through the queue to update a job
+	 * Processes a message coming in through the queue to update a job. Messages are read by a single consumer, so they
+	 * arrive in order, and are then processed concurrently on the shard that owns the Job. The shard hands the update to
+	 * the Job Status Update buffer, and the message is acknowledged only once the buffer has written the update to the
+	 * database. If the write fails, the message is returned to the queue once; if the write of the redelivered message
+	 * fails as well, the message is dead-lettered.
 	 * 
 	 * @param statusUpdateString
 	 *            The Job Message Update, tied to the StatusUpdate POJO
+	 * @param channel
+	 *            The channel the message was received on, used to acknowledge it
+	 * @param deliveryTag
+	 *            The delivery tag of the message
+	 * @param redelivered
+	 *            True if the broker has delivered the message before
 	 */
-	@RabbitListener(bindings = @QueueBinding(key = "UpdateJob-${SPACE}", value = @Queue(value = "JobManagerUpdate-${SPACE}", autoDelete = "false", durable = "true"), exchange = @Exchange(value = JobMessageFactory.PIAZZA_EXCHANGE_NAME, autoDelete = "false", durable = "true")))
-	public void processUpdateMessage(String statusUpdateString) {
+	@RabbitListener(containerFactory = "jobUpdateListenerContainerFactory", bindings = @QueueBinding(key = "UpdateJob-${SPACE}", value = @Queue(value = "JobManagerUpdate-${SPACE}", autoDelete = "false", durable = "true", arguments = @Argument(name = "x-dead-letter-exchange", value = DEAD_LETTER_EXCHANGE_NAME)), exchange = @Exchange(value = JobMessageFactory.PIAZZA_EXCHANGE_NAME, autoDelete = "false", durable = "true")))
+	public void processUpdateMessage(String statusUpdateString, final Channel channel,
+			@Header(AmqpHeaders.DELIVERY_TAG) final long deliveryTag, @Header(AmqpHeaders.REDELIVERED) final boolean redelivered) {
+		final StatusUpdate statusUpdate;
 		try {
 			// Get the POJO
-			StatusUpdate statusUpdate = mapper.readValue(statusUpdateString, StatusUpdate.class);
-			// Process the Message
-			updateStatusHandler.process(statusUpdate);
+			statusUpdate = mapper.readValue(statusUpdateString, StatusUpdate.class);
 		} catch (IOException exception) {
 			String error = String.format("Error Reading Status Message from Queue %s", exception.getMessage());
 			LOG.error(error, exception);
 			logger.log(error, Severity.ERROR);
+			// The message can never be read, so do not redeliver it
+			acknowledge(channel, deliveryTag);
+			return;
 		}
+		// Process the Message after any earlier updates for the same Job
+		updateDispatcher.dispatch(statusUpdate.getJobId(), new Runnable() {
+			@Override
+			public void run() {
+				updateStatusHandler.process(statusUpdate, new JobStatusUpdateBuffer.Callback() {
+					@Override
+					public void onPersisted() {
+						acknowledge(channel, deliveryTag);
+					}
+
+					@Override
+					public void onFailure(Exception exception) {
+						// The update is not in the database, so have the broker redeliver it, unless it already has
+						reject(channel, deliveryTag, !redelivered);
+					}
+				});
+			}
+		});
 	}
 
 	/**
@@ -89,7 +133,7 @@ public class JobMessager {
 	 * @param requestJobString
 	 *            The Job Request, tied to the PiazzaJobRequest POJO
 	 */
-	@RabbitListener(bindings = @QueueBinding(key = "RequestJob-${SPACE}", value = @Queue(value = "JobManagerRequest-${SPACE}", autoDelete = "false", durable = "true"), exchange = @Exchange(value = JobMessageFactory.PIAZZA_EXCHANGE_NAME, autoDelete = "false", durable = "true")))
+	@RabbitListener(containerFactory = "jobRequestListenerContainerFactory", bindings = @QueueBinding(key = "RequestJob-${SPACE}", value = @Queue(value = "JobManagerRequest-${SPACE}", autoDelete = "false", durable = "true"), exchange = @Exchange(value = JobMessageFactory.PIAZZA_EXCHANGE_NAME, autoDelete = "false", durable = "true")))
 	public void processRequestMessage(String requestJobString) {
 		try {
 			// Get the POJO
@@ -103,4 +147,37 @@ public class JobMessager {
 		}
 	}
 
+	/**
+	 * Acknowledges a message. Shards acknowledge from their own threads, so access to the channel is serialized.
+	 */
+	private void acknowledge(Channel channel, long deliveryTag) {
+		try {
+			synchronized (channel) {
+				channel.basicAck(deliveryTag, false);
+			}
+		} catch (IOException | RuntimeException exception) {
+			// The broker redelivers unacknowledged messages once the channel is closed
+			LOG.error("Could not acknowledge Job Update message {}. It will be redelivered.", deliveryTag, exception);
+		}
+	}
+
+	/**
+	 * Rejects a message, either returning it to the queue to be redelivered, or dead-lettering it.
+	 */
+	private void reject(Channel channel, long deliveryTag, boolean requeue) {
+		try {
+			if (!requeue) {
+				String error = String.format(
+						"Job Update message %s could not be written after being redelivered, and was sent to the %s exchange.", deliveryTag,
+						DEAD_LETTER_EXCHANGE_NAME);
+				LOG.error(error);
+				logger.log(error, Severity.ERROR);
+			}
+			synchronized (channel) {
+				channel.basicNack(deliveryTag, false, requeue);
+			}
+		} catch (IOException | RuntimeException exception) {
+			LOG.error("Could not reject Job Update message {}. It will be redelivered.", deliveryTag, exception);
+		}
+	}
 }
@@ -0,0 +1,226 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.jobmanager.messaging;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.venice.piazza.jobmanager.database.JobStatusCache;
+
+import model.job.Job;
+
+/**
+ * Notifies in-process listeners, such as clients waiting on a Job to complete, when the status of a Job changes. This
+ * lets clients wait for a Job without polling its status.
+ * <p>
+ * Listeners are notified once updates to their Job have been written to the database, and are notified on a small
+ * pool of notification threads, never on the thread that wrote the update, so that slow clients cannot occupy the
+ * shared task executor. Updates to a Job may also be written by other instances of the Job Manager, so the Jobs being
+ * listened to are also re-checked periodically. That re-check also delivers any notification dropped because the
+ * notification queue was full.
+ * </p>
+ */
+@Component
+public class JobStatusNotifier {
+	@Autowired
+	private JobStatusCache jobStatusCache;
+	@Value("${jobmanager.status.notify.threads:2}")
+	private int NOTIFY_THREADS;
+	@Value("${jobmanager.status.notify.queue.capacity:1000}")
+	private int NOTIFY_QUEUE_CAPACITY;
+
+	private static final Logger LOG = LoggerFactory.getLogger(JobStatusNotifier.class);
+
+	private final Map<String, Set<Listener>> listeners = new ConcurrentHashMap<>();
+	private final AtomicLong notifications = new AtomicLong();
+	private final AtomicLong droppedNotifications = new AtomicLong();
+	private ExecutorService notificationExecutor;
+
+	/**
+	 * Receives the latest state of a Job whenever it may have changed.
+	 */
+	public interface Listener {
+		/**
+		 * Called with the latest state of the Job. The Job may be unchanged since the last call.
+		 *
+		 * @param job
+		 *            The Job, or null if it no longer exists. This must not be modified.
+		 */
+		void onJobUpdated(Job job);
+	}
+
+	/**
+	 * Starts the notification threads.
+	 */
+	@PostConstruct
+	public void initialize() {
+		notificationExecutor = new ThreadPoolExecutor(NOTIFY_THREADS, NOTIFY_THREADS, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(NOTIFY_QUEUE_CAPACITY), new CustomizableThreadFactory("JobStatusNotifier-"),
+				new RejectedExecutionHandler() {
+					@Override
+					public void rejectedExecution(Runnable notification, ThreadPoolExecutor executor) {
+						droppedNotifications.incrementAndGet();
+					}
+				});
+	}
+
+	/**
+	 * Stops the notification threads. Pending notifications are discarded.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		notificationExecutor.shutdownNow();
+	}
+
+	/**
+	 * Registers the listener for updates to the Job, and returns the current state of the Job. The listener is
+	 * registered before the Job is read, so no update made after the read is missed.
+	 *
+	 * @param jobId
+	 *            The Id of the Job
+	 * @param listener
+	 *            The listener
+	 * @return The current Job, or null if it does not exist
+	 */
+	public Job subscribe(String jobId, final Listener listener) {
+		// Add and remove atomically, so a listener is never added to a set that is being removed
+		listeners.compute(jobId, new BiFunction<String, Set<Listener>, Set<Listener>>() {
+			@Override
+			public Set<Listener> apply(String key, Set<Listener> jobListeners) {
+				Set<Listener> updated = (jobListeners != null) ? jobListeners : new CopyOnWriteArraySet<Listener>();
+				updated.add(listener);
+				return updated;
+			}
+		});
+		return jobStatusCache.getJob(jobId);
+	}
+
+	/**
+	 * Removes the listener for the Job.
+	 *
+	 * @param jobId
+	 *            The Id of the Job
+	 * @param listener
+	 *            The listener
+	 */
+	public void unsubscribe(String jobId, final Listener listener) {
+		listeners.computeIfPresent(jobId, new BiFunction<String, Set<Listener>, Set<Listener>>() {
+			@Override
+			public Set<Listener> apply(String key, Set<Listener> jobListeners) {
+				jobListeners.remove(listener);
+				return jobListeners.isEmpty() ? null : jobListeners;
+			}
+		});
+	}
+
+	/**
+	 * Notifies the listeners of the Jobs that they have been updated. Jobs with no listeners are ignored.
+	 *
+	 * @param jobIds
+	 *            The Ids of the updated Jobs
+	 */
+	public void publish(Collection<String> jobIds) {
+		final List<String> listenedTo = new ArrayList<>();
+		for (String jobId : jobIds) {
+			if (listeners.containsKey(jobId)) {
+				listenedTo.add(jobId);
+			}
+		}
+		if (listenedTo.isEmpty()) {
+			return;
+		}
+		notificationExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				for (String jobId : listenedTo) {
+					notifyListeners(jobId);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Re-checks all Jobs being listened to, so that listeners also see updates written by other instances.
+	 */
+	@Scheduled(fixedDelayString = "${jobmanager.status.wait.recheck.ms:5000}")
+	public void recheck() {
+		publish(new ArrayList<>(listeners.keySet()));
+	}
+
+	/**
+	 * Gets metrics for the notifier: the number of Jobs and listeners waiting, and the number of notifications sent and
+	 * dropped.
+	 *
+	 * @return The notifier metrics
+	 */
+	public Map<String, Object> getStats() {
+		int waiting = 0;
+		for (Set<Listener> jobListeners : listeners.values()) {
+			waiting += jobListeners.size();
+		}
+		Map<String, Object> stats = new HashMap<>();
+		stats.put("jobs", listeners.size());
+		stats.put("listeners", waiting);
+		stats.put("notifications", notifications.get());
+		stats.put("droppedNotifications", droppedNotifications.get());
+		return stats;
+	}
+
+	private void notifyListeners(String jobId) {
+		Set<Listener> jobListeners = listeners.get(jobId);
+		if (jobListeners == null) {
+			return;
+		}
+		Job job;
+		try {
+			job = jobStatusCache.getJob(jobId);
+		} catch (Exception exception) {
+			LOG.error("Could not read Job {} to notify its listeners.", jobId, exception);
+			return;
+		}
+		for (Listener listener : jobListeners) {
+			try {
+				listener.onJobUpdated(job);
+				notifications.incrementAndGet();
+			} catch (Exception exception) {
+				LOG.error("Error notifying listener of update to Job {}", jobId, exception);
+			}
+		}
+	}
+}
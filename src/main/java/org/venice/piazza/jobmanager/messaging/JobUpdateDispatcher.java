@@ -0,0 +1,138 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.jobmanager.messaging;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Processes Job Update messages concurrently, while keeping the updates for any single Job in the order they were
+ * received. Each Job Id is hashed to one of a fixed number of shards, and each shard runs its tasks one at a time on its
+ * own thread. Updates for different Jobs therefore run in parallel, and updates for the same Job never overtake each
+ * other.
+ * <p>
+ * The shard queues are unbounded, but in practice are bounded by the prefetch of the listener container: a message is
+ * only acknowledged once the update has been written to the database, which is after its shard has processed it and
+ * the Job Status Update buffer has been flushed.
+ * </p>
+ */
+@Component
+public class JobUpdateDispatcher {
+	@Value("${jobmanager.update.shards:8}")
+	private int SHARDS;
+	@Value("${jobmanager.update.shutdown.timeout.ms:10000}")
+	private long SHUTDOWN_TIMEOUT_MS;
+
+	private static final Logger LOG = LoggerFactory.getLogger(JobUpdateDispatcher.class);
+
+	private ThreadPoolExecutor[] shards;
+	private final AtomicLong dispatched = new AtomicLong();
+
+	/**
+	 * Starts the single-threaded executor of each shard.
+	 */
+	@PostConstruct
+	public void initialize() {
+		shards = new ThreadPoolExecutor[Math.max(1, SHARDS)];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+					new CustomizableThreadFactory(String.format("JobUpdate-%s-", i)));
+		}
+	}
+
+	/**
+	 * Runs the task on the shard that owns the Job. Tasks for the same Job run in the order they are dispatched.
+	 *
+	 * @param jobId
+	 *            The Id of the Job the task updates
+	 * @param task
+	 *            The task to run
+	 */
+	public void dispatch(String jobId, Runnable task) {
+		dispatched.incrementAndGet();
+		shards[getShard(jobId)].execute(task);
+	}
+
+	/**
+	 * Gets the shard that owns the Job.
+	 *
+	 * @param jobId
+	 *            The Id of the Job
+	 * @return The index of the shard
+	 */
+	public int getShard(String jobId) {
+		int hash = (jobId == null) ? 0 : jobId.hashCode();
+		return Math.floorMod(hash, shards.length);
+	}
+
+	/**
+	 * Gets metrics for the shards: the number of updates dispatched, and the number waiting in the queue of each shard.
+	 *
+	 * @return The dispatcher metrics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<>();
+		int[] queued = new int[shards.length];
+		int total = 0;
+		for (int i = 0; i < shards.length; i++) {
+			queued[i] = shards[i].getQueue().size();
+			total += queued[i];
+		}
+		stats.put("shards", shards.length);
+		stats.put("dispatched", dispatched.get());
+		stats.put("queued", total);
+		stats.put("queuedPerShard", queued);
+		return stats;
+	}
+
+	/**
+	 * Stops accepting updates, and waits for the updates already dispatched to be handed to the Job Status Update
+	 * buffer, which writes them before it shuts down. Updates that are not handed over in time are left
+	 * unacknowledged, and are redelivered by the broker.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		for (ThreadPoolExecutor shard : shards) {
+			shard.shutdown();
+		}
+		long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MS;
+		try {
+			for (ThreadPoolExecutor shard : shards) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0 || !shard.awaitTermination(remaining, TimeUnit.MILLISECONDS)) {
+					LOG.warn("Job Update shard did not finish before shutdown. {} updates will be redelivered.", shard.getQueue().size());
+					shard.shutdownNow();
+				}
+			}
+		} catch (InterruptedException exception) {
+			LOG.warn("Interrupted while waiting for Job Updates to finish.", exception);
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -15,16 +15,22 @@
  **/
 package org.venice.piazza.jobmanager.messaging.handler;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.venice.piazza.jobmanager.database.DatabaseAccessor;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher.OutboundMessage;
+import exception.PiazzaJobException;
 import messaging.job.JobMessageFactory;
 import model.job.Job;
 import model.logger.AuditElement;
@@ -43,7 +49,7 @@ import util.UUIDFactory;
 @Component
 public class RequestJobHandler {
 	@Autowired
-	private RabbitTemplate rabbitTemplate;
+	private OutboundMessagePublisher outboundPublisher;
 	@Autowired
 	private PiazzaLogger logger;
 	@Autowired
@@ -59,8 +65,9 @@ public class RequestJobHandler {
 	ObjectMapper mapper = new ObjectMapper();
 
 	/**
-	 * Processes a new Piazza Job Request. This will add the Job metadata into the Jobs table, and then fire the Message
-	 * event to the worker components to process the Job.
+	 * Processes a new Piazza Job Request. This will add the Job metadata into the Jobs table, and the Message event to
+	 * the worker components into the outbox in the same transaction. The outbox publishes the Message once the Job is
+	 * committed, so the Job can never be stored without its Message, or its Message sent without the Job.
 	 * 
 	 * @param jobRequest
 	 *            The Job Request
@@ -77,14 +84,11 @@ public class RequestJobHandler {
 			if (job.getJobId().isEmpty()) {
 				job.setJobId(uuidFactory.getUUID());
 			}
-			// Commit the Job metadata to the Jobs table
-			accessor.addJob(job);
-
-			// Send the content of the actual Job under the
-			// topic name of the Job type for all workers to
-			// listen to.
-			String queueName = String.format(JobMessageFactory.TOPIC_TEMPLATE, job.getJobType().getClass().getSimpleName(), space);
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, queueName, mapper.writeValueAsString(job));
+			// Commit the Job metadata to the Jobs table, along with the
+			// content of the actual Job, which is sent under the topic
+			// name of the Job type for all workers to listen to.
+			String queueName = getQueueName(job);
+			accessor.addJob(job, outboundPublisher.createMessage(queueName, job));
 
 			// Log default to Piazza Logger
 			logger.log(
@@ -101,4 +105,42 @@ public class RequestJobHandler {
 			logger.log(error, Severity.ERROR);
 		}
 	}
+
+	/**
+	 * Processes a batch of new Piazza Job Requests. Each Job is assigned a new Id, and all of the Jobs and their Job
+	 * messages are added to the Jobs table and the outbox in one batched transaction. The outbox publishes the messages
+	 * to the worker components in batches once the transaction commits.
+	 * 
+	 * @param jobRequests
+	 *            The Job Requests
+	 * @return The created Jobs, in the order of the requests
+	 */
+	public List<Job> processBatch(List<PiazzaJobRequest> jobRequests) throws PiazzaJobException {
+		List<Job> jobs = new ArrayList<>(jobRequests.size());
+		List<OutboundMessage> messages = new ArrayList<>(jobRequests.size());
+		try {
+			for (PiazzaJobRequest jobRequest : jobRequests) {
+				Job job = new Job(jobRequest, uuidFactory.getUUID());
+				jobs.add(job);
+				messages.add(outboundPublisher.createMessage(getQueueName(job), job));
+			}
+		} catch (JsonProcessingException exception) {
+			throw new PiazzaJobException(
+					String.format("Error serializing batch of %s Jobs: %s", jobRequests.size(), exception.getMessage()));
+		}
+
+		// Commit the Job metadata and the Job messages together
+		accessor.addJobs(jobs, messages);
+
+		logger.log(String.format("Relayed batch of %s Jobs on the Message Queue", jobs.size()), Severity.INFORMATIONAL,
+				new AuditElement(jobRequests.get(0).createdBy, "relayedJobBatchCreation", jobs.get(0).getJobId()));
+		return jobs;
+	}
+
+	/**
+	 * Gets the name of the queue that the workers for the type of the Job listen to.
+	 */
+	private String getQueueName(Job job) {
+		return String.format(JobMessageFactory.TOPIC_TEMPLATE, job.getJobType().getClass().getSimpleName(), space);
+	}
 }
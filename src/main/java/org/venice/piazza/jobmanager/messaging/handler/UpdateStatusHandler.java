@@ -22,7 +22,7 @@ import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import org.venice.piazza.jobmanager.database.DatabaseAccessor;
+import org.venice.piazza.jobmanager.database.JobStatusUpdateBuffer;
 import model.logger.AuditElement;
 import model.logger.Severity;
 import model.status.StatusUpdate;
@@ -39,18 +39,27 @@ public class UpdateStatusHandler {
 	@Autowired
 	private PiazzaLogger logger;
 	@Autowired
-	private DatabaseAccessor accessor;
+	private JobStatusUpdateBuffer statusUpdateBuffer;
 	@Autowired
 	ObjectMapper mapper;
 
 	private static final Logger LOG = LoggerFactory.getLogger(UpdateStatusHandler.class);
 	
-	public void process(StatusUpdate statusUpdate) {
+	/**
+	 * Queues the Status Update for the Job. The update is coalesced with other updates for the Job, and written shortly
+	 * after.
+	 * 
+	 * @param statusUpdate
+	 *            The Status Update
+	 * @param callback
+	 *            Completed once the update has been written to the database, or has failed to be written. May be
+	 *            null.
+	 */
+	public void process(StatusUpdate statusUpdate, JobStatusUpdateBuffer.Callback callback) {
 		// Changing the Status in the Job Table
 		String jobId = statusUpdate.getJobId();
 		try {
-			// Update
-			accessor.updateJobStatus(jobId, statusUpdate);
+			statusUpdateBuffer.submit(statusUpdate, callback);
 			// Log success
 			logger.log(String.format("Processed Update Status for Job %s with Status %s.", jobId, statusUpdate.getStatus()),
 					Severity.INFORMATIONAL, new AuditElement("jobmanager", "updatedJobStatus", jobId));
@@ -58,6 +67,9 @@ public class UpdateStatusHandler {
 			String error = String.format("Error Updating Status for Job %s with error %s", jobId, exception.getMessage());
 			LOG.error(error, exception);
 			logger.log(error, Severity.ERROR);
+			if (callback != null) {
+				callback.onFailure(exception);
+			}
 		}
 	}
 }
@@ -47,8 +47,14 @@ import org.apache.http.protocol.HttpContext;
 import org.apache.http.ssl.SSLContexts;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -57,6 +63,7 @@ import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.web.support.SpringBootServletInitializer;
@@ -72,6 +79,7 @@ import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.security.authentication.AuthenticationDetailsSource;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -90,6 +98,7 @@ import org.venice.piazza.gateway.auth.PiazzaBasicAuthenticationProvider;
 import org.venice.piazza.idam.authn.GxAuthenticator;
 import org.venice.piazza.idam.authn.PiazzaAuthenticator;
 import org.venice.piazza.jobmanager.database.DatabaseAccessor;
+import org.venice.piazza.jobmanager.messaging.JobMessager;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 
 import io.swagger.annotations.Api;
@@ -145,8 +154,20 @@ public class Application extends SpringBootServletInitializer implements AsyncCo
 	private int threadCountSize;
 	@Value("${thread.count.limit}")
 	private int threadCountLimit;
+	@Value("${scheduler.pool.size:4}")
+	private int schedulerPoolSize;
 	@Value("${SPACE}")
 	private String SPACE;
+	@Value("${jobmanager.request.consumers:4}")
+	private int jobRequestConsumers;
+	@Value("${jobmanager.request.max.consumers:8}")
+	private int jobRequestMaxConsumers;
+	@Value("${jobmanager.request.prefetch:20}")
+	private int jobRequestPrefetch;
+	@Value("${jobmanager.request.ack.batch.size:10}")
+	private int jobRequestAckBatchSize;
+	@Value("${jobmanager.update.prefetch:1000}")
+	private int jobUpdatePrefetch;
 
 	private static final Logger LOG = LoggerFactory.getLogger(DatabaseAccessor.class);
 
@@ -218,6 +239,18 @@ public class Application extends SpringBootServletInitializer implements AsyncCo
 		return executor;
 	}
 
+	/**
+	 * Scheduler for the @Scheduled tasks of all components. Without it, every scheduled task runs on a single thread,
+	 * and one long run (such as archiving Jobs) delays all of the others.
+	 */
+	@Bean
+	public ThreadPoolTaskScheduler taskScheduler() {
+		ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+		scheduler.setPoolSize(schedulerPoolSize);
+		scheduler.setThreadNamePrefix("Scheduled-");
+		return scheduler;
+	}
+
 	@Override
 	public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
 		return (Throwable ex, Method method, Object... params) -> LOG
@@ -236,6 +269,64 @@ public class Application extends SpringBootServletInitializer implements AsyncCo
 				false);
 	}
 
+	/**
+	 * Exchange that receives the Job Updates that could not be written, even after being redelivered.
+	 */
+	@Bean
+	public DirectExchange deadLetterExchange() {
+		return new DirectExchange(JobMessager.DEAD_LETTER_EXCHANGE_NAME, true, false);
+	}
+
+	/**
+	 * Holds the dead-lettered Job Updates, for inspection or to be moved back to the update queue once the cause of the
+	 * failure is resolved.
+	 */
+	@Bean
+	public Queue deadLetterUpdateJobsQueue() {
+		return new Queue(String.format("JobManagerUpdateDeadLetter-%s", SPACE), true, false, false);
+	}
+
+	@Bean
+	public Binding deadLetterUpdateJobsBinding() {
+		return BindingBuilder.bind(deadLetterUpdateJobsQueue()).to(deadLetterExchange())
+				.with(String.format("UpdateJob-%s", SPACE));
+	}
+
+	/**
+	 * Listener container for Job Requests. Each request creates a new Job, so requests have no ordering between them
+	 * and are consumed concurrently, with acknowledgements sent in batches.
+	 */
+	@Bean
+	public SimpleRabbitListenerContainerFactory jobRequestListenerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+			ConnectionFactory connectionFactory) {
+		SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+		configurer.configure(factory, connectionFactory);
+		factory.setConcurrentConsumers(jobRequestConsumers);
+		factory.setMaxConcurrentConsumers(Math.max(jobRequestConsumers, jobRequestMaxConsumers));
+		factory.setPrefetchCount(jobRequestPrefetch);
+		factory.setTxSize(jobRequestAckBatchSize);
+		factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+		return factory;
+	}
+
+	/**
+	 * Listener container for Job Updates. Updates for the same Job must be applied in order, so a single consumer reads
+	 * the queue and hands each update to the shard that owns its Job. Updates are acknowledged manually, once they have
+	 * been written to the database, so the prefetch bounds the number of updates in flight. Acknowledgements wait for
+	 * the Job Status Update buffer to be flushed, so the prefetch must cover the updates received over a flush interval.
+	 */
+	@Bean
+	public SimpleRabbitListenerContainerFactory jobUpdateListenerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+			ConnectionFactory connectionFactory) {
+		SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+		configurer.configure(factory, connectionFactory);
+		factory.setConcurrentConsumers(1);
+		factory.setMaxConcurrentConsumers(1);
+		factory.setPrefetchCount(jobUpdatePrefetch);
+		factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+		return factory;
+	}
+
 	@Bean
 	public LocalValidatorFactoryBean getLocalValidatorFactoryBean() {
 		return new LocalValidatorFactoryBean();
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.piazza.database;
+
+/**
+ * Thrown when a keyset paginated query is given an invalid cursor, count mode, page size or field. These come from
+ * the request parameters of a listing, so controllers report them as bad requests.
+ */
+public class InvalidKeysetQueryException extends IllegalArgumentException {
+	private static final long serialVersionUID = 1L;
+
+	public InvalidKeysetQueryException(String message) {
+		super(message);
+	}
+
+	public InvalidKeysetQueryException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
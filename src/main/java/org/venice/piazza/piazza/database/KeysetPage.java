@@ -0,0 +1,76 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.piazza.database;
+
+import java.util.List;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * A page of results from a keyset paginated query.
+ *
+ * @param <T>
+ *            The type of the results
+ */
+public class KeysetPage<T> {
+	/**
+	 * The name of the response header that carries the cursor of the next page.
+	 */
+	public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+	private final List<T> results;
+	private final String nextCursor;
+	private final Long count;
+
+	/**
+	 * @param results
+	 *            The results on this page
+	 * @param nextCursor
+	 *            The cursor of the next page, or null if this is the last page
+	 * @param count
+	 *            The total number of matching rows, or null if not counted
+	 */
+	public KeysetPage(List<T> results, String nextCursor, Long count) {
+		this.results = results;
+		this.nextCursor = nextCursor;
+		this.count = count;
+	}
+
+	public List<T> getResults() {
+		return results;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public Long getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the response headers for this page, which carry the cursor of the next page, if any.
+	 *
+	 * @return The response headers
+	 */
+	public HttpHeaders getHeaders() {
+		HttpHeaders headers = new HttpHeaders();
+		if (nextCursor != null) {
+			headers.set(NEXT_CURSOR_HEADER, nextCursor);
+		}
+		return headers;
+	}
+}
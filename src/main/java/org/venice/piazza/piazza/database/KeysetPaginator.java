@@ -0,0 +1,408 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.piazza.database;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StringType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+/**
+ * Runs keyset (cursor) paginated queries against the tables that store their model as a JSON column, such as the
+ * Jobs, Data, Deployments and Services tables.
+ * <p>
+ * A page is read as the rows ordered after the sort value and Id carried by the cursor, so that with a matching index
+ * each page reads only its own rows, however deep it is. Counting all matching rows is optional, and may be estimated
+ * from the query plan rather than counted.
+ * </p>
+ * <p>
+ * Listings register the filter and sort fields they page on, and an expression index is created for each on startup
+ * if it does not already exist. An index left invalid by a failed concurrent build is dropped and built again. The index expressions are the same as the query expressions, so the planner can use
+ * them for both the filter and the ordering.
+ * </p>
+ */
+@Component
+public class KeysetPaginator {
+	@PersistenceContext
+	private EntityManager entityManager;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private ObjectMapper mapper;
+	@Value("${database.keyset.indexes.create:true}")
+	private boolean CREATE_INDEXES;
+
+	private static final Logger LOG = LoggerFactory.getLogger(KeysetPaginator.class);
+	private static final String ALIAS = "t";
+	private static final String SORT_COLUMN = "keyset_sort";
+	private static final String ID_COLUMN = "keyset_id";
+	private static final int MAX_IDENTIFIER_LENGTH = 63;
+
+	private final Map<Class<?>, String[]> tables = new ConcurrentHashMap<>();
+	private final List<IndexDefinition> indexes = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Gets a page of the entities that match the query.
+	 *
+	 * @param query
+	 *            The query
+	 * @return The page of entities, with the cursor of the next page
+	 */
+	public <E> KeysetPage<E> getPage(final KeysetQuery<E> query) {
+		final String[] table = getTable(query.getEntityClass(), query.getDataClass());
+		final String[] after = (query.getCursor() != null) ? decodeCursor(query.getCursor()) : null;
+
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(true);
+		return template.execute(new TransactionCallback<KeysetPage<E>>() {
+			@Override
+			public KeysetPage<E> doInTransaction(TransactionStatus status) {
+				Session session = entityManager.unwrap(Session.class);
+				List<E> results = new ArrayList<>();
+				String nextCursor = null;
+				List<?> rows = createPageQuery(session, query, table, after).getResultList();
+				for (int index = 0; index < Math.min(rows.size(), query.getLimit()); index++) {
+					Object[] row = (Object[]) rows.get(index);
+					results.add(query.getEntityClass().cast(row[0]));
+					// One row past the page was read, to know if there is a next page
+					if ((index == query.getLimit() - 1) && (rows.size() > query.getLimit())) {
+						nextCursor = encodeCursor((String) row[1], (String) row[2]);
+					}
+				}
+				return new KeysetPage<>(results, nextCursor, count(session, query, table));
+			}
+		});
+	}
+
+	/**
+	 * Registers an index for keyset pages of the table that are filtered on a field and sorted by another. The index
+	 * is created on startup if it does not exist.
+	 *
+	 * @param entityClass
+	 *            The entity class of the table
+	 * @param dataClass
+	 *            The class stored in the JSON column of the entity
+	 * @param idField
+	 *            The unique Id field of the JSON
+	 * @param filterField
+	 *            The field filtered on by equality, or null if none
+	 * @param sortBy
+	 *            The field sorted by
+	 */
+	public void registerIndex(Class<?> entityClass, Class<?> dataClass, String idField, String filterField, String sortBy) {
+		// Build the query the index is meant for, to validate the fields
+		KeysetQuery<?> query = new KeysetQuery<>(entityClass, dataClass, idField).orderBy(sortBy, null).where(filterField,
+				filterField);
+		indexes.add(new IndexDefinition(query, filterField));
+	}
+
+	/**
+	 * Creates the registered indexes that do not yet exist. Indexes are built concurrently, so that the table is not
+	 * locked against writes while they are built, and on a thread of their own, so that startup is not delayed and the
+	 * shared task executor is not occupied for the length of the builds.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void createIndexes() {
+		if (!CREATE_INDEXES || indexes.isEmpty()) {
+			return;
+		}
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("KeysetIndexes-");
+		// Do not hold up shutdown for an index build; an interrupted build is rebuilt on the next startup
+		threadFactory.setDaemon(true);
+		ExecutorService indexBuilder = Executors.newSingleThreadExecutor(threadFactory);
+		indexBuilder.execute(new Runnable() {
+			@Override
+			public void run() {
+				for (IndexDefinition index : indexes) {
+					try {
+						createIndex(index);
+					} catch (Exception exception) {
+						LOG.error("Could not create keyset index on {} sorted by {}", index.query.getEntityClass().getSimpleName(),
+								index.query.getSortBy(), exception);
+					}
+				}
+			}
+		});
+		// The thread exits once the indexes are built
+		indexBuilder.shutdown();
+	}
+
+	private NativeQuery<?> createPageQuery(Session session, KeysetQuery<?> query, String[] table, String[] after) {
+		String sort = getSortExpression(table[1], query.getSortBy());
+		String id = getSortExpression(table[1], query.getIdField());
+		String direction = query.isDescending() ? "DESC" : "ASC";
+		StringBuilder sql = new StringBuilder(String.format("SELECT {%s.*}, %s AS %s, %s AS %s FROM %s %s", ALIAS, sort,
+				SORT_COLUMN, id, ID_COLUMN, table[0], ALIAS));
+		int position = appendFilters(sql, query, table[1], true);
+		if (after != null) {
+			// Row comparison, so the index on (sort, id) is scanned from the cursor onwards
+			sql.append(String.format(" AND (%s, %s) %s (?%s, ?%s)", sort, id, query.isDescending() ? "<" : ">", position + 1,
+					position + 2));
+		}
+		sql.append(String.format(" ORDER BY %s %s, %s %s", sort, direction, id, direction));
+
+		NativeQuery<?> nativeQuery = session.createNativeQuery(sql.toString()).addEntity(ALIAS, query.getEntityClass())
+				.addScalar(SORT_COLUMN, StringType.INSTANCE).addScalar(ID_COLUMN, StringType.INSTANCE);
+		position = 0;
+		for (String value : query.getFilters().values()) {
+			nativeQuery.setParameter(++position, value);
+		}
+		if (after != null) {
+			nativeQuery.setParameter(++position, after[0]);
+			nativeQuery.setParameter(++position, after[1]);
+		}
+		nativeQuery.setMaxResults(query.getLimit() + 1);
+		return nativeQuery;
+	}
+
+	private Long count(Session session, final KeysetQuery<?> query, String[] table) {
+		if (query.getCountMode() == KeysetQuery.CountMode.NONE) {
+			return null;
+		}
+		final boolean estimate = query.getCountMode() == KeysetQuery.CountMode.ESTIMATE;
+		final StringBuilder sql = new StringBuilder(estimate ? "EXPLAIN (FORMAT JSON) SELECT 1" : "SELECT count(*)");
+		sql.append(String.format(" FROM %s %s", table[0], ALIAS));
+		appendFilters(sql, query, table[1], false);
+		return session.doReturningWork(new ReturningWork<Long>() {
+			@Override
+			public Long execute(Connection connection) throws SQLException {
+				try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+					int position = 0;
+					for (String value : query.getFilters().values()) {
+						statement.setString(++position, value);
+					}
+					try (ResultSet results = statement.executeQuery()) {
+						results.next();
+						return estimate ? getPlanRows(results.getString(1)) : results.getLong(1);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Appends the equality filters of the query as the WHERE clause.
+	 *
+	 * @param numbered
+	 *            True for numbered (?1) parameters, false for JDBC (?) parameters
+	 * @return The number of parameters appended
+	 */
+	private int appendFilters(StringBuilder sql, KeysetQuery<?> query, String column, boolean numbered) {
+		sql.append(" WHERE 1 = 1");
+		int position = 0;
+		for (String field : query.getFilters().keySet()) {
+			position++;
+			sql.append(String.format(" AND %s = ?%s", getFieldExpression(column, field), numbered ? position : ""));
+		}
+		return position;
+	}
+
+	private long getPlanRows(String plan) throws SQLException {
+		try {
+			return mapper.readTree(plan).path(0).path("Plan").path("Plan Rows").asLong();
+		} catch (IOException exception) {
+			throw new SQLException(String.format("Could not read the query plan: %s", exception.getMessage()), exception);
+		}
+	}
+
+	private void createIndex(IndexDefinition index) throws SQLException {
+		String[] table = getTable(index.query.getEntityClass(), index.query.getDataClass());
+		List<String> expressions = new ArrayList<>();
+		StringBuilder name = new StringBuilder(table[0]).append("_keyset");
+		if (index.filterField != null) {
+			expressions.add(getFieldExpression(table[1], index.filterField));
+			name.append('_').append(index.filterField);
+		}
+		expressions.add(getSortExpression(table[1], index.query.getSortBy()));
+		expressions.add(getSortExpression(table[1], index.query.getIdField()));
+		name.append('_').append(index.query.getSortBy());
+		String indexName = name.toString().toLowerCase().replaceAll("[^a-z0-9_]", "_");
+		if (indexName.length() > MAX_IDENTIFIER_LENGTH) {
+			indexName = indexName.substring(0, MAX_IDENTIFIER_LENGTH);
+		}
+		String sql = String.format("CREATE INDEX CONCURRENTLY %s ON %s ((%s))", indexName, table[0],
+				String.join("), (", expressions));
+
+		// Concurrent index builds cannot run in a transaction, so use a connection of our own in auto-commit mode
+		ConnectionProvider connectionProvider = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+				.getServiceRegistry().getService(ConnectionProvider.class);
+		Connection connection = connectionProvider.getConnection();
+		try {
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(true);
+			try {
+				// An index being built by another instance is also invalid until its build completes, so only one
+				// instance checks and builds each index at a time
+				if (!lockIndex(connection, indexName, true)) {
+					LOG.info("Index {} is being built by another instance", indexName);
+					return;
+				}
+				try {
+					buildIndex(connection, indexName, sql);
+				} finally {
+					lockIndex(connection, indexName, false);
+				}
+			} finally {
+				connection.setAutoCommit(autoCommit);
+			}
+		} finally {
+			connectionProvider.closeConnection(connection);
+		}
+	}
+
+	private void buildIndex(Connection connection, String indexName, String sql) throws SQLException {
+		Boolean valid = isIndexValid(connection, indexName);
+		if (Boolean.TRUE.equals(valid)) {
+			return;
+		}
+		if (valid != null) {
+			// A concurrent build that failed, or was interrupted, leaves an invalid index that is not used
+			LOG.warn("Dropping invalid index {} to build it again", indexName);
+			try (Statement statement = connection.createStatement()) {
+				statement.execute(String.format("DROP INDEX CONCURRENTLY IF EXISTS %s", indexName));
+			}
+		}
+		LOG.info("Creating index {} for keyset pagination", indexName);
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+
+	/**
+	 * Takes or releases the session advisory lock for building the index.
+	 *
+	 * @return True if the lock was taken or released
+	 */
+	private boolean lockIndex(Connection connection, String indexName, boolean lock) throws SQLException {
+		String sql = lock ? "SELECT pg_try_advisory_lock(hashtext(?))" : "SELECT pg_advisory_unlock(hashtext(?))";
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			statement.setString(1, "KeysetIndex:" + indexName);
+			try (ResultSet results = statement.executeQuery()) {
+				return results.next() && results.getBoolean(1);
+			}
+		}
+	}
+
+	/**
+	 * @return True if the index exists and is valid, false if it exists but is invalid, or null if it does not exist
+	 */
+	private Boolean isIndexValid(Connection connection, String indexName) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(
+				"SELECT i.indisvalid FROM pg_class c JOIN pg_index i ON i.indexrelid = c.oid WHERE c.relname = ?")) {
+			statement.setString(1, indexName);
+			try (ResultSet results = statement.executeQuery()) {
+				return results.next() ? results.getBoolean(1) : null;
+			}
+		}
+	}
+
+	/**
+	 * Gets the name of the table of the entity, and of its column that holds the JSON of the data class.
+	 */
+	private String[] getTable(Class<?> entityClass, Class<?> dataClass) {
+		String[] table = tables.get(entityClass);
+		if (table != null) {
+			return table;
+		}
+		AbstractEntityPersister persister = (AbstractEntityPersister) entityManager.getEntityManagerFactory()
+				.unwrap(SessionFactoryImplementor.class).getMetamodel().entityPersister(entityClass);
+		for (String property : persister.getPropertyNames()) {
+			if (dataClass.isAssignableFrom(persister.getPropertyType(property).getReturnedClass())) {
+				table = new String[] { persister.getTableName(), persister.getPropertyColumnNames(property)[0] };
+				tables.put(entityClass, table);
+				return table;
+			}
+		}
+		throw new IllegalArgumentException(
+				String.format("Entity %s has no column of type %s.", entityClass.getSimpleName(), dataClass.getSimpleName()));
+	}
+
+	private static String getFieldExpression(String column, String field) {
+		return String.format("(%s #>> '{%s}')", column, field.replace('.', ','));
+	}
+
+	/**
+	 * Rows missing the sort field sort as empty, rather than as null, so they can be compared to the cursor.
+	 */
+	private static String getSortExpression(String column, String field) {
+		return String.format("COALESCE(%s #>> '{%s}', '')", column, field.replace('.', ','));
+	}
+
+	private String encodeCursor(String sortValue, String id) {
+		ArrayNode cursor = mapper.createArrayNode().add(sortValue).add(id);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private String[] decodeCursor(String cursor) {
+		try {
+			JsonNode values = mapper.readTree(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+			if ((values == null) || !values.isArray() || (values.size() != 2)) {
+				throw new InvalidKeysetQueryException(String.format("Invalid cursor %s.", cursor));
+			}
+			return new String[] { values.get(0).asText(), values.get(1).asText() };
+		} catch (IOException | IllegalArgumentException exception) {
+			throw new InvalidKeysetQueryException(String.format("Invalid cursor %s.", cursor), exception);
+		}
+	}
+
+	private static class IndexDefinition {
+		private final KeysetQuery<?> query;
+		private final String filterField;
+
+		IndexDefinition(KeysetQuery<?> query, String filterField) {
+			this.query = query;
+			this.filterField = filterField;
+		}
+	}
+}
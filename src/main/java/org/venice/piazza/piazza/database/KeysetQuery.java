@@ -0,0 +1,201 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.piazza.database;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Describes a page of a keyset (cursor) paginated listing of one of the JSON entity tables, such as the Jobs table.
+ * Fields are referred to by their path within the JSON, in dot notation, such as "metadata.createdOn".
+ * <p>
+ * Rather than skipping a number of rows, a keyset page starts after the sort value and Id of the last row of the
+ * previous page, as carried by the cursor. The cost of a page therefore does not grow with its depth.
+ * </p>
+ *
+ * @param <E>
+ *            The type of the entity
+ */
+public class KeysetQuery<E> {
+	private static final Pattern FIELD_PATTERN = Pattern.compile("[A-Za-z0-9_]+(\\.[A-Za-z0-9_]+)*");
+
+	private final Class<E> entityClass;
+	private final Class<?> dataClass;
+	private final String idField;
+	private String sortBy;
+	private boolean descending = false;
+	private String cursor;
+	private int limit = 10;
+	private CountMode countMode = CountMode.NONE;
+	private final Map<String, String> filters = new LinkedHashMap<>();
+
+	/**
+	 * How the total number of matching rows is reported.
+	 */
+	public enum CountMode {
+		/** Count every matching row. This costs a scan of the matching rows. */
+		EXACT,
+		/** Report the planner's estimate of the number of matching rows. */
+		ESTIMATE,
+		/** Do not report a count. */
+		NONE;
+
+		/**
+		 * Parses the count mode, ignoring case.
+		 *
+		 * @param countMode
+		 *            "exact", "estimate" or "none"
+		 * @return The count mode, or None if not specified
+		 */
+		public static CountMode fromString(String countMode) {
+			if (StringUtils.isEmpty(countMode)) {
+				return NONE;
+			}
+			try {
+				return valueOf(countMode.toUpperCase());
+			} catch (IllegalArgumentException exception) {
+				throw new InvalidKeysetQueryException(
+						String.format("Invalid count %s. Must be one of exact, estimate or none.", countMode), exception);
+			}
+		}
+	}
+
+	/**
+	 * @param entityClass
+	 *            The entity class of the table
+	 * @param dataClass
+	 *            The class stored in the JSON column of the entity, such as Job
+	 * @param idField
+	 *            The unique Id field of the JSON, such as "jobId". Rows with equal sort values are ordered by this field.
+	 */
+	public KeysetQuery(Class<E> entityClass, Class<?> dataClass, String idField) {
+		this.entityClass = entityClass;
+		this.dataClass = dataClass;
+		this.idField = validateField(idField);
+		this.sortBy = idField;
+	}
+
+	/**
+	 * Sorts by the field, in the specified order.
+	 *
+	 * @param sortBy
+	 *            The field to sort by. The Id field is used if not specified.
+	 * @param order
+	 *            "asc" or "desc"
+	 */
+	public KeysetQuery<E> orderBy(String sortBy, String order) {
+		this.sortBy = StringUtils.isNotEmpty(sortBy) ? validateField(sortBy) : idField;
+		this.descending = "desc".equalsIgnoreCase(order);
+		return this;
+	}
+
+	/**
+	 * Only includes rows whose field equals the value. Does nothing if the value is empty.
+	 *
+	 * @param field
+	 *            The field to filter on
+	 * @param value
+	 *            The value of the field
+	 */
+	public KeysetQuery<E> where(String field, String value) {
+		if (StringUtils.isNotEmpty(value)) {
+			filters.put(validateField(field), value);
+		}
+		return this;
+	}
+
+	/**
+	 * Starts the page after the row the cursor points to.
+	 *
+	 * @param cursor
+	 *            The cursor returned with the previous page. The first page is returned if empty.
+	 */
+	public KeysetQuery<E> after(String cursor) {
+		this.cursor = StringUtils.isNotEmpty(cursor) ? cursor : null;
+		return this;
+	}
+
+	/**
+	 * @param limit
+	 *            The number of rows per page
+	 */
+	public KeysetQuery<E> limit(int limit) {
+		if (limit <= 0) {
+			throw new InvalidKeysetQueryException(String.format("Invalid page size %s.", limit));
+		}
+		this.limit = limit;
+		return this;
+	}
+
+	/**
+	 * @param countMode
+	 *            How the total number of matching rows is reported
+	 */
+	public KeysetQuery<E> count(CountMode countMode) {
+		this.countMode = countMode;
+		return this;
+	}
+
+	public Class<E> getEntityClass() {
+		return entityClass;
+	}
+
+	public Class<?> getDataClass() {
+		return dataClass;
+	}
+
+	public String getIdField() {
+		return idField;
+	}
+
+	public String getSortBy() {
+		return sortBy;
+	}
+
+	public boolean isDescending() {
+		return descending;
+	}
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public CountMode getCountMode() {
+		return countMode;
+	}
+
+	public Map<String, String> getFilters() {
+		return Collections.unmodifiableMap(filters);
+	}
+
+	/**
+	 * Fields are written into the SQL, so that the expressions match the indexes. Only allow plain field names.
+	 */
+	private static String validateField(String field) {
+		if ((field == null) || !FIELD_PATTERN.matcher(field).matches()) {
+			throw new InvalidKeysetQueryException(String.format("Invalid field %s.", field));
+		}
+		return field;
+	}
+}
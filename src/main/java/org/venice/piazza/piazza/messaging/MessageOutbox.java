@@ -0,0 +1,424 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.piazza.messaging;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.jdbc.Work;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher.OutboundMessage;
+
+/**
+ * A transactional outbox for outbound messages. Messages are written to the outbox table in the same database
+ * transaction as the state they describe, such as a new Job, so that the message is stored if and only if the state
+ * is. A relay thread then publishes the stored messages in batches through the {@link OutboundMessagePublisher}, and
+ * marks them as sent once the broker has confirmed them.
+ * <p>
+ * Each batch is leased in a short transaction, published outside of any transaction, and marked as sent in a second
+ * transaction, so that no row locks are held while waiting for the broker. Rows are leased with SKIP LOCKED, and leased
+ * rows are skipped until their lease expires, so several instances can relay from the same outbox without publishing
+ * the same row twice. If the broker is unavailable, the lease is released and the messages are relayed once it returns.
+ * A message may still be published more than once if its batch is confirmed but the rows cannot then be marked as sent,
+ * or if the publish outlasts the lease.
+ * </p>
+ * <p>
+ * Sent messages are kept for a retention period, during which they can be replayed; for example, if the broker lost
+ * its queues.
+ * </p>
+ */
+@Component
+public class MessageOutbox {
+	@PersistenceContext
+	private EntityManager entityManager;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private OutboundMessagePublisher outboundPublisher;
+	@Value("${messaging.outbox.relay.batch.size:500}")
+	private int RELAY_BATCH_SIZE;
+	@Value("${messaging.outbox.relay.interval.ms:1000}")
+	private long RELAY_INTERVAL_MS;
+	@Value("${messaging.outbox.lease.ms:120000}")
+	private long LEASE_MS;
+	@Value("${messaging.outbox.retention.hours:24}")
+	private int RETENTION_HOURS;
+	@Value("${messaging.outbox.shutdown.timeout.ms:10000}")
+	private long SHUTDOWN_TIMEOUT_MS;
+
+	private static final Logger LOG = LoggerFactory.getLogger(MessageOutbox.class);
+	private static final String SYNTAX_ERROR_STATE = "42601";
+	private static final String COLUMN_EXISTS_SQL = "SELECT 1 FROM information_schema.columns WHERE table_name = 'message_outbox' "
+			+ "AND column_name = ?";
+	private static final String INDEX_EXISTS_SQL = "SELECT 1 FROM pg_class WHERE relname = ?";
+	private static final String CLAIMED_COLUMN = "claimed_until";
+	private static final String CREATE_TABLE_SQL = "CREATE TABLE IF NOT EXISTS message_outbox (id bigserial PRIMARY KEY, "
+			+ "routing_key text NOT NULL, body bytea NOT NULL, created_on timestamp NOT NULL DEFAULT now(), sent_on timestamp, "
+			+ CLAIMED_COLUMN + " timestamp)";
+	private static final String ADD_CLAIMED_COLUMN_SQL = "ALTER TABLE message_outbox ADD COLUMN " + CLAIMED_COLUMN + " timestamp";
+	private static final String UNSENT_INDEX = "message_outbox_unsent";
+	private static final String CREATE_INDEX_SQL = "CREATE INDEX " + UNSENT_INDEX + " ON message_outbox (id) WHERE sent_on IS NULL";
+	private static final String INSERT_SQL = "INSERT INTO message_outbox (routing_key, body) VALUES (?, ?)";
+	private static final String CLAIM_SQL = "UPDATE message_outbox SET claimed_until = now() + ? * interval '1 millisecond' "
+			+ "WHERE id IN (SELECT id FROM message_outbox WHERE sent_on IS NULL AND (claimed_until IS NULL OR claimed_until < now()) "
+			+ "ORDER BY id LIMIT ? FOR UPDATE%s) RETURNING id, routing_key, body";
+	private static final String MARK_SENT_SQL = "UPDATE message_outbox SET sent_on = now(), claimed_until = NULL WHERE id = ?";
+	private static final String RELEASE_SQL = "UPDATE message_outbox SET claimed_until = NULL WHERE id = ?";
+	private static final String PENDING_SQL = "SELECT count(*) FROM message_outbox WHERE sent_on IS NULL";
+	private static final String REPLAY_SQL = "UPDATE message_outbox SET sent_on = NULL WHERE sent_on >= ?";
+	private static final String DELETE_SENT_SQL = "DELETE FROM message_outbox WHERE sent_on < ?";
+
+	private final AtomicBoolean skipLockedSupported = new AtomicBoolean(true);
+	private final Semaphore wakeups = new Semaphore(0);
+	private final AtomicLong relayed = new AtomicLong();
+	private final AtomicLong failedAttempts = new AtomicLong();
+	private ExecutorService relay;
+	private volatile boolean running;
+
+	/**
+	 * Creates the outbox table if it does not exist, adding the lease column to an existing table, and starts the relay
+	 * thread.
+	 */
+	@PostConstruct
+	public void initialize() {
+		execute(new ReturningWork<Void>() {
+			@Override
+			public Void execute(Connection connection) throws SQLException {
+				try (Statement statement = connection.createStatement()) {
+					statement.execute(CREATE_TABLE_SQL);
+				}
+				if (!exists(connection, COLUMN_EXISTS_SQL, CLAIMED_COLUMN)) {
+					try (Statement statement = connection.createStatement()) {
+						statement.execute(ADD_CLAIMED_COLUMN_SQL);
+					}
+				}
+				if (!exists(connection, INDEX_EXISTS_SQL, UNSENT_INDEX)) {
+					try (Statement statement = connection.createStatement()) {
+						statement.execute(CREATE_INDEX_SQL);
+					}
+				}
+				return null;
+			}
+		});
+		running = true;
+		relay = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("OutboxRelay-"));
+		relay.execute(new Runnable() {
+			@Override
+			public void run() {
+				relayMessages();
+			}
+		});
+	}
+
+	/**
+	 * Adds messages to the outbox. This must be called in the transaction that writes the state the messages describe;
+	 * the messages are relayed once that transaction commits, and are discarded if it rolls back.
+	 *
+	 * @param messages
+	 *            The messages
+	 */
+	public void add(final List<OutboundMessage> messages) {
+		if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+			throw new IllegalStateException("Messages can only be added to the outbox in a transaction.");
+		}
+		entityManager.unwrap(Session.class).doWork(new Work() {
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+					for (OutboundMessage message : messages) {
+						statement.setString(1, message.getRoutingKey());
+						statement.setBytes(2, message.getBody());
+						statement.addBatch();
+					}
+					statement.executeBatch();
+				}
+			}
+		});
+		// Relay promptly, rather than on the next interval
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				wake();
+			}
+		});
+	}
+
+	/**
+	 * Marks the messages sent since the given time as unsent, so that they are relayed again.
+	 *
+	 * @param since
+	 *            The time from which to replay sent messages
+	 * @return The number of messages that will be replayed
+	 */
+	public int replay(final Date since) {
+		int replayed = execute(new ReturningWork<Integer>() {
+			@Override
+			public Integer execute(Connection connection) throws SQLException {
+				try (PreparedStatement statement = connection.prepareStatement(REPLAY_SQL)) {
+					statement.setTimestamp(1, new Timestamp(since.getTime()));
+					return statement.executeUpdate();
+				}
+			}
+		});
+		LOG.info("Replaying {} outbox messages sent since {}.", replayed, since);
+		wake();
+		return replayed;
+	}
+
+	/**
+	 * Deletes sent messages that are older than the retention period.
+	 */
+	@Scheduled(cron = "0 15 * * * ?")
+	public void deleteSentMessages() {
+		final Timestamp cutoff = new Timestamp(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(RETENTION_HOURS));
+		int deleted = execute(new ReturningWork<Integer>() {
+			@Override
+			public Integer execute(Connection connection) throws SQLException {
+				try (PreparedStatement statement = connection.prepareStatement(DELETE_SENT_SQL)) {
+					statement.setTimestamp(1, cutoff);
+					return statement.executeUpdate();
+				}
+			}
+		});
+		LOG.info("Deleted {} outbox messages sent before {}.", deleted, cutoff);
+	}
+
+	/**
+	 * Gets metrics for the outbox: the number of messages relayed and waiting, and the number of failed relays.
+	 *
+	 * @return The outbox metrics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<>();
+		stats.put("relayed", relayed.get());
+		stats.put("failedAttempts", failedAttempts.get());
+		try {
+			stats.put("pending", execute(new ReturningWork<Long>() {
+				@Override
+				public Long execute(Connection connection) throws SQLException {
+					try (Statement statement = connection.createStatement(); ResultSet results = statement.executeQuery(PENDING_SQL)) {
+						results.next();
+						return results.getLong(1);
+					}
+				}
+			}));
+		} catch (RuntimeException exception) {
+			LOG.warn("Could not count pending outbox messages.", exception);
+		}
+		return stats;
+	}
+
+	/**
+	 * Stops the relay thread. Messages that have not been relayed remain in the outbox.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		running = false;
+		wake();
+		relay.shutdown();
+		try {
+			if (!relay.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				relay.shutdownNow();
+			}
+		} catch (InterruptedException exception) {
+			LOG.warn("Interrupted while waiting for the outbox relay to stop.", exception);
+			relay.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void wake() {
+		if (wakeups.availablePermits() == 0) {
+			wakeups.release();
+		}
+	}
+
+	/**
+	 * Relays batches until the outbox is empty, and then waits until messages are added or the interval passes. Other
+	 * instances may add messages, so the outbox is also checked on each interval.
+	 */
+	private void relayMessages() {
+		while (running) {
+			try {
+				while (running && (relayBatch() == RELAY_BATCH_SIZE)) {
+					// Keep relaying full batches
+				}
+			} catch (RuntimeException exception) {
+				failedAttempts.incrementAndGet();
+				LOG.warn("Could not relay outbox messages. Retrying in {} ms.", RELAY_INTERVAL_MS, exception);
+			}
+			try {
+				wakeups.tryAcquire(RELAY_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				wakeups.drainPermits();
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Leases a batch of unsent messages, publishes them, and marks them as sent once confirmed. The lease and the mark
+	 * are separate transactions, and the publish is made outside of both. If the publish fails, the lease is released
+	 * and the messages are left for the next attempt.
+	 *
+	 * @return The number of messages relayed
+	 */
+	private int relayBatch() {
+		final SortedMap<Long, OutboundMessage> claimed = claim();
+		if (claimed.isEmpty()) {
+			return 0;
+		}
+		try {
+			outboundPublisher.publishConfirmed(new ArrayList<>(claimed.values()));
+		} catch (RuntimeException exception) {
+			try {
+				update(RELEASE_SQL, claimed.keySet());
+			} catch (RuntimeException releaseException) {
+				LOG.warn("Could not release the lease of {} outbox messages. They will be relayed once it expires.", claimed.size(),
+						releaseException);
+			}
+			throw exception;
+		}
+		update(MARK_SENT_SQL, claimed.keySet());
+		relayed.addAndGet(claimed.size());
+		return claimed.size();
+	}
+
+	/**
+	 * Leases a batch of unsent messages that are not leased by another relay.
+	 *
+	 * @return The leased messages, by Id
+	 */
+	private SortedMap<Long, OutboundMessage> claim() {
+		try {
+			return execute(new ReturningWork<SortedMap<Long, OutboundMessage>>() {
+				@Override
+				public SortedMap<Long, OutboundMessage> execute(Connection connection) throws SQLException {
+					return claim(connection, String.format(CLAIM_SQL, skipLockedSupported.get() ? " SKIP LOCKED" : ""));
+				}
+			});
+		} catch (RuntimeException exception) {
+			if (!skipLockedSupported.get() || !SYNTAX_ERROR_STATE.equals(getSqlState(exception))) {
+				throw exception;
+			}
+			skipLockedSupported.set(false);
+			LOG.warn("The database does not support SKIP LOCKED. Outbox relays from several instances will take turns.");
+			return claim();
+		}
+	}
+
+	private SortedMap<Long, OutboundMessage> claim(Connection connection, String claimSql) throws SQLException {
+		// The rows of UPDATE ... RETURNING are not ordered, so they are sorted by Id to publish them in order
+		SortedMap<Long, OutboundMessage> claimed = new TreeMap<>();
+		try (PreparedStatement claim = connection.prepareStatement(claimSql)) {
+			claim.setLong(1, LEASE_MS);
+			claim.setInt(2, RELAY_BATCH_SIZE);
+			try (ResultSet results = claim.executeQuery()) {
+				while (results.next()) {
+					claimed.put(results.getLong(1), new OutboundMessage(results.getString(2), results.getBytes(3)));
+				}
+			}
+		}
+		return claimed;
+	}
+
+	/**
+	 * Runs the update for each of the messages, in one batch and transaction.
+	 */
+	private void update(final String sql, final Collection<Long> ids) {
+		execute(new ReturningWork<Void>() {
+			@Override
+			public Void execute(Connection connection) throws SQLException {
+				try (PreparedStatement statement = connection.prepareStatement(sql)) {
+					for (Long id : ids) {
+						statement.setLong(1, id);
+						statement.addBatch();
+					}
+					statement.executeBatch();
+				}
+				return null;
+			}
+		});
+	}
+
+	private static boolean exists(Connection connection, String sql, String name) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			statement.setString(1, name);
+			try (ResultSet results = statement.executeQuery()) {
+				return results.next();
+			}
+		}
+	}
+
+	private <T> T execute(final ReturningWork<T> work) {
+		return new TransactionTemplate(transactionManager).execute(new TransactionCallback<T>() {
+			@Override
+			public T doInTransaction(TransactionStatus status) {
+				return entityManager.unwrap(Session.class).doReturningWork(work);
+			}
+		});
+	}
+
+	/**
+	 * Finds the SQL State of the first SQL Exception in the cause chain, if any.
+	 */
+	private static String getSqlState(Throwable exception) {
+		for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLException) {
+				return ((SQLException) cause).getSQLState();
+			}
+		}
+		return null;
+	}
+}
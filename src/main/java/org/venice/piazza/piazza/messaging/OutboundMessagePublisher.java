@@ -0,0 +1,327 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.piazza.messaging;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+
+import messaging.job.JobMessageFactory;
+import model.status.StatusUpdate;
+
+/**
+ * Publishes outbound messages, such as Job Status Updates from the workers, to the Piazza exchange.
+ * <p>
+ * Messages are serialized once, on the calling thread, and queued. A single sender thread drains the queue in batches,
+ * publishes each batch on one channel in publisher-confirm mode, and waits once for the broker to confirm the batch.
+ * Callers therefore never wait on the broker, and messages are published in the order they were queued. A batch that
+ * is not confirmed is retried, with backoff, until it is. The queue is bounded: if the broker is unavailable for long
+ * enough to fill it, callers block until there is room, and then fail.
+ * </p>
+ * <p>
+ * Delivery is at least once: a batch that was partly delivered before it failed is published again in full.
+ * </p>
+ */
+@Component
+public class OutboundMessagePublisher {
+	@Autowired
+	private RabbitTemplate rabbitTemplate;
+	@Autowired
+	private ObjectMapper mapper;
+	@Autowired
+	private Queue updateJobsQueue;
+	@Value("${messaging.outbound.queue.capacity:10000}")
+	private int QUEUE_CAPACITY;
+	@Value("${messaging.outbound.batch.size:100}")
+	private int BATCH_SIZE;
+	@Value("${messaging.outbound.enqueue.timeout.ms:30000}")
+	private long ENQUEUE_TIMEOUT_MS;
+	@Value("${messaging.outbound.confirm.timeout.ms:30000}")
+	private long CONFIRM_TIMEOUT_MS;
+	@Value("${messaging.outbound.retry.max.backoff.ms:10000}")
+	private long MAX_BACKOFF_MS;
+	@Value("${messaging.outbound.shutdown.timeout.ms:10000}")
+	private long SHUTDOWN_TIMEOUT_MS;
+
+	private static final Logger LOG = LoggerFactory.getLogger(OutboundMessagePublisher.class);
+	private static final long INITIAL_BACKOFF_MS = 100;
+
+	private final MessagePropertiesConverter messagePropertiesConverter = new DefaultMessagePropertiesConverter();
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong failedAttempts = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong totalLatencyMs = new AtomicLong();
+	private final AtomicLong maxLatencyMs = new AtomicLong();
+	private LinkedBlockingQueue<OutboundMessage> queue;
+	private ExecutorService sender;
+	private volatile boolean running;
+	private volatile long shutdownDeadline = Long.MAX_VALUE;
+
+	/**
+	 * A message ready to publish: its routing key and serialized body.
+	 */
+	public static class OutboundMessage {
+		private final String routingKey;
+		private final byte[] body;
+		private final long createdNanos = System.nanoTime();
+
+		OutboundMessage(String routingKey, byte[] body) {
+			this.routingKey = routingKey;
+			this.body = body;
+		}
+
+		public String getRoutingKey() {
+			return routingKey;
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+	}
+
+	/**
+	 * Starts the sender thread.
+	 */
+	@PostConstruct
+	public void initialize() {
+		queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+		running = true;
+		sender = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("OutboundPublisher-"));
+		sender.execute(new Runnable() {
+			@Override
+			public void run() {
+				sendQueuedMessages();
+			}
+		});
+	}
+
+	/**
+	 * Serializes the payload and queues it for publishing to the Piazza exchange.
+	 *
+	 * @param routingKey
+	 *            The routing key, such as the name of the queue
+	 * @param payload
+	 *            The object to send as JSON
+	 */
+	public void publish(String routingKey, Object payload) throws JsonProcessingException {
+		if (!running) {
+			throw new AmqpException("The outbound message publisher has been shut down.");
+		}
+		OutboundMessage message = createMessage(routingKey, payload);
+		try {
+			if (!queue.offer(message, ENQUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				throw new AmqpException(String.format("Outbound message queue has been full for %s ms; the message broker may be unavailable.",
+						ENQUEUE_TIMEOUT_MS));
+			}
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new AmqpException("Interrupted while waiting for room in the outbound message queue.", exception);
+		}
+	}
+
+	/**
+	 * Queues a Job Status Update for the Job Manager.
+	 *
+	 * @param statusUpdate
+	 *            The Status Update, including the Id of the Job
+	 */
+	public void publishStatusUpdate(StatusUpdate statusUpdate) throws JsonProcessingException {
+		publish(updateJobsQueue.getName(), statusUpdate);
+	}
+
+	/**
+	 * Serializes the payload into a message that can be published with {@link #publishConfirmed(List)}.
+	 *
+	 * @param routingKey
+	 *            The routing key, such as the name of the queue
+	 * @param payload
+	 *            The object to send as JSON
+	 * @return The message
+	 */
+	public OutboundMessage createMessage(String routingKey, Object payload) throws JsonProcessingException {
+		return new OutboundMessage(routingKey, mapper.writeValueAsBytes(payload));
+	}
+
+	/**
+	 * Publishes the messages on the calling thread, and returns once the broker has confirmed all of them. This is for
+	 * callers that must know the messages were accepted before they continue.
+	 *
+	 * @param messages
+	 *            The messages
+	 * @throws AmqpException
+	 *             If any message is not confirmed
+	 */
+	public void publishConfirmed(final List<OutboundMessage> messages) {
+		if (messages.isEmpty()) {
+			return;
+		}
+		rabbitTemplate.execute(new ChannelCallback<Void>() {
+			@Override
+			public Void doInRabbit(Channel channel) throws IOException, InterruptedException, TimeoutException {
+				channel.confirmSelect();
+				AMQP.BasicProperties properties = getProperties();
+				for (OutboundMessage message : messages) {
+					channel.basicPublish(JobMessageFactory.PIAZZA_EXCHANGE_NAME, message.routingKey, false, properties, message.body);
+				}
+				// Throws if any message is nacked, or not confirmed in time
+				channel.waitForConfirmsOrDie(CONFIRM_TIMEOUT_MS);
+				return null;
+			}
+		});
+		recordPublished(messages);
+	}
+
+	/**
+	 * Gets metrics for the publisher: the number of messages published and waiting, the number of failed attempts, and
+	 * the latency from queueing a message to its confirmation.
+	 *
+	 * @return The publisher metrics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<>();
+		long count = published.get();
+		stats.put("published", count);
+		stats.put("batches", batches.get());
+		stats.put("queued", queue.size());
+		stats.put("failedAttempts", failedAttempts.get());
+		stats.put("dropped", dropped.get());
+		stats.put("averageLatencyMs", (count > 0) ? (double) totalLatencyMs.get() / count : 0.0);
+		stats.put("maxLatencyMs", maxLatencyMs.get());
+		return stats;
+	}
+
+	/**
+	 * Stops accepting messages, and waits for the queued messages to be published. Messages that cannot be published in
+	 * time are dropped.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		shutdownDeadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MS;
+		running = false;
+		sender.shutdown();
+		try {
+			if (!sender.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				sender.shutdownNow();
+			}
+		} catch (InterruptedException exception) {
+			LOG.warn("Interrupted while waiting for outbound messages to be published.", exception);
+			sender.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void sendQueuedMessages() {
+		try {
+			while (running || !queue.isEmpty()) {
+				OutboundMessage first = queue.poll(INITIAL_BACKOFF_MS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				List<OutboundMessage> batch = new ArrayList<>(BATCH_SIZE);
+				batch.add(first);
+				queue.drainTo(batch, BATCH_SIZE - 1);
+				sendWithRetry(batch);
+			}
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+		int remaining = queue.size();
+		if (remaining > 0) {
+			dropped.addAndGet(remaining);
+			LOG.error("Dropped {} outbound messages that could not be published before shutdown.", remaining);
+		}
+	}
+
+	/**
+	 * Publishes the batch, retrying with backoff until it is confirmed, or until the shutdown timeout has passed.
+	 */
+	private void sendWithRetry(List<OutboundMessage> batch) throws InterruptedException {
+		long backoff = INITIAL_BACKOFF_MS;
+		while (true) {
+			try {
+				publishConfirmed(batch);
+				return;
+			} catch (Exception exception) {
+				failedAttempts.incrementAndGet();
+				if (System.currentTimeMillis() >= shutdownDeadline) {
+					dropped.addAndGet(batch.size());
+					LOG.error("Dropped {} outbound messages that could not be published before shutdown.", batch.size(), exception);
+					return;
+				}
+				LOG.warn("Could not publish {} outbound messages. Retrying in {} ms.", batch.size(), backoff, exception);
+				Thread.sleep(backoff);
+				backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+			}
+		}
+	}
+
+	private void recordPublished(List<OutboundMessage> messages) {
+		long now = System.nanoTime();
+		for (OutboundMessage message : messages) {
+			long latency = TimeUnit.NANOSECONDS.toMillis(now - message.createdNanos);
+			totalLatencyMs.addAndGet(latency);
+			long max = maxLatencyMs.get();
+			while ((latency > max) && !maxLatencyMs.compareAndSet(max, latency)) {
+				max = maxLatencyMs.get();
+			}
+		}
+		published.addAndGet(messages.size());
+		batches.incrementAndGet();
+	}
+
+	/**
+	 * Gets the properties of the published messages. These match those of plain text messages sent through the
+	 * template, so that listeners receive the same content as before.
+	 */
+	private AMQP.BasicProperties getProperties() {
+		MessageProperties properties = new MessageProperties();
+		properties.setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+		properties.setContentEncoding(StandardCharsets.UTF_8.name());
+		return messagePropertiesConverter.fromMessageProperties(properties, StandardCharsets.UTF_8.name());
+	}
+}
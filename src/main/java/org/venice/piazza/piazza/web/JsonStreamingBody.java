@@ -0,0 +1,76 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.piazza.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A streaming body that writes an object, such as an ErrorResponse, as JSON.
+ * <p>
+ * Endpoints that stream downloads must declare {@code ResponseEntity<StreamingResponseBody>} for Spring to write the
+ * body through the streaming handler, so their error responses must be streaming bodies as well.
+ * </p>
+ */
+public class JsonStreamingBody implements StreamingResponseBody {
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+	private final Object value;
+
+	/**
+	 * @param value
+	 *            The object to write as JSON
+	 */
+	public JsonStreamingBody(Object value) {
+		this.value = value;
+	}
+
+	/**
+	 * Creates a JSON response for a streaming endpoint.
+	 *
+	 * @param value
+	 *            The object to write as JSON
+	 * @param status
+	 *            The HTTP status of the response
+	 * @return The response
+	 */
+	public static ResponseEntity<StreamingResponseBody> response(Object value, HttpStatus status) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+		return new ResponseEntity<StreamingResponseBody>(new JsonStreamingBody(value), headers, status);
+	}
+
+	/**
+	 * @return The object written as JSON
+	 */
+	public Object getValue() {
+		return value;
+	}
+
+	@Override
+	public void writeTo(OutputStream outputStream) throws IOException {
+		OBJECT_MAPPER.writeValue(outputStream, value);
+	}
+}
@@ -20,10 +20,7 @@ import java.io.IOException;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Async;
@@ -33,12 +30,12 @@ import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
 import org.venice.piazza.servicecontroller.messaging.handlers.ExecuteServiceHandler;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import exception.DataInspectException;
-import messaging.job.JobMessageFactory;
 import model.job.result.type.DataResult;
 import model.job.result.type.ErrorResult;
 import model.job.type.ExecuteServiceJob;
@@ -80,10 +77,7 @@ public class AsynchronousServiceWorker {
 	@Autowired
 	private RestTemplate restTemplate;
 	@Autowired
-	private RabbitTemplate rabbitTemplate;
-	@Autowired
-	@Qualifier("UpdateJobsQueue")
-	private Queue updateJobsQueue;
+	private OutboundMessagePublisher outboundPublisher;
 
 	private ObjectMapper objectMapper = new ObjectMapper();
 	private static final String URL_FORMAT = "%s/%s/%s";
@@ -165,7 +159,7 @@ public class AsynchronousServiceWorker {
 				// Route the current Job Status through Message Bus.
 				try {
 					status.setJobId(instance.getJobId());
-					rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(), objectMapper.writeValueAsString(status));
+					outboundPublisher.publishStatusUpdate(status);
 				} catch (JsonProcessingException exception) {
 					// The message could not be serialized. Record this.
 					LOG.error("Json processing error occured", exception);
@@ -263,7 +257,7 @@ public class AsynchronousServiceWorker {
 			StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_SUCCESS);
 			statusUpdate.setResult(result);
 			statusUpdate.setJobId(instance.getJobId());
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(), objectMapper.writeValueAsString(statusUpdate));
+			outboundPublisher.publishStatusUpdate(statusUpdate);
 			// Remove this Instance from the Instance table
 			accessor.deleteAsyncServiceInstance(instance.getJobId());
 		} catch (HttpClientErrorException | HttpServerErrorException exception) {
@@ -306,7 +300,7 @@ public class AsynchronousServiceWorker {
 
 		// Send the Job Status through the Message Bus.
 		try {
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(), objectMapper.writeValueAsString(status));
+			outboundPublisher.publishStatusUpdate(status);
 		} catch (JsonProcessingException exception) {
 			// The message could not be serialized. Record this.
 			LOG.error("Could not send Error Status to Job Manager. Error serializing Status", exception);
@@ -344,7 +338,7 @@ public class AsynchronousServiceWorker {
 		try {
 			StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_CANCELLED);
 			statusUpdate.setJobId(instance.getJobId());
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(), objectMapper.writeValueAsString(statusUpdate));
+			outboundPublisher.publishStatusUpdate(statusUpdate);
 		} catch (JsonProcessingException jsonException) {
 			String error = String.format(
 					"Error sending Cancelled Status from Job %s: %s. The Job was cancelled, but its status will not be updated in the Job Manager.",
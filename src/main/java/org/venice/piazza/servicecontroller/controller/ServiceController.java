@@ -39,6 +39,9 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.ResourceAccessException;
+import org.venice.piazza.piazza.database.InvalidKeysetQueryException;
+import org.venice.piazza.piazza.database.KeysetPage;
+import org.venice.piazza.piazza.database.KeysetQuery;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
 import org.venice.piazza.servicecontroller.messaging.handlers.DeleteServiceHandler;
 import org.venice.piazza.servicecontroller.messaging.handlers.DescribeServiceHandler;
@@ -55,8 +58,10 @@ import model.logger.AuditElement;
 import model.logger.Severity;
 import model.request.PiazzaJobRequest;
 import model.response.ErrorResponse;
+import model.response.Pagination;
 import model.response.PiazzaResponse;
 import model.response.ServiceIdResponse;
+import model.response.ServiceListResponse;
 import model.response.ServiceResponse;
 import model.response.SuccessResponse;
 import model.service.metadata.ExecuteServiceData;
@@ -179,6 +184,14 @@ public class ServiceController {
 	/**
 	 * Gets the list of services currently registered.
 	 * 
+	 * Services may be paged by page number, or by cursor. Cursor pages start after the last service of the previous
+	 * page, and only count the total if requested. The cursor of the next page is returned in the X-Next-Cursor header.
+	 * Keyword searches can only be paged by page number.
+	 * 
+	 * @param cursor
+	 *            If specified, pages by cursor. Empty for the first page.
+	 * @param count
+	 *            For cursor pages, whether the total count is "exact", "estimate" or "none". Defaults to none.
 	 * @return The list of registered services.
 	 */
 	@RequestMapping(value = "/service", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
@@ -188,7 +201,9 @@ public class ServiceController {
 			@RequestParam(value = "order", required = false, defaultValue = "asc") String order,
 			@RequestParam(value = "sortBy", required = false, defaultValue = "serviceId") String sortBy,
 			@RequestParam(value = "keyword", required = false) String keyword,
-			@RequestParam(value = "userName", required = false) String userName) {
+			@RequestParam(value = "userName", required = false) String userName,
+			@RequestParam(value = "cursor", required = false) String cursor,
+			@RequestParam(value = "count", required = false) String count) {
 		try {
 			// Don't allow for invalid orders
 			String validatedOrder = order;
@@ -196,7 +211,21 @@ public class ServiceController {
 				validatedOrder = "asc";
 			}
 			logger.log("Returning List of Services.", Severity.INFORMATIONAL);
-			return new ResponseEntity<>(accessor.getServices(page, perPage, validatedOrder, sortBy, keyword, userName), HttpStatus.OK);
+			if (cursor == null) {
+				return new ResponseEntity<>(accessor.getServices(page, perPage, validatedOrder, sortBy, keyword, userName), HttpStatus.OK);
+			}
+			if ((keyword != null) && !keyword.isEmpty()) {
+				return new ResponseEntity<>(new ErrorResponse("Keyword searches cannot be paged by cursor. Use page numbers instead.",
+						SERVICE_CONTROLLER_UPPER), HttpStatus.BAD_REQUEST);
+			}
+			KeysetPage<Service> services = accessor.getServices(cursor, perPage, validatedOrder, sortBy, userName,
+					KeysetQuery.CountMode.fromString(count));
+			return new ResponseEntity<>(
+					new ServiceListResponse(services.getResults(),
+							new Pagination(services.getCount(), 0, perPage, sortBy, validatedOrder)),
+					services.getHeaders(), HttpStatus.OK);
+		} catch (InvalidKeysetQueryException exception) {
+			return new ResponseEntity<>(new ErrorResponse(exception.getMessage(), SERVICE_CONTROLLER_UPPER), HttpStatus.BAD_REQUEST);
 		} catch (Exception exception) {
 			String error = String.format("Error Listing Services: %s", exception.getMessage());
 			LOG.error(error, exception);
@@ -20,6 +20,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.PostConstruct;
+
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -37,6 +39,9 @@ import org.venice.piazza.common.hibernate.entity.AsyncServiceInstanceEntity;
 import org.venice.piazza.common.hibernate.entity.JobEntity;
 import org.venice.piazza.common.hibernate.entity.ServiceEntity;
 import org.venice.piazza.common.hibernate.entity.ServiceJobEntity;
+import org.venice.piazza.piazza.database.KeysetPage;
+import org.venice.piazza.piazza.database.KeysetPaginator;
+import org.venice.piazza.piazza.database.KeysetQuery;
 
 import exception.InvalidInputException;
 import model.job.Job;
@@ -72,6 +77,12 @@ public class DatabaseAccessor {
 	private AsyncServiceInstanceDao asyncServiceInstanceDao;
 	@Autowired
 	private JobDao jobDao;
+	@Autowired
+	private KeysetPaginator keysetPaginator;
+
+	private static final String SERVICE_ID = "serviceId";
+	private static final String CREATED_ON = "resourceMetadata.createdOn";
+	private static final String CREATED_BY = "resourceMetadata.createdBy";
 
 	private static final Logger LOG = LoggerFactory.getLogger(DatabaseAccessor.class);
 	private static final String SERVICE_CTR = "serviceController";
@@ -182,6 +193,31 @@ public class DatabaseAccessor {
 		return new ServiceListResponse(services, pagination);
 	}
 
+	/**
+	 * Get a page of services, starting after the cursor of the previous page
+	 */
+	public KeysetPage<Service> getServices(String cursor, Integer perPage, String order, String sortBy, String userName,
+			KeysetQuery.CountMode countMode) {
+		KeysetQuery<ServiceEntity> query = new KeysetQuery<>(ServiceEntity.class, Service.class, SERVICE_ID).orderBy(sortBy, order)
+				.where(CREATED_BY, userName).after(cursor).limit(perPage).count(countMode);
+		KeysetPage<ServiceEntity> results = keysetPaginator.getPage(query);
+
+		List<Service> services = new ArrayList<>();
+		for (ServiceEntity serviceEntity : results.getResults()) {
+			services.add(serviceEntity.getService());
+		}
+		return new KeysetPage<>(services, results.getNextCursor(), results.getCount());
+	}
+
+	/**
+	 * Registers the indexes for the keyset pages of Services, by creation date for all Services and by User.
+	 */
+	@PostConstruct
+	public void registerIndexes() {
+		keysetPaginator.registerIndex(ServiceEntity.class, Service.class, SERVICE_ID, null, CREATED_ON);
+		keysetPaginator.registerIndex(ServiceEntity.class, Service.class, SERVICE_ID, CREATED_BY, CREATED_ON);
+	}
+
 	/**
 	 * Returns a ResourceMetadata object that matches the specified Id.
 	 * 
@@ -22,10 +22,7 @@ import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -41,13 +38,13 @@ import org.venice.piazza.servicecontroller.async.AsynchronousServiceWorker;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
 import org.venice.piazza.servicecontroller.messaging.handlers.ExecuteServiceHandler;
 import org.venice.piazza.servicecontroller.taskmanaged.ServiceTaskManager;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import exception.DataInspectException;
 import exception.PiazzaJobException;
-import messaging.job.JobMessageFactory;
 import messaging.job.WorkerCallback;
 import model.job.Job;
 import model.job.PiazzaJobType;
@@ -99,10 +96,7 @@ ServiceMessageWorker {
 	@Autowired
 	private RestTemplate restTemplate;
 	@Autowired
-	@Qualifier("UpdateJobsQueue")
-	private Queue updateJobsQueue;
-	@Autowired
-	private RabbitTemplate rabbitTemplate;
+	private OutboundMessagePublisher outboundPublisher;
 
 	private static final Logger LOG = LoggerFactory.getLogger(ServiceMessageWorker.class);
 	private static final String JSON_ERR = "Json processing error occurred";
@@ -170,8 +164,7 @@ ServiceMessageWorker {
 		} else {
 			su.setStatus(StatusUpdate.STATUS_RUNNING);
 		}
-		rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-				objectMapper.writeValueAsString(su));
+		outboundPublisher.publishStatusUpdate(su);
 	}
 
 	private boolean isAsynOrTaskManagedService(final Service service, final WorkerCallback callback, final String consumerRecordKey,
@@ -198,8 +191,7 @@ ServiceMessageWorker {
 		statusUpdate.setResult(result);
 		statusUpdate.setJobId(jobId);
 		try {
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					objectMapper.writeValueAsString(statusUpdate));
+			outboundPublisher.publishStatusUpdate(statusUpdate);
 		} catch (JsonProcessingException jsonException) {
 			LOG.error(JSON_ERR, jsonException);
 			logger.log(String.format(
@@ -220,8 +212,7 @@ ServiceMessageWorker {
 			StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_SUCCESS);
 			statusUpdate.setResult(result);
 			statusUpdate.setJobId(jobId);
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					objectMapper.writeValueAsString(statusUpdate));
+			outboundPublisher.publishStatusUpdate(statusUpdate);
 		}
 	}
 
@@ -346,8 +337,7 @@ ServiceMessageWorker {
 		statusUpdate.setJobId(jobId);
 
 		try {
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					objectMapper.writeValueAsString(statusUpdate));
+			outboundPublisher.publishStatusUpdate(statusUpdate);
 		} catch (JsonProcessingException exception) {
 			// The message could not be serialized. Record this.
 			LOG.error(JSON_ERR, exception);
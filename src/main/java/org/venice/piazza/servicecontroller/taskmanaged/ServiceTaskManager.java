@@ -17,20 +17,16 @@ package org.venice.piazza.servicecontroller.taskmanaged;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.ResourceAccessException;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import exception.InvalidInputException;
-import messaging.job.JobMessageFactory;
 import model.job.Job;
 import model.job.result.type.ErrorResult;
 import model.job.type.ExecuteServiceJob;
@@ -64,17 +60,12 @@ public class ServiceTaskManager {
 	@Value("${task.managed.error.limit}")
 	private Integer TIMEOUT_LIMIT_COUNT; //NOSONAR
 
-	@Autowired
-	private ObjectMapper objectMapper;
 	@Autowired
 	private DatabaseAccessor accessor;
 	@Autowired
 	private PiazzaLogger piazzaLogger;
 	@Autowired
-	@Qualifier("UpdateJobsQueue")
-	private Queue updateJobsQueue;
-	@Autowired
-	private RabbitTemplate rabbitTemplate;
+	private OutboundMessagePublisher outboundPublisher;
 
 	private static final Logger LOG = LoggerFactory.getLogger(ServiceTaskManager.class);
 
@@ -104,8 +95,7 @@ public class ServiceTaskManager {
 		statusUpdate.setStatus(StatusUpdate.STATUS_PENDING);
 		statusUpdate.setJobId(job.getJobId());
 		try {
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					objectMapper.writeValueAsString(statusUpdate));
+			outboundPublisher.publishStatusUpdate(statusUpdate);
 		} catch (JsonProcessingException exception) {
 			String error = "Error Sending Pending Job Status to Job Manager: " + exception.getMessage();
 			LOG.error(error, exception);
@@ -158,8 +148,7 @@ public class ServiceTaskManager {
 		statusUpdate.setStatus(StatusUpdate.STATUS_CANCELLED);
 		statusUpdate.setJobId(jobId);
 		try {
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					objectMapper.writeValueAsString(statusUpdate));
+			outboundPublisher.publishStatusUpdate(statusUpdate);
 		} catch (JsonProcessingException exception) {
 			String error = String.format("Error Sending Cancelled Job %s Status to Job Manager: %s", jobId, exception.getMessage());
 			LOG.error(error, exception);
@@ -190,8 +179,7 @@ public class ServiceTaskManager {
 		// Send the Update
 		statusUpdate.setJobId(jobId);
 		try {
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					objectMapper.writeValueAsString(statusUpdate));
+			outboundPublisher.publishStatusUpdate(statusUpdate);
 		} catch (JsonProcessingException exception) {
 			String error = "Error Sending Job Status from External Service to Job Manager: " + exception.getMessage();
 			LOG.error(error, exception);
@@ -243,8 +231,7 @@ public class ServiceTaskManager {
 		statusUpdate.setStatus(StatusUpdate.STATUS_RUNNING);
 		statusUpdate.setJobId(jobId);
 		try {
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					objectMapper.writeValueAsString(statusUpdate));
+			outboundPublisher.publishStatusUpdate(statusUpdate);
 		} catch (JsonProcessingException exception) {
 			String error = "Error Sending Pending Job Status to Job Manager: ";
 			LOG.error(error, exception);
@@ -294,8 +281,7 @@ public class ServiceTaskManager {
 			statusUpdate.setStatus(StatusUpdate.STATUS_ERROR);
 			statusUpdate.setJobId(serviceJob.getJobId());
 			try {
-				rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-						objectMapper.writeValueAsString(statusUpdate));
+				outboundPublisher.publishStatusUpdate(statusUpdate);
 			} catch (JsonProcessingException exception) {
 				String innerError = "Error Sending Failed/Timed Out Job Status to Job Manager: ";
 				LOG.error(innerError, exception);
@@ -15,10 +15,15 @@
  **/
 package org.venice.piazza.access.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -66,4 +71,29 @@ public class AccessUtilitiesTests {
 		byte[] bytes = accessUtilities.getBytesForDataResource(mockData);
 		assertTrue(bytes.length == 90074);
 	}
+
+	/**
+	 * Tests streaming a range of a file, and reading its size
+	 */
+	@Test
+	public void testFileRange() throws IOException, InvalidInputException {
+		// Mock
+		DataResource mockData = new DataResource();
+		mockData.setDataId("123456");
+		mockData.dataType = new RasterDataType();
+		FolderShare location = new FolderShare();
+		location.filePath = "src" + File.separator + "test" + File.separator + "resources" + File.separator + "elevation.tif";
+		((RasterDataType) mockData.dataType).location = location;
+
+		// Test
+		assertTrue(accessUtilities.getFileSize(mockData) == 90074);
+		byte[] allBytes = accessUtilities.getBytesForDataResource(mockData);
+		byte[] rangeBytes;
+		try (InputStream inputStream = accessUtilities.getStreamForDataResource(mockData, 100, 199)) {
+			rangeBytes = IOUtils.toByteArray(inputStream);
+		}
+
+		// Verify
+		assertArrayEquals(Arrays.copyOfRange(allBytes, 100, 200), rangeBytes);
+	}
 }
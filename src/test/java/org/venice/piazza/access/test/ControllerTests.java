@@ -19,9 +19,20 @@ package org.venice.piazza.access.test;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
-
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -40,9 +51,14 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
@@ -54,6 +70,9 @@ import org.venice.piazza.access.deploy.GroupDeployer;
 import org.venice.piazza.access.deploy.Leaser;
 import org.venice.piazza.access.messaging.AccessThreadManager;
 import org.venice.piazza.access.util.AccessUtilities;
+import org.venice.piazza.piazza.database.InvalidKeysetQueryException;
+import org.venice.piazza.piazza.database.KeysetPage;
+import org.venice.piazza.piazza.database.KeysetQuery;
 import exception.GeoServerException;
 import model.data.DataResource;
 import model.data.deployment.Deployment;
@@ -166,11 +185,13 @@ public class ControllerTests {
 		mockData.dataType = new TextDataType();
 		((TextDataType) mockData.dataType).content = "This is a test";
 		when(accessor.getData(eq("123456"))).thenReturn(mockData);
-		ResponseEntity<?> response = accessController.accessFile("123456", "file.txt");
+		ResponseEntity<StreamingResponseBody> response = accessController.accessFile("123456", "file.txt");
 
 		// Verify
 		assertTrue(response.getStatusCode().equals(HttpStatus.OK));
-		assertTrue(new String((byte[]) response.getBody()).equals("This is a test"));
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		response.getBody().writeTo(outputStream);
+		assertTrue(new String(outputStream.toByteArray()).equals("This is a test"));
 
 		// Mock Vector (Database)
 		mockData.dataType = new PostGISDataType();
@@ -182,9 +203,12 @@ public class ControllerTests {
 
 		// Verify
 		assertTrue(response.getStatusCode().equals(HttpStatus.OK));
-		assertTrue(((byte[]) (response.getBody())).length > 0);
-		// Check that the points exist in the response.
-		String geoJson = new String((byte[]) response.getBody());
+		outputStream = new ByteArrayOutputStream();
+		response.getBody().writeTo(outputStream);
+		// Check that the points exist in the response, as a complete Feature Collection.
+		String geoJson = new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+		assertTrue(geoJson.startsWith("{\"type\":\"FeatureCollection\",\"features\":["));
+		assertTrue(geoJson.endsWith("]}"));
 		assertTrue(geoJson.contains("[5,5]"));
 		assertTrue(geoJson.contains("[0.0,0.0]"));
 
@@ -194,11 +218,107 @@ public class ControllerTests {
 		location.filePath = "src" + File.separator + "test" + File.separator + "resources" + File.separator + "elevation.tif";
 		((RasterDataType) mockData.dataType).location = location;
 		when(accessor.getData(eq("123456"))).thenReturn(mockData);
-		Mockito.doReturn("Test".getBytes()).when(accessUtilities).getBytesForDataResource(Mockito.any(DataResource.class));
+		Mockito.doReturn(4L).when(accessUtilities).getFileSize(Mockito.any(DataResource.class));
+		Mockito.doReturn(new ByteArrayInputStream("Test".getBytes())).when(accessUtilities)
+				.getStreamForDataResource(Mockito.any(DataResource.class));
 		response = accessController.accessFile("123456", "file.tif");
 
 		// Verify
 		assertTrue(response.getStatusCode().equals(HttpStatus.OK));
+		assertTrue(response.getHeaders().getContentLength() == 4);
+		outputStream = new ByteArrayOutputStream();
+		response.getBody().writeTo(outputStream);
+		assertTrue(new String(outputStream.toByteArray()).equals("Test"));
+	}
+
+	/**
+	 * Tests downloading a byte range of a file
+	 */
+	@Test
+	public void testDownloadFileRange() throws Exception {
+		// Mock
+		DataResource mockData = new DataResource();
+		mockData.setDataId("123456");
+		mockData.dataType = new RasterDataType();
+		FolderShare location = new FolderShare();
+		location.filePath = "src" + File.separator + "test" + File.separator + "resources" + File.separator + "elevation.tif";
+		((RasterDataType) mockData.dataType).location = location;
+		when(accessor.getData(eq("123456"))).thenReturn(mockData);
+		Mockito.doReturn(10L).when(accessUtilities).getFileSize(Mockito.any(DataResource.class));
+		Mockito.doReturn(new ByteArrayInputStream("2345".getBytes())).when(accessUtilities)
+				.getStreamForDataResource(Mockito.any(DataResource.class), eq(2L), eq(5L));
+
+		// Test
+		ResponseEntity<StreamingResponseBody> response = accessController.accessFile("123456", "file.tif", "bytes=2-5");
+
+		// Verify
+		assertTrue(response.getStatusCode().equals(HttpStatus.PARTIAL_CONTENT));
+		assertTrue(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE).equals("bytes 2-5/10"));
+		assertTrue(response.getHeaders().getContentLength() == 4);
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		response.getBody().writeTo(outputStream);
+		assertTrue(new String(outputStream.toByteArray()).equals("2345"));
+
+		// Test unsatisfiable range
+		response = accessController.accessFile("123456", "file.tif", "bytes=20-30");
+		assertTrue(response.getStatusCode().equals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE));
+		assertTrue(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE).equals("bytes */10"));
+
+		// Test pre-signed redirect
+		Mockito.doReturn(new URL("https://bucket.s3.amazonaws.com/file.tif")).when(accessUtilities)
+				.getPresignedUrl(Mockito.any(DataResource.class));
+		response = accessController.accessFile("123456", "file.tif", null);
+		assertTrue(response.getStatusCode().equals(HttpStatus.FOUND));
+		assertTrue(response.getHeaders().getLocation().toString().equals("https://bucket.s3.amazonaws.com/file.tif"));
+	}
+
+	/**
+	 * Tests that downloads are written through the streaming handler of Spring MVC, rather than the message converters
+	 */
+	@Test
+	public void testDownloadStreamed() throws Exception {
+		// Mock
+		MockMvc mockMvc = MockMvcBuilders.standaloneSetup(accessController).build();
+		DataResource mockData = new DataResource();
+		mockData.setDataId("123456");
+		mockData.dataType = new PostGISDataType();
+		((PostGISDataType) mockData.dataType).database = "localhost";
+		((PostGISDataType) mockData.dataType).table = "Test";
+		when(accessor.getData(eq("123456"))).thenReturn(mockData);
+		when(accessor.getPostGisDataStore()).thenReturn(mockDataStore);
+
+		// Test GeoJSON
+		MvcResult result = mockMvc.perform(get("/file/123456").param("fileName", "layer")).andExpect(request().asyncStarted())
+				.andReturn();
+		result.getAsyncResult();
+		String geoJson = mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=layer.geojson"))
+				.andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/geo+json")).andReturn()
+				.getResponse().getContentAsString();
+		assertTrue(geoJson.startsWith("{\"type\":\"FeatureCollection\",\"features\":["));
+		assertTrue(geoJson.contains("[5,5]"));
+
+		// Test a range of a file
+		mockData.dataType = new RasterDataType();
+		FolderShare location = new FolderShare();
+		location.filePath = "src" + File.separator + "test" + File.separator + "resources" + File.separator + "elevation.tif";
+		((RasterDataType) mockData.dataType).location = location;
+		Mockito.doReturn(10L).when(accessUtilities).getFileSize(Mockito.any(DataResource.class));
+		Mockito.doReturn(new ByteArrayInputStream("2345".getBytes())).when(accessUtilities)
+				.getStreamForDataResource(Mockito.any(DataResource.class), eq(2L), eq(5L));
+		result = mockMvc.perform(get("/file/123456").header(HttpHeaders.RANGE, "bytes=2-5")).andExpect(request().asyncStarted())
+				.andReturn();
+		result.getAsyncResult();
+		mockMvc.perform(asyncDispatch(result)).andExpect(status().isPartialContent())
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10")).andExpect(content().string("2345"));
+
+		// Test a missing Data item, written as JSON
+		when(accessor.getData(eq("123456"))).thenReturn(null);
+		result = mockMvc.perform(get("/file/123456")).andExpect(request().asyncStarted()).andReturn();
+		result.getAsyncResult();
+		String error = mockMvc.perform(asyncDispatch(result)).andExpect(status().isNotFound()).andReturn().getResponse()
+				.getContentAsString();
+		assertTrue(error.contains("Data not found: 123456"));
 	}
 
 	/**
@@ -269,13 +389,46 @@ public class ControllerTests {
 				.thenReturn(mockResponse);
 
 		// Test
-		PiazzaResponse response = accessController.getAllData("123", 0, 10, "dataId", "asc", "Raster", "Test User").getBody();
+		PiazzaResponse response = accessController.getAllData("123", 0, 10, "dataId", "asc", "Raster", "Test User", null, null).getBody();
 
 		// Verify
 		assertTrue(response instanceof DataResourceListResponse);
 		assertTrue(((DataResourceListResponse) response).data.size() == 1);
 	}
 
+	/**
+	 * Tests GET /data paged by cursor
+	 */
+	@Test
+	public void testGetDataListByCursor() throws Exception {
+		// Mock
+		when(accessor.getDataList(eq(""), eq(10), eq("metadata.createdOn"), eq("desc"), eq("Test User"), eq((String) null),
+				eq(KeysetQuery.CountMode.ESTIMATE)))
+						.thenReturn(new KeysetPage<>(Collections.singletonList(new DataResource()), "next", 50L));
+
+		// Test
+		ResponseEntity<PiazzaResponse> entity = accessController.getAllData(null, 0, 10, "metadata.createdOn", "desc", null,
+				"Test User", "", "estimate");
+
+		// Verify
+		assertTrue(entity.getBody() instanceof DataResourceListResponse);
+		assertTrue(((DataResourceListResponse) entity.getBody()).data.size() == 1);
+		assertTrue(((DataResourceListResponse) entity.getBody()).getPagination().getCount() == 50L);
+		assertTrue("next".equals(entity.getHeaders().getFirst(KeysetPage.NEXT_CURSOR_HEADER)));
+
+		// Keyword searches are only paged by page number
+		entity = accessController.getAllData(null, 0, 10, "metadata.createdOn", "desc", "Raster", null, "", null);
+		assertTrue(entity.getStatusCode().equals(HttpStatus.BAD_REQUEST));
+
+		// Invalid count modes and cursors are bad requests
+		entity = accessController.getAllData(null, 0, 10, "metadata.createdOn", "desc", null, null, "", "approximately");
+		assertTrue(entity.getStatusCode().equals(HttpStatus.BAD_REQUEST));
+		when(accessor.getDataList(eq("invalid"), eq(10), eq("metadata.createdOn"), eq("desc"), eq((String) null), eq((String) null),
+				eq(KeysetQuery.CountMode.NONE))).thenThrow(new InvalidKeysetQueryException("Invalid cursor invalid."));
+		entity = accessController.getAllData(null, 0, 10, "metadata.createdOn", "desc", null, null, "invalid", null);
+		assertTrue(entity.getStatusCode().equals(HttpStatus.BAD_REQUEST));
+	}
+
 	/**
 	 * Tests GET /deployment
 	 */
@@ -288,7 +441,7 @@ public class ControllerTests {
 		when(accessor.getDeploymentList(eq(0), eq(10), eq("dataId"), eq("asc"), eq("WFS"))).thenReturn(mockResponse);
 
 		// Test
-		PiazzaResponse response = accessController.getAllDeployments(0, 10, "dataId", "asc", "WFS").getBody();
+		PiazzaResponse response = accessController.getAllDeployments(0, 10, "dataId", "asc", "WFS", null, null).getBody();
 
 		// Verify
 		assertTrue(response instanceof DeploymentListResponse);
@@ -32,6 +32,7 @@ import org.venice.piazza.common.hibernate.dao.dataresource.DataResourceDao;
 import org.venice.piazza.common.hibernate.dao.deployment.DeploymentDao;
 import org.venice.piazza.common.hibernate.entity.DataResourceEntity;
 import org.venice.piazza.access.database.DatabaseAccessor;
+import org.venice.piazza.ingest.persist.PostGisDataStoreManager;
 import model.data.DataResource;
 import model.data.deployment.Deployment;
 
@@ -55,6 +56,8 @@ public class DatabaseAccessorTests {
 	private DeploymentDao deploymentDao;
 	@Mock
 	private DeploymentGroupDao deploymentGroupDao;
+	@Mock
+	private PostGisDataStoreManager postGisDataStoreManager;
 	@InjectMocks
 	private DatabaseAccessor databaseAccessor;
 	
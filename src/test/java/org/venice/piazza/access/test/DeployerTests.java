@@ -29,6 +29,8 @@ import model.data.type.TextDataType;
 import model.data.type.WfsDataType;
 import model.job.metadata.SpatialMetadata;
 
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.HttpClients;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
@@ -39,7 +41,12 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
@@ -62,6 +69,8 @@ public class DeployerTests {
 	@Mock
 	private RestTemplate restTemplate;
 	@Mock
+	private RestTemplate uploadRestTemplate;
+	@Mock
 	private AuthHeaders geoServerHeaders;
 	@Mock
 	private UUIDFactory uuidFactory;
@@ -135,14 +144,42 @@ public class DeployerTests {
 		assertTrue(deployment.getDataId().equals("123456"));
 		assertTrue(deployment.getDeploymentId().equals("123456"));
 
-		// Raster
-		Mockito.doReturn(new ResponseEntity<String>("OK", HttpStatus.CREATED)).when(restTemplate).exchange(anyString(), eq(HttpMethod.PUT),
-				any(HttpEntity.class), eq(String.class));
-		Mockito.doReturn(new byte[100]).when(accessUtilities).getBytesForDataResource(any(DataResource.class));
+		// Raster; the file is uploaded with the streaming RestTemplate
 		deployment = deployer.createDeployment(rasterData);
 		assertTrue(deployment != null);
 		assertTrue(deployment.getDataId().equals("123456"));
 		assertTrue(deployment.getDeploymentId().equals("123456"));
+		Mockito.verify(uploadRestTemplate).execute(anyString(), eq(HttpMethod.PUT), any(RequestCallback.class),
+				Mockito.<ResponseExtractor<Object>> any());
+		Mockito.verify(restTemplate, Mockito.never()).execute(anyString(), eq(HttpMethod.PUT), any(RequestCallback.class),
+				Mockito.<ResponseExtractor<Object>> any());
+	}
+
+	/**
+	 * Tests that the upload RestTemplate shares the HTTP client of the shared RestTemplate, without changing it
+	 */
+	@Test
+	public void testUploadRestTemplate() {
+		// Mock
+		HttpClient httpClient = HttpClients.createDefault();
+		HttpComponentsClientHttpRequestFactory sharedFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+		when(restTemplate.getRequestFactory()).thenReturn(sharedFactory);
+
+		// Test
+		deployer.initialize();
+
+		// Verify
+		RestTemplate upload = (RestTemplate) ReflectionTestUtils.getField(deployer, "uploadRestTemplate");
+		assertTrue(upload != restTemplate);
+		assertTrue(upload.getRequestFactory() instanceof HttpComponentsClientHttpRequestFactory);
+		assertTrue(upload.getRequestFactory() != sharedFactory);
+		assertTrue(((HttpComponentsClientHttpRequestFactory) upload.getRequestFactory()).getHttpClient() == httpClient);
+
+		// Without a pooled client, a plain streaming factory is used
+		when(restTemplate.getRequestFactory()).thenReturn(new SimpleClientHttpRequestFactory());
+		deployer.initialize();
+		upload = (RestTemplate) ReflectionTestUtils.getField(deployer, "uploadRestTemplate");
+		assertTrue(upload.getRequestFactory() instanceof SimpleClientHttpRequestFactory);
 	}
 
 	/**
@@ -25,19 +25,16 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
-
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.venice.piazza.access.database.DatabaseAccessor;
 import org.venice.piazza.access.deploy.Deployer;
 import org.venice.piazza.access.deploy.Leaser;
 import org.venice.piazza.access.messaging.AccessWorker;
-import messaging.job.JobMessageFactory;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
 import messaging.job.WorkerCallback;
 import model.job.Job;
 import model.job.type.AccessJob;
+import model.status.StatusUpdate;
 import util.PiazzaLogger;
 
 /**
@@ -56,11 +53,7 @@ public class WorkerTests {
 	@Mock
 	private PiazzaLogger logger;
 	@Mock
-	private Queue updateJobsQueue;
-	@Mock
-	private RabbitTemplate rabbitTemplate;
-	@Mock
-	private ObjectMapper mapper;
+	private OutboundMessagePublisher outboundPublisher;
 
 	@InjectMocks
 	private AccessWorker worker;
@@ -80,9 +73,6 @@ public class WorkerTests {
 	@Test
 	public void testWorker() throws Exception {
 		// Mock
-		when(updateJobsQueue.getName()).thenReturn("Update-Job-Unit-Test");
-		Mockito.doNothing().when(rabbitTemplate).convertAndSend(eq(JobMessageFactory.PIAZZA_EXCHANGE_NAME), eq("123456"),
-				Mockito.anyString());
 		Job mockJob = new Job();
 		mockJob.setJobId("123456");
 		mockJob.setCreatedBy("Test User");
@@ -100,6 +90,8 @@ public class WorkerTests {
 		// Test when refreshing an expired lease
 		when(deployer.doesDeploymentExist(eq("123456"))).thenReturn(true);
 		worker.run(mockJob, callback);
+		// Running and Success statuses are both sent
+		Mockito.verify(outboundPublisher, Mockito.times(2)).publishStatusUpdate(Mockito.any(StatusUpdate.class));
 
 		// Test when a current lease doesn't exist - new is created
 		when(deployer.doesDeploymentExist(eq("123456"))).thenReturn(false);
@@ -19,11 +19,14 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.Map;
 
+import org.venice.piazza.gateway.auth.AuthorizationDecisionCache;
+import org.venice.piazza.gateway.auth.UserDetailsBean;
 import org.venice.piazza.gateway.controller.AdminController;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
+import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.ResponseEntity;
 
@@ -34,6 +37,10 @@ import org.springframework.http.ResponseEntity;
  *
  */
 public class AdminTests {
+	@Mock
+	private AuthorizationDecisionCache decisionCache;
+	@Mock
+	private UserDetailsBean userDetails;
 	@InjectMocks
 	private AdminController adminController;
 
@@ -68,5 +75,7 @@ public class AdminTests {
 		assertTrue(stats.containsKey("Access"));
 		assertTrue(stats.containsKey("JobManager"));
 		assertTrue(stats.containsKey("ServiceController"));
+		assertTrue(stats.containsKey("AuthorizationCache"));
+		assertTrue(stats.containsKey("Authorization"));
 	}
 }
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.gateway.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.gateway.auth.AuthorizationDecisionCache;
+
+import model.response.AuthResponse;
+import model.security.authz.UserProfile;
+
+/**
+ * Tests the cache of Gateway Authorization decisions
+ */
+public class AuthorizationDecisionCacheTests {
+	private AuthorizationDecisionCache cache;
+
+	@Before
+	public void setup() {
+		cache = new AuthorizationDecisionCache();
+		ReflectionTestUtils.setField(cache, "ENABLED", true);
+		ReflectionTestUtils.setField(cache, "MAX_SIZE", 100L);
+		ReflectionTestUtils.setField(cache, "TTL_MS", 60000L);
+		ReflectionTestUtils.setField(cache, "NEGATIVE_TTL_MS", 60000L);
+		cache.initialize();
+	}
+
+	@Test
+	public void testUriClass() {
+		assertEquals("/job/*", AuthorizationDecisionCache.getUriClass("/job/c7ad2e18-4a5b-4c39-9e7e-7e3d0b4f4f5a"));
+		assertEquals("/data/*/file", AuthorizationDecisionCache.getUriClass("/data/42/file"));
+		assertEquals("/service/me", AuthorizationDecisionCache.getUriClass("/service/me"));
+		assertEquals("", AuthorizationDecisionCache.getUriClass(null));
+	}
+
+	@Test
+	public void testDecisions() {
+		// Mock
+		AuthResponse allowed = new AuthResponse(true, new UserProfile());
+		AuthResponse denied = new AuthResponse(false, "Denied");
+
+		// Test; resources of the same endpoint share a decision
+		assertNull(cache.get("key1", "GET", "/job/1"));
+		cache.put("key1", "GET", "/job/1", allowed);
+		cache.put("key2", "GET", "/job/1", denied);
+
+		// Verify
+		assertSame(allowed, cache.get("key1", "GET", "/job/2"));
+		assertSame(denied, cache.get("key2", "GET", "/job/2"));
+		assertNull(cache.get("key1", "DELETE", "/job/2"));
+		Map<String, Object> stats = cache.getStats();
+		assertEquals(1L, stats.get("hits"));
+		assertEquals(1L, stats.get("negativeHits"));
+		assertEquals(2L, stats.get("misses"));
+	}
+
+	@Test
+	public void testThrottledActions() {
+		// Mock
+		AuthResponse allowed = new AuthResponse(true, new UserProfile());
+		AuthResponse denied = new AuthResponse(false, "Throttled");
+
+		// Test; allowed throttled actions are checked every time, while other actions are cached
+		cache.put("key1", "POST", "/job", allowed);
+		cache.put("key1", "POST", "/data/file", allowed);
+		cache.put("key1", "POST", "/job/1", allowed);
+		cache.put("key2", "POST", "/job", denied);
+
+		// Verify
+		assertNull(cache.get("key1", "POST", "/job"));
+		assertNull(cache.get("key1", "POST", "/data/file"));
+		assertSame(allowed, cache.get("key1", "POST", "/job/2"));
+		assertSame(denied, cache.get("key2", "POST", "/job"));
+		assertTrue(AuthorizationDecisionCache.isThrottled("POST", "/deployment/"));
+		assertTrue(AuthorizationDecisionCache.isThrottled("POST", "/job/batch"));
+		assertFalse(AuthorizationDecisionCache.isThrottled("GET", "/job"));
+		assertFalse(AuthorizationDecisionCache.isThrottled("POST", null));
+	}
+
+	@Test
+	public void testInvalidate() {
+		// Mock
+		cache.put("key1", "GET", "/job/1", new AuthResponse(true, new UserProfile()));
+		cache.put("key1", "POST", "/job", new AuthResponse(false, "Denied"));
+		cache.put("key2", "GET", "/job/1", new AuthResponse(true, new UserProfile()));
+
+		// Test
+		cache.invalidate("key1");
+
+		// Verify
+		assertNull(cache.get("key1", "GET", "/job/1"));
+		assertNull(cache.get("key1", "POST", "/job"));
+		assertEquals(true, cache.get("key2", "GET", "/job/1").getIsAuthSuccess());
+		assertEquals(1L, cache.getStats().get("invalidations"));
+	}
+
+	@Test
+	public void testDisabled() {
+		// Mock
+		ReflectionTestUtils.setField(cache, "ENABLED", false);
+
+		// Test
+		cache.put("key1", "GET", "/job/1", new AuthResponse(true, new UserProfile()));
+
+		// Verify
+		assertNull(cache.get("key1", "GET", "/job/1"));
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.gateway.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.venice.piazza.gateway.auth.LocalAuthorizationService;
+import org.venice.piazza.gateway.auth.RemoteAuthorizationService;
+import org.venice.piazza.idam.controller.AuthController;
+
+import model.response.AuthResponse;
+import model.security.authz.AuthorizationCheck;
+import model.security.authz.UserProfile;
+
+/**
+ * Tests the in-process and HTTP Authorization services used by the Gateway
+ */
+public class AuthorizationServiceTests {
+	@Mock
+	private RestTemplate restTemplate;
+	@Mock
+	private AuthController authController;
+
+	private RemoteAuthorizationService remoteService;
+	private LocalAuthorizationService localService;
+
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		remoteService = new RemoteAuthorizationService(restTemplate, "mock-security-test.com");
+		localService = new LocalAuthorizationService(authController);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testLocalDecisions() {
+		// Mock
+		AuthorizationCheck check = new AuthorizationCheck();
+		AuthResponse allowed = new AuthResponse(true, new UserProfile());
+		Mockito.doReturn(new ResponseEntity<AuthResponse>(allowed, HttpStatus.OK)).when(authController).authenticateAndAuthorize(check);
+		Mockito.doReturn(new ResponseEntity<AuthResponse>(new AuthResponse(false), HttpStatus.UNAUTHORIZED)).when(authController)
+				.authenticateApiKey(Mockito.anyMap());
+
+		// Test
+		assertSame(allowed, localService.authenticateAndAuthorize(check));
+		assertFalse(localService.authenticate("apiKey123").getIsAuthSuccess());
+
+		// Verify; the controller is called directly, not over HTTP
+		Mockito.verifyZeroInteractions(restTemplate);
+		assertTrue(localService.isLocal());
+	}
+
+	@Test(expected = HttpServerErrorException.class)
+	public void testLocalFailure() {
+		// Mock
+		AuthorizationCheck check = new AuthorizationCheck();
+		Mockito.doReturn(new ResponseEntity<AuthResponse>(new AuthResponse(false, "Error"), HttpStatus.INTERNAL_SERVER_ERROR))
+				.when(authController).authenticateAndAuthorize(check);
+
+		// Test
+		localService.authenticateAndAuthorize(check);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testLocalAuthenticationKey() {
+		// Mock
+		Mockito.doReturn(new ResponseEntity<AuthResponse>(new AuthResponse(true, new UserProfile()), HttpStatus.OK))
+				.when(authController).authenticateApiKey(Mockito.anyMap());
+
+		// Test
+		localService.authenticate("apiKey123");
+
+		// Verify
+		@SuppressWarnings("rawtypes")
+		ArgumentCaptor<Map> body = ArgumentCaptor.forClass(Map.class);
+		Mockito.verify(authController).authenticateApiKey(body.capture());
+		assertEquals("apiKey123", body.getValue().get("uuid"));
+	}
+
+	@Test
+	public void testRemoteDecisions() {
+		// Mock
+		AuthResponse allowed = new AuthResponse(true, new UserProfile());
+		Mockito.doReturn(new ResponseEntity<AuthResponse>(allowed, HttpStatus.OK)).when(restTemplate)
+				.postForEntity(Mockito.eq("mock-security-test.com//authz"), Mockito.any(), Mockito.eq(AuthResponse.class));
+		Mockito.doThrow(new HttpClientErrorException(HttpStatus.UNAUTHORIZED)).when(restTemplate)
+				.postForEntity(Mockito.eq("mock-security-test.com//authn"), Mockito.any(), Mockito.eq(AuthResponse.class));
+
+		// Test
+		assertSame(allowed, remoteService.authenticateAndAuthorize(new AuthorizationCheck()));
+		// An Unauthorized response is a declined decision
+		assertFalse(remoteService.authenticate("apiKey123").getIsAuthSuccess());
+		assertFalse(remoteService.isLocal());
+	}
+
+	@Test(expected = HttpClientErrorException.class)
+	public void testRemoteFailure() {
+		// Mock
+		Mockito.doThrow(new HttpClientErrorException(HttpStatus.BAD_REQUEST)).when(restTemplate).postForEntity(Mockito.anyString(),
+				Mockito.any(), Mockito.eq(AuthResponse.class));
+
+		// Test
+		remoteService.authenticateAndAuthorize(new AuthorizationCheck());
+	}
+}
@@ -23,7 +23,17 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
-
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.util.ArrayList;
 
@@ -34,12 +44,17 @@ import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.amazonaws.services.s3.AmazonS3;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -50,6 +65,7 @@ import org.venice.piazza.access.controller.AccessController;
 import org.venice.piazza.gateway.controller.DataController;
 import org.venice.piazza.gateway.controller.util.GatewayUtil;
 import org.venice.piazza.ingest.controller.IngestController;
+import org.venice.piazza.piazza.web.JsonStreamingBody;
 
 import model.data.DataResource;
 import model.data.type.GeoJsonDataType;
@@ -128,11 +144,11 @@ public class DataTests {
 		mockResponse.data = new ArrayList<DataResource>();
 		mockResponse.getData().add(mockData);
 		mockResponse.pagination = new Pagination(new Long(1), 0, 10, "test", "asc");
-		when(accessController.getAllData(eq("123456"), eq(0), eq(10), eq("sortby"), eq("order"), eq("keyword"), eq("createdby")))
+		when(accessController.getAllData(eq("123456"), eq(0), eq(10), eq("sortby"), eq("order"), eq("keyword"), eq("createdby"), eq((String) null), eq((String) null)))
 				.thenReturn(new ResponseEntity<PiazzaResponse>(mockResponse, HttpStatus.OK));
 
 		// Get the data
-		ResponseEntity<PiazzaResponse> entity = dataController.getData("keyword", "123456", 0, 10, "order", "sortby", "createdby", user);
+		ResponseEntity<PiazzaResponse> entity = dataController.getData("keyword", "123456", 0, 10, "order", "sortby", "createdby", null, null, user);
 		PiazzaResponse response = entity.getBody();
 
 		// Verify the results
@@ -149,11 +165,11 @@ public class DataTests {
 	@Test
 	public void testGetData_Error() {
 		// Mock an Exception being thrown and handled.
-		when(accessController.getAllData(eq("123456"), eq(0), eq(10), eq("sortby"), eq("order"), eq("keyword"), eq("createdby")))
+		when(accessController.getAllData(eq("123456"), eq(0), eq(10), eq("sortby"), eq("order"), eq("keyword"), eq("createdby"), eq((String) null), eq((String) null)))
 				.thenThrow(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
 
 		// Get the data
-		ResponseEntity<PiazzaResponse> entity = dataController.getData("keyword", "123456", 0, 10, "order", "sortby", "createdby", user);
+		ResponseEntity<PiazzaResponse> entity = dataController.getData("keyword", "123456", 0, 10, "order", "sortby", "createdby", null, null, user);
 		PiazzaResponse response = entity.getBody();
 
 		// Verify that a proper exception was thrown.
@@ -353,17 +369,45 @@ public class DataTests {
 	@Test
 	public void testDownload() throws Exception {
 		// Mock
-		ResponseEntity<byte[]> mockResponse = new ResponseEntity<byte[]>("Content".getBytes(), HttpStatus.OK);
-		when(accessController.accessFile("123456", "test.txt"))
-			.thenReturn(mockResponse);
+		when(accessController.accessFile("123456", "test.txt", null)).thenReturn(getStreamingResponse("Content", new HttpHeaders(), HttpStatus.OK));
 
 		// Test
-		ResponseEntity<?> entity = dataController.getFile("123456", "test.txt", user);
-		byte[] response = (byte[]) entity.getBody();
+		ResponseEntity<StreamingResponseBody> entity = dataController.getFile("123456", "test.txt", null, user);
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		entity.getBody().writeTo(response);
 
 		// Verify
 		assertTrue(entity.getStatusCode().equals(HttpStatus.OK));
-		assertEquals("Content", new String(response));
+		assertEquals("Content", new String(response.toByteArray()));
+	}
+
+	/**
+	 * Tests that GET /file/{dataId} is written through the streaming handler of Spring MVC, including ranged
+	 * downloads and errors
+	 */
+	@Test
+	public void testDownloadStreamed() throws Exception {
+		// Mock
+		MockMvc mockMvc = MockMvcBuilders.standaloneSetup(dataController).build();
+		HttpHeaders rangeHeaders = new HttpHeaders();
+		rangeHeaders.set(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10");
+		when(accessController.accessFile("123456", null, "bytes=2-5"))
+				.thenReturn(getStreamingResponse("2345", rangeHeaders, HttpStatus.PARTIAL_CONTENT));
+		when(accessController.accessFile("123456", null, null)).thenThrow(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
+
+		// Test a range
+		MvcResult result = mockMvc.perform(get("/file/123456").header(HttpHeaders.RANGE, "bytes=2-5").principal(user))
+				.andExpect(request().asyncStarted()).andReturn();
+		result.getAsyncResult();
+		mockMvc.perform(asyncDispatch(result)).andExpect(status().isPartialContent())
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10")).andExpect(content().string("2345"));
+
+		// Test an error, written as JSON
+		result = mockMvc.perform(get("/file/123456").principal(user)).andExpect(request().asyncStarted()).andReturn();
+		result.getAsyncResult();
+		String error = mockMvc.perform(asyncDispatch(result)).andExpect(status().isInternalServerError()).andReturn().getResponse()
+				.getContentAsString();
+		assertTrue(error.contains("Gateway"));
 	}
 	
 	/**
@@ -372,15 +416,26 @@ public class DataTests {
 	@Test
 	public void testDownload_Error() throws Exception {
 		// Mock
-		when(accessController.accessFile("123456", "test.txt"))
+		when(accessController.accessFile("123456", "test.txt", null))
 			.thenThrow(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
 
 		// Test+Verify
-		ResponseEntity<?> entity = dataController.getFile("123456", "test.txt", user);
-		PiazzaResponse response = (PiazzaResponse) entity.getBody();
+		ResponseEntity<StreamingResponseBody> entity = dataController.getFile("123456", "test.txt", null, user);
+		Object response = ((JsonStreamingBody) entity.getBody()).getValue();
 
 		// Verify
 		assertTrue(response instanceof ErrorResponse);
 		assertTrue(entity.getStatusCode().equals(HttpStatus.INTERNAL_SERVER_ERROR));
 	}
-}
\ No newline at end of file
+
+	private static ResponseEntity<StreamingResponseBody> getStreamingResponse(final String content, HttpHeaders headers,
+			HttpStatus status) {
+		StreamingResponseBody body = new StreamingResponseBody() {
+			@Override
+			public void writeTo(OutputStream outputStream) throws IOException {
+				outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+			}
+		};
+		return new ResponseEntity<StreamingResponseBody>(body, headers, status);
+	}
+}
@@ -139,11 +139,11 @@ public class DeploymentTests {
 		mockResponse.getData().add(mockDeployment);
 		mockResponse.pagination = new Pagination(new Long(1), 0, 10, "test", "asc");
 		
-		when(accessController.getAllDeployments(0, 10, "sortby", "order", "keyword"))
+		when(accessController.getAllDeployments(0, 10, "sortby", "order", "keyword", null, null))
 			.thenReturn(new ResponseEntity<PiazzaResponse>(mockResponse, HttpStatus.OK));
 
 		// Test
-		ResponseEntity<PiazzaResponse> entity = deploymentController.getDeployment("keyword", 0, 10, "order", "sortby", user);
+		ResponseEntity<PiazzaResponse> entity = deploymentController.getDeployment("keyword", 0, 10, "order", "sortby", null, null, user);
 		PiazzaResponse response = entity.getBody();
 
 		// Verify
@@ -161,11 +161,11 @@ public class DeploymentTests {
 	public void testGetList_Error() {
 		// Mock
 		
-		when(accessController.getAllDeployments(0, 10, "sortby", "order", "keyword"))
+		when(accessController.getAllDeployments(0, 10, "sortby", "order", "keyword", null, null))
 			.thenThrow(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
 
 		// Test
-		ResponseEntity<PiazzaResponse> entity = deploymentController.getDeployment("keyword", 0, 10, "order", "sortby", user);
+		ResponseEntity<PiazzaResponse> entity = deploymentController.getDeployment("keyword", 0, 10, "order", "sortby", null, null, user);
 		PiazzaResponse response = entity.getBody();
 
 		// Verify
@@ -15,19 +15,25 @@
  **/
 package org.venice.piazza.gateway.test;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
 
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import javax.management.remote.JMXPrincipal;
 
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -37,8 +43,11 @@ import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -46,13 +55,18 @@ import exception.PiazzaJobException;
 import org.venice.piazza.gateway.controller.JobController;
 import org.venice.piazza.gateway.controller.ServiceController;
 import org.venice.piazza.gateway.controller.util.GatewayUtil;
+import org.venice.piazza.idam.authz.throttle.ThrottleAuthorizer;
+import org.venice.piazza.jobmanager.database.JobArchiver;
+import org.venice.piazza.jobmanager.messaging.JobStatusNotifier;
 import model.job.Job;
 import model.job.JobProgress;
 import model.job.metadata.ResourceMetadata;
 import model.job.type.ExecuteServiceJob;
 import model.job.type.RepeatJob;
 import model.request.PiazzaJobRequest;
+import model.response.AuthResponse;
 import model.response.ErrorResponse;
+import model.response.JobListResponse;
 import model.response.JobResponse;
 import model.response.JobStatusResponse;
 import model.response.PiazzaResponse;
@@ -89,6 +103,12 @@ public class JobTests {
 	private ServiceController serviceController;
 	@Mock
 	private org.venice.piazza.jobmanager.controller.JobController jobManagerController;
+	@Mock
+	private JobStatusNotifier jobStatusNotifier;
+	@Mock
+	private ThrottleAuthorizer throttleAuthorizer;
+	@Mock
+	private JobArchiver jobArchiver;
 	@InjectMocks
 	private JobController jobController;
 
@@ -114,8 +134,12 @@ public class JobTests {
 
 		// Mock a user
 		user = new JMXPrincipal("Test User");
+		ReflectionTestUtils.setField(jobController, "WAIT_DEFAULT_TIMEOUT_SECONDS", 30);
+		ReflectionTestUtils.setField(jobController, "WAIT_MAX_TIMEOUT_SECONDS", 300);
+		ReflectionTestUtils.setField(jobController, "BATCH_MAX_SIZE", 5);
 
 		when(gatewayUtil.getErrorResponse(anyString())).thenCallRealMethod();
+		when(throttleAuthorizer.canUserSubmitJobs(anyString(), anyInt())).thenReturn(new AuthResponse(true));
 	}
 
 	/**
@@ -156,6 +180,98 @@ public class JobTests {
 		assertTrue(entity.getStatusCode().equals(HttpStatus.INTERNAL_SERVER_ERROR));
 	}
 
+	/**
+	 * Test GET /job/{jobId}/wait
+	 */
+	@Test
+	public void testWaitForJob() {
+		// Mock
+		when(jobStatusNotifier.subscribe(eq("123456"), any(JobStatusNotifier.Listener.class))).thenReturn(mockJob);
+		when(jobManagerController.getJobStatus("123456"))
+			.thenReturn(new ResponseEntity<PiazzaResponse>(new JobStatusResponse(mockJob), HttpStatus.OK));
+
+		// Test. The Job is still running, so no response is sent yet.
+		DeferredResult<ResponseEntity<PiazzaResponse>> result = jobController.waitForJob("123456", 60, user);
+		assertFalse(result.hasResult());
+
+		// Complete the Job
+		ArgumentCaptor<JobStatusNotifier.Listener> listener = ArgumentCaptor.forClass(JobStatusNotifier.Listener.class);
+		Mockito.verify(jobStatusNotifier).subscribe(eq("123456"), listener.capture());
+		mockJob.setStatus(StatusUpdate.STATUS_SUCCESS);
+		listener.getValue().onJobUpdated(mockJob);
+
+		// Verify
+		assertTrue(result.hasResult());
+		assertTrue(((ResponseEntity<?>) result.getResult()).getStatusCode().equals(HttpStatus.OK));
+	}
+
+	/**
+	 * Test GET /job/{jobId}/wait for a Job that does not exist
+	 */
+	@Test
+	public void testWaitForJob_NotFound() {
+		// Mock
+		when(jobManagerController.getJobStatus("123456"))
+			.thenReturn(new ResponseEntity<PiazzaResponse>(new ErrorResponse("Job not found", "Job Manager"), HttpStatus.NOT_FOUND));
+
+		// Test
+		DeferredResult<ResponseEntity<PiazzaResponse>> result = jobController.waitForJob("123456", null, user);
+
+		// Verify the response is sent without waiting
+		assertTrue(result.hasResult());
+		assertTrue(((ResponseEntity<?>) result.getResult()).getStatusCode().equals(HttpStatus.NOT_FOUND));
+	}
+
+	/**
+	 * Test GET /job/{jobId}/events
+	 */
+	@Test
+	public void testStreamJobStatus() {
+		// Mock
+		when(jobStatusNotifier.subscribe(eq("123456"), any(JobStatusNotifier.Listener.class))).thenReturn(mockJob);
+
+		// Test
+		ResponseEntity<SseEmitter> entity = jobController.streamJobStatus("123456", 600, user);
+
+		// Verify the timeout is bounded
+		assertTrue(entity.getStatusCode().equals(HttpStatus.OK));
+		assertTrue(entity.getBody().getTimeout().equals(300000L));
+		Mockito.verify(jobStatusNotifier).subscribe(eq("123456"), any(JobStatusNotifier.Listener.class));
+	}
+
+	/**
+	 * Test GET /job/{jobId}/events for a Job that does not exist
+	 */
+	@Test
+	public void testStreamJobStatus_NotFound() {
+		// Test
+		ResponseEntity<SseEmitter> entity = jobController.streamJobStatus("123456", null, user);
+
+		// Verify
+		assertTrue(entity.getStatusCode().equals(HttpStatus.NOT_FOUND));
+		Mockito.verify(jobStatusNotifier).unsubscribe(eq("123456"), any(JobStatusNotifier.Listener.class));
+		Mockito.verify(jobArchiver).getArchivedJob("123456");
+	}
+
+	/**
+	 * Test GET /job/{jobId}/events for a Job that has been archived
+	 */
+	@Test
+	public void testStreamJobStatus_Archived() throws Exception {
+		// Mock
+		mockJob.setStatus(StatusUpdate.STATUS_SUCCESS);
+		when(jobArchiver.getArchivedJob("123456")).thenReturn(mockJob);
+
+		// Test
+		ResponseEntity<SseEmitter> entity = jobController.streamJobStatus("123456", null, user);
+
+		// Verify the final Status is streamed, rather than Not Found
+		assertTrue(entity.getStatusCode().equals(HttpStatus.OK));
+		assertTrue(entity.getBody() != null);
+		Mockito.verify(jobStatusNotifier).unsubscribe(eq("123456"), any(JobStatusNotifier.Listener.class));
+		Mockito.verify(mapper).writeValueAsString(any(JobStatusResponse.class));
+	}
+
 	/**
 	 * Test DELETE /job/{jobId}
 	 */
@@ -258,4 +374,89 @@ public class JobTests {
 		ErrorResponse error = (ErrorResponse) entity.getBody();
 		assertTrue(error.message.contains("REST Broke"));
 	}
+
+	/**
+	 * Test POST /v2/job/batch
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testExecuteBatch() throws Exception {
+		// Mock
+		List<ExecuteServiceJob> jobs = new ArrayList<>();
+		for (int index = 0; index < 3; index++) {
+			ExecuteServiceJob executeJob = new ExecuteServiceJob("job" + index);
+			executeJob.data = new ExecuteServiceData();
+			executeJob.data.setServiceId("654321");
+			jobs.add(executeJob);
+		}
+
+		ServiceResponse serviceResponse = new ServiceResponse();
+		Service service = new Service();
+		service.setServiceId("654321");
+		service.setResourceMetadata(new ResourceMetadata());
+		service.getResourceMetadata().availability = "ONLINE";
+		serviceResponse.data = service;
+		when(serviceController.getService("654321", user)).thenReturn(new ResponseEntity<PiazzaResponse>(serviceResponse, HttpStatus.OK));
+		when(gatewayUtil.sendJobRequests(any(List.class))).thenReturn(new JobListResponse(Collections.singletonList(mockJob), null));
+
+		// Test
+		ResponseEntity<PiazzaResponse> entity = jobController.executeServices(jobs, user);
+
+		// Verify
+		assertTrue(entity.getStatusCode().equals(HttpStatus.CREATED));
+		assertTrue(entity.getBody() instanceof JobListResponse);
+		Mockito.verify(throttleAuthorizer).canUserSubmitJobs(anyString(), eq(3));
+		ArgumentCaptor<List> requests = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(gatewayUtil).sendJobRequests(requests.capture());
+		assertTrue(requests.getValue().size() == 3);
+		// The Service is only checked once for the batch
+		Mockito.verify(serviceController, Mockito.times(1)).getService("654321", user);
+
+		// Test Offline Service
+		service.getResourceMetadata().availability = ResourceMetadata.STATUS_TYPE.OFFLINE.toString();
+		entity = jobController.executeServices(jobs, user);
+		assertTrue(entity.getStatusCode().equals(HttpStatus.BAD_REQUEST));
+
+		// Test Exception
+		service.getResourceMetadata().availability = "ONLINE";
+		Mockito.doThrow(new PiazzaJobException("REST Broke")).when(gatewayUtil).sendJobRequests(any(List.class));
+		entity = jobController.executeServices(jobs, user);
+		assertTrue(entity.getStatusCode().equals(HttpStatus.INTERNAL_SERVER_ERROR));
+		assertTrue(((ErrorResponse) entity.getBody()).message.contains("REST Broke"));
+	}
+
+	/**
+	 * Tests that empty, oversized and throttled batches are rejected before any Service is looked up
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testExecuteBatchRejected() throws Exception {
+		// Mock
+		List<ExecuteServiceJob> jobs = new ArrayList<>();
+		for (int index = 0; index < 6; index++) {
+			ExecuteServiceJob executeJob = new ExecuteServiceJob("job" + index);
+			executeJob.data = new ExecuteServiceData();
+			executeJob.data.setServiceId("654321");
+			jobs.add(executeJob);
+		}
+
+		// Test an empty batch
+		ResponseEntity<PiazzaResponse> entity = jobController.executeServices(new ArrayList<ExecuteServiceJob>(), user);
+		assertTrue(entity.getStatusCode().equals(HttpStatus.BAD_REQUEST));
+
+		// Test a batch larger than the maximum
+		entity = jobController.executeServices(jobs, user);
+		assertTrue(entity.getStatusCode().equals(HttpStatus.BAD_REQUEST));
+		assertTrue(((ErrorResponse) entity.getBody()).message.contains("between 1 and 5"));
+
+		// Test a batch that would exceed the throttle
+		when(throttleAuthorizer.canUserSubmitJobs(anyString(), eq(5))).thenReturn(new AuthResponse(false, "Batch of 5 Jobs would exceed"));
+		entity = jobController.executeServices(jobs.subList(0, 5), user);
+		assertTrue(entity.getStatusCode().equals(HttpStatus.UNAUTHORIZED));
+		assertTrue(((ErrorResponse) entity.getBody()).message.contains("would exceed"));
+
+		// Verify
+		Mockito.verify(serviceController, Mockito.never()).getService(anyString(), any(Principal.class));
+		Mockito.verify(gatewayUtil, Mockito.never()).sendJobRequests(any(List.class));
+	}
 }
@@ -372,11 +372,11 @@ public class ServiceTests {
 		mockResponse.getData().add(mockService);
 		mockResponse.pagination = new Pagination(new Long(1), 0, 10, "test", "asc");
 		
-		when(serviceControllerController.getServices(0, 10, "order", "sortBy", "keyword", "createdBy"))
+		when(serviceControllerController.getServices(0, 10, "order", "sortBy", "keyword", "createdBy", null, null))
 				.thenReturn(new ResponseEntity<PiazzaResponse>(mockResponse, HttpStatus.OK));
 
 		// Test
-		ResponseEntity<PiazzaResponse> entity = serviceController.getServices("keyword", 0, 10, "createdBy", "order", "sortBy", user);
+		ResponseEntity<PiazzaResponse> entity = serviceController.getServices("keyword", 0, 10, "createdBy", "order", "sortBy", null, null, user);
 		PiazzaResponse response = entity.getBody();
 
 		// Verify
@@ -393,11 +393,11 @@ public class ServiceTests {
 	@Test
 	public void testGetServices_Error() {
 		// Mock
-		when(serviceControllerController.getServices(0, 10, "order", "sortBy", "keyword", "createdBy"))
+		when(serviceControllerController.getServices(0, 10, "order", "sortBy", "keyword", "createdBy", null, null))
 			.thenThrow(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
 
 		// Test
-		ResponseEntity<PiazzaResponse> entity = serviceController.getServices("keyword", 0, 10, "createdBy", "order", "sortBy", user);
+		ResponseEntity<PiazzaResponse> entity = serviceController.getServices("keyword", 0, 10, "createdBy", "order", "sortBy", null, null, user);
 		PiazzaResponse response = entity.getBody();
 
 		// Verify
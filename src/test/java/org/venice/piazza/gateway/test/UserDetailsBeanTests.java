@@ -16,7 +16,10 @@
 package org.venice.piazza.gateway.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -25,14 +28,15 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockHttpServletRequest;
-import org.springframework.test.util.ReflectionTestUtils;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.HttpServerErrorException;
 
+import org.venice.piazza.gateway.auth.AuthorizationDecisionCache;
+import org.venice.piazza.gateway.auth.AuthorizationService;
 import org.venice.piazza.gateway.auth.ExtendedRequestDetails;
 import org.venice.piazza.gateway.auth.UserDetailsBean;
 import model.response.AuthResponse;
+import model.security.authz.AuthorizationCheck;
 import model.security.authz.UserProfile;
 import util.PiazzaLogger;
 
@@ -40,17 +44,15 @@ public class UserDetailsBeanTests {
 	@Mock
 	private PiazzaLogger logger;
 	@Mock
-	private RestTemplate restTemplate;
+	private AuthorizationService authorizationService;
+	@Mock
+	private AuthorizationDecisionCache decisionCache;
 	@InjectMocks
 	private UserDetailsBean userDetails;
 
-	private String MOCK_SECURITY_URL = "mock-security-test.com";
-
 	@Before
 	public void setup() {
 		MockitoAnnotations.initMocks(this);
-
-		ReflectionTestUtils.setField(userDetails, "SECURITY_URL", MOCK_SECURITY_URL);
 	}
 
 	@Test
@@ -60,8 +62,7 @@ public class UserDetailsBeanTests {
 		mockProfile.setDistinguishedName("TestDN");
 		mockProfile.setUsername("Tester");
 		AuthResponse mockResponse = new AuthResponse(true, mockProfile);
-		Mockito.doReturn(new ResponseEntity<AuthResponse>(mockResponse, HttpStatus.OK)).when(restTemplate)
-				.postForEntity(Mockito.anyString(), Mockito.any(), Mockito.eq(AuthResponse.class));
+		Mockito.doReturn(mockResponse).when(authorizationService).authenticate("apiKey123");
 		// Test
 		AuthResponse response = userDetails.getAuthenticationDecision("apiKey123");
 
@@ -81,8 +82,7 @@ public class UserDetailsBeanTests {
 		mockProfile.setDistinguishedName("TestDN");
 		mockProfile.setUsername("Tester");
 		AuthResponse mockResponse = new AuthResponse(true, mockProfile);
-		Mockito.doReturn(new ResponseEntity<AuthResponse>(mockResponse, HttpStatus.OK)).when(restTemplate)
-				.postForEntity(Mockito.anyString(), Mockito.any(), Mockito.eq(AuthResponse.class));
+		Mockito.doReturn(mockResponse).when(authorizationService).authenticateAndAuthorize(Mockito.any(AuthorizationCheck.class));
 		// Test
 		AuthResponse response = userDetails.getFullAuthorizationDecision("apiKey123", mockDetails);
 
@@ -90,5 +90,64 @@ public class UserDetailsBeanTests {
 		assertNotNull(response);
 		assertEquals(response.isAuthSuccess, true);
 		assertEquals(response.getUserProfile().getDistinguishedName(), mockProfile.getDistinguishedName());
+		Mockito.verify(decisionCache).put("apiKey123", "GET", "testUri", response);
+		assertEquals(1L, userDetails.getStats().get("checks"));
+	}
+
+	@Test
+	public void testCachedAuthorization() {
+		// Mock
+		MockHttpServletRequest mockRequest = new MockHttpServletRequest();
+		mockRequest.setMethod("GET");
+		mockRequest.setRequestURI("/job/123");
+		ExtendedRequestDetails mockDetails = new ExtendedRequestDetails(mockRequest);
+		AuthResponse mockResponse = new AuthResponse(true, new UserProfile());
+		Mockito.doReturn(mockResponse).when(decisionCache).get("apiKey123", "GET", "/job/123");
+
+		// Test
+		AuthResponse response = userDetails.getFullAuthorizationDecision("apiKey123", mockDetails);
+
+		// Verify; IDAM is not asked again
+		assertSame(mockResponse, response);
+		Mockito.verifyZeroInteractions(authorizationService);
+	}
+
+	@Test
+	public void testUnauthorizedIsCached() {
+		// Mock
+		MockHttpServletRequest mockRequest = new MockHttpServletRequest();
+		mockRequest.setMethod("GET");
+		mockRequest.setRequestURI("/job/123");
+		ExtendedRequestDetails mockDetails = new ExtendedRequestDetails(mockRequest);
+		AuthResponse mockResponse = new AuthResponse(false, "Invalid API Key");
+		Mockito.doReturn(mockResponse).when(authorizationService).authenticateAndAuthorize(Mockito.any(AuthorizationCheck.class));
+
+		// Test
+		AuthResponse response = userDetails.getFullAuthorizationDecision("apiKey123", mockDetails);
+
+		// Verify
+		assertFalse(response.getIsAuthSuccess());
+		Mockito.verify(decisionCache).put("apiKey123", "GET", "/job/123", response);
+	}
+
+	@Test
+	public void testFailedCheckIsNotCached() {
+		// Mock
+		MockHttpServletRequest mockRequest = new MockHttpServletRequest();
+		mockRequest.setMethod("GET");
+		mockRequest.setRequestURI("/job/123");
+		ExtendedRequestDetails mockDetails = new ExtendedRequestDetails(mockRequest);
+		Mockito.doThrow(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR)).when(authorizationService)
+				.authenticateAndAuthorize(Mockito.any(AuthorizationCheck.class));
+
+		// Test
+		try {
+			userDetails.getFullAuthorizationDecision("apiKey123", mockDetails);
+			fail("The failed check should have been reported.");
+		} catch (HttpServerErrorException exception) {
+			// Verify
+			Mockito.verify(decisionCache, Mockito.never()).put(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
+					Mockito.any(AuthResponse.class));
+		}
 	}
 }
@@ -16,26 +16,38 @@
 package org.venice.piazza.gateway.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+
 import javax.management.remote.JMXPrincipal;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
 
 import com.amazonaws.services.s3.AmazonS3;
 
 import org.venice.piazza.gateway.controller.util.GatewayUtil;
+import org.venice.piazza.ingest.utility.S3FileTransfer;
 import org.venice.piazza.jobmanager.controller.JobController;
 
+import model.data.DataResource;
+import model.data.type.RasterDataType;
 import model.job.type.AbortJob;
+import model.job.type.IngestJob;
 import model.request.PiazzaJobRequest;
 import model.response.JobResponse;
 import model.response.PiazzaResponse;
@@ -59,6 +71,10 @@ public class UtilTests {
 	private JobController jobController;
 	@Mock
 	private AmazonS3 s3Client;
+	@Mock
+	private S3FileTransfer s3FileTransfer;
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
 
 	@InjectMocks
 	private GatewayUtil gatewayUtil;
@@ -131,4 +147,29 @@ public class UtilTests {
 		assertEquals("bar foo baz ", gatewayUtil.joinValidationErrors("bar", null, "foo", null, "baz"));
 	}
 
+	/**
+	 * Tests that uploads are staged in the data temp path, and removed once they are sent to S3
+	 */
+	@Test
+	public void testPushS3File() throws Exception {
+		// Mock
+		File tempPath = temporaryFolder.newFolder();
+		ReflectionTestUtils.setField(gatewayUtil, "DATA_TEMP_PATH", tempPath.getAbsolutePath());
+		ReflectionTestUtils.setField(gatewayUtil, "AMAZONS3_BUCKET_NAME", "bucket");
+		ReflectionTestUtils.setField(gatewayUtil, "USE_KMS", Boolean.FALSE);
+		IngestJob job = new IngestJob();
+		job.data = new DataResource();
+		job.data.dataType = new RasterDataType();
+		MockMultipartFile file = new MockMultipartFile("file", "test.tif", null, "Content".getBytes());
+
+		// Test
+		gatewayUtil.pushS3File("123456", job, file);
+
+		// Verify
+		ArgumentCaptor<File> uploadFile = ArgumentCaptor.forClass(File.class);
+		Mockito.verify(s3FileTransfer).upload(uploadFile.capture(), Mockito.eq("bucket"), Mockito.eq("123456-test.tif"),
+				Mockito.eq(false));
+		assertEquals(tempPath, uploadFile.getValue().getParentFile());
+		assertFalse(uploadFile.getValue().exists());
+	}
 }
@@ -16,15 +16,23 @@
 package org.venice.piazza.idam.test.controller;
 
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.util.Collections;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.idam.authz.ProfileTemplateFactory;
 import org.venice.piazza.idam.authz.throttle.ThrottleAuthorizer;
-import org.venice.piazza.idam.data.DatabaseAccessor;
+import org.venice.piazza.idam.authz.throttle.ThrottleCounter;
 
 import model.response.AuthResponse;
 import model.security.authz.AuthorizationCheck;
@@ -39,9 +47,11 @@ import util.PiazzaLogger;
  */
 public class AuthorizerTests {
 	@Mock
-	private DatabaseAccessor accessor;
+	private ThrottleCounter throttleCounter;
 	@Mock
 	private PiazzaLogger pzLogger;
+	@Mock
+	private ProfileTemplateFactory profileTemplateFactory;
 	@InjectMocks
 	private ThrottleAuthorizer throttleAuthorizer;
 
@@ -51,6 +61,7 @@ public class AuthorizerTests {
 	@Before
 	public void setup() {
 		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(throttleAuthorizer, "JOB_LIMIT", 10000L);
 	}
 
 	/**
@@ -71,7 +82,7 @@ public class AuthorizerTests {
 		assertTrue(response.isAuthSuccess.equals(true));
 
 		// Test POST methods where the user is not throttled.
-		when(accessor.getInvocationsForUserThrottle("tester", model.security.authz.Throttle.Component.JOB)).thenReturn(new Integer(5));
+		when(throttleCounter.getInvocations("tester", model.security.authz.Throttle.Component.JOB)).thenReturn(5L);
 		mockCheck.setAction(new Permission("POST", "data"));
 		response = throttleAuthorizer.canUserPerformAction(mockCheck);
 		assertTrue(response.isAuthSuccess.equals(true));
@@ -80,12 +91,105 @@ public class AuthorizerTests {
 		assertTrue(response.isAuthSuccess.equals(true));
 
 		// Test Jobs where the user is throttled due to excessive Jobs
-		when(accessor.getInvocationsForUserThrottle("tester", model.security.authz.Throttle.Component.JOB))
-				.thenReturn(new Integer(10000000));
+		when(throttleCounter.getInvocations("tester", model.security.authz.Throttle.Component.JOB)).thenReturn(10000000L);
 		mockCheck.setAction(new Permission("POST", "data"));
 		response = throttleAuthorizer.canUserPerformAction(mockCheck);
 		assertTrue(response.isAuthSuccess.equals(false));
 		assertTrue(response.getDetails().toString().contains("exceeded"));
+
+		// Test a user with their own limit
+		ReflectionTestUtils.setField(throttleAuthorizer, "USER_JOB_LIMITS", Collections.singletonMap("tester", 100000000L));
+		response = throttleAuthorizer.canUserPerformAction(mockCheck);
+		assertTrue(response.isAuthSuccess.equals(true));
+	}
+
+	/**
+	 * Tests that a batch is charged for each of its Jobs
+	 */
+	@Test
+	public void testThrottlingBatch() {
+		// Mock
+		when(throttleCounter.getInvocations("tester", model.security.authz.Throttle.Component.JOB)).thenReturn(9990L);
+		AuthorizationCheck mockCheck = new AuthorizationCheck();
+		mockCheck.setUsername("tester");
+		mockCheck.setAction(new Permission("POST", "job/batch"));
+
+		// Test; the request itself is checked for its first Job, and the batch for all of them
+		assertTrue(throttleAuthorizer.canUserPerformAction(mockCheck).isAuthSuccess.equals(true));
+		assertTrue(throttleAuthorizer.canUserSubmitJobs("tester", 11).isAuthSuccess.equals(true));
+		AuthResponse response = throttleAuthorizer.canUserSubmitJobs("tester", 12);
+
+		// Verify
+		assertTrue(response.isAuthSuccess.equals(false));
+		assertTrue(response.getDetails().toString().contains("Batch of 12 Jobs"));
+
+		// Test a user that is already throttled
+		when(throttleCounter.getInvocations("tester", model.security.authz.Throttle.Component.JOB)).thenReturn(10001L);
+		assertTrue(throttleAuthorizer.canUserPerformAction(mockCheck).isAuthSuccess.equals(false));
+	}
+
+	/**
+	 * Tests that requests are not denied when the throttle counts cannot be read
+	 */
+	@Test
+	public void testThrottlingAuthorizerError() {
+		// Mock
+		AuthorizationCheck mockCheck = new AuthorizationCheck();
+		mockCheck.setUsername("tester");
+		mockCheck.setAction(new Permission("POST", "job"));
+		doThrow(new RuntimeException("Counter Error")).when(throttleCounter).getInvocations("tester",
+				model.security.authz.Throttle.Component.JOB);
+
+		// Test
+		AuthResponse response = throttleAuthorizer.canUserPerformAction(mockCheck);
+
+		// Verify
+		assertTrue(response.isAuthSuccess.equals(true));
 	}
 
+	/**
+	 * Tests that the limit of the user's profile is used, unless the user has their own limit
+	 */
+	@Test
+	public void testThrottlingProfileLimit() throws Exception {
+		// Mock
+		ReflectionTestUtils.setField(throttleAuthorizer, "PROFILE", "user");
+		when(profileTemplateFactory.getThrottleLimits("user")).thenReturn(Collections.singletonMap("job", 100L));
+		when(throttleCounter.getInvocations("tester", model.security.authz.Throttle.Component.JOB)).thenReturn(500L);
+		AuthorizationCheck mockCheck = new AuthorizationCheck();
+		mockCheck.setUsername("tester");
+		mockCheck.setAction(new Permission("POST", "job"));
+
+		// Test; the profile limit is lower than the default
+		AuthResponse response = throttleAuthorizer.canUserPerformAction(mockCheck);
+		assertTrue(response.isAuthSuccess.equals(false));
+
+		// Test a user with their own limit
+		ReflectionTestUtils.setField(throttleAuthorizer, "USER_JOB_LIMITS", Collections.singletonMap("tester", 1000L));
+		response = throttleAuthorizer.canUserPerformAction(mockCheck);
+		assertTrue(response.isAuthSuccess.equals(true));
+
+		// Verify the limits are read once
+		verify(profileTemplateFactory, times(1)).getThrottleLimits("user");
+	}
+
+	/**
+	 * Tests that the default limit is used when the profile limits cannot be read
+	 */
+	@Test
+	public void testThrottlingProfileLimitError() throws Exception {
+		// Mock
+		ReflectionTestUtils.setField(throttleAuthorizer, "PROFILE", "user");
+		when(profileTemplateFactory.getThrottleLimits("user")).thenThrow(new IOException("No Profile Template"));
+		when(throttleCounter.getInvocations("tester", model.security.authz.Throttle.Component.JOB)).thenReturn(500L);
+		AuthorizationCheck mockCheck = new AuthorizationCheck();
+		mockCheck.setUsername("tester");
+		mockCheck.setAction(new Permission("POST", "job"));
+
+		// Test
+		AuthResponse response = throttleAuthorizer.canUserPerformAction(mockCheck);
+
+		// Verify
+		assertTrue(response.isAuthSuccess.equals(true));
+	}
 }
@@ -36,6 +36,7 @@ import org.springframework.mock.web.MockHttpSession;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.servlet.view.RedirectView;
+import org.venice.piazza.gateway.auth.AuthorizationDecisionCache;
 import org.venice.piazza.idam.authn.PiazzaAuthenticator;
 import org.venice.piazza.idam.authz.endpoint.EndpointAuthorizer;
 import org.venice.piazza.idam.authz.throttle.ThrottleAuthorizer;
@@ -81,6 +82,8 @@ public class ControllerTests {
     private EndpointAuthorizer endpointAuthorizer;
     @Mock
     private GxOAuthClient oAuthClient;
+    @Mock
+    private AuthorizationDecisionCache decisionCache;
 
     @InjectMocks
     private AdminController adminController;
@@ -285,6 +288,9 @@ public class ControllerTests {
     public void testDeleteApiKey() {
         Mockito.when(this.accessor.getUsername("my_api_key")).thenReturn("my_username");
         ResponseEntity<PiazzaResponse> goodResp = this.authenticationController.deleteApiKey("my_api_key");
+        assertTrue(goodResp.getStatusCode().equals(HttpStatus.OK));
+        // Cached authorization decisions for the key are evicted
+        Mockito.verify(this.decisionCache).invalidate("my_api_key");
 
         Mockito.when(this.accessor.getUsername("my_api_key")).thenThrow(new RuntimeException());
         ResponseEntity<PiazzaResponse> errorResp = this.authenticationController.deleteApiKey("my_api_key");
@@ -16,12 +16,27 @@
 package org.venice.piazza.idam.test.controller;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.persistence.EntityManager;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.persister.entity.AbstractEntityPersister;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -30,7 +45,12 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
 import org.venice.piazza.common.hibernate.dao.ApiKeyDao;
 import org.venice.piazza.common.hibernate.dao.UserProfileDao;
 import org.venice.piazza.common.hibernate.dao.UserThrottlesDao;
@@ -67,6 +87,22 @@ public class DatabaseAccessorTests {
 	private UserProfileDao userProfileDao;
 	@Mock
 	private UserThrottlesDao userThrottlesDao;
+	@Mock
+	private EntityManager entityManager;
+	@Mock
+	private PlatformTransactionManager transactionManager;
+	@Mock
+	private Session session;
+	@Mock
+	private SessionFactory sessionFactory;
+	@Mock
+	private AbstractEntityPersister throttlesPersister;
+	@Mock
+	private Connection connection;
+	@Mock
+	private PreparedStatement lockStatement;
+	@Mock
+	private PreparedStatement addStatement;
 
 	@Spy
 	@InjectMocks
@@ -82,6 +118,7 @@ public class DatabaseAccessorTests {
 		// These values are from the application.properties file.
 		ReflectionTestUtils.setField(this.accessor, "KEY_EXPIRATION_DURATION_MS", 31556952000L);
 		ReflectionTestUtils.setField(this.accessor, "KEY_INACTIVITY_THESHOLD_MS", 15778476000L);
+		ReflectionTestUtils.setField(this.accessor, "KEY_LAST_USED_FLUSH_INTERVAL_MS", 60000L);
 
 		this.userProfile.setUsername(apiKey.getUsername());
 		this.userProfile.setDistinguishedName("my_dn");
@@ -141,6 +178,60 @@ public class DatabaseAccessorTests {
 		Assert.assertTrue(this.accessor.isApiKeyValid("valid_uuid"));
 	}
 
+	@Test
+	public void testApiKeyUsageIsCoalesced() {
+		// Mock
+		long lastUsedOn = System.currentTimeMillis() - 1000;
+		apiKey.setLastUsedOn(lastUsedOn);
+		apiKey.setExpiresOn(System.currentTimeMillis() + (1000 * 60));
+
+		// Test; repeated validations do not write to the database
+		Assert.assertTrue(this.accessor.isApiKeyValid("valid_uuid"));
+		Assert.assertTrue(this.accessor.isApiKeyValid("valid_uuid"));
+		Mockito.verify(this.apiKeyDao, times(0)).save(any(ApiKeyEntity.class));
+		Assert.assertEquals(lastUsedOn, apiKey.getLastUsedOn());
+
+		// Test; the last use is written in one batch on flush
+		this.accessor.flushApiKeyUsage();
+		Mockito.verify(this.apiKeyDao, times(1)).save(anyListOf(ApiKeyEntity.class));
+		Assert.assertTrue(apiKey.getLastUsedOn() > lastUsedOn);
+
+		// Nothing is written when the keys have not been used since
+		this.accessor.flushApiKeyUsage();
+		Mockito.verify(this.apiKeyDao, times(1)).save(anyListOf(ApiKeyEntity.class));
+	}
+
+	@Test
+	public void testApiKeyUsageNearInactivity() {
+		// Mock; the stored last use would pass the inactivity threshold before the next flush
+		long lastUsedOn = System.currentTimeMillis() - 15778476000L + 1000;
+		apiKey.setLastUsedOn(lastUsedOn);
+		apiKey.setExpiresOn(System.currentTimeMillis() + (1000 * 60));
+
+		// Test
+		Assert.assertTrue(this.accessor.isApiKeyValid("valid_uuid"));
+
+		// Verify; written immediately
+		Mockito.verify(this.apiKeyDao, times(1)).save(this.apiKeyEntity);
+		Assert.assertTrue(apiKey.getLastUsedOn() > lastUsedOn);
+	}
+
+	@Test
+	public void testApiKeyUsageFlushFailure() {
+		// Mock
+		apiKey.setLastUsedOn(System.currentTimeMillis() - 1000);
+		apiKey.setExpiresOn(System.currentTimeMillis() + (1000 * 60));
+		Assert.assertTrue(this.accessor.isApiKeyValid("valid_uuid"));
+		when(this.apiKeyDao.save(anyListOf(ApiKeyEntity.class))).thenThrow(new RuntimeException("Dummy save exception.")).thenReturn(null);
+
+		// Test; the use is kept, and written on the next flush
+		long storedLastUsedOn = apiKey.getLastUsedOn();
+		this.accessor.flushApiKeyUsage();
+		apiKey.setLastUsedOn(storedLastUsedOn);
+		this.accessor.flushApiKeyUsage();
+		Mockito.verify(this.apiKeyDao, times(2)).save(anyListOf(ApiKeyEntity.class));
+	}
+
 	@Test
 	public void testGetUsername() {
 		// Test a valid entity
@@ -279,10 +370,80 @@ public class DatabaseAccessorTests {
 		Assert.assertEquals(startValue + 1, endValue);
 	}
 
+	@Test
+	public void testAddUserThrottles() throws SQLException {
+		// Mock; the existing user is updated in place, and the new user has no throttles yet
+		mockThrottlesConnection();
+		when(this.addStatement.executeUpdate()).thenReturn(0, 1);
+		Map<String, Map<String, Long>> invocations = new HashMap<>();
+		invocations.put(this.userProfile.getUsername(), Collections.singletonMap(Throttle.Component.JOB.toString(), 3L));
+		invocations.put("new_username", Collections.singletonMap(Throttle.Component.JOB.toString(), 2L));
+
+		// Test
+		this.accessor.addUserThrottles(invocations);
+
+		// Verify; each user is locked, in order, and only the new user is saved
+		Mockito.verify(this.connection).prepareStatement(startsWith("UPDATE user_throttles SET data = jsonb_set(data"));
+		Mockito.verify(this.lockStatement).setString(1, "UserThrottles:new_username");
+		Mockito.verify(this.lockStatement).setString(1, "UserThrottles:" + this.userProfile.getUsername());
+		Mockito.verify(this.lockStatement, times(2)).execute();
+		Mockito.verify(this.addStatement).setLong(3, 3L);
+		Mockito.verify(this.addStatement).setString(4, this.userProfile.getUsername());
+		Mockito.verify(this.userThrottlesDao, never()).getUserThrottlesByUserName(this.userProfile.getUsername());
+		Mockito.verify(this.userThrottlesDao, times(1)).getUserThrottlesByUserName("new_username");
+		Mockito.verify(this.userThrottlesDao, times(1)).save(anyListOf(UserThrottlesEntity.class));
+		Mockito.verify(this.userThrottlesDao, times(0)).save(any(UserThrottlesEntity.class));
+	}
+
+	@Test
+	public void testAddUserThrottlesWithoutJsonUpdate() throws SQLException {
+		// Mock; the database does not support the in-place update
+		mockThrottlesConnection();
+		when(this.addStatement.executeUpdate()).thenThrow(new SQLException("function jsonb_set does not exist", "42883"));
+		this.userThrottles.getThrottles().put(Throttle.Component.JOB.toString(), 5);
+		when(this.userThrottlesDao.getUserThrottlesByUserName(this.userProfile.getUsername())).thenReturn(this.userThrottlesEntity);
+		Map<String, Map<String, Long>> invocations = new HashMap<>();
+		invocations.put(this.userProfile.getUsername(), Collections.singletonMap(Throttle.Component.JOB.toString(), 3L));
+		invocations.put("new_username", Collections.singletonMap(Throttle.Component.JOB.toString(), 2L));
+
+		// Test
+		this.accessor.addUserThrottles(invocations);
+		this.accessor.addUserThrottles(invocations);
+
+		// Verify; the throttles are read and saved under the lock, and the in-place update is not tried again
+		Assert.assertEquals(Integer.valueOf(11), this.userThrottles.getThrottles().get(Throttle.Component.JOB.toString()));
+		Mockito.verify(this.addStatement, times(1)).executeUpdate();
+		Mockito.verify(this.userThrottlesDao, times(2)).save(anyListOf(UserThrottlesEntity.class));
+	}
+
 	@Test
 	public void testClearThrottles() {
 		this.accessor.clearThrottles();
 		Mockito.verify(this.userThrottlesDao, times(1)).deleteAll();
 	}
 
-}
\ No newline at end of file
+	@SuppressWarnings("unchecked")
+	private void mockThrottlesConnection() throws SQLException {
+		ReflectionTestUtils.setField(this.accessor, "entityManager", this.entityManager);
+		ReflectionTestUtils.setField(this.accessor, "transactionManager", this.transactionManager);
+		when(this.transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(mock(TransactionStatus.class));
+		when(this.entityManager.unwrap(Session.class)).thenReturn(this.session);
+		when(this.session.getSessionFactory()).thenReturn(this.sessionFactory);
+		when(this.sessionFactory.getClassMetadata(UserThrottlesEntity.class)).thenReturn(this.throttlesPersister);
+		when(this.throttlesPersister.getTableName()).thenReturn("user_throttles");
+		when(this.throttlesPersister.getPropertyColumnNames("userThrottles")).thenReturn(new String[] { "data" });
+		when(this.session.doReturningWork(any(ReturningWork.class))).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				try {
+					return ((ReturningWork<Object>) invocation.getArguments()[0]).execute(connection);
+				} catch (SQLException exception) {
+					// Hibernate reports SQL errors as runtime exceptions
+					throw new RuntimeException(exception);
+				}
+			}
+		});
+		when(this.connection.prepareStatement(startsWith("SELECT pg_advisory_xact_lock"))).thenReturn(this.lockStatement);
+		when(this.connection.prepareStatement(startsWith("UPDATE"))).thenReturn(this.addStatement);
+	}
+}
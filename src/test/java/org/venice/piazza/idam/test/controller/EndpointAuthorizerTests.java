@@ -0,0 +1,194 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.idam.test.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.idam.authz.ProfileTemplateFactory;
+import org.venice.piazza.idam.authz.endpoint.EndpointAuthorizer;
+import org.venice.piazza.idam.authz.endpoint.EndpointPermissions;
+
+import model.response.AuthResponse;
+import model.security.authz.AuthorizationCheck;
+import model.security.authz.Permission;
+import util.PiazzaLogger;
+
+/**
+ * Tests the compiled endpoint permissions of Profile Templates, and their use in authorization
+ */
+public class EndpointAuthorizerTests {
+	@Mock
+	private PiazzaLogger pzLogger;
+	@Mock
+	private ProfileTemplateFactory profileTemplateFactory;
+	@InjectMocks
+	private EndpointAuthorizer endpointAuthorizer;
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(endpointAuthorizer, "ENABLED", true);
+		ReflectionTestUtils.setField(endpointAuthorizer, "DEFAULT_ROLE", "user");
+	}
+
+	/**
+	 * Tests matching of literal, wildcard and trailing glob segments, and their precedence
+	 */
+	@Test
+	public void testPermissions() {
+		// Mock
+		Map<String, Boolean> rules = new LinkedHashMap<>();
+		rules.put("GET /job/*", true);
+		rules.put("DELETE /job/*", false);
+		rules.put("* /data/**", true);
+		rules.put("POST /data/file", false);
+		rules.put("* /admin/**", false);
+		rules.put("GET /admin/stats", true);
+
+		// Test
+		EndpointPermissions permissions = EndpointPermissions.compile(rules);
+
+		// Verify
+		assertEquals(6, permissions.getRuleCount());
+		assertTrue(permissions.isPermitted("GET", "/job/c7ad2e18-4a5b-4c39-9e7e-7e3d0b4f4f5a"));
+		assertFalse(permissions.isPermitted("DELETE", "/job/123"));
+		assertFalse(permissions.isPermitted("GET", "/job"));
+		assertFalse(permissions.isPermitted("GET", "/job/123/events"));
+		assertTrue(permissions.isPermitted("GET", "/data"));
+		assertTrue(permissions.isPermitted("PUT", "/data/123/"));
+		assertTrue(permissions.isPermitted("POST", "/data"));
+		assertFalse(permissions.isPermitted("POST", "/data/file"));
+		assertTrue(permissions.isPermitted("GET", "/admin/stats"));
+		assertFalse(permissions.isPermitted("GET", "/admin/throttles"));
+		assertFalse(permissions.isPermitted("GET", "/service"));
+		assertFalse(permissions.isPermitted("TRACE", "/data"));
+		assertFalse(permissions.isPermitted("GET", null));
+	}
+
+	/**
+	 * Tests that rules that cannot be compiled are rejected
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRule() {
+		EndpointPermissions.compile(Collections.singletonMap("GET /**/job", true));
+	}
+
+	/**
+	 * Tests authorizing checks against the compiled template of the role
+	 */
+	@Test
+	public void testAuthorizer() throws IOException {
+		// Mock
+		when(profileTemplateFactory.getEndpointRules("user")).thenReturn(Collections.singletonMap("* /job/**", true));
+		AuthorizationCheck check = new AuthorizationCheck("tester", new Permission("GET", "/job/123"));
+
+		// Test
+		AuthResponse response = endpointAuthorizer.canUserPerformAction(check);
+		check.setAction(new Permission("GET", "/service"));
+		AuthResponse deniedResponse = endpointAuthorizer.canUserPerformAction(check);
+
+		// Verify; the template is compiled once
+		assertTrue(response.getIsAuthSuccess());
+		assertFalse(deniedResponse.getIsAuthSuccess());
+		assertTrue(deniedResponse.getDetails().toString().contains("/service"));
+		verify(profileTemplateFactory, times(1)).getEndpointRules("user");
+
+		// Test; changed templates are compiled again
+		endpointAuthorizer.discardPermissions(Arrays.asList("user"));
+		endpointAuthorizer.canUserPerformAction(check);
+		verify(profileTemplateFactory, times(2)).getEndpointRules("user");
+	}
+
+	/**
+	 * Tests that a role whose template cannot be read is denied, and that every action is permitted when endpoint
+	 * authorization is off
+	 */
+	@Test
+	public void testAuthorizerMissingTemplate() throws IOException {
+		// Mock
+		when(profileTemplateFactory.getEndpointRules("user")).thenThrow(new IOException("No Profile Template"));
+		AuthorizationCheck check = new AuthorizationCheck("tester", new Permission("GET", "/job/123"));
+
+		// Test
+		assertFalse(endpointAuthorizer.canUserPerformAction(check).getIsAuthSuccess());
+		ReflectionTestUtils.setField(endpointAuthorizer, "ENABLED", false);
+		assertTrue(endpointAuthorizer.canUserPerformAction(check).getIsAuthSuccess());
+	}
+
+	/**
+	 * Tests that the packaged templates are read once, and that templates in the profiles directory are read again
+	 * when they change
+	 */
+	@Test
+	public void testTemplateFactory() throws IOException {
+		// Test the packaged templates
+		ProfileTemplateFactory factory = new ProfileTemplateFactory();
+		EndpointPermissions userPermissions = EndpointPermissions.compile(factory.getEndpointRules("user"));
+		assertTrue(userPermissions.isPermitted("POST", "/job"));
+		assertFalse(userPermissions.isPermitted("GET", "/admin/stats"));
+		assertTrue(EndpointPermissions.compile(factory.getEndpointRules("admin")).isPermitted("GET", "/admin/stats"));
+		assertTrue(factory.reloadChangedTemplates().isEmpty());
+
+		// Mock a template in the profiles directory
+		File template = temporaryFolder.newFile("user.json");
+		Files.write(template.toPath(), "{ \"endpoints\": { \"GET /admin/stats\": true } }".getBytes(StandardCharsets.UTF_8));
+		ReflectionTestUtils.setField(factory, "PROFILES_DIRECTORY", temporaryFolder.getRoot().getAbsolutePath());
+
+		// Test; the directory template replaces the packaged one, and listeners are told
+		ProfileTemplateFactory.Listener listener = mock(ProfileTemplateFactory.Listener.class);
+		factory.addListener(listener);
+		assertEquals(Arrays.asList("user"), factory.reloadChangedTemplates());
+		verify(listener, times(1)).onTemplatesReloaded(Arrays.asList("user"));
+		assertTrue(EndpointPermissions.compile(factory.getEndpointRules("user")).isPermitted("GET", "/admin/stats"));
+
+		// Test; an unchanged template is not reloaded
+		assertTrue(factory.reloadChangedTemplates().isEmpty());
+		verify(listener, times(1)).onTemplatesReloaded(Collections.<String> emptyList());
+	}
+
+	/**
+	 * Tests that a role without a template is reported
+	 */
+	@Test(expected = IOException.class)
+	public void testTemplateFactoryMissingRole() throws IOException {
+		new ProfileTemplateFactory().getEndpointRules("missing-role");
+	}
+}
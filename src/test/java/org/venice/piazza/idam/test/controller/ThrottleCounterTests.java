@@ -0,0 +1,229 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.idam.test.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.idam.authz.throttle.ThrottleCounter;
+import org.venice.piazza.idam.data.DatabaseAccessor;
+
+import model.security.authz.Throttle;
+import model.security.authz.UserThrottles;
+import util.PiazzaLogger;
+
+/**
+ * Tests the in-memory throttle counts, and their persistence
+ */
+public class ThrottleCounterTests {
+	@Mock
+	private DatabaseAccessor accessor;
+	@Mock
+	private PiazzaLogger pzLogger;
+	@InjectMocks
+	private ThrottleCounter throttleCounter;
+
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		when(accessor.getAllUserThrottles()).thenReturn(Collections.<UserThrottles> emptyList());
+	}
+
+	/**
+	 * Tests that invocations are counted in memory, and added to the database in one batch
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testFlush() {
+		// Test
+		throttleCounter.increment("tester", Throttle.Component.JOB);
+		throttleCounter.increment("tester", Throttle.Component.JOB);
+		throttleCounter.increment("other", Throttle.Component.JOB);
+		assertEquals(2, throttleCounter.getInvocations("tester", Throttle.Component.JOB));
+		throttleCounter.flush();
+
+		// Verify
+		@SuppressWarnings("rawtypes")
+		ArgumentCaptor<Map> invocations = ArgumentCaptor.forClass(Map.class);
+		verify(accessor, times(1)).addUserThrottles(invocations.capture());
+		assertEquals(2L, ((Map<String, Map<String, Long>>) invocations.getValue()).get("tester").get(Throttle.Component.JOB.toString())
+				.longValue());
+		assertEquals(2, invocations.getValue().size());
+
+		// Nothing is written when there are no new invocations
+		throttleCounter.flush();
+		verify(accessor, times(1)).addUserThrottles(anyInvocations());
+	}
+
+	/**
+	 * Tests that the stored counts of all instances are read back on flush
+	 */
+	@Test
+	public void testStoredInvocations() {
+		// Mock
+		UserThrottles throttles = new UserThrottles("tester");
+		throttles.getThrottles().put(Throttle.Component.JOB.toString(), 40);
+		when(accessor.getAllUserThrottles()).thenReturn(Arrays.asList(throttles));
+
+		// Test
+		throttleCounter.flush();
+		throttleCounter.increment("tester", Throttle.Component.JOB);
+
+		// Verify
+		assertEquals(41, throttleCounter.getInvocations("tester", Throttle.Component.JOB));
+	}
+
+	/**
+	 * Tests that invocations are kept when they could not be written
+	 */
+	@Test
+	public void testFlushFailure() {
+		// Mock
+		doThrow(new RuntimeException("Database Error")).when(accessor).addUserThrottles(anyInvocations());
+
+		// Test
+		throttleCounter.increment("tester", Throttle.Component.JOB);
+		throttleCounter.flush();
+
+		// Verify
+		assertEquals(1, throttleCounter.getInvocations("tester", Throttle.Component.JOB));
+	}
+
+	/**
+	 * Tests that invocations being written are still counted, both during the write and if the stored counts cannot be
+	 * read back afterwards
+	 */
+	@Test
+	public void testInvocationsCountedDuringFlush() {
+		// Mock
+		final List<Long> countsDuringWrite = new ArrayList<>();
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) {
+				countsDuringWrite.add(throttleCounter.getInvocations("tester", Throttle.Component.JOB));
+				return null;
+			}
+		}).when(accessor).addUserThrottles(anyInvocations());
+		when(accessor.getAllUserThrottles()).thenThrow(new RuntimeException("Database Error"));
+
+		// Test
+		throttleCounter.increment("tester", Throttle.Component.JOB);
+		throttleCounter.increment("tester", Throttle.Component.JOB);
+		throttleCounter.flush();
+
+		// Verify
+		assertEquals(Arrays.asList(2L), countsDuringWrite);
+		assertEquals(2, throttleCounter.getInvocations("tester", Throttle.Component.JOB));
+	}
+
+	/**
+	 * Tests that the previous window is carried into the next, once a full window has been observed
+	 */
+	@Test
+	public void testSlidingWindow() {
+		// Mock
+		UserThrottles throttles = new UserThrottles("tester");
+		throttles.getThrottles().put(Throttle.Component.JOB.toString(), 100);
+		when(accessor.getAllUserThrottles()).thenReturn(Arrays.asList(throttles));
+
+		// Test; the window in progress at startup is not carried over
+		throttleCounter.reset();
+		verify(accessor, times(1)).clearThrottles();
+		assertEquals(0, throttleCounter.getInvocations("tester", Throttle.Component.JOB));
+
+		// Test; a full window is carried over, weighted by the time since the reset
+		ReflectionTestUtils.setField(throttleCounter, "windowStart", System.currentTimeMillis() - 1000000);
+		throttleCounter.reset();
+		ReflectionTestUtils.setField(throttleCounter, "windowStart", System.currentTimeMillis() - 500000);
+		long invocations = throttleCounter.getInvocations("tester", Throttle.Component.JOB);
+		assertTrue(String.format("Expected half of the previous window, was %s", invocations), (invocations >= 49) && (invocations <= 51));
+
+		// Test; the previous window no longer counts once a full window has passed
+		ReflectionTestUtils.setField(throttleCounter, "windowStart", System.currentTimeMillis() - 2000000);
+		assertEquals(0, throttleCounter.getInvocations("tester", Throttle.Component.JOB));
+	}
+
+	/**
+	 * Tests that concurrent invocations are all counted, including those recorded during a flush
+	 */
+	@Test
+	public void testConcurrentIncrements() throws InterruptedException {
+		// Mock
+		final int threadCount = 8;
+		final int incrementsPerThread = 10000;
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int index = 0; index < threadCount; index++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException exception) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					for (int increment = 0; increment < incrementsPerThread; increment++) {
+						throttleCounter.increment("tester", Throttle.Component.JOB);
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		doThrow(new RuntimeException("Database Error")).when(accessor).addUserThrottles(anyInvocations());
+
+		// Test; flushes that fail while the threads are counting must not lose invocations
+		start.countDown();
+		for (int flush = 0; flush < 5; flush++) {
+			throttleCounter.flush();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// Verify
+		assertEquals(threadCount * incrementsPerThread, throttleCounter.getInvocations("tester", Throttle.Component.JOB));
+		verify(accessor, never()).clearThrottles();
+	}
+
+	private static Map<String, Map<String, Long>> anyInvocations() {
+		return any();
+	}
+}
@@ -19,6 +19,7 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import org.junit.Before;
@@ -38,7 +39,9 @@ import org.venice.piazza.access.controller.AccessController;
 import org.venice.piazza.ingest.controller.IngestController;
 import org.venice.piazza.ingest.messaging.IngestThreadManager;
 import org.venice.piazza.ingest.persist.DatabaseAccessor;
+import org.venice.piazza.ingest.persist.PostGisDataStoreManager;
 import org.venice.piazza.ingest.utility.IngestUtilities;
+import org.venice.piazza.ingest.utility.S3ClientRegistry;
 import model.data.DataResource;
 import model.job.metadata.ResourceMetadata;
 import model.response.ErrorResponse;
@@ -67,6 +70,10 @@ public class ControllerTests {
 	private RestTemplate restTemplate;
 	@Mock
 	private AccessController accessController;
+	@Mock
+	private S3ClientRegistry s3ClientRegistry;
+	@Mock
+	private PostGisDataStoreManager postGisDataStoreManager;
 
 
 	@InjectMocks
@@ -126,6 +133,12 @@ public class ControllerTests {
 	 */
 	@Test
 	public void testAdminStats() {
+		// Mock
+		Map<String, Object> poolStats = new HashMap<String, Object>();
+		poolStats.put("active", 1);
+		Mockito.when(postGisDataStoreManager.getPoolStats()).thenReturn(poolStats);
+		Mockito.when(postGisDataStoreManager.isHealthy()).thenReturn(true);
+
 		// Test
 		ResponseEntity<Map<String, Object>> entity = ingestController.getAdminStats();
 		Map<String, Object> map = entity.getBody();
@@ -133,6 +146,9 @@ public class ControllerTests {
 		// Verify
 		assertTrue(entity.getStatusCode().equals(HttpStatus.OK));
 		assertTrue(map.keySet().contains("jobs"));
+		assertTrue(map.keySet().contains("s3Clients"));
+		assertTrue(map.keySet().contains("postGisPool"));
+		assertTrue(Boolean.TRUE.equals(((Map<?, ?>) map.get("postGisPool")).get("healthy")));
 	}
 
 	/**
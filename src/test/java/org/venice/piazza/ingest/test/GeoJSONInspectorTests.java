@@ -21,9 +21,13 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.venice.piazza.ingest.inspect.GeoJsonInspector;
+import org.venice.piazza.ingest.utility.GeoJsonFeatureReader;
 import org.venice.piazza.ingest.utility.IngestUtilities;
 import model.data.DataResource;
 import model.data.type.GeoJsonDataType;
@@ -53,6 +57,7 @@ public class GeoJSONInspectorTests {
 	@Before
 	public void setup() {
 		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(inspector, "SCHEMA_SAMPLE_SIZE", 1000);
 
 		// Sample some GeoJSON Data
 		mockData = new DataResource();
@@ -80,5 +85,8 @@ public class GeoJSONInspectorTests {
 		assertTrue(data.getSpatialMetadata().getMinX().equals(102.0));
 		assertTrue(data.getSpatialMetadata().getMinY().equals(0.5));
 		assertTrue(data.getSpatialMetadata().getEpsgCode().equals(4326));
+		assertTrue(data.getSpatialMetadata().getNumFeatures() == 2);
+		Mockito.verify(ingestUtilities, Mockito.times(1)).persistFeatures(Mockito.isA(GeoJsonFeatureReader.class), Mockito.eq(-1L),
+				Mockito.eq(mockData), Mockito.isA(SimpleFeatureType.class));
 	}
 }
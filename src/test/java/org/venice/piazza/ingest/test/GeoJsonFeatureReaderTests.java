@@ -0,0 +1,157 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.ingest.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.venice.piazza.ingest.utility.GeoJsonFeatureReader;
+
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Tests the streaming GeoJSON Feature Reader
+ */
+public class GeoJsonFeatureReaderTests {
+	private static final String GEOJSON = "{\"type\": \"FeatureCollection\",\"crs\": {\"type\": \"name\",\"properties\": {\"name\": \"EPSG:4326\"}},\"features\": [{\"type\": \"Feature\",\"geometry\": {\"type\": \"Point\",\"coordinates\": [102.0,0.5]},\"properties\": {\"prop0\": \"value0\",\"count\": 1}},{\"type\": \"Feature\",\"geometry\": {\"type\": \"Point\",\"coordinates\": [106.0,4]},\"properties\": {\"prop0\": \"value1\",\"count\": 2.5,\"extra\": true}}]}";
+
+	/**
+	 * Tests schema inference from a bounded sample of features
+	 */
+	@Test
+	public void testInferFeatureType() throws Exception {
+		// Test full sample
+		SimpleFeatureType featureType = GeoJsonFeatureReader.inferFeatureType(getStream(GEOJSON), 10);
+
+		// Verify
+		assertEquals(Point.class, featureType.getGeometryDescriptor().getType().getBinding());
+		assertEquals(String.class, featureType.getDescriptor("prop0").getType().getBinding());
+		assertEquals(Double.class, featureType.getDescriptor("count").getType().getBinding());
+		assertTrue(featureType.getDescriptor("extra") != null);
+
+		// Test sample of only the first feature; properties after the sample are typed by the scan
+		featureType = GeoJsonFeatureReader.inferFeatureType(getStream(GEOJSON), 1);
+		assertEquals(Long.class, featureType.getDescriptor("count").getType().getBinding());
+		assertEquals(Boolean.class, featureType.getDescriptor("extra").getType().getBinding());
+
+		// Test empty collection
+		assertNull(GeoJsonFeatureReader.inferFeatureType(getStream("{\"type\": \"FeatureCollection\",\"features\": []}"), 10));
+	}
+
+	/**
+	 * Tests streaming features while accumulating bounds and count
+	 */
+	@Test
+	public void testReadFeatures() throws Exception {
+		// Mock
+		SimpleFeatureType featureType = GeoJsonFeatureReader.inferFeatureType(getStream(GEOJSON), 1);
+
+		// Test
+		try (GeoJsonFeatureReader reader = new GeoJsonFeatureReader(getStream(GEOJSON), featureType)) {
+			SimpleFeature first = reader.next();
+			SimpleFeature second = reader.next();
+
+			// Verify
+			assertTrue(!reader.hasNext());
+			assertEquals("value0", first.getAttribute("prop0"));
+			assertEquals(featureType, second.getFeatureType());
+			assertEquals(2, reader.getCount());
+			assertEquals(102.0, reader.getBounds().getMinX(), 0.0);
+			assertEquals(0.5, reader.getBounds().getMinY(), 0.0);
+			assertEquals(106.0, reader.getBounds().getMaxX(), 0.0);
+			assertEquals(4.0, reader.getBounds().getMaxY(), 0.0);
+		}
+	}
+
+	/**
+	 * Tests that values after the sample that cannot be converted to the sampled type are left null, and counted
+	 */
+	@Test
+	public void testDroppedValues() throws Exception {
+		// Mock
+		String geoJson = "{\"type\": \"FeatureCollection\",\"features\": ["
+				+ "{\"type\": \"Feature\",\"geometry\": {\"type\": \"Point\",\"coordinates\": [1,1]},\"properties\": {\"count\": 1}},"
+				+ "{\"type\": \"Feature\",\"geometry\": {\"type\": \"Point\",\"coordinates\": [2,2]},\"properties\": {\"count\": \"many\"}},"
+				+ "{\"type\": \"Feature\",\"geometry\": {\"type\": \"Point\",\"coordinates\": [3,3]},\"properties\": {\"count\": 3000000000}}]}";
+		SimpleFeatureType featureType = GeoJsonFeatureReader.inferFeatureType(getStream(geoJson), 1);
+
+		// Test
+		try (GeoJsonFeatureReader reader = new GeoJsonFeatureReader(getStream(geoJson), featureType)) {
+			reader.next();
+			SimpleFeature dropped = reader.next();
+			SimpleFeature large = reader.next();
+
+			// Verify; integers are widened, so values larger than the sample still fit
+			assertEquals(Long.class, featureType.getDescriptor("count").getType().getBinding());
+			assertNull(dropped.getAttribute("count"));
+			assertEquals(3000000000L, ((Number) large.getAttribute("count")).longValue());
+			assertEquals(Collections.singletonMap("count", 1L), reader.getDroppedValues());
+		}
+	}
+
+	/**
+	 * Tests that properties first appearing after the sample are stored, and that properties the type does not contain
+	 * are counted
+	 */
+	@Test
+	public void testLateProperties() throws Exception {
+		// Mock
+		SimpleFeatureType featureType = GeoJsonFeatureReader.inferFeatureType(getStream(GEOJSON), 1);
+		String firstFeature = "{\"type\": \"FeatureCollection\",\"features\": [{\"type\": \"Feature\",\"geometry\": {\"type\": \"Point\",\"coordinates\": [102.0,0.5]},\"properties\": {\"prop0\": \"value0\",\"count\": 1}}]}";
+		SimpleFeatureType firstFeatureType = GeoJsonFeatureReader.inferFeatureType(getStream(firstFeature), 10);
+
+		// Test
+		try (GeoJsonFeatureReader reader = new GeoJsonFeatureReader(getStream(GEOJSON), featureType)) {
+			reader.next();
+			SimpleFeature second = reader.next();
+
+			// Verify
+			assertEquals(Boolean.TRUE, second.getAttribute("extra"));
+			assertTrue(reader.getDroppedValues().isEmpty());
+		}
+
+		// Test a type without the late property
+		try (GeoJsonFeatureReader reader = new GeoJsonFeatureReader(getStream(GEOJSON), firstFeatureType)) {
+			reader.next();
+			reader.next();
+
+			// Verify
+			assertNull(firstFeatureType.getDescriptor("extra"));
+			assertEquals(Collections.singletonMap("extra", 1L), reader.getDroppedValues());
+		}
+	}
+
+	/**
+	 * Tests content that is not a FeatureCollection
+	 */
+	@Test(expected = IOException.class)
+	public void testInvalidContent() throws Exception {
+		new GeoJsonFeatureReader(getStream("[1, 2, 3]"), null);
+	}
+
+	private InputStream getStream(String content) throws IOException {
+		return IOUtils.toInputStream(content, "UTF-8");
+	}
+}
@@ -15,12 +15,16 @@
  **/
 package org.venice.piazza.ingest.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.security.MessageDigest;
+import java.util.Random;
 
 import org.geotools.data.FeatureSource;
 import org.junit.Before;
@@ -28,7 +32,9 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.FactoryException;
@@ -37,10 +43,14 @@ import org.opengis.referencing.operation.TransformException;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 
 import org.venice.piazza.ingest.utility.IngestUtilities;
+import org.venice.piazza.ingest.utility.S3ClientRegistry;
+import org.venice.piazza.ingest.utility.S3FileTransfer;
 import model.data.DataResource;
 import model.data.location.FolderShare;
+import model.data.location.S3FileStore;
 import model.data.type.RasterDataType;
 import model.job.metadata.SpatialMetadata;
 import util.PiazzaLogger;
@@ -48,6 +58,10 @@ import util.PiazzaLogger;
 public class IngestUtilitiesTests {
 	@Mock
 	private PiazzaLogger logger;
+	@Spy
+	private S3FileTransfer s3FileTransfer;
+	@Spy
+	private S3ClientRegistry s3ClientRegistry;
 	@InjectMocks
 	private IngestUtilities utilities;
 
@@ -151,22 +165,134 @@ public class IngestUtilitiesTests {
 		assertTrue(fileSize == 90074);
 	}
 
+	/**
+	 * Test file size for S3 files is read from the object metadata, without downloading the file
+	 */
+	@Test
+	public void testS3FileSize() throws Exception {
+		// Mock
+		ReflectionTestUtils.setField(utilities, "AMAZONS3_BUCKET_NAME", "piazza-bucket");
+		ReflectionTestUtils.setField(utilities, "USE_KMS", Boolean.FALSE);
+		DataResource mockData = new DataResource();
+		RasterDataType rasterType = new RasterDataType();
+		rasterType.location = new S3FileStore("external-bucket", "elevation.tif", null, "s3.amazonaws.com");
+		mockData.dataType = rasterType;
+		AmazonS3 mockClient = Mockito.mock(AmazonS3.class);
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(90074);
+		Mockito.doReturn(metadata).when(mockClient).getObjectMetadata("external-bucket", "elevation.tif");
+		IngestUtilities spyUtilities = Mockito.spy(utilities);
+		Mockito.doReturn(mockClient).when(spyUtilities).getAwsClient(false);
+
+		// Test
+		long fileSize = spyUtilities.getFileSize(mockData);
+
+		// Verify
+		assertEquals(90074, fileSize);
+		Mockito.verify(mockClient, Mockito.never()).getObject(Mockito.anyString(), Mockito.anyString());
+	}
+
+	/**
+	 * Test counting stream bytes while computing a checksum in the same pass
+	 */
+	@Test
+	public void testCountStreamBytes() throws Exception {
+		// Mock
+		byte[] content = new byte[200000];
+		new Random(1).nextBytes(content);
+		MessageDigest digest = MessageDigest.getInstance("MD5");
+
+		// Test
+		long numBytes = utilities.countStreamBytes(new ByteArrayInputStream(content), digest);
+
+		// Verify
+		assertEquals(content.length, numBytes);
+		assertArrayEquals(MessageDigest.getInstance("MD5").digest(content), digest.digest());
+		assertEquals(0, utilities.countStreamBytes(new ByteArrayInputStream(new byte[0]), null));
+	}
+
+	/**
+	 * Test spooling a source file once, and handing the spooled copy off to a local inspection file
+	 */
+	@Test
+	public void testSpoolDataResource() throws Exception {
+		// Mock
+		ReflectionTestUtils.setField(utilities, "DATA_TEMP_PATH", "tmp");
+		DataResource mockData = new DataResource();
+		mockData.dataId = "123456";
+		RasterDataType rasterType = new RasterDataType();
+		FolderShare location = new FolderShare();
+		location.filePath = "src" + File.separator + "test" + File.separator + "resources" + File.separator + "elevation.tif";
+		rasterType.location = location;
+		mockData.dataType = rasterType;
+
+		// Test
+		File spoolFile = utilities.spoolDataResource(mockData);
+
+		// Verify
+		assertTrue(spoolFile.exists());
+		assertEquals(90074, spoolFile.length());
+		assertTrue(location.getFileSize() == 90074);
+
+		// Test hand off to the Inspector file
+		File inspectFile = new File("tmp" + File.separator + "123456.tif");
+		utilities.copyToLocalFile(mockData, inspectFile);
+
+		// Verify
+		assertFalse(spoolFile.exists());
+		assertEquals(90074, inspectFile.length());
+		assertTrue(inspectFile.delete());
+		utilities.deleteSpoolFile(mockData);
+	}
+
 	/**
 	 * Test factory method to generate AWS Client
 	 */
 	@Test
 	public void testAwsClient() {
 		// Test default client
-		ReflectionTestUtils.setField(utilities, "AMAZONS3_ACCESS_KEY", "");
-		ReflectionTestUtils.setField(utilities, "AMAZONS3_PRIVATE_KEY", "");
+		ReflectionTestUtils.setField(s3ClientRegistry, "AMAZONS3_ACCESS_KEY", "");
+		ReflectionTestUtils.setField(s3ClientRegistry, "AMAZONS3_PRIVATE_KEY", "");
+		ReflectionTestUtils.setField(s3ClientRegistry, "MAX_CONNECTIONS", 10);
 		AmazonS3 client = utilities.getAwsClient(false);
 		assertTrue(client != null);
+		// The client is reused
+		assertTrue(client == utilities.getAwsClient(false));
 
 		// Test client with creds
-		ReflectionTestUtils.setField(utilities, "AMAZONS3_ACCESS_KEY", "access");
-		ReflectionTestUtils.setField(utilities, "AMAZONS3_PRIVATE_KEY", "private");
-		ReflectionTestUtils.setField(utilities, "S3_KMS_CMK_ID", "shh");
+		s3ClientRegistry.shutdown();
+		ReflectionTestUtils.setField(s3ClientRegistry, "AMAZONS3_ACCESS_KEY", "access");
+		ReflectionTestUtils.setField(s3ClientRegistry, "AMAZONS3_PRIVATE_KEY", "private");
+		ReflectionTestUtils.setField(s3ClientRegistry, "S3_KMS_CMK_ID", "shh");
 		client = utilities.getAwsClient(true);
+		assertTrue(client != null);
+		assertTrue(client != utilities.getAwsClient(false));
+	}
+
+	/**
+	 * Test copying an S3 source to the Piazza bucket within S3
+	 */
+	@Test
+	public void testServerSideCopy() throws Exception {
+		// Mock
+		ReflectionTestUtils.setField(utilities, "AMAZONS3_BUCKET_NAME", "piazza-bucket");
+		DataResource mockData = new DataResource();
+		mockData.dataId = "123456";
+		RasterDataType rasterType = new RasterDataType();
+		rasterType.location = new S3FileStore("external-bucket", "elevation.tif", null, "s3.amazonaws.com");
+		mockData.dataType = rasterType;
+		Mockito.doNothing().when(s3FileTransfer).copy(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
+				Mockito.anyString());
+
+		// Test. Copies are not possible to the KMS encrypted bucket.
+		ReflectionTestUtils.setField(utilities, "USE_KMS", Boolean.TRUE);
+		assertFalse(utilities.canCopyS3SourceServerSide(mockData));
+		ReflectionTestUtils.setField(utilities, "USE_KMS", Boolean.FALSE);
+		assertTrue(utilities.canCopyS3SourceServerSide(mockData));
+		utilities.copyS3Source(mockData);
+
+		// Verify
+		Mockito.verify(s3FileTransfer).copy("external-bucket", "elevation.tif", "piazza-bucket", "123456-elevation.tif");
 	}
 
 	/**
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.ingest.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.venice.piazza.ingest.persist.PostGisDataStoreManager;
+
+/**
+ * Tests the shared PostGIS Data Store manager. No database is available to the tests, so these verify that the pool is
+ * not created until the Data Store is first used.
+ */
+public class PostGisDataStoreManagerTests {
+	private PostGisDataStoreManager manager;
+
+	@Before
+	public void setup() {
+		manager = new PostGisDataStoreManager();
+	}
+
+	/**
+	 * Tests that stats and health checks do not open connections before the Data Store is used
+	 */
+	@Test
+	public void testUnusedPool() {
+		assertTrue(manager.getPoolStats().isEmpty());
+		assertFalse(manager.isHealthy());
+
+		// Shutdown is safe before the pool exists, and more than once
+		manager.shutdown();
+		manager.shutdown();
+		assertTrue(manager.getPoolStats().isEmpty());
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.ingest.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.jdbc.JDBCDataStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.ingest.persist.CopyRowEncoder;
+import org.venice.piazza.ingest.persist.PostGisFeatureLoader;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.io.WKBReader;
+
+import model.status.StatusUpdate;
+import util.PiazzaLogger;
+
+/**
+ * Tests the PostGIS bulk Feature Loader
+ */
+public class PostGisFeatureLoaderTests {
+	@Mock
+	private PiazzaLogger logger;
+	@Mock
+	private OutboundMessagePublisher outboundPublisher;
+	@InjectMocks
+	private PostGisFeatureLoader loader;
+
+	private MemoryDataStore sourceStore;
+	private SimpleFeatureType featureType;
+
+	/**
+	 * Setup a source store with sample features
+	 */
+	@Before
+	public void setup() throws Exception {
+		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(loader, "COPY_BATCH_SIZE", 2);
+
+		featureType = DataUtilities.createType("Source", "the_geom:Point:srid=4326,name:String");
+		SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(featureType);
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory();
+		List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+		for (int i = 0; i < 5; i++) {
+			featureBuilder.add(geometryFactory.createPoint(new Coordinate(i, i)));
+			featureBuilder.add("Feature " + i);
+			features.add(featureBuilder.buildFeature(null));
+		}
+		sourceStore = new MemoryDataStore();
+		sourceStore.addFeatures(features);
+	}
+
+	/**
+	 * Tests loading features into a non-JDBC store, which falls back to the Feature Store
+	 */
+	@Test
+	public void testLoadFeatures() throws Exception {
+		// Mock
+		MemoryDataStore targetStore = new MemoryDataStore();
+		targetStore.createSchema(DataUtilities.createSubType(featureType, null));
+
+		// Test
+		long numFeatures = loader.loadFeatures(targetStore, "Source", sourceStore.getFeatureSource("Source"), "123456");
+
+		// Verify
+		assertEquals(5, numFeatures);
+		assertEquals(5, targetStore.getFeatureSource("Source").getFeatures().size());
+		Mockito.verify(outboundPublisher, Mockito.never()).publishStatusUpdate(Mockito.any(StatusUpdate.class));
+	}
+
+	/**
+	 * Tests the encoding of COPY rows: values are quoted with embedded quotes doubled, delimiters and newlines are kept
+	 * inside the quotes, nulls are unquoted empty fields, and geometries are hex EWKB with the column SRID
+	 */
+	@Test
+	public void testEncodeRow() throws Exception {
+		// Mock
+		SimpleFeatureType rowType = DataUtilities.createType("Row",
+				"the_geom:Point:srid=4326,name:String,description:String,count:Integer,created:Date");
+		Point point = JTSFactoryFinder.getGeometryFactory().createPoint(new Coordinate(10.5, -20.25));
+		Date created = new Date(1514764800000L);
+		SimpleFeature feature = SimpleFeatureBuilder.build(rowType,
+				new Object[] { point, "He said \"hi\", then\nleft", null, 42, created }, "Row.1");
+		CopyRowEncoder encoder = new CopyRowEncoder(rowType.getAttributeDescriptors());
+
+		// Test
+		StringBuilder batch = new StringBuilder();
+		encoder.appendRow(batch, feature);
+		encoder.appendRow(batch, SimpleFeatureBuilder.build(rowType, new Object[5], "Row.2"));
+
+		// Verify the attributes
+		String row = batch.toString();
+		int geometryEnd = row.indexOf("\",");
+		String expectedAttributes = String.format(",\"He said \"\"hi\"\", then\nleft\",,\"42\",\"%s\"\n", new Timestamp(created.getTime()));
+		assertEquals(expectedAttributes, row.substring(geometryEnd + 1, row.length() - 5));
+		assertTrue(row.endsWith("\n,,,,\n"));
+
+		// Verify the geometry
+		assertEquals('"', row.charAt(0));
+		Geometry geometry = new WKBReader().read(WKBReader.hexToBytes(row.substring(1, geometryEnd)));
+		assertEquals(4326, geometry.getSRID());
+		assertTrue(point.equalsExact(geometry));
+		// The SRID is written without modifying the feature's geometry
+		assertEquals(0, point.getSRID());
+	}
+
+	/**
+	 * Tests that the SRID reported by PostGIS is preferred, with the EPSG code of the Coordinate Reference System as
+	 * the fallback, and zero when neither is known
+	 */
+	@Test
+	public void testColumnSrids() throws Exception {
+		// Mock
+		SimpleFeatureType nativeType = DataUtilities.createType("Native", "the_geom:Point:srid=4326,name:String");
+		nativeType.getGeometryDescriptor().getUserData().put(JDBCDataStore.JDBC_NATIVE_SRID, 3857);
+		SimpleFeatureType crsType = DataUtilities.createType("Crs", "name:String,the_geom:Polygon:srid=32618");
+		SimpleFeatureType unknownType = DataUtilities.createType("Unknown", "the_geom:LineString,name:String");
+
+		// Test and Verify
+		assertArrayEquals(new int[] { 3857, 0 }, new CopyRowEncoder(nativeType.getAttributeDescriptors()).getSrids());
+		assertArrayEquals(new int[] { 0, 32618 }, new CopyRowEncoder(crsType.getAttributeDescriptors()).getSrids());
+		assertArrayEquals(new int[] { 0, 0 }, new CopyRowEncoder(unknownType.getAttributeDescriptors()).getSrids());
+	}
+}
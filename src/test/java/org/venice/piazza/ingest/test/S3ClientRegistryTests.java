@@ -0,0 +1,113 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.ingest.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.ingest.utility.S3ClientRegistry;
+
+import com.amazonaws.services.s3.AmazonS3;
+
+import model.data.location.FileAccessFactory;
+
+/**
+ * Tests the shared S3 client registry
+ */
+public class S3ClientRegistryTests {
+	private S3ClientRegistry s3ClientRegistry;
+
+	/**
+	 * Setup the registry with credentials and KMS enabled for the Piazza bucket
+	 */
+	@Before
+	public void setup() {
+		s3ClientRegistry = new S3ClientRegistry();
+		ReflectionTestUtils.setField(s3ClientRegistry, "AMAZONS3_ACCESS_KEY", "access");
+		ReflectionTestUtils.setField(s3ClientRegistry, "AMAZONS3_PRIVATE_KEY", "private");
+		ReflectionTestUtils.setField(s3ClientRegistry, "AMAZONS3_BUCKET_NAME", "piazza-bucket");
+		ReflectionTestUtils.setField(s3ClientRegistry, "S3_KMS_CMK_ID", "shh");
+		ReflectionTestUtils.setField(s3ClientRegistry, "USE_KMS", Boolean.TRUE);
+		ReflectionTestUtils.setField(s3ClientRegistry, "MAX_CONNECTIONS", 10);
+		ReflectionTestUtils.setField(s3ClientRegistry, "CONNECTION_MAX_IDLE_MS", 1000L);
+	}
+
+	@After
+	public void cleanup() {
+		s3ClientRegistry.shutdown();
+	}
+
+	/**
+	 * Tests that clients are created once per encryption mode, and then reused for all buckets
+	 */
+	@Test
+	public void testClientReuse() {
+		// Test
+		AmazonS3 piazzaClient = s3ClientRegistry.getClient("piazza-bucket");
+		AmazonS3 externalClient = s3ClientRegistry.getClient("external-bucket");
+
+		// Verify
+		assertTrue(s3ClientRegistry.isClientSideEncrypted("piazza-bucket"));
+		assertFalse(s3ClientRegistry.isClientSideEncrypted("external-bucket"));
+		assertTrue(piazzaClient == s3ClientRegistry.getClient("piazza-bucket"));
+		assertTrue(piazzaClient == s3ClientRegistry.getClient("piazza-bucket", true));
+		assertTrue(piazzaClient != s3ClientRegistry.getClient("piazza-bucket", false));
+		assertTrue(externalClient == s3ClientRegistry.getClient("external-bucket", false));
+		assertTrue(externalClient != piazzaClient);
+		// Plain clients do not depend on the bucket, so any number of buckets share one
+		assertTrue(externalClient == s3ClientRegistry.getClient("piazza-bucket", false));
+		assertTrue(externalClient == s3ClientRegistry.getClient("another-bucket"));
+		assertTrue(externalClient == s3ClientRegistry.getClient(null, false));
+
+		Map<String, Object> stats = s3ClientRegistry.getStats();
+		assertEquals(2, stats.get("clients"));
+		assertEquals(2L, stats.get("clientsCreated"));
+		assertEquals(9L, stats.get("clientLookups"));
+
+		// Clients are recreated after shutdown
+		s3ClientRegistry.shutdown();
+		assertTrue(piazzaClient != s3ClientRegistry.getClient("piazza-bucket"));
+	}
+
+	/**
+	 * Tests that File Access Factories are shared, and only the Piazza bucket uses the encrypting factory
+	 */
+	@Test
+	public void testFileAccessFactory() {
+		// Test
+		FileAccessFactory piazzaFactory = s3ClientRegistry.getFileAccessFactory("piazza-bucket");
+		FileAccessFactory externalFactory = s3ClientRegistry.getFileAccessFactory("external-bucket");
+
+		// Verify
+		assertTrue(piazzaFactory != null);
+		assertTrue(piazzaFactory == s3ClientRegistry.getFileAccessFactory("piazza-bucket"));
+		assertTrue(externalFactory == s3ClientRegistry.getFileAccessFactory("another-bucket"));
+		assertTrue(piazzaFactory != externalFactory);
+
+		// Without KMS, all buckets share the same factory
+		s3ClientRegistry.shutdown();
+		ReflectionTestUtils.setField(s3ClientRegistry, "USE_KMS", Boolean.FALSE);
+		assertTrue(s3ClientRegistry.getFileAccessFactory("piazza-bucket") == s3ClientRegistry
+				.getFileAccessFactory("external-bucket"));
+	}
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.ingest.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.ingest.utility.S3ClientRegistry;
+import org.venice.piazza.ingest.utility.S3FileTransfer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+/**
+ * Tests S3 transfers against an in-memory stand-in for S3
+ */
+public class S3FileTransferTests {
+	private static final int MEGABYTE = 1024 * 1024;
+
+	private S3FileTransfer s3FileTransfer;
+	private Map<String, byte[]> objects = new ConcurrentHashMap<String, byte[]>();
+	private Map<Integer, byte[]> parts = new ConcurrentSkipListMap<Integer, byte[]>();
+	private AtomicInteger partUploads = new AtomicInteger();
+	private AtomicInteger copies = new AtomicInteger();
+	private File testFile;
+
+	/**
+	 * Setup the transfer against a mock S3 client that stores objects in memory
+	 */
+	@Before
+	public void setup() {
+		s3FileTransfer = new S3FileTransfer();
+		ReflectionTestUtils.setField(s3FileTransfer, "TRANSFER_THREADS", 4);
+		ReflectionTestUtils.setField(s3FileTransfer, "PART_SIZE_MB", 5L);
+		S3ClientRegistry s3ClientRegistry = mock(S3ClientRegistry.class);
+		when(s3ClientRegistry.getClient(anyString(), anyBoolean())).thenReturn(mockS3());
+		ReflectionTestUtils.setField(s3FileTransfer, "s3ClientRegistry", s3ClientRegistry);
+		testFile = new File("tmp" + File.separator + "s3-transfer-test.bin");
+	}
+
+	@After
+	public void cleanup() {
+		s3FileTransfer.shutdown();
+		FileUtils.deleteQuietly(testFile);
+	}
+
+	/**
+	 * Tests a file small enough to upload in a single request
+	 */
+	@Test
+	public void testSingleUpload() throws Exception {
+		byte[] content = writeTestFile(MEGABYTE);
+
+		s3FileTransfer.upload(testFile, "piazza-bucket", "small", false);
+
+		assertArrayEquals(content, objects.get("piazza-bucket/small"));
+		assertEquals(0, partUploads.get());
+	}
+
+	/**
+	 * Tests a large file is uploaded in parts, which are reassembled in order
+	 */
+	@Test
+	public void testMultipartUpload() throws Exception {
+		byte[] content = writeTestFile(12 * MEGABYTE + 17);
+
+		s3FileTransfer.upload(testFile, "piazza-bucket", "large", false);
+
+		assertArrayEquals(content, objects.get("piazza-bucket/large"));
+		assertEquals(3, partUploads.get());
+	}
+
+	/**
+	 * Tests that objects already in S3 are copied server-side
+	 */
+	@Test
+	public void testCopy() throws Exception {
+		objects.put("external-bucket/source", new byte[] { 1, 2, 3 });
+
+		s3FileTransfer.copy("external-bucket", "source", "piazza-bucket", "copy");
+
+		assertArrayEquals(new byte[] { 1, 2, 3 }, objects.get("piazza-bucket/copy"));
+		assertEquals(1, copies.get());
+	}
+
+	private byte[] writeTestFile(int size) throws IOException {
+		byte[] content = new byte[size];
+		new Random(size).nextBytes(content);
+		FileUtils.writeByteArrayToFile(testFile, content);
+		return content;
+	}
+
+	/**
+	 * Creates a mock S3 client that implements the single, multipart and copy requests used by the Transfer Manager
+	 */
+	private AmazonS3 mockS3() {
+		AmazonS3 s3 = mock(AmazonS3.class);
+		when(s3.putObject(any(PutObjectRequest.class))).thenAnswer(new Answer<PutObjectResult>() {
+			@Override
+			public PutObjectResult answer(InvocationOnMock invocation) throws IOException {
+				PutObjectRequest request = (PutObjectRequest) invocation.getArguments()[0];
+				byte[] content = request.getFile() != null ? FileUtils.readFileToByteArray(request.getFile())
+						: IOUtils.toByteArray(request.getInputStream());
+				objects.put(request.getBucketName() + "/" + request.getKey(), content);
+				PutObjectResult result = new PutObjectResult();
+				result.setETag("etag");
+				return result;
+			}
+		});
+		when(s3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class)))
+				.thenAnswer(new Answer<InitiateMultipartUploadResult>() {
+					@Override
+					public InitiateMultipartUploadResult answer(InvocationOnMock invocation) {
+						InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+						result.setUploadId("upload");
+						return result;
+					}
+				});
+		when(s3.uploadPart(any(UploadPartRequest.class))).thenAnswer(new Answer<UploadPartResult>() {
+			@Override
+			public UploadPartResult answer(InvocationOnMock invocation) throws IOException {
+				UploadPartRequest request = (UploadPartRequest) invocation.getArguments()[0];
+				byte[] part;
+				if (request.getFile() != null) {
+					try (InputStream inputStream = new FileInputStream(request.getFile())) {
+						IOUtils.skipFully(inputStream, request.getFileOffset());
+						part = IOUtils.toByteArray(inputStream, request.getPartSize());
+					}
+				} else {
+					part = IOUtils.toByteArray(request.getInputStream(), request.getPartSize());
+				}
+				parts.put(request.getPartNumber(), part);
+				partUploads.incrementAndGet();
+				UploadPartResult result = new UploadPartResult();
+				result.setPartNumber(request.getPartNumber());
+				result.setETag("etag-" + request.getPartNumber());
+				return result;
+			}
+		});
+		when(s3.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+				.thenAnswer(new Answer<CompleteMultipartUploadResult>() {
+					@Override
+					public CompleteMultipartUploadResult answer(InvocationOnMock invocation) throws IOException {
+						CompleteMultipartUploadRequest request = (CompleteMultipartUploadRequest) invocation.getArguments()[0];
+						ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+						for (byte[] part : parts.values()) {
+							outputStream.write(part);
+						}
+						objects.put(request.getBucketName() + "/" + request.getKey(), outputStream.toByteArray());
+						CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+						result.setETag("etag");
+						return result;
+					}
+				});
+		when(s3.getObjectMetadata(any(GetObjectMetadataRequest.class))).thenAnswer(new Answer<ObjectMetadata>() {
+			@Override
+			public ObjectMetadata answer(InvocationOnMock invocation) {
+				GetObjectMetadataRequest request = (GetObjectMetadataRequest) invocation.getArguments()[0];
+				ObjectMetadata metadata = new ObjectMetadata();
+				metadata.setContentLength(objects.get(request.getBucketName() + "/" + request.getKey()).length);
+				return metadata;
+			}
+		});
+		when(s3.copyObject(any(CopyObjectRequest.class))).thenAnswer(new Answer<CopyObjectResult>() {
+			@Override
+			public CopyObjectResult answer(InvocationOnMock invocation) {
+				CopyObjectRequest request = (CopyObjectRequest) invocation.getArguments()[0];
+				objects.put(request.getDestinationBucketName() + "/" + request.getDestinationKey(),
+						objects.get(request.getSourceBucketName() + "/" + request.getSourceKey()));
+				copies.incrementAndGet();
+				return new CopyObjectResult();
+			}
+		});
+		return s3;
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.ingest.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.venice.piazza.ingest.utility.S3RangeImageInputStream;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+
+/**
+ * Tests the ranged S3 Image Input Stream
+ */
+public class S3RangeImageInputStreamTests {
+	private AmazonS3 s3Client;
+	private byte[] content;
+
+	/**
+	 * Setup an S3 client that serves byte ranges of the sample content
+	 */
+	@Before
+	public void setup() {
+		content = new byte[600 * 1024];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i % 251);
+		}
+		s3Client = mock(AmazonS3.class);
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(content.length);
+		when(s3Client.getObjectMetadata(eq("bucket"), eq("key"))).thenReturn(metadata);
+		when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+			@Override
+			public S3Object answer(InvocationOnMock invocation) {
+				long[] range = ((GetObjectRequest) invocation.getArguments()[0]).getRange();
+				S3Object object = new S3Object();
+				object.setObjectContent(
+						new ByteArrayInputStream(Arrays.copyOfRange(content, (int) range[0], (int) range[1] + 1)));
+				return object;
+			}
+		});
+	}
+
+	/**
+	 * Tests reading across block boundaries, and re-reading cached blocks after seeking
+	 */
+	@Test
+	public void testRangeReads() throws Exception {
+		try (S3RangeImageInputStream stream = new S3RangeImageInputStream(s3Client, "bucket", "key")) {
+			assertEquals(content.length, stream.length());
+
+			// Read the header
+			byte[] header = new byte[16];
+			stream.readFully(header);
+			assertArrayEquals(Arrays.copyOfRange(content, 0, 16), header);
+			assertEquals(1, stream.getRangeRequestCount());
+
+			// Read across the first block boundary
+			int boundary = 256 * 1024;
+			stream.seek(boundary - 8L);
+			byte[] span = new byte[16];
+			stream.readFully(span);
+			assertArrayEquals(Arrays.copyOfRange(content, boundary - 8, boundary + 8), span);
+			assertEquals(2, stream.getRangeRequestCount());
+
+			// Seek back into the cached first block
+			stream.seek(100);
+			assertEquals(content[100] & 0xff, stream.read());
+			assertEquals(2, stream.getRangeRequestCount());
+
+			// Read the partial final block, then end of stream
+			stream.seek(content.length - 1L);
+			assertEquals(content[content.length - 1] & 0xff, stream.read());
+			assertEquals(-1, stream.read());
+			assertEquals(3, stream.getRangeRequestCount());
+		}
+	}
+}
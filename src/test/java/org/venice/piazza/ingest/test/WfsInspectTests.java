@@ -124,5 +124,7 @@ public class WfsInspectTests {
 		assertTrue(inspectedResource.getSpatialMetadata().getMaxX().equals(featureSource.getBounds().getMaxX()));
 		assertTrue(inspectedResource.getSpatialMetadata().getMaxY().equals(featureSource.getBounds().getMaxY()));
 		assertTrue(inspectedResource.getSpatialMetadata().getEpsgCode().equals(CRS.lookupEpsgCode(featureSource.getInfo().getCRS(), true)));
+		// The bounds and count are accumulated from a single read of the features
+		assertTrue(inspectedResource.getSpatialMetadata().getNumFeatures() == 2);
 	}
 }
@@ -30,16 +30,12 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
 import org.springframework.amqp.AmqpException;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.web.client.RestTemplate;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import org.venice.piazza.ingest.inspect.Inspector;
 import org.venice.piazza.ingest.messaging.IngestWorker;
 import org.venice.piazza.ingest.utility.IngestUtilities;
-import messaging.job.JobMessageFactory;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
 import model.data.DataResource;
 import model.data.type.GeoJsonDataType;
 import model.job.Job;
@@ -47,6 +43,7 @@ import model.job.metadata.SpatialMetadata;
 import model.job.type.IngestJob;
 import model.logger.AuditElement;
 import model.logger.Severity;
+import model.status.StatusUpdate;
 import util.PiazzaLogger;
 import util.UUIDFactory;
 
@@ -66,11 +63,7 @@ public class WorkerTests {
 	@Mock
 	private RestTemplate restTemplate;
 	@Mock
-	private RabbitTemplate rabbitTemplate;
-	@Mock
-	private Queue updateJobsQueue;
-	@Spy
-	private ObjectMapper mapper;
+	private OutboundMessagePublisher outboundPublisher;
 	@Spy
 	private IngestUtilities ingestUtilities;
 	@InjectMocks
@@ -101,9 +94,6 @@ public class WorkerTests {
 
 		// Ensure we get a GUID for the Data Resource
 		when(uuidFactory.getUUID()).thenReturn("654321");
-		when(updateJobsQueue.getName()).thenReturn("Update-Job-Unit-Test");
-		Mockito.doNothing().when(rabbitTemplate).convertAndSend(eq(JobMessageFactory.PIAZZA_EXCHANGE_NAME), eq("654321"),
-				Mockito.anyString());
 	}
 
 	/**
@@ -125,8 +115,7 @@ public class WorkerTests {
 	@Test
 	public void testWorkerException() throws Exception {
 		// Test Errors being thrown
-		Mockito.doThrow(new AmqpException("Test")).doNothing().when(rabbitTemplate)
-				.convertAndSend(eq(JobMessageFactory.PIAZZA_EXCHANGE_NAME), Mockito.anyString(), Mockito.anyString());
+		Mockito.doThrow(new AmqpException("Test")).doNothing().when(outboundPublisher).publishStatusUpdate(Mockito.any(StatusUpdate.class));
 		// Test
 		worker.run(mockJob, null);
 		// Verify
@@ -1,29 +1,56 @@
 package org.venice.piazza.jobmanager.test;
 
 import org.venice.piazza.jobmanager.database.DatabaseAccessor;
+import org.venice.piazza.jobmanager.database.JobStatusCache;
+import org.venice.piazza.jobmanager.database.JobStatusCounter;
+import org.venice.piazza.jobmanager.database.JobStatusUpdater;
 import model.job.Job;
 import model.job.JobProgress;
-import model.job.result.ResultType;
 import model.response.Pagination;
 import model.status.StatusUpdate;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.data.domain.Page;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
 import org.venice.piazza.common.hibernate.dao.job.JobDao;
 import org.venice.piazza.common.hibernate.entity.JobEntity;
+import org.venice.piazza.piazza.database.KeysetPage;
+import org.venice.piazza.piazza.database.KeysetPaginator;
+import org.venice.piazza.piazza.database.KeysetQuery;
+import org.venice.piazza.piazza.messaging.MessageOutbox;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher.OutboundMessage;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.mockito.Mockito.*;
 
 public class AccessorTests {
     @Mock
     private JobDao jobDao;
+    @Mock
+    private JobStatusUpdater jobStatusUpdater;
+    @Mock
+    private JobStatusCache jobStatusCache;
+    @Mock
+    private JobStatusCounter jobStatusCounter;
+    @Mock
+    private KeysetPaginator keysetPaginator;
+    @Mock
+    private MessageOutbox messageOutbox;
+    @Mock
+    private PlatformTransactionManager transactionManager;
     @InjectMocks
     private DatabaseAccessor databaseAccessor;
 
@@ -52,6 +79,18 @@ public class AccessorTests {
         Assert.assertEquals(this.databaseAccessor.getJobsCount(), numberJobs);
     }
 
+    @Test
+    public void testGetCountsFromCounter() {
+        when(this.jobStatusCounter.isAvailable()).thenReturn(true);
+        when(this.jobStatusCounter.getCount()).thenReturn(15L);
+        when(this.jobStatusCounter.getCount("Error")).thenReturn(5L);
+
+        Assert.assertEquals(15L, this.databaseAccessor.getJobsCount());
+        Assert.assertEquals(Long.valueOf(5L), this.databaseAccessor.getJobStatusCount("Error"));
+        verify(this.jobDao, never()).count();
+        verify(this.jobDao, never()).countJobByStatus(anyString());
+    }
+
     @Test
     public void testGetJobyById() {
         String jobIdNull = "null_job_id";
@@ -94,70 +133,87 @@ public class AccessorTests {
     }
 
     @Test
-    public void testUpdateJobStatus() {
-        JobEntity entity = new JobEntity();
+    @SuppressWarnings("unchecked")
+    public void testGetJobsByCursor() {
         Job job = new Job();
-        entity.setJob(job);
+        job.setJobId("job1");
+        when(this.keysetPaginator.getPage(any(KeysetQuery.class)))
+                .thenReturn(new KeysetPage<>(Collections.singletonList(new JobEntity(job)), "next", 1L));
+
+        KeysetPage<Job> jobs = this.databaseAccessor.getJobs("", 10, "desc", "createdOn", "Running", "",
+                KeysetQuery.CountMode.EXACT);
+
+        Assert.assertEquals("job1", jobs.getResults().get(0).getJobId());
+        Assert.assertEquals("next", jobs.getNextCursor());
+        Assert.assertEquals(Long.valueOf(1L), jobs.getCount());
+
+        ArgumentCaptor<KeysetQuery> query = ArgumentCaptor.forClass(KeysetQuery.class);
+        verify(this.keysetPaginator).getPage(query.capture());
+        Assert.assertEquals("createdOn", query.getValue().getSortBy());
+        Assert.assertTrue(query.getValue().isDescending());
+        Assert.assertNull(query.getValue().getCursor());
+        Assert.assertEquals(Collections.singletonMap("status", "Running"), query.getValue().getFilters());
+    }
 
-        Mockito.when(this.jobDao.getJobByJobId("my_job_id")).thenReturn(entity);
+    @Test
+    public void testRegisterIndexes() {
+        this.databaseAccessor.registerIndexes();
+        verify(this.keysetPaginator).registerIndex(JobEntity.class, Job.class, "jobId", null, "createdOn");
+        verify(this.keysetPaginator).registerIndex(JobEntity.class, Job.class, "jobId", "status", "createdOn");
+    }
 
+    @Test
+    public void testUpdateJobStatus() {
         this.databaseAccessor.updateJobStatus("my_job_id", "my_status");
-        this.databaseAccessor.updateJobStatus("invalid_job_id", "my_invalid_status");
 
-        Assert.assertEquals("my_status", job.getStatus());
+        //The status is written in place, without loading and saving the Job entity.
+        ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(this.jobStatusUpdater, times(1)).updateJobStatuses(captor.capture());
+        StatusUpdate statusUpdate = (StatusUpdate) captor.getValue().get("my_job_id");
+        Assert.assertEquals("my_status", statusUpdate.getStatus());
+        Assert.assertNull(statusUpdate.getProgress());
+        Mockito.verify(this.jobDao, Mockito.never()).save(Mockito.any(JobEntity.class));
     }
 
     @Test
     public void testUpdateJobProgress() {
-        JobEntity entity = new JobEntity(new Job());
-        entity.getJob().setJobId("my_job_id");
-        JobProgress progress = Mockito.mock(JobProgress.class);
-
-        Mockito.when(this.jobDao.getJobByJobId("my_job_id")).thenReturn(entity);
+        JobProgress progress = new JobProgress(50);
 
         this.databaseAccessor.updateJobProgress("my_job_id", progress);
-        this.databaseAccessor.updateJobProgress("my_invalid_id", Mockito.mock(JobProgress.class));
 
-        Assert.assertNotNull(progress);
-        Assert.assertEquals(entity.getJob().getProgress(), progress);
+        //The progress is written in place, without changing the status.
+        ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(this.jobStatusUpdater, times(1)).updateJobStatuses(captor.capture());
+        StatusUpdate statusUpdate = (StatusUpdate) captor.getValue().get("my_job_id");
+        Assert.assertEquals(progress, statusUpdate.getProgress());
+        Assert.assertTrue(StringUtils.isEmpty(statusUpdate.getStatus()));
+        Mockito.verify(this.jobDao, Mockito.never()).save(Mockito.any(JobEntity.class));
     }
 
     @Test
     public void testUpdateJobStatus2Params()  {
-        JobEntity entity = new JobEntity(new Job());
-        entity.getJob().setJobId("my_job_id");
-        JobProgress progress = Mockito.mock(JobProgress.class);
-        ResultType resultType = Mockito.mock(ResultType.class);
-
-        //Mock an empty job status.
-        StatusUpdate emptyStatus = Mockito.mock(StatusUpdate.class);
-        Mockito.when(emptyStatus.getStatus()).thenReturn("");
-        Mockito.when(emptyStatus.getProgress()).thenReturn(null);
-        Mockito.when(emptyStatus.getResult()).thenReturn(null);
-
-        //Mock an invalid job status.
-        StatusUpdate badStatus = Mockito.mock(StatusUpdate.class);
-        Mockito.when(badStatus.getStatus()).thenReturn("my_invalid_status");
-        Mockito.when(badStatus.getProgress()).thenReturn(Mockito.mock(JobProgress.class));
-        Mockito.when(badStatus.getResult()).thenReturn(Mockito.mock(ResultType.class));
-
-        //Mock a good job status.
-        StatusUpdate validStatus = Mockito.mock(StatusUpdate.class);
-        Mockito.when(validStatus.getStatus()).thenReturn("my_status");
-        Mockito.when(validStatus.getProgress()).thenReturn(progress);
-        Mockito.when(validStatus.getResult()).thenReturn(resultType);
-
-        Mockito.when(this.jobDao.getJobByJobId("my_job_id")).thenReturn(entity);
-
-        //Call update with the valid values.
+        StatusUpdate validStatus = new StatusUpdate(StatusUpdate.STATUS_RUNNING, new JobProgress(50));
+
         this.databaseAccessor.updateJobStatus("my_job_id", validStatus);
-        //Call it again to make sure we hit the "null" side of all the branches. (code coverage)
-        this.databaseAccessor.updateJobStatus("my_job_id", emptyStatus);
-        this.databaseAccessor.updateJobStatus("my_invalid_id", badStatus);
 
-        Assert.assertEquals(entity.getJob().getStatus(), validStatus.getStatus());
-        Assert.assertEquals(entity.getJob().getProgress(), validStatus.getProgress());
-        Assert.assertEquals(entity.getJob().getResult(), validStatus.getResult());
+        //The update is written in place, without loading and saving the Job entity.
+        Mockito.verify(this.jobStatusUpdater, times(1)).updateJobStatuses(Collections.singletonMap("my_job_id", validStatus));
+        Mockito.verify(this.jobDao, never()).getJobByJobId(anyString());
+        Mockito.verify(this.jobDao, never()).save(any(JobEntity.class));
+        Mockito.verify(this.jobStatusCache, times(1)).invalidate("my_job_id");
+    }
+
+    @Test
+    public void testUpdateJobStatuses() {
+        Map<String, StatusUpdate> updates = new LinkedHashMap<>();
+        updates.put("my_job_id", new StatusUpdate(StatusUpdate.STATUS_RUNNING, new JobProgress(50)));
+        updates.put("my_invalid_id", new StatusUpdate(StatusUpdate.STATUS_RUNNING));
+        Mockito.when(this.jobStatusUpdater.updateJobStatuses(updates)).thenReturn(1);
+
+        //Only the existing job is counted.
+        Assert.assertEquals(1, this.databaseAccessor.updateJobStatuses(updates));
+        Mockito.verify(this.jobDao, never()).getJobByJobId(anyString());
+        Mockito.verify(this.jobStatusCache, times(1)).invalidateAll(updates.keySet());
     }
 
     @Test
@@ -177,4 +233,28 @@ public class AccessorTests {
         this.databaseAccessor.addJob(Mockito.mock(Job.class));
         Mockito.verify(this.jobDao, times(1)).save(any(JobEntity.class));
     }
+
+    /**
+     * Tests that Jobs and their messages are added in one transaction
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAddJobWithMessage() {
+        // Mock
+        TransactionStatus transactionStatus = Mockito.mock(TransactionStatus.class);
+        Mockito.when(this.transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(transactionStatus);
+        Job job = new Job();
+        job.setJobId("job1");
+        OutboundMessage message = Mockito.mock(OutboundMessage.class);
+
+        // Test
+        this.databaseAccessor.addJob(job, message);
+
+        // Verify
+        Mockito.verify(this.jobDao, times(1)).save(Mockito.anyListOf(JobEntity.class));
+        ArgumentCaptor<List> messages = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(this.messageOutbox, times(1)).add(messages.capture());
+        Assert.assertEquals(Collections.singletonList(message), messages.getValue());
+        Mockito.verify(this.transactionManager, times(1)).commit(transactionStatus);
+    }
 }
@@ -4,8 +4,13 @@ import org.venice.piazza.piazza.Application;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.concurrent.Executor;
@@ -24,6 +29,11 @@ public class ApplicationTests {
 
         ReflectionTestUtils.setField(application, "threadCountSize", 100);
         ReflectionTestUtils.setField(application, "threadCountLimit", 500);
+        ReflectionTestUtils.setField(application, "jobRequestConsumers", 4);
+        ReflectionTestUtils.setField(application, "jobRequestMaxConsumers", 8);
+        ReflectionTestUtils.setField(application, "jobRequestPrefetch", 20);
+        ReflectionTestUtils.setField(application, "jobRequestAckBatchSize", 10);
+        ReflectionTestUtils.setField(application, "jobUpdatePrefetch", 250);
     }
 
     @Test
@@ -43,4 +53,23 @@ public class ApplicationTests {
 
         Assert.assertNotNull(handler);
     }
+
+    @Test
+    public void testListenerContainerFactories() {
+        SimpleRabbitListenerContainerFactoryConfigurer configurer = Mockito.mock(SimpleRabbitListenerContainerFactoryConfigurer.class);
+        ConnectionFactory connectionFactory = Mockito.mock(ConnectionFactory.class);
+
+        // Requests are consumed concurrently
+        SimpleRabbitListenerContainerFactory requestFactory = this.application.jobRequestListenerContainerFactory(configurer, connectionFactory);
+        Mockito.verify(configurer).configure(requestFactory, connectionFactory);
+        Assert.assertEquals(4, ReflectionTestUtils.getField(requestFactory, "concurrentConsumers"));
+        Assert.assertEquals(8, ReflectionTestUtils.getField(requestFactory, "maxConcurrentConsumers"));
+        Assert.assertEquals(20, ReflectionTestUtils.getField(requestFactory, "prefetchCount"));
+
+        // Updates are read by one consumer to keep them in order, and acknowledged once processed
+        SimpleRabbitListenerContainerFactory updateFactory = this.application.jobUpdateListenerContainerFactory(configurer, connectionFactory);
+        Assert.assertEquals(1, ReflectionTestUtils.getField(updateFactory, "concurrentConsumers"));
+        Assert.assertEquals(250, ReflectionTestUtils.getField(updateFactory, "prefetchCount"));
+        Assert.assertEquals(AcknowledgeMode.MANUAL, ReflectionTestUtils.getField(updateFactory, "acknowledgeMode"));
+    }
 }
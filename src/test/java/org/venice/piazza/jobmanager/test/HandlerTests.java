@@ -33,6 +33,7 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
 import org.venice.piazza.jobmanager.database.DatabaseAccessor;
+import org.venice.piazza.jobmanager.database.JobStatusUpdateBuffer;
 import org.venice.piazza.jobmanager.messaging.handler.AbortJobHandler;
 import org.venice.piazza.jobmanager.messaging.handler.RepeatJobHandler;
 import org.venice.piazza.jobmanager.messaging.handler.RequestJobHandler;
@@ -64,6 +65,8 @@ public class HandlerTests {
     private UUIDFactory uuidFactory;
     @Mock
     private RequestJobHandler requestJobHandler;
+    @Mock
+    private JobStatusUpdateBuffer statusUpdateBuffer;
 
     @InjectMocks
     private AbortJobHandler abortJobHandler;
@@ -204,13 +207,18 @@ public class HandlerTests {
         Mockito.doNothing().when(accessor).addJob(any(Job.class));
 
         // Test
-        updateJobHandler.process(mockStatus);
-
-        //Test the exception case for coverage.
-        doThrow(RuntimeException.class).when(this.accessor).updateJobStatus(eq("error_job_id"), any(StatusUpdate.class));
+        JobStatusUpdateBuffer.Callback callback = Mockito.mock(JobStatusUpdateBuffer.Callback.class);
+        updateJobHandler.process(mockStatus, callback);
+        Mockito.verify(statusUpdateBuffer, times(1)).submit(mockStatus, callback);
+        // The callback is completed by the buffer, once the update is written
+        Mockito.verifyZeroInteractions(callback);
+
+        //Test the exception case; the update was not buffered, so it has failed
+        doThrow(RuntimeException.class).when(this.statusUpdateBuffer).submit(any(StatusUpdate.class), any(JobStatusUpdateBuffer.Callback.class));
         StatusUpdate errorReq = new StatusUpdate();
         errorReq.setJobId("error_job_id");
-        updateJobHandler.process(errorReq);
+        updateJobHandler.process(errorReq, callback);
+        Mockito.verify(callback, times(1)).onFailure(any(Exception.class));
     }
 
     @Test
@@ -0,0 +1,250 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.jobmanager.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.zip.GZIPOutputStream;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.venice.piazza.jobmanager.database.JobArchiver;
+import org.venice.piazza.jobmanager.database.JobStatusCache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import model.job.Job;
+
+/**
+ * Tests moving finished Jobs to the compressed, partitioned archive
+ */
+public class JobArchiverTests {
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private JobStatusCache jobStatusCache;
+    @Mock
+    private Session session;
+    @Mock
+    private Connection connection;
+    @Mock
+    private Statement statement;
+    @Mock
+    private ResultSet versionResults;
+    @Mock
+    private ResultSet partitionedResults;
+    @Mock
+    private PreparedStatement archiveStatement;
+    @Mock
+    private PreparedStatement insertStatement;
+    @Mock
+    private PreparedStatement selectStatement;
+    @Mock
+    private ResultSet archiveResults;
+    @Mock
+    private ResultSet selectResults;
+    @InjectMocks
+    private JobArchiver archiver;
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws SQLException {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(archiver, "mapper", mapper);
+        ReflectionTestUtils.setField(archiver, "ENABLED", true);
+        ReflectionTestUtils.setField(archiver, "ARCHIVE_AGE_DAYS", 30);
+        ReflectionTestUtils.setField(archiver, "BATCH_SIZE", 2);
+        ReflectionTestUtils.setField(archiver, "MAX_BATCHES", 100);
+        ReflectionTestUtils.setField(archiver, "RETENTION_MONTHS", 0);
+
+        when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(mock(TransactionStatus.class));
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        when(session.doReturningWork(any(ReturningWork.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                try {
+                    return ((ReturningWork<Object>) invocation.getArguments()[0]).execute(connection);
+                } catch (SQLException exception) {
+                    // Hibernate reports SQL errors as runtime exceptions
+                    throw new RuntimeException(exception);
+                }
+            }
+        });
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(contains("server_version_num"))).thenReturn(versionResults);
+        when(statement.executeQuery(contains("relkind"))).thenReturn(partitionedResults);
+        when(versionResults.next()).thenReturn(true);
+        when(versionResults.getInt(1)).thenReturn(100004);
+        when(partitionedResults.next()).thenReturn(true);
+        when(partitionedResults.getInt(1)).thenReturn(1);
+        when(connection.prepareStatement(startsWith("DELETE FROM job WHERE"))).thenReturn(archiveStatement);
+        when(connection.prepareStatement(startsWith("INSERT INTO job_archive"))).thenReturn(insertStatement);
+        when(connection.prepareStatement(startsWith("SELECT data FROM job_archive"))).thenReturn(selectStatement);
+        when(archiveStatement.executeQuery()).thenReturn(archiveResults);
+        when(selectStatement.executeQuery()).thenReturn(selectResults);
+    }
+
+    /**
+     * Tests that a batch of finished Jobs is moved to the monthly partitions of the archive
+     */
+    @Test
+    public void testArchiveJobs() throws Exception {
+        // Mock; a single batch, smaller than the batch size
+        when(archiveResults.next()).thenReturn(true, false);
+        when(archiveResults.getString(1)).thenReturn(
+                "{\"jobId\":\"123456\",\"status\":\"Success\",\"createdBy\":\"tester\",\"createdOn\":\"2018-03-15T10:00:00.000Z\"}");
+
+        // Test
+        archiver.initialize();
+        archiver.archiveJobs();
+
+        // Verify
+        verify(statement).execute(startsWith("CREATE TABLE IF NOT EXISTS job_archive ("));
+        verify(statement).execute(contains("job_archive_y2018m03 PARTITION OF job_archive"));
+        verify(archiveStatement, times(1)).setInt(2, 2);
+        ArgumentCaptor<String> cutoff = ArgumentCaptor.forClass(String.class);
+        verify(archiveStatement).setString(eq(1), cutoff.capture());
+        assertEquals(new DateTime(DateTimeZone.UTC).minusDays(30).toLocalDate(),
+                new DateTime(cutoff.getValue(), DateTimeZone.UTC).toLocalDate());
+        verify(insertStatement).setString(1, "123456");
+        verify(insertStatement).setString(2, "Success");
+        verify(insertStatement).setString(3, "tester");
+        verify(insertStatement, times(1)).executeBatch();
+        verify(jobStatusCache).invalidateAll(any(Iterable.class));
+        assertEquals(1L, archiver.getStats().get("archived"));
+    }
+
+    /**
+     * Tests that nothing is written when there are no Jobs to archive
+     */
+    @Test
+    public void testArchiveNoJobs() throws Exception {
+        // Mock
+        when(archiveResults.next()).thenReturn(false);
+
+        // Test
+        archiver.initialize();
+        archiver.archiveJobs();
+
+        // Verify
+        verify(archiveStatement, times(1)).executeQuery();
+        verify(insertStatement, never()).executeBatch();
+        verify(statement, never()).execute(contains("PARTITION OF"));
+    }
+
+    /**
+     * Tests that a run stops after the maximum number of batches, leaving the rest for the next run
+     */
+    @Test
+    public void testArchiveBatchLimit() throws Exception {
+        // Mock; every batch is full
+        ReflectionTestUtils.setField(archiver, "MAX_BATCHES", 2);
+        when(archiveResults.next()).thenReturn(true, true, false, true, true, false, true, true, false);
+        when(archiveResults.getString(1)).thenReturn(
+                "{\"jobId\":\"123456\",\"status\":\"Success\",\"createdBy\":\"tester\",\"createdOn\":\"2018-03-15T10:00:00.000Z\"}");
+
+        // Test
+        archiver.initialize();
+        archiver.archiveJobs();
+
+        // Verify
+        verify(archiveStatement, times(2)).executeQuery();
+        assertEquals(4L, archiver.getStats().get("archived"));
+    }
+
+    /**
+     * Tests reading a compressed Job from the archive
+     */
+    @Test
+    public void testGetArchivedJob() throws Exception {
+        // Mock
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(bytes)) {
+            output.write("{\"jobId\":\"123456\",\"status\":\"Success\"}".getBytes(StandardCharsets.UTF_8));
+        }
+        when(selectResults.next()).thenReturn(true, false);
+        when(selectResults.getBytes(1)).thenReturn(bytes.toByteArray());
+
+        // Test
+        archiver.initialize();
+        Job job = archiver.getArchivedJob("123456");
+
+        // Verify
+        assertEquals("123456", job.getJobId());
+        assertEquals("Success", job.getStatus());
+        verify(selectStatement).setString(1, "123456");
+
+        // Test a Job that is not archived
+        assertNull(archiver.getArchivedJob("missing"));
+    }
+
+    /**
+     * Tests that no Jobs are archived if the archive could not be created
+     */
+    @Test
+    public void testArchiveUnavailable() throws Exception {
+        // Mock
+        when(statement.execute(anyString())).thenThrow(new SQLException("Permission denied", "42501"));
+        archiver.initialize();
+
+        // Test
+        archiver.archiveJobs();
+
+        // Verify
+        verify(connection, never()).prepareStatement(startsWith("DELETE FROM job WHERE"));
+        verify(archiveStatement, never()).setInt(anyInt(), anyInt());
+        assertNull(archiver.getArchivedJob("123456"));
+    }
+}
@@ -22,7 +22,10 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
 
+import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -36,14 +39,26 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import exception.PiazzaJobException;
 import org.venice.piazza.jobmanager.controller.JobController;
 import org.venice.piazza.jobmanager.database.DatabaseAccessor;
+import org.venice.piazza.jobmanager.database.JobArchiver;
+import org.venice.piazza.jobmanager.database.JobStatusCache;
+import org.venice.piazza.jobmanager.database.JobStatusUpdateBuffer;
+import org.venice.piazza.jobmanager.messaging.JobStatusNotifier;
+import org.venice.piazza.jobmanager.messaging.JobUpdateDispatcher;
 import org.venice.piazza.jobmanager.messaging.handler.AbortJobHandler;
 import org.venice.piazza.jobmanager.messaging.handler.RepeatJobHandler;
 import org.venice.piazza.jobmanager.messaging.handler.RequestJobHandler;
+import org.venice.piazza.piazza.database.InvalidKeysetQueryException;
+import org.venice.piazza.piazza.database.KeysetPage;
+import org.venice.piazza.piazza.database.KeysetQuery;
+import org.venice.piazza.piazza.messaging.MessageOutbox;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
 import model.job.Job;
 import model.job.JobProgress;
 import model.job.type.AbortJob;
@@ -56,6 +71,7 @@ import model.response.JobResponse;
 import model.response.JobStatusResponse;
 import model.response.Pagination;
 import model.response.PiazzaResponse;
+import model.response.SuccessResponse;
 import model.status.StatusUpdate;
 import util.PiazzaLogger;
 import util.UUIDFactory;
@@ -80,6 +96,20 @@ public class JobControllerTests {
     private RequestJobHandler requestJobHandler;
     @Mock
     private ThreadPoolTaskExecutor threadPoolTaskExecutor;
+    @Mock
+    private JobStatusUpdateBuffer statusUpdateBuffer;
+    @Mock
+    private JobStatusCache jobStatusCache;
+    @Mock
+    private JobStatusNotifier jobStatusNotifier;
+    @Mock
+    private JobUpdateDispatcher updateDispatcher;
+    @Mock
+    private OutboundMessagePublisher outboundPublisher;
+    @Mock
+    private MessageOutbox messageOutbox;
+    @Mock
+    private JobArchiver jobArchiver;
     @InjectMocks
     private JobController jobController;
 
@@ -127,7 +157,7 @@ public class JobControllerTests {
         assertTrue(emptyResponse instanceof ErrorResponse);
 
         // When we query the Status of the Mock Job's Id, return the Mock Job
-        when(accessor.getJobById(mockJob.getJobId())).thenReturn(mockJob);
+        when(jobStatusCache.getJob(mockJob.getJobId())).thenReturn(mockJob);
 
         // Query the Job
         response = jobController.getJobStatus(mockJob.getJobId()).getBody();
@@ -138,8 +168,14 @@ public class JobControllerTests {
         assertTrue(jobStatus.data.status.equals(StatusUpdate.STATUS_RUNNING));
         assertTrue(jobStatus.data.jobType.equals(mockJob.getJobType().getClass().getSimpleName()));
 
+        // Test Job Archived
+        when(jobStatusCache.getJob(mockJob.getJobId())).thenReturn(null);
+        when(jobArchiver.getArchivedJob(mockJob.getJobId())).thenReturn(mockJob);
+        response = jobController.getJobStatus(mockJob.getJobId()).getBody();
+        assertTrue(response instanceof JobStatusResponse);
+
         // Test Job Not Exists
-        when(accessor.getJobById(mockJob.getJobId())).thenReturn(null);
+        when(jobArchiver.getArchivedJob(mockJob.getJobId())).thenReturn(null);
         response = jobController.getJobStatus(mockJob.getJobId()).getBody();
         assertTrue(response instanceof ErrorResponse);
     }
@@ -209,6 +245,17 @@ public class JobControllerTests {
         assertTrue(response instanceof JobResponse);
         assertTrue(((JobResponse) response).data.getJobId().equals("123456"));
 
+        // Test an archived Job
+        when(accessor.getJobById(eq("123456"))).thenReturn(null);
+        when(jobArchiver.getArchivedJob("123456")).thenReturn(mockJob);
+        response = jobController.repeatJob(mockRequest).getBody();
+        assertTrue(response instanceof JobResponse);
+        Mockito.verify(repeatJobHandler, Mockito.times(2)).process(mockJob, "123456");
+
+        // Test a Job that does not exist
+        when(jobArchiver.getArchivedJob("123456")).thenReturn(null);
+        assertTrue(jobController.repeatJob(mockRequest).getStatusCode().compareTo(HttpStatus.NOT_FOUND) == 0);
+
         //Test Exception
         when(accessor.getJobById("123456")).thenThrow(RuntimeException.class);
         response = jobController.repeatJob(mockRequest).getBody();
@@ -225,13 +272,45 @@ public class JobControllerTests {
         when(accessor.getJobs(anyInt(), anyInt(), anyString(), anyString(), anyString(), anyString())).thenReturn(mockResponse);
 
         // Test
-        JobListResponse jobs = jobController.getJobs("0", "10", "asc", "jobId", null, null);
+        JobListResponse jobs = jobController.getJobs("0", "10", "asc", "jobId", null, null, null, null, new MockHttpServletResponse());
         // Verify
         assertTrue(jobs != null);
         assertTrue(jobs.getData().size() == 1);
         assertTrue(jobs.getData().get(0).getJobId().equals(mockJob.getJobId()));
     }
 
+    /**
+     * Test /job with a cursor
+     */
+    @Test
+    public void testGetJobsByCursor() {
+        // Mock
+        when(accessor.getJobs(eq("cursor1"), eq(10), eq("desc"), eq("createdOn"), anyString(), anyString(),
+                eq(KeysetQuery.CountMode.ESTIMATE))).thenReturn(new KeysetPage<>(mockJobs, "cursor2", 100L));
+        when(accessor.getJobs(eq("cursor2"), eq(10), eq("desc"), eq("createdOn"), anyString(), anyString(),
+                eq(KeysetQuery.CountMode.NONE))).thenReturn(new KeysetPage<>(mockJobs, null, null));
+
+        // Test
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        JobListResponse jobs = jobController.getJobs("0", "10", "desc", "createdOn", null, null, "cursor1", "estimate", response);
+
+        // Verify
+        assertTrue(jobs.getData().size() == 1);
+        assertTrue(jobs.getPagination().getCount() == 100L);
+        assertTrue("cursor2".equals(response.getHeader(KeysetPage.NEXT_CURSOR_HEADER)));
+
+        // The last page has no next cursor, and is not counted by default
+        response = new MockHttpServletResponse();
+        jobs = jobController.getJobs("0", "10", "desc", "createdOn", null, null, "cursor2", null, response);
+        assertTrue(jobs.getPagination().getCount() == null);
+        assertTrue(response.getHeader(KeysetPage.NEXT_CURSOR_HEADER) == null);
+
+        // Invalid cursors and counts are bad requests
+        ResponseEntity<PiazzaResponse> error = jobController.handleInvalidQuery(new InvalidKeysetQueryException("Invalid cursor x."));
+        assertTrue(error.getStatusCode().equals(HttpStatus.BAD_REQUEST));
+        assertTrue(error.getBody() instanceof ErrorResponse);
+    }
+
     /**
      * Tests /job/status
      */
@@ -268,6 +347,46 @@ public class JobControllerTests {
         assertTrue(entity.getStatusCode().equals(HttpStatus.OK));
         Map<String, Object> stats = entity.getBody();
         assertTrue(stats.keySet().size() >= 8);
+        assertTrue(stats.containsKey("statusUpdates"));
+        assertTrue(stats.containsKey("updateShards"));
+        assertTrue(stats.containsKey("statusCache"));
+        assertTrue(stats.containsKey("statusWaiters"));
+        assertTrue(stats.containsKey("outboundMessages"));
+        assertTrue(stats.containsKey("outbox"));
+        assertTrue(stats.containsKey("archive"));
+    }
+
+    /**
+     * Test /admin/outbox/replay
+     */
+    @Test
+    public void testReplayOutbox() {
+        // Mock
+        when(messageOutbox.replay(any(Date.class))).thenReturn(3);
+        ReflectionTestUtils.setField(jobController, "REPLAY_USERS", "operator, admin");
+        Principal user = Mockito.mock(Principal.class);
+        when(user.getName()).thenReturn("admin");
+
+        // Test
+        ResponseEntity<PiazzaResponse> entity = jobController.replayOutbox("2018-01-01T00:00:00Z", user);
+
+        // Verify
+        assertTrue(entity.getStatusCode().equals(HttpStatus.OK));
+        assertTrue(entity.getBody() instanceof SuccessResponse);
+        Mockito.verify(messageOutbox).replay(new DateTime("2018-01-01T00:00:00Z").toDate());
+
+        // Test an invalid time
+        entity = jobController.replayOutbox("yesterday", user);
+        assertTrue(entity.getStatusCode().equals(HttpStatus.BAD_REQUEST));
+
+        // Test users that may not replay messages
+        when(user.getName()).thenReturn("tester");
+        assertTrue(jobController.replayOutbox("2018-01-01T00:00:00Z", user).getStatusCode().equals(HttpStatus.FORBIDDEN));
+        assertTrue(jobController.replayOutbox("2018-01-01T00:00:00Z", null).getStatusCode().equals(HttpStatus.FORBIDDEN));
+        ReflectionTestUtils.setField(jobController, "REPLAY_USERS", "");
+        when(user.getName()).thenReturn("admin");
+        assertTrue(jobController.replayOutbox("2018-01-01T00:00:00Z", user).getStatusCode().equals(HttpStatus.FORBIDDEN));
+        Mockito.verify(messageOutbox, Mockito.times(1)).replay(any(Date.class));
     }
 
     /**
@@ -294,4 +413,32 @@ public class JobControllerTests {
         response = jobController.requestJob(mockRequest, "");
         assertTrue(response.getBody() instanceof ErrorResponse);
     }
+
+    /**
+     * Tests the endpoint to request a batch of jobs
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRequestJobs() throws Exception {
+        // Mock
+        ReflectionTestUtils.setField(jobController, "BATCH_MAX_SIZE", 2);
+        PiazzaJobRequest mockRequest = new PiazzaJobRequest();
+        mockRequest.jobType = new AbortJob("123456");
+        when(requestJobHandler.processBatch(Mockito.anyList())).thenReturn(mockJobs);
+
+        // Test
+        ResponseEntity<PiazzaResponse> response = jobController.requestJobs(Arrays.asList(mockRequest, mockRequest));
+        assertTrue(response.getStatusCode().equals(HttpStatus.OK));
+        assertTrue(((JobListResponse) response.getBody()).getData().get(0).getJobId().equals(mockJob.getJobId()));
+
+        // Test empty and oversized batches
+        assertTrue(jobController.requestJobs(new ArrayList<PiazzaJobRequest>()).getStatusCode().equals(HttpStatus.BAD_REQUEST));
+        response = jobController.requestJobs(Arrays.asList(mockRequest, mockRequest, mockRequest));
+        assertTrue(response.getStatusCode().equals(HttpStatus.BAD_REQUEST));
+
+        // Test an Error
+        when(requestJobHandler.processBatch(Mockito.anyList())).thenThrow(new PiazzaJobException("Broker unavailable"));
+        response = jobController.requestJobs(Arrays.asList(mockRequest));
+        assertTrue(response.getStatusCode().equals(HttpStatus.INTERNAL_SERVER_ERROR));
+    }
 }
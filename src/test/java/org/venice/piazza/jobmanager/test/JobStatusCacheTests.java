@@ -0,0 +1,118 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.jobmanager.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.common.hibernate.dao.job.JobDao;
+import org.venice.piazza.common.hibernate.entity.JobEntity;
+import org.venice.piazza.jobmanager.database.JobStatusCache;
+
+import model.job.Job;
+import model.status.StatusUpdate;
+
+/**
+ * Tests the read-through cache of Job Status
+ */
+public class JobStatusCacheTests {
+    @Mock
+    private JobDao jobDao;
+    @InjectMocks
+    private JobStatusCache cache;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(cache, "MAX_SIZE", 100L);
+        ReflectionTestUtils.setField(cache, "ACTIVE_TTL_MS", 60000L);
+        ReflectionTestUtils.setField(cache, "FINAL_TTL_MS", 600000L);
+        cache.initialize();
+    }
+
+    /**
+     * Tests that repeated reads are served from the cache until the Job is written
+     */
+    @Test
+    public void testReadThrough() {
+        // Mock
+        when(jobDao.getJobByJobId("job1")).thenReturn(getEntity("job1", StatusUpdate.STATUS_RUNNING));
+
+        // Test
+        assertEquals("job1", cache.getJob("job1").getJobId());
+        assertEquals("job1", cache.getJob("job1").getJobId());
+        verify(jobDao, times(1)).getJobByJobId("job1");
+
+        // A write evicts the Job
+        cache.invalidate("job1");
+        cache.getJob("job1");
+        verify(jobDao, times(2)).getJobByJobId("job1");
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(2L, stats.get("misses"));
+        assertTrue((Double) stats.get("hitRate") > 0);
+    }
+
+    /**
+     * Tests that Jobs that are still running are re-read once the active TTL passes, while final Jobs are not
+     */
+    @Test
+    public void testActiveTtl() {
+        // Mock
+        ReflectionTestUtils.setField(cache, "ACTIVE_TTL_MS", 0L);
+        when(jobDao.getJobByJobId("running")).thenReturn(getEntity("running", StatusUpdate.STATUS_RUNNING));
+        when(jobDao.getJobByJobId("done")).thenReturn(getEntity("done", StatusUpdate.STATUS_SUCCESS));
+
+        // Test
+        cache.getJob("running");
+        cache.getJob("done");
+        cache.getJob("done");
+
+        // Verify
+        verify(jobDao, times(2)).getJobByJobId("running");
+        verify(jobDao, times(1)).getJobByJobId("done");
+    }
+
+    /**
+     * Tests that missing Jobs are not cached
+     */
+    @Test
+    public void testMissingJob() {
+        assertNull(cache.getJob("missing"));
+        when(jobDao.getJobByJobId("missing")).thenReturn(getEntity("missing", StatusUpdate.STATUS_PENDING));
+        assertEquals("missing", cache.getJob("missing").getJobId());
+    }
+
+    private JobEntity getEntity(String jobId, String status) {
+        Job job = new Job();
+        job.setJobId(jobId);
+        job.setStatus(status);
+        return new JobEntity(job);
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.jobmanager.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.jobmanager.database.JobStatusCache;
+import org.venice.piazza.jobmanager.messaging.JobStatusNotifier;
+
+import model.job.Job;
+import model.status.StatusUpdate;
+
+/**
+ * Tests the notification of clients waiting on Jobs
+ */
+public class JobStatusNotifierTests {
+    @Mock
+    private JobStatusCache jobStatusCache;
+    @Mock
+    private ExecutorService notificationExecutor;
+    @Mock
+    private JobStatusNotifier.Listener listener;
+    @InjectMocks
+    private JobStatusNotifier notifier;
+
+    private Job job;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(notifier, "notificationExecutor", notificationExecutor);
+
+        job = new Job();
+        job.setJobId("job1");
+        job.setStatus(StatusUpdate.STATUS_RUNNING);
+        when(jobStatusCache.getJob("job1")).thenReturn(job);
+
+        // Run notifications on the calling thread
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(notificationExecutor).execute(any(Runnable.class));
+    }
+
+    /**
+     * Tests that listeners are notified of updates to their Job only, until they unsubscribe
+     */
+    @Test
+    public void testPublish() {
+        // Test
+        assertEquals(job, notifier.subscribe("job1", listener));
+        assertEquals(1, notifier.getStats().get("listeners"));
+        notifier.publish(Arrays.asList("job1", "job2"));
+        notifier.unsubscribe("job1", listener);
+        notifier.publish(Collections.singletonList("job1"));
+
+        // Verify
+        verify(listener, times(1)).onJobUpdated(job);
+        assertEquals(0, notifier.getStats().get("jobs"));
+        assertEquals(1L, notifier.getStats().get("notifications"));
+    }
+
+    /**
+     * Tests that nothing is scheduled when no one is waiting
+     */
+    @Test
+    public void testNoListeners() {
+        notifier.publish(Collections.singletonList("job1"));
+        notifier.recheck();
+        verify(notificationExecutor, never()).execute(any(Runnable.class));
+    }
+
+    /**
+     * Tests that a failing listener does not prevent others from being notified
+     */
+    @Test
+    public void testListenerError() {
+        // Mock
+        JobStatusNotifier.Listener failing = new JobStatusNotifier.Listener() {
+            @Override
+            public void onJobUpdated(Job updated) {
+                throw new IllegalStateException("Client disconnected");
+            }
+        };
+        notifier.subscribe("job1", failing);
+        notifier.subscribe("job1", listener);
+
+        // Test
+        notifier.recheck();
+
+        // Verify
+        verify(listener, times(1)).onJobUpdated(job);
+        assertTrue((Integer) notifier.getStats().get("listeners") == 2);
+    }
+
+    /**
+     * Tests that notifications are dropped, rather than queued without bound, while the notification threads are busy
+     */
+    @Test
+    public void testDroppedNotifications() throws InterruptedException {
+        // Mock
+        JobStatusNotifier busyNotifier = new JobStatusNotifier();
+        ReflectionTestUtils.setField(busyNotifier, "jobStatusCache", jobStatusCache);
+        ReflectionTestUtils.setField(busyNotifier, "NOTIFY_THREADS", 1);
+        ReflectionTestUtils.setField(busyNotifier, "NOTIFY_QUEUE_CAPACITY", 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        busyNotifier.subscribe("job1", new JobStatusNotifier.Listener() {
+            @Override
+            public void onJobUpdated(Job updated) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        busyNotifier.initialize();
+
+        // Test; the first notification occupies the thread, the second is queued and the third dropped
+        try {
+            busyNotifier.publish(Collections.singletonList("job1"));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            busyNotifier.publish(Collections.singletonList("job1"));
+            busyNotifier.publish(Collections.singletonList("job1"));
+
+            // Verify
+            assertEquals(1L, busyNotifier.getStats().get("droppedNotifications"));
+        } finally {
+            release.countDown();
+            busyNotifier.shutdown();
+        }
+    }
+}
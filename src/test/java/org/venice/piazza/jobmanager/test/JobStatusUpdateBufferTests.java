@@ -0,0 +1,164 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.jobmanager.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.venice.piazza.jobmanager.database.DatabaseAccessor;
+import org.venice.piazza.jobmanager.database.JobStatusUpdateBuffer;
+import org.venice.piazza.jobmanager.messaging.JobStatusNotifier;
+
+import model.job.JobProgress;
+import model.job.result.type.TextResult;
+import model.status.StatusUpdate;
+import util.PiazzaLogger;
+
+/**
+ * Tests the write-behind buffer for Job Status Updates
+ */
+public class JobStatusUpdateBufferTests {
+    @Mock
+    private DatabaseAccessor accessor;
+    @Mock
+    private JobStatusNotifier statusNotifier;
+    @Mock
+    private PiazzaLogger logger;
+    @InjectMocks
+    private JobStatusUpdateBuffer buffer;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    /**
+     * Tests that updates for the same Job are coalesced into one write, and a finalized status is not overwritten
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCoalesce() {
+        // Mock
+        when(accessor.updateJobStatuses(anyMapOf(String.class, StatusUpdate.class))).thenReturn(2);
+
+        // Test
+        buffer.submit(getUpdate("job1", StatusUpdate.STATUS_RUNNING, 10), null);
+        buffer.submit(getUpdate("job1", StatusUpdate.STATUS_RUNNING, 50), null);
+        buffer.submit(getUpdate("job2", StatusUpdate.STATUS_RUNNING, 20), null);
+        StatusUpdate success = getUpdate("job1", StatusUpdate.STATUS_SUCCESS, 100);
+        success.setResult(new TextResult("Done"));
+        buffer.submit(success, null);
+        // Out of order update that arrives after the Job has finished
+        buffer.submit(getUpdate("job1", StatusUpdate.STATUS_RUNNING, 90), null);
+        assertEquals(2, buffer.getStats().get("queueDepth"));
+        buffer.flush();
+
+        // Verify
+        ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(accessor, times(1)).updateJobStatuses(captor.capture());
+        Map<String, StatusUpdate> batch = captor.getValue();
+        assertEquals(2, batch.size());
+        assertEquals(StatusUpdate.STATUS_SUCCESS, batch.get("job1").getStatus());
+        assertEquals(90, batch.get("job1").getProgress().getPercentComplete().intValue());
+        assertTrue(batch.get("job1").getResult() == success.getResult());
+        assertEquals(StatusUpdate.STATUS_RUNNING, batch.get("job2").getStatus());
+        verify(statusNotifier, times(1)).publish(batch.keySet());
+
+        Map<String, Object> stats = buffer.getStats();
+        assertEquals(0, stats.get("queueDepth"));
+        assertEquals(5L, stats.get("updatesReceived"));
+        assertEquals(3L, stats.get("updatesCoalesced"));
+        assertEquals(2L, stats.get("jobsWritten"));
+
+        // Nothing further to write
+        buffer.flush();
+        verify(accessor, times(1)).updateJobStatuses(anyMapOf(String.class, StatusUpdate.class));
+    }
+
+    /**
+     * Tests that updates are written one Job at a time if the batch fails
+     */
+    @Test
+    public void testFlushFailure() {
+        // Mock
+        doThrow(new RuntimeException("Batch failed")).when(accessor).updateJobStatuses(anyMapOf(String.class, StatusUpdate.class));
+        doThrow(new RuntimeException("Job failed")).when(accessor).updateJobStatus(eq("job1"), any(StatusUpdate.class));
+
+        JobStatusUpdateBuffer.Callback failedCallback = mock(JobStatusUpdateBuffer.Callback.class);
+        JobStatusUpdateBuffer.Callback writtenCallback = mock(JobStatusUpdateBuffer.Callback.class);
+
+        // Test
+        buffer.submit(getUpdate("job1", StatusUpdate.STATUS_RUNNING, 10), failedCallback);
+        buffer.submit(getUpdate("job2", StatusUpdate.STATUS_RUNNING, 20), writtenCallback);
+        buffer.flush();
+
+        // Verify
+        verify(accessor, times(1)).updateJobStatus(eq("job2"), any(StatusUpdate.class));
+        Map<String, Object> stats = buffer.getStats();
+        assertEquals(1L, stats.get("flushFailures"));
+        assertEquals(1L, stats.get("jobsWritten"));
+        verify(failedCallback, times(1)).onFailure(any(Exception.class));
+        verify(failedCallback, never()).onPersisted();
+        verify(writtenCallback, times(1)).onPersisted();
+        verify(writtenCallback, never()).onFailure(any(Exception.class));
+    }
+
+    /**
+     * Tests that the callback of every coalesced update is completed, and only once the batch is written
+     */
+    @Test
+    public void testCallbacks() {
+        // Mock
+        when(accessor.updateJobStatuses(anyMapOf(String.class, StatusUpdate.class))).thenReturn(1);
+        JobStatusUpdateBuffer.Callback firstCallback = mock(JobStatusUpdateBuffer.Callback.class);
+        JobStatusUpdateBuffer.Callback secondCallback = mock(JobStatusUpdateBuffer.Callback.class);
+
+        // Test
+        buffer.submit(getUpdate("job1", StatusUpdate.STATUS_RUNNING, 10), firstCallback);
+        buffer.submit(getUpdate("job1", StatusUpdate.STATUS_RUNNING, 50), secondCallback);
+
+        // Verify; nothing is complete until the flush
+        verifyZeroInteractions(firstCallback, secondCallback);
+        buffer.flush();
+        verify(firstCallback, times(1)).onPersisted();
+        verify(secondCallback, times(1)).onPersisted();
+        verify(accessor, times(1)).updateJobStatuses(anyMapOf(String.class, StatusUpdate.class));
+    }
+
+    private StatusUpdate getUpdate(String jobId, String status, int percent) {
+        StatusUpdate statusUpdate = new StatusUpdate(status, new JobProgress(percent));
+        statusUpdate.setJobId(jobId);
+        return statusUpdate;
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.jobmanager.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.venice.piazza.jobmanager.database.JobStatusUpdater;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import model.job.JobProgress;
+import model.status.StatusUpdate;
+
+/**
+ * Tests the conditional, in-place updates of Job Status
+ */
+public class JobStatusUpdaterTests {
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private Session session;
+    @Mock
+    private Connection connection;
+    @Mock
+    private PreparedStatement patchStatement;
+    @Mock
+    private PreparedStatement selectStatement;
+    @Mock
+    private PreparedStatement compareAndSetStatement;
+    @Mock
+    private ResultSet resultSet;
+    @InjectMocks
+    private JobStatusUpdater updater;
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws SQLException {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(updater, "mapper", mapper);
+        ReflectionTestUtils.setField(updater, "MAX_ATTEMPTS", 3);
+
+        when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(mock(TransactionStatus.class));
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        when(session.doReturningWork(any(ReturningWork.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                try {
+                    return ((ReturningWork<Object>) invocation.getArguments()[0]).execute(connection);
+                } catch (SQLException exception) {
+                    // Hibernate reports SQL errors as runtime exceptions
+                    throw new RuntimeException(exception);
+                }
+            }
+        });
+        when(connection.prepareStatement(startsWith("UPDATE job SET data = data ||"))).thenReturn(patchStatement);
+        when(connection.prepareStatement(startsWith("SELECT"))).thenReturn(selectStatement);
+        when(connection.prepareStatement(startsWith("UPDATE job SET data = CAST"))).thenReturn(compareAndSetStatement);
+        when(selectStatement.executeQuery()).thenReturn(resultSet);
+    }
+
+    /**
+     * Tests that all updates are sent as one batch of conditional statements
+     */
+    @Test
+    public void testPatch() throws Exception {
+        // Mock
+        when(patchStatement.executeBatch()).thenReturn(new int[] { 1, 0 });
+        Map<String, StatusUpdate> updates = new LinkedHashMap<>();
+        updates.put("job1", new StatusUpdate(StatusUpdate.STATUS_RUNNING, new JobProgress(50)));
+        updates.put("missing", new StatusUpdate(StatusUpdate.STATUS_RUNNING));
+
+        // Test
+        assertEquals(1, updater.updateJobStatuses(updates));
+
+        // Verify
+        verify(patchStatement, times(2)).addBatch();
+        verify(patchStatement, times(1)).executeBatch();
+        verify(patchStatement).setString(3, "job1");
+        verify(patchStatement).setString(3, "missing");
+        verify(patchStatement, times(2)).setString(2, String.format("{\"status\":\"%s\"}", StatusUpdate.STATUS_RUNNING));
+        ArgumentCaptor<String> patch = ArgumentCaptor.forClass(String.class);
+        verify(patchStatement, times(2)).setString(eq(1), patch.capture());
+        assertEquals(50, mapper.readTree(patch.getAllValues().get(0)).path("progress").path("percentComplete").asInt());
+        assertEquals("{}", patch.getAllValues().get(1));
+        verify(connection, never()).prepareStatement(startsWith("SELECT"));
+
+        // Nothing to write
+        assertEquals(0, updater.updateJobStatuses(Collections.<String, StatusUpdate> emptyMap()));
+        verify(patchStatement, times(1)).executeBatch();
+    }
+
+    /**
+     * Tests the compare-and-set fallback for databases that cannot merge JSON in place
+     */
+    @Test
+    public void testCompareAndSetFallback() throws Exception {
+        // Mock
+        when(patchStatement.executeBatch()).thenThrow(new SQLException("operator does not exist: jsonb || jsonb", "42883"));
+        String stored = String.format("{\"jobId\":\"job1\",\"status\":\"%s\"}", StatusUpdate.STATUS_SUCCESS);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getString(1)).thenReturn(stored);
+        // The first write loses to a concurrent update, and is retried
+        when(compareAndSetStatement.executeUpdate()).thenReturn(0, 1);
+
+        // Test
+        StatusUpdate update = new StatusUpdate(StatusUpdate.STATUS_RUNNING, new JobProgress(90));
+        assertEquals(1, updater.updateJobStatuses(Collections.singletonMap("job1", update)));
+
+        // Verify the finalized status is kept, and the write is conditional on the stored JSON
+        ArgumentCaptor<String> written = ArgumentCaptor.forClass(String.class);
+        verify(compareAndSetStatement, times(2)).setString(eq(1), written.capture());
+        JsonNode job = mapper.readTree(written.getValue());
+        assertEquals(StatusUpdate.STATUS_SUCCESS, job.path("status").asText());
+        assertEquals(90, job.path("progress").path("percentComplete").asInt());
+        verify(compareAndSetStatement, times(2)).setString(3, stored);
+
+        // The fallback is remembered
+        updater.updateJobStatuses(Collections.singletonMap("job1", update));
+        verify(patchStatement, times(1)).executeBatch();
+    }
+
+    /**
+     * Tests that the compare-and-set gives up after repeated concurrent modifications
+     */
+    @Test(expected = OptimisticLockingFailureException.class)
+    public void testCompareAndSetConflict() throws Exception {
+        // Mock
+        when(patchStatement.executeBatch()).thenThrow(new SQLException("operator does not exist: jsonb || jsonb", "42883"));
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getString(1)).thenReturn("{\"jobId\":\"job1\"}");
+        when(compareAndSetStatement.executeUpdate()).thenReturn(0);
+
+        // Test
+        updater.updateJobStatuses(Collections.singletonMap("job1", new StatusUpdate(StatusUpdate.STATUS_RUNNING)));
+    }
+
+    /**
+     * Tests that errors other than an unsupported operator are not hidden by the fallback
+     */
+    @Test(expected = RuntimeException.class)
+    public void testPatchError() throws Exception {
+        when(patchStatement.executeBatch()).thenThrow(new SQLException("connection reset", "08006"));
+        try {
+            updater.updateJobStatuses(Collections.singletonMap("job1", new StatusUpdate(StatusUpdate.STATUS_RUNNING)));
+        } finally {
+            verify(compareAndSetStatement, never()).executeUpdate();
+            verify(compareAndSetStatement, never()).setString(anyInt(), anyString());
+        }
+    }
+
+    /**
+     * Tests applying an update to the JSON of a Job
+     */
+    @Test
+    public void testApplyStatusUpdate() throws Exception {
+        String running = String.format("{\"jobId\":\"job1\",\"status\":\"%s\"}", StatusUpdate.STATUS_RUNNING);
+        JsonNode job = mapper.readTree(updater.applyStatusUpdate(running, new StatusUpdate(StatusUpdate.STATUS_SUCCESS)));
+        assertEquals(StatusUpdate.STATUS_SUCCESS, job.path("status").asText());
+        assertEquals("job1", job.path("jobId").asText());
+
+        String failed = String.format("{\"jobId\":\"job1\",\"status\":\"%s\"}", StatusUpdate.STATUS_FAIL);
+        job = mapper.readTree(updater.applyStatusUpdate(failed, new StatusUpdate(StatusUpdate.STATUS_RUNNING, new JobProgress(10))));
+        assertEquals(StatusUpdate.STATUS_FAIL, job.path("status").asText());
+        assertTrue(job.has("progress"));
+    }
+}
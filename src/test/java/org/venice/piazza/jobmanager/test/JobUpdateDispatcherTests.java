@@ -0,0 +1,100 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.jobmanager.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.jobmanager.messaging.JobUpdateDispatcher;
+
+/**
+ * Tests the sharded dispatch of Job Updates
+ */
+public class JobUpdateDispatcherTests {
+    private JobUpdateDispatcher dispatcher;
+
+    @Before
+    public void setup() {
+        dispatcher = new JobUpdateDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "SHARDS", 4);
+        ReflectionTestUtils.setField(dispatcher, "SHUTDOWN_TIMEOUT_MS", 5000L);
+        dispatcher.initialize();
+    }
+
+    @After
+    public void teardown() {
+        dispatcher.shutdown();
+    }
+
+    /**
+     * Tests that updates for the same Job run in the order they were dispatched
+     */
+    @Test
+    public void testOrderPerJob() throws Exception {
+        final List<Integer> job1 = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> job2 = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(200);
+        for (int i = 0; i < 100; i++) {
+            final int sequence = i;
+            dispatcher.dispatch("job1", new Runnable() {
+                @Override
+                public void run() {
+                    job1.add(sequence);
+                    latch.countDown();
+                }
+            });
+            dispatcher.dispatch("job2", new Runnable() {
+                @Override
+                public void run() {
+                    job2.add(sequence);
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, job1.get(i).intValue());
+            assertEquals(i, job2.get(i).intValue());
+        }
+        Map<String, Object> stats = dispatcher.getStats();
+        assertEquals(4, stats.get("shards"));
+        assertEquals(200L, stats.get("dispatched"));
+    }
+
+    /**
+     * Tests that a Job is always owned by the same shard
+     */
+    @Test
+    public void testShard() {
+        int shard = dispatcher.getShard("job1");
+        assertTrue(shard >= 0 && shard < 4);
+        assertEquals(shard, dispatcher.getShard(new String("job1")));
+        // Updates with no Job Id are still dispatched
+        assertEquals(0, dispatcher.getShard(null));
+    }
+}
@@ -20,6 +20,7 @@ import static org.mockito.Matchers.anyString;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -28,9 +29,12 @@ import org.mockito.Spy;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
 
 import org.venice.piazza.jobmanager.database.DatabaseAccessor;
+import org.venice.piazza.jobmanager.database.JobStatusUpdateBuffer;
 import org.venice.piazza.jobmanager.messaging.JobMessager;
+import org.venice.piazza.jobmanager.messaging.JobUpdateDispatcher;
 import org.venice.piazza.jobmanager.messaging.handler.AbortJobHandler;
 import org.venice.piazza.jobmanager.messaging.handler.RepeatJobHandler;
 import org.venice.piazza.jobmanager.messaging.handler.RequestJobHandler;
@@ -64,6 +68,10 @@ public class MessagerTests {
 	private RepeatJobHandler repeatJobHandler;
 	@Mock
 	private RequestJobHandler requestJobHandler;
+	@Mock
+	private JobUpdateDispatcher updateDispatcher;
+	@Mock
+	private Channel channel;
 	@Spy
 	private ObjectMapper objectMapper;
 
@@ -94,16 +102,38 @@ public class MessagerTests {
 		PiazzaJobRequest jobRequest = new PiazzaJobRequest();
 
 		// Verify the Messages are appropriately handled
-		Mockito.doNothing().when(updateStatusHandler).process(any(StatusUpdate.class));
-		jobMessager.processUpdateMessage(mapper.writeValueAsString(statusUpdate));
+		statusUpdate.setJobId("job1");
+		jobMessager.processUpdateMessage(mapper.writeValueAsString(statusUpdate), channel, 1L, false);
+		// The update is processed on the Job's shard, and acknowledged once it is written
+		ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+		Mockito.verify(updateDispatcher).dispatch(Mockito.eq("job1"), task.capture());
+		task.getValue().run();
+		ArgumentCaptor<JobStatusUpdateBuffer.Callback> callback = ArgumentCaptor.forClass(JobStatusUpdateBuffer.Callback.class);
+		Mockito.verify(updateStatusHandler).process(any(StatusUpdate.class), callback.capture());
+		Mockito.verify(channel, Mockito.never()).basicAck(Mockito.anyLong(), Mockito.anyBoolean());
+		callback.getValue().onPersisted();
+		Mockito.verify(channel).basicAck(1L, false);
+		// Updates that could not be written are returned to the queue
+		callback.getValue().onFailure(new RuntimeException("Database Error"));
+		Mockito.verify(channel).basicNack(1L, false, true);
+		// Redelivered updates that still could not be written are dead-lettered
+		jobMessager.processUpdateMessage(mapper.writeValueAsString(statusUpdate), channel, 3L, true);
+		Mockito.verify(updateDispatcher, Mockito.times(2)).dispatch(Mockito.eq("job1"), task.capture());
+		task.getValue().run();
+		Mockito.verify(updateStatusHandler, Mockito.times(2)).process(any(StatusUpdate.class), callback.capture());
+		callback.getValue().onFailure(new RuntimeException("Database Error"));
+		Mockito.verify(channel).basicNack(3L, false, false);
 
 		Mockito.doNothing().when(requestJobHandler).process(any(PiazzaJobRequest.class), Mockito.anyString());
 		jobMessager.processRequestMessage(mapper.writeValueAsString(jobRequest));
 
 		//Test the exceptions.
 		Mockito.doThrow(new IOException()).when(objectMapper).readValue(anyString(), any(Class.class));
-		jobMessager.processUpdateMessage(mapper.writeValueAsString(statusUpdate));
+		jobMessager.processUpdateMessage(mapper.writeValueAsString(statusUpdate), channel, 2L, false);
 		jobMessager.processRequestMessage(mapper.writeValueAsString(jobRequest));
+		// Unreadable updates are acknowledged, so they are not redelivered
+		Mockito.verify(channel).basicAck(2L, false);
+		Mockito.verify(updateDispatcher, Mockito.times(2)).dispatch(anyString(), any(Runnable.class));
 	}
 
 }
\ No newline at end of file
@@ -15,19 +15,30 @@
  **/
 package org.venice.piazza.jobmanager.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.List;
+
 import model.job.Job;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentMatcher;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
 
 import org.venice.piazza.jobmanager.database.DatabaseAccessor;
 import org.venice.piazza.jobmanager.messaging.handler.RequestJobHandler;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher.OutboundMessage;
+import exception.PiazzaJobException;
+import messaging.job.JobMessageFactory;
 import model.job.type.RepeatJob;
 import model.request.PiazzaJobRequest;
 import org.springframework.test.util.ReflectionTestUtils;
@@ -48,7 +59,7 @@ public class RequestHandlerTests {
 	@Mock
 	private UUIDFactory uuidFactory;
 	@Mock
-	private RabbitTemplate rabbitTemplate;
+	private OutboundMessagePublisher outboundPublisher;
 
 	@InjectMocks
 	private RequestJobHandler requestJobHandler;
@@ -67,7 +78,7 @@ public class RequestHandlerTests {
 	 * Test requesting a Job
 	 */
 	@Test
-	public void testRequestJob()  {
+	public void testRequestJob() throws Exception {
 		// Mock
 		PiazzaJobRequest mockRequest = new PiazzaJobRequest();
 		mockRequest.jobType = new RepeatJob("123456");
@@ -75,13 +86,66 @@ public class RequestHandlerTests {
 
 		//Test with an empty id. One should be assigned.
 		requestJobHandler.process(mockRequest, "");
-		Mockito.verify(this.accessor, Mockito.times(1)).addJob(Mockito.any(Job.class));
+		Mockito.verify(this.accessor, Mockito.times(1)).addJob(Mockito.any(Job.class), Mockito.any(OutboundMessage.class));
 
 		//Test with a random id.
 		requestJobHandler.process(mockRequest, "123456");
-		Mockito.verify(this.accessor, Mockito.times(2)).addJob(Mockito.any(Job.class));
+		Mockito.verify(this.accessor, Mockito.times(2)).addJob(Mockito.any(Job.class), Mockito.any(OutboundMessage.class));
+		// The Job message is written with the Job, and published by the outbox
+		String queueName = String.format(JobMessageFactory.TOPIC_TEMPLATE, "RepeatJob", null);
+		Mockito.verify(outboundPublisher, Mockito.times(2)).createMessage(Mockito.eq(queueName), Mockito.any(Job.class));
+		Mockito.verify(outboundPublisher, Mockito.never()).publish(Mockito.anyString(), Mockito.any());
 
 		//Generate a nullPointer exception. It should not propagate up.
 		requestJobHandler.process(mockRequest, null);
 	}
+
+	/**
+	 * Test requesting a batch of Jobs
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRequestJobBatch() throws Exception {
+		// Mock
+		PiazzaJobRequest mockRequest = new PiazzaJobRequest();
+		mockRequest.jobType = new RepeatJob("123456");
+		when(uuidFactory.getUUID()).thenReturn("1", "2");
+
+		// Test
+		List<Job> jobs = requestJobHandler.processBatch(Arrays.asList(mockRequest, mockRequest));
+
+		// Verify. The Jobs are saved together with their messages.
+		assertEquals("1", jobs.get(0).getJobId());
+		assertEquals("2", jobs.get(1).getJobId());
+		Mockito.verify(outboundPublisher, Mockito.times(2)).createMessage(Mockito.anyString(), Mockito.any(Job.class));
+		Mockito.verify(accessor, Mockito.times(1)).addJobs(Mockito.eq(jobs), Mockito.argThat(new ArgumentMatcher<List<OutboundMessage>>() {
+			@Override
+			public boolean matches(Object argument) {
+				return ((List<OutboundMessage>) argument).size() == 2;
+			}
+		}));
+		Mockito.verify(outboundPublisher, Mockito.never()).publishConfirmed(Mockito.anyListOf(OutboundMessage.class));
+	}
+
+	/**
+	 * Test that no Jobs of a batch are saved if any of their messages cannot be created
+	 */
+	@Test
+	public void testRequestJobBatchNotSerialized() throws Exception {
+		// Mock
+		PiazzaJobRequest mockRequest = new PiazzaJobRequest();
+		mockRequest.jobType = new RepeatJob("123456");
+		when(uuidFactory.getUUID()).thenReturn("1", "2");
+		when(outboundPublisher.createMessage(Mockito.anyString(), Mockito.any(Job.class))).thenReturn(null)
+				.thenThrow(new JsonMappingException("Oops"));
+
+		// Test
+		try {
+			requestJobHandler.processBatch(Arrays.asList(mockRequest, mockRequest));
+			fail("Expected the batch to fail");
+		} catch (PiazzaJobException exception) {
+			// Verify
+			Mockito.verify(accessor, Mockito.never()).addJobs(Mockito.anyListOf(Job.class), Mockito.anyListOf(OutboundMessage.class));
+		}
+	}
 }
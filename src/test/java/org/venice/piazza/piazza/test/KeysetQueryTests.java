@@ -0,0 +1,99 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.piazza.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.venice.piazza.common.hibernate.entity.JobEntity;
+import org.venice.piazza.piazza.database.InvalidKeysetQueryException;
+import org.venice.piazza.piazza.database.KeysetPage;
+import org.venice.piazza.piazza.database.KeysetQuery;
+
+import model.job.Job;
+
+/**
+ * Tests the description of keyset paginated queries
+ */
+public class KeysetQueryTests {
+	/**
+	 * Tests the defaults and the fluent settings
+	 */
+	@Test
+	public void testQuery() {
+		KeysetQuery<JobEntity> query = new KeysetQuery<>(JobEntity.class, Job.class, "jobId");
+		assertEquals("jobId", query.getSortBy());
+		assertFalse(query.isDescending());
+		assertEquals(KeysetQuery.CountMode.NONE, query.getCountMode());
+
+		query.orderBy("metadata.createdOn", "DESC").where("status", "Running").where("createdBy", "").after("").limit(25);
+		assertEquals("metadata.createdOn", query.getSortBy());
+		assertTrue(query.isDescending());
+		assertEquals(Collections.singletonMap("status", "Running"), query.getFilters());
+		assertNull(query.getCursor());
+		assertEquals(25, query.getLimit());
+
+		// The Id is sorted by if no field is given
+		assertEquals("jobId", query.orderBy(null, "asc").getSortBy());
+	}
+
+	/**
+	 * Tests that fields that could alter the SQL are rejected
+	 */
+	@Test(expected = InvalidKeysetQueryException.class)
+	public void testInvalidField() {
+		new KeysetQuery<>(JobEntity.class, Job.class, "jobId").orderBy("createdOn}', '') || '", "asc");
+	}
+
+	/**
+	 * Tests that page sizes must be positive
+	 */
+	@Test(expected = InvalidKeysetQueryException.class)
+	public void testInvalidLimit() {
+		new KeysetQuery<>(JobEntity.class, Job.class, "jobId").limit(0);
+	}
+
+	/**
+	 * Tests the parsing of count modes
+	 */
+	@Test
+	public void testCountMode() {
+		assertEquals(KeysetQuery.CountMode.NONE, KeysetQuery.CountMode.fromString(null));
+		assertEquals(KeysetQuery.CountMode.EXACT, KeysetQuery.CountMode.fromString("exact"));
+		assertEquals(KeysetQuery.CountMode.ESTIMATE, KeysetQuery.CountMode.fromString("Estimate"));
+		try {
+			KeysetQuery.CountMode.fromString("approximately");
+			assertTrue(false);
+		} catch (InvalidKeysetQueryException exception) {
+			assertTrue(exception.getMessage().contains("approximately"));
+		}
+	}
+
+	/**
+	 * Tests that the next cursor is only returned as a header if there is a next page
+	 */
+	@Test
+	public void testHeaders() {
+		assertEquals("next", new KeysetPage<>(Collections.emptyList(), "next", null).getHeaders()
+				.getFirst(KeysetPage.NEXT_CURSOR_HEADER));
+		assertFalse(new KeysetPage<>(Collections.emptyList(), null, null).getHeaders().containsKey(KeysetPage.NEXT_CURSOR_HEADER));
+	}
+}
@@ -0,0 +1,320 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.piazza.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.jdbc.Work;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.amqp.AmqpException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.venice.piazza.piazza.messaging.MessageOutbox;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher.OutboundMessage;
+
+/**
+ * Tests the transactional outbox, and the relay of its messages
+ */
+public class MessageOutboxTests {
+	@Mock
+	private EntityManager entityManager;
+	@Mock
+	private PlatformTransactionManager transactionManager;
+	@Mock
+	private OutboundMessagePublisher outboundPublisher;
+	@Mock
+	private Session session;
+	@Mock
+	private Connection connection;
+	@Mock
+	private Statement statement;
+	@Mock
+	private PreparedStatement indexStatement;
+	@Mock
+	private PreparedStatement insertStatement;
+	@Mock
+	private PreparedStatement claimStatement;
+	@Mock
+	private PreparedStatement markSentStatement;
+	@Mock
+	private PreparedStatement releaseStatement;
+	@Mock
+	private PreparedStatement replayStatement;
+	@Mock
+	private ResultSet indexResults;
+	@Mock
+	private ResultSet claimResults;
+	@InjectMocks
+	private MessageOutbox outbox;
+
+	private final AtomicInteger openTransactions = new AtomicInteger();
+
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setup() throws SQLException {
+		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(outbox, "RELAY_BATCH_SIZE", 10);
+		ReflectionTestUtils.setField(outbox, "RELAY_INTERVAL_MS", 50L);
+		ReflectionTestUtils.setField(outbox, "LEASE_MS", 120000L);
+		ReflectionTestUtils.setField(outbox, "RETENTION_HOURS", 24);
+		ReflectionTestUtils.setField(outbox, "SHUTDOWN_TIMEOUT_MS", 1000L);
+
+		when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenAnswer(new Answer<TransactionStatus>() {
+			@Override
+			public TransactionStatus answer(InvocationOnMock invocation) {
+				openTransactions.incrementAndGet();
+				return mock(TransactionStatus.class);
+			}
+		});
+		Answer<Void> closeTransaction = new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) {
+				openTransactions.decrementAndGet();
+				return null;
+			}
+		};
+		doAnswer(closeTransaction).when(transactionManager).commit(any(TransactionStatus.class));
+		doAnswer(closeTransaction).when(transactionManager).rollback(any(TransactionStatus.class));
+		when(entityManager.unwrap(Session.class)).thenReturn(session);
+		when(session.doReturningWork(any(ReturningWork.class))).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				try {
+					return ((ReturningWork<Object>) invocation.getArguments()[0]).execute(connection);
+				} catch (SQLException exception) {
+					// Hibernate reports SQL errors as runtime exceptions
+					throw new RuntimeException(exception);
+				}
+			}
+		});
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				((Work) invocation.getArguments()[0]).execute(connection);
+				return null;
+			}
+		}).when(session).doWork(any(Work.class));
+		when(connection.createStatement()).thenReturn(statement);
+		when(connection.prepareStatement(startsWith("SELECT 1 FROM pg_class"))).thenReturn(indexStatement);
+		when(connection.prepareStatement(startsWith("SELECT 1 FROM information_schema"))).thenReturn(indexStatement);
+		when(connection.prepareStatement(startsWith("INSERT"))).thenReturn(insertStatement);
+		when(connection.prepareStatement(startsWith("UPDATE message_outbox SET claimed_until = now()"))).thenReturn(claimStatement);
+		when(connection.prepareStatement(startsWith("UPDATE message_outbox SET claimed_until = NULL"))).thenReturn(releaseStatement);
+		when(connection.prepareStatement(startsWith("UPDATE message_outbox SET sent_on = now()"))).thenReturn(markSentStatement);
+		when(connection.prepareStatement(startsWith("UPDATE message_outbox SET sent_on = NULL"))).thenReturn(replayStatement);
+		when(indexStatement.executeQuery()).thenReturn(indexResults);
+		when(indexResults.next()).thenReturn(true);
+		when(claimStatement.executeQuery()).thenReturn(claimResults);
+		when(claimResults.next()).thenReturn(false);
+	}
+
+	@After
+	public void cleanup() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clear();
+		}
+	}
+
+	/**
+	 * Tests that messages are inserted in one batch, in the current transaction
+	 */
+	@Test
+	public void testAdd() throws Exception {
+		// Mock
+		OutboundMessage message = mock(OutboundMessage.class);
+		when(message.getRoutingKey()).thenReturn("Queue-A");
+		when(message.getBody()).thenReturn(new byte[] { 1 });
+		TransactionSynchronizationManager.initSynchronization();
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+
+		// Test
+		outbox.add(Arrays.asList(message, message));
+
+		// Verify
+		verify(insertStatement, times(2)).setString(1, "Queue-A");
+		verify(insertStatement, times(2)).addBatch();
+		verify(insertStatement, times(1)).executeBatch();
+		// The relay is woken once the transaction commits
+		assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+	}
+
+	/**
+	 * Tests that messages cannot be added outside of a transaction
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testAddWithoutTransaction() {
+		outbox.add(Arrays.asList(mock(OutboundMessage.class)));
+	}
+
+	/**
+	 * Tests that the relay leases the unsent messages, publishes them outside of a transaction, and then marks them as
+	 * sent
+	 */
+	@Test
+	public void testRelay() throws Exception {
+		// Mock
+		mockUnsentMessage();
+		final List<Integer> transactionsDuringPublish = new CopyOnWriteArrayList<>();
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) {
+				transactionsDuringPublish.add(openTransactions.get());
+				return null;
+			}
+		}).when(outboundPublisher).publishConfirmed(anyListOf(OutboundMessage.class));
+
+		// Test
+		outbox.initialize();
+
+		// Verify
+		verify(statement, times(1)).execute(startsWith("CREATE TABLE IF NOT EXISTS message_outbox"));
+		verify(outboundPublisher, timeout(1000)).publishConfirmed(argThat(new ArgumentMatcher<List<OutboundMessage>>() {
+			@Override
+			public boolean matches(Object argument) {
+				List<?> messages = (List<?>) argument;
+				return (messages.size() == 1) && "Queue-A".equals(((OutboundMessage) messages.get(0)).getRoutingKey());
+			}
+		}));
+		verify(markSentStatement, timeout(1000)).executeBatch();
+		verify(markSentStatement).setLong(1, 7L);
+		outbox.shutdown();
+		assertEquals(Arrays.asList(0), transactionsDuringPublish);
+		verify(claimStatement, atLeastOnce()).setLong(1, 120000L);
+		verify(connection, atLeastOnce()).prepareStatement(contains("SKIP LOCKED"));
+		verify(releaseStatement, never()).executeBatch();
+	}
+
+	/**
+	 * Tests that messages that are not confirmed are left unsent, and their lease released, for the next attempt
+	 */
+	@Test
+	public void testRelayNotConfirmed() throws Exception {
+		// Mock
+		mockUnsentMessage();
+		doThrow(new AmqpException("Nacked")).when(outboundPublisher).publishConfirmed(anyListOf(OutboundMessage.class));
+
+		// Test
+		outbox.initialize();
+
+		// Verify
+		verify(releaseStatement, timeout(1000)).executeBatch();
+		outbox.shutdown();
+		verify(releaseStatement, atLeastOnce()).setLong(1, 7L);
+		verify(markSentStatement, never()).executeBatch();
+		assertTrue((Long) outbox.getStats().get("failedAttempts") > 0);
+	}
+
+	/**
+	 * Tests that the lease column is added to an outbox table created before it
+	 */
+	@Test
+	public void testAddLeaseColumn() throws Exception {
+		// Mock
+		when(indexResults.next()).thenReturn(false, true);
+
+		// Test
+		outbox.initialize();
+		outbox.shutdown();
+
+		// Verify
+		verify(statement, times(1)).execute(startsWith("ALTER TABLE message_outbox ADD COLUMN claimed_until"));
+		verify(statement, never()).execute(startsWith("CREATE INDEX"));
+	}
+
+	/**
+	 * Tests that messages are claimed with plain row locks if the database does not support SKIP LOCKED
+	 */
+	@Test
+	public void testRelayWithoutSkipLocked() throws Exception {
+		// Mock
+		mockUnsentMessage();
+		when(connection.prepareStatement(contains("SKIP LOCKED"))).thenThrow(new SQLException("Syntax error", "42601"));
+
+		// Test
+		outbox.initialize();
+
+		// Verify
+		verify(outboundPublisher, timeout(1000)).publishConfirmed(anyListOf(OutboundMessage.class));
+		outbox.shutdown();
+		verify(connection, times(1)).prepareStatement(contains("SKIP LOCKED"));
+	}
+
+	/**
+	 * Tests replaying messages sent since a time
+	 */
+	@Test
+	public void testReplay() throws Exception {
+		// Mock
+		when(replayStatement.executeUpdate()).thenReturn(4);
+		Date since = new Date();
+
+		// Test
+		assertEquals(4, outbox.replay(since));
+
+		// Verify
+		verify(replayStatement).setTimestamp(1, new Timestamp(since.getTime()));
+	}
+
+	private void mockUnsentMessage() throws SQLException {
+		when(claimResults.next()).thenReturn(true, false);
+		when(claimResults.getLong(1)).thenReturn(7L);
+		when(claimResults.getString(2)).thenReturn("Queue-A");
+		when(claimResults.getBytes(3)).thenReturn(new byte[] { 1 });
+	}
+}
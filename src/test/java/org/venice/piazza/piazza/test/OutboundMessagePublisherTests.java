@@ -0,0 +1,158 @@
+/**
+ * Copyright 2018, Radiant Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.piazza.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+
+import messaging.job.JobMessageFactory;
+import model.status.StatusUpdate;
+
+/**
+ * Tests the batched, confirmed publishing of outbound messages
+ */
+public class OutboundMessagePublisherTests {
+	@Mock
+	private RabbitTemplate rabbitTemplate;
+	@Mock
+	private Queue updateJobsQueue;
+	@Mock
+	private Channel channel;
+	@Spy
+	private ObjectMapper mapper;
+	@InjectMocks
+	private OutboundMessagePublisher publisher;
+
+	/**
+	 * Run channel callbacks against the mock channel
+	 */
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(publisher, "QUEUE_CAPACITY", 10);
+		ReflectionTestUtils.setField(publisher, "BATCH_SIZE", 10);
+		ReflectionTestUtils.setField(publisher, "ENQUEUE_TIMEOUT_MS", 10L);
+		ReflectionTestUtils.setField(publisher, "CONFIRM_TIMEOUT_MS", 1000L);
+		ReflectionTestUtils.setField(publisher, "MAX_BACKOFF_MS", 50L);
+		ReflectionTestUtils.setField(publisher, "SHUTDOWN_TIMEOUT_MS", 2000L);
+
+		when(updateJobsQueue.getName()).thenReturn("Update-Job-Unit-Test");
+		when(rabbitTemplate.execute(Mockito.<ChannelCallback<Object>> any())).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				try {
+					return ((ChannelCallback<?>) invocation.getArguments()[0]).doInRabbit(channel);
+				} catch (Exception exception) {
+					throw new AmqpException(exception);
+				}
+			}
+		});
+		publisher.initialize();
+	}
+
+	/**
+	 * Tests that a batch is published on one channel, and confirmed once
+	 */
+	@Test
+	public void testPublishConfirmed() throws Exception {
+		// Test
+		publisher.publishConfirmed(Arrays.asList(publisher.createMessage("Queue-A", "One"), publisher.createMessage("Queue-B", "Two")));
+		publisher.shutdown();
+
+		// Verify
+		Mockito.verify(channel, Mockito.times(1)).confirmSelect();
+		Mockito.verify(channel, Mockito.times(1)).basicPublish(Mockito.eq(JobMessageFactory.PIAZZA_EXCHANGE_NAME), Mockito.eq("Queue-A"),
+				Mockito.eq(false), Mockito.any(AMQP.BasicProperties.class), Mockito.eq("\"One\"".getBytes("UTF-8")));
+		Mockito.verify(channel, Mockito.times(1)).basicPublish(Mockito.eq(JobMessageFactory.PIAZZA_EXCHANGE_NAME), Mockito.eq("Queue-B"),
+				Mockito.eq(false), Mockito.any(AMQP.BasicProperties.class), Mockito.any(byte[].class));
+		Mockito.verify(channel, Mockito.times(1)).waitForConfirmsOrDie(1000L);
+		Map<String, Object> stats = publisher.getStats();
+		assertEquals(2L, stats.get("published"));
+		assertEquals(1L, stats.get("batches"));
+	}
+
+	/**
+	 * Tests that queued Status Updates are published by the sender, and that a batch that is not confirmed is retried
+	 */
+	@Test
+	public void testPublishStatusUpdateWithRetry() throws Exception {
+		// Mock
+		Mockito.doThrow(new IOException("Nacked")).doNothing().when(channel).waitForConfirmsOrDie(Mockito.anyLong());
+
+		// Test
+		StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_RUNNING);
+		statusUpdate.setJobId("123456");
+		publisher.publishStatusUpdate(statusUpdate);
+		publisher.shutdown();
+
+		// Verify
+		Mockito.verify(channel, Mockito.times(2)).basicPublish(Mockito.eq(JobMessageFactory.PIAZZA_EXCHANGE_NAME),
+				Mockito.eq("Update-Job-Unit-Test"), Mockito.eq(false), Mockito.any(AMQP.BasicProperties.class), Mockito.any(byte[].class));
+		Map<String, Object> stats = publisher.getStats();
+		assertEquals(1L, stats.get("published"));
+		assertEquals(1L, stats.get("failedAttempts"));
+		assertEquals(0, stats.get("queued"));
+	}
+
+	/**
+	 * Tests that callers are refused once the queue is full
+	 */
+	@Test
+	public void testQueueFull() throws Exception {
+		// Mock; the broker never confirms
+		Mockito.doThrow(new IOException("Nacked")).when(channel).waitForConfirmsOrDie(Mockito.anyLong());
+
+		// Test
+		boolean refused = false;
+		for (int i = 0; (i < 50) && !refused; i++) {
+			try {
+				publisher.publish("Queue-A", i);
+			} catch (AmqpException exception) {
+				refused = true;
+			}
+		}
+		ReflectionTestUtils.setField(publisher, "SHUTDOWN_TIMEOUT_MS", 100L);
+		publisher.shutdown();
+
+		// Verify
+		assertTrue(refused);
+	}
+}
@@ -203,7 +203,7 @@ public class ServiceControllerTest {
 		// Create some temporary mocks for odd call
 		Mockito.when(accessorMock.getServices(1, 25, "asc", "serviceId", "", "")).thenReturn(serviceList);
 
-		PiazzaResponse piazzaResponse = sc.getServices(1, 25, "asc", "serviceId", "", "").getBody();
+		PiazzaResponse piazzaResponse = sc.getServices(1, 25, "asc", "serviceId", "", "", null, null).getBody();
 		assertThat("A list of services should be returned", piazzaResponse, instanceOf(ServiceListResponse.class));
 	}
 
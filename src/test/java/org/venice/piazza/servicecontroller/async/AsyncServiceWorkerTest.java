@@ -27,13 +27,12 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
 import org.venice.piazza.servicecontroller.messaging.handlers.ExecuteServiceHandler;
 
@@ -72,9 +71,7 @@ public class AsyncServiceWorkerTest {
 	@Mock
 	private RestTemplate restTemplate;
 	@Mock
-	private RabbitTemplate rabbitTemplate;
-	@Mock
-	private Queue updateJobsQueue;
+	private OutboundMessagePublisher outboundPublisher;
 
 	@InjectMocks
 	private AsynchronousServiceWorker worker;
@@ -31,10 +31,10 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
 import org.venice.piazza.servicecontroller.messaging.handlers.DeleteServiceHandler;
 import org.venice.piazza.servicecontroller.messaging.handlers.DescribeServiceHandler;
@@ -92,13 +92,10 @@ public class ServiceMessageWorkerTest {
 	@Mock
 	private DatabaseAccessor accessorMock;
 	@Mock
-	@Qualifier("UpdateJobsQueue")
-	private Queue updateJobsQueue;
-	@Mock
 	@Qualifier("RequestJobQueue")
 	private Queue requestJobQueue;
 	@Mock
-	private RabbitTemplate rabbitTemplate;
+	private OutboundMessagePublisher outboundPublisher;
 
 	private Job validJob;
 	private ExecuteServiceJob esJob;
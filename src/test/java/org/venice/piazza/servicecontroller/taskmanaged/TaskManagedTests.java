@@ -21,17 +21,14 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
-import org.mockito.Spy;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.util.Assert;
 import org.springframework.web.client.ResourceAccessException;
+import org.venice.piazza.piazza.messaging.OutboundMessagePublisher;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import exception.InvalidInputException;
 import model.job.Job;
@@ -49,16 +46,12 @@ import util.PiazzaLogger;
  *
  */
 public class TaskManagedTests {
-	@Spy
-	private ObjectMapper objectMapper;
 	@Mock
 	private DatabaseAccessor accessor;
 	@Mock
 	private PiazzaLogger piazzaLogger;
 	@Mock
-	private Queue updateJobsQueue;
-	@Mock
-	private RabbitTemplate rabbitTemplate;
+	private OutboundMessagePublisher outboundPublisher;
 
 	@InjectMocks
 	private ServiceTaskManager serviceTaskManager;
@@ -88,7 +81,7 @@ public class TaskManagedTests {
 		serviceTaskManager.addJobToQueue(job);
 
 		// Test Exception handling, ensure exception is handled
-		Mockito.when(objectMapper.writeValueAsString(Mockito.any())).thenThrow(new JsonMappingException("Oops"));
+		Mockito.doThrow(new JsonMappingException("Oops")).when(outboundPublisher).publishStatusUpdate(Mockito.any(StatusUpdate.class));
 	}
 
 	/**
@@ -117,7 +110,7 @@ public class TaskManagedTests {
 		serviceTaskManager.processStatusUpdate("service123", "job123", mockUpdate);
 
 		// Test - Messaging fails
-		Mockito.when(objectMapper.writeValueAsString(Mockito.any())).thenThrow(new JsonMappingException("Oops"));
+		Mockito.doThrow(new JsonMappingException("Oops")).when(outboundPublisher).publishStatusUpdate(Mockito.any(StatusUpdate.class));
 		serviceTaskManager.processStatusUpdate("service123", "job123", mockUpdate);
 	}
 
@@ -156,7 +149,7 @@ public class TaskManagedTests {
 		Assert.isTrue(result.getJobId().equals("job123"));
 
 		// Test - Handle JSON Exception
-		Mockito.when(objectMapper.writeValueAsString(Mockito.any())).thenThrow(new JsonMappingException("Oops"));
+		Mockito.doThrow(new JsonMappingException("Oops")).when(outboundPublisher).publishStatusUpdate(Mockito.any(StatusUpdate.class));
 		result = serviceTaskManager.getNextJobFromQueue("service123");
 
 		// Check not null, and proper Job ID
@@ -178,7 +171,7 @@ public class TaskManagedTests {
 		mockJob.setJobId("job123");
 		mockJob.setJobType(new AbortJob("job321"));
 		Mockito.when(accessor.getJobById(Mockito.eq("job123"))).thenReturn(mockJob);
-		Mockito.when(objectMapper.writeValueAsString(Mockito.any())).thenThrow(new JsonMappingException("Oops"));
+		Mockito.doThrow(new JsonMappingException("Oops")).when(outboundPublisher).publishStatusUpdate(Mockito.any(StatusUpdate.class));
 		serviceTaskManager.getNextJobFromQueue("service123"); // Should throw
 	}
 